@@ -0,0 +1,131 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit;
+
+import java.awt.GraphicsEnvironment;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+import org.multibit.controller.bitcoin.BitcoinController;
+import org.multibit.controller.core.CoreController;
+import org.multibit.event.EventDispatcher;
+import org.multibit.model.core.CoreModel;
+import org.multibit.viewsystem.swing.HealthCheckTimerTask;
+import org.multibit.viewsystem.swing.action.ExitAction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs MultiBit without a user interface, for servers with no display.
+ *
+ * <p>
+ * The wallets are loaded and synchronised as usual, but only the
+ * SimpleViewSystem is registered so no Swing components, fonts or images are
+ * created. Dirty wallets are saved by the HealthCheckTimerTask and the
+ * wallets and user preferences are saved when the JVM shuts down.
+ */
+public enum HeadlessService {
+    INSTANCE;
+
+    private static final Logger log = LoggerFactory.getLogger(HeadlessService.class);
+
+    /**
+     * The command line argument that selects headless mode.
+     */
+    public static final String HEADLESS_ARGUMENT = "--headless";
+
+    private final CountDownLatch shutdownLatch = new CountDownLatch(1);
+
+    private HealthCheckTimerTask healthCheckTimerTask;
+
+    /**
+     * Headless mode is used if it is asked for on the command line or in the
+     * user preferences, or if there is no display.
+     */
+    public static boolean isHeadless(String[] args, Properties userPreferences) {
+        if (args != null) {
+            for (String arg : args) {
+                if (HEADLESS_ARGUMENT.equals(arg)) {
+                    return true;
+                }
+            }
+        }
+        if (userPreferences != null && Boolean.TRUE.toString().equalsIgnoreCase(userPreferences.getProperty(CoreModel.HEADLESS))) {
+            return true;
+        }
+        return GraphicsEnvironment.isHeadless();
+    }
+
+    /**
+     * @return the arguments without the headless argument, so that the first is the Bitcoin URI if there is one
+     */
+    public static String[] removeHeadlessArgument(String[] args) {
+        if (args == null) {
+            return null;
+        }
+        List<String> remainingArgs = new ArrayList<String>();
+        for (String arg : args) {
+            if (!HEADLESS_ARGUMENT.equals(arg)) {
+                remainingArgs.add(arg);
+            }
+        }
+        return remainingArgs.toArray(new String[remainingArgs.size()]);
+    }
+
+    /**
+     * Start saving dirty wallets and register the shutdown of the Bitcoin network connection and wallets.
+     */
+    public void start(CoreController coreController, final BitcoinController bitcoinController) {
+        log.debug("Starting headless service");
+        healthCheckTimerTask = new HealthCheckTimerTask(bitcoinController);
+        EventDispatcher.INSTANCE.schedule(healthCheckTimerTask, HealthCheckTimerTask.INITIAL_DELAY, HealthCheckTimerTask.DEFAULT_REPEAT_RATE);
+
+        final ExitAction exitAction = new ExitAction(coreController, null);
+        exitAction.setBitcoinController(bitcoinController);
+        exitAction.setHealthCheckTimerTask(healthCheckTimerTask);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                log.debug("Shutting down headless service");
+                try {
+                    if (!ExitAction.isRunning()) {
+                        exitAction.shutdown();
+                    }
+                } finally {
+                    shutdownLatch.countDown();
+                }
+            }
+        }, "Headless shutdown"));
+    }
+
+    /**
+     * Block the calling thread until the JVM is shutting down and the wallets have been saved.
+     */
+    public void awaitShutdown() {
+        try {
+            shutdownLatch.await();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public HealthCheckTimerTask getHealthCheckTimerTask() {
+        return healthCheckTimerTask;
+    }
+}
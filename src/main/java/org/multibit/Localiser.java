@@ -17,6 +17,7 @@ package org.multibit;
 
 import com.google.bitcoin.core.Utils;
 import org.joda.money.BigMoney;
+import org.multibit.utils.FixedPointFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,6 +27,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.text.DecimalFormat;
 import java.text.MessageFormat;
 import java.text.NumberFormat;
 import java.util.*;
@@ -268,21 +270,48 @@ public class Localiser {
 
         String toReturn = "";
         if (negative) {
-            toReturn = "-";
+            toReturn = String.valueOf(decimalFormatSymbols.getMinusSign());
         }
         
         if (value == null) {
             throw new IllegalArgumentException("Value cannot be null");
         }
                 
-        BigDecimal valueInBTC = new BigDecimal(value).divide(new BigDecimal(Utils.COIN));
-        toReturn = toReturn + numberFormat.format(valueInBTC.doubleValue());
+        if (value.bitLength() < 64 && numberFormat instanceof DecimalFormat) {
+            StringBuilder builder = new StringBuilder(toReturn);
+            appendBitcoinValue(builder, value.longValue());
+            toReturn = builder.toString();
+        } else {
+            BigDecimal valueInBTC = new BigDecimal(value).divide(new BigDecimal(Utils.COIN));
+            toReturn = toReturn + numberFormat.format(valueInBTC.doubleValue());
+        }
 
         if (addUnit) {
             toReturn = toReturn + " " + getString("sendBitcoinPanel.amountUnitLabel");
         }
         return toReturn;     
     }
+
+    /**
+     * Appends the given value in satoshi as a localised BTC amount, without creating any objects.
+     **/
+    public void appendBitcoinValue(StringBuilder builder, long valueInSatoshi) {
+        if (valueInSatoshi == Long.MIN_VALUE) {
+            // Cannot be negated as a long.
+            builder.append(bitcoinValueToString(BigInteger.valueOf(valueInSatoshi), false, false));
+            return;
+        }
+        if (valueInSatoshi < 0) {
+            builder.append(decimalFormatSymbols.getMinusSign());
+            valueInSatoshi = -valueInSatoshi;
+        }
+        int groupingSize = 0;
+        if (numberFormat.isGroupingUsed() && numberFormat instanceof DecimalFormat) {
+            groupingSize = ((DecimalFormat) numberFormat).getGroupingSize();
+        }
+        FixedPointFormat.appendDecimal(builder, valueInSatoshi, NUMBER_OF_FRACTION_DIGITS_FOR_BITCOIN, decimalFormatSymbols, groupingSize);
+    }
+
     /**
      * Returns the given value in nanocoins as a 0.12345678 type string.
      * This function is NOT localised. 
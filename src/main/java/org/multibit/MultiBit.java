@@ -17,11 +17,15 @@ package org.multibit;
 
 import com.google.bitcoin.core.StoredBlock;
 import com.google.bitcoin.core.Wallet;
+import org.multibit.api.LocalApiServer;
+import org.multibit.api.WalletRequestHandler;
 import org.multibit.controller.Controller;
 import org.multibit.controller.bitcoin.BitcoinController;
 import org.multibit.controller.core.CoreController;
 import org.multibit.controller.exchange.ExchangeController;
 import org.multibit.exchange.CurrencyConverter;
+import org.multibit.exchange.ExchangeRateCache;
+import org.multibit.exchange.HistoricalRateStore;
 import org.multibit.file.BackupManager;
 import org.multibit.file.FileHandler;
 import org.multibit.message.Message;
@@ -40,6 +44,7 @@ import org.multibit.platform.listener.GenericOpenURIEvent;
 import org.multibit.utils.OSUtils;
 import org.multibit.viewsystem.DisplayHint;
 import org.multibit.viewsystem.ViewSystem;
+import org.multibit.viewsystem.simple.SimpleViewSystem;
 import org.multibit.viewsystem.swing.ColorAndFontConstants;
 import org.multibit.viewsystem.swing.MultiBitFrame;
 import org.multibit.viewsystem.swing.action.ExitAction;
@@ -51,6 +56,7 @@ import javax.swing.*;
 import javax.swing.UIManager.LookAndFeelInfo;
 import java.awt.*;
 import java.io.File;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -84,7 +90,7 @@ public final class MultiBit {
     /**
      * Start MultiBit user interface.
      *
-     * @param args String encoding of arguments ([0]= Bitcoin URI)
+     * @param args String encoding of arguments ([0]= Bitcoin URI, or --headless to run without a user interface)
      */
     @SuppressWarnings("deprecation")
     public static void main(String args[]) {
@@ -113,19 +119,29 @@ public final class MultiBit {
             // Load up the user preferences.
             Properties userPreferences = FileHandler.loadUserPreferences(applicationDataDirectoryLocator);
 
+            final boolean headless = HeadlessService.isHeadless(args, userPreferences);
+            if (headless) {
+                log.info("Running headless");
+                System.setProperty("java.awt.headless", "true");
+                args = HeadlessService.removeHeadlessArgument(args);
+            }
+
             // Create the controllers.
             coreController = new CoreController(applicationDataDirectoryLocator);
             controller = coreController;
             bitcoinController = new BitcoinController(coreController);
             exchangeController = new ExchangeController(coreController);
 
-            log.info("Configuring native event handling");
-            GenericApplicationSpecification specification = new GenericApplicationSpecification();
-            specification.getOpenURIEventListeners().add(coreController);
-            specification.getPreferencesEventListeners().add(coreController);
-            specification.getAboutEventListeners().add(coreController);
-            specification.getQuitEventListeners().add(coreController);
-            GenericApplication genericApplication = GenericApplicationFactory.INSTANCE.buildGenericApplication(specification);
+            GenericApplication genericApplication = null;
+            if (!headless) {
+                log.info("Configuring native event handling");
+                GenericApplicationSpecification specification = new GenericApplicationSpecification();
+                specification.getOpenURIEventListeners().add(coreController);
+                specification.getPreferencesEventListeners().add(coreController);
+                specification.getAboutEventListeners().add(coreController);
+                specification.getQuitEventListeners().add(coreController);
+                genericApplication = GenericApplicationFactory.INSTANCE.buildGenericApplication(specification);
+            }
 
             log.info("Checking to see if this is the primary MultiBit instance");
             String rawURI = null;
@@ -143,6 +159,10 @@ public final class MultiBit {
             ApplicationInstanceManager.setApplicationInstanceListener(new ApplicationInstanceListener() {
                 @Override
                 public void newInstanceCreated(String rawURI) {
+                    if (headless) {
+                        log.debug("Ignoring new instance of MultiBit as running headless, rawURI = " + rawURI);
+                        return;
+                    }
                     final String finalRawUri = rawURI;
                     log.debug("New instance of MultiBit detected, rawURI = " + rawURI + " ...");
                     Runnable doProcessCommandLine = new Runnable() {
@@ -191,44 +211,56 @@ public final class MultiBit {
             // Trust all HTTPS certificates.
             ConnectHttps.trustAllCerts();
 
+            // Load the last known exchange rates so fiat values can be shown straight away.
+            ExchangeRateCache.INSTANCE.initialise(applicationDataDirectoryLocator.getApplicationDataDirectory());
+            ExchangeRateCache.INSTANCE.load(exchangeModel);
+
+            // Load the daily exchange rates used to value past transactions.
+            HistoricalRateStore.INSTANCE.initialise(applicationDataDirectoryLocator.getApplicationDataDirectory());
+
             // Initialise currency converter.
             CurrencyConverter.INSTANCE.initialise(finalController);
 
             // Initialise replay manager.
             ReplayManager.INSTANCE.initialise(bitcoinController, false);
 
-            log.debug("Setting look and feel");
-            try {
-                String lookAndFeel = userPreferences.getProperty(CoreModel.LOOK_AND_FEEL);
+            if (headless) {
+                // Only the simple view system - no Swing, fonts or images.
+                swingViewSystem = new SimpleViewSystem();
+            } else {
+                log.debug("Setting look and feel");
+                try {
+                    String lookAndFeel = userPreferences.getProperty(CoreModel.LOOK_AND_FEEL);
 
-                // If not set on Windows use 'Windows' L&F as system can be rendered as metal.
-                if ((lookAndFeel == null || lookAndFeel.equals("")) && System.getProperty("os.name").startsWith("Win")) {
-                    lookAndFeel = "Windows";
-                    userPreferences.setProperty(CoreModel.LOOK_AND_FEEL, lookAndFeel);
-                }
+                    // If not set on Windows use 'Windows' L&F as system can be rendered as metal.
+                    if ((lookAndFeel == null || lookAndFeel.equals("")) && System.getProperty("os.name").startsWith("Win")) {
+                        lookAndFeel = "Windows";
+                        userPreferences.setProperty(CoreModel.LOOK_AND_FEEL, lookAndFeel);
+                    }
 
-                if (lookAndFeel != null && !lookAndFeel.equals("")) {
-                    for (LookAndFeelInfo info : UIManager.getInstalledLookAndFeels()) {
-                        if (lookAndFeel.equalsIgnoreCase(info.getName())) {
-                            UIManager.setLookAndFeel(info.getClassName());
-                            break;
+                    if (lookAndFeel != null && !lookAndFeel.equals("")) {
+                        for (LookAndFeelInfo info : UIManager.getInstalledLookAndFeels()) {
+                            if (lookAndFeel.equalsIgnoreCase(info.getName())) {
+                                UIManager.setLookAndFeel(info.getClassName());
+                                break;
+                            }
                         }
+                    } else {
+                        UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
                     }
-                } else {
-                    UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+                } catch (UnsupportedLookAndFeelException | ClassNotFoundException | InstantiationException | IllegalAccessException e) {
+                    // Carry on.
                 }
-            } catch (UnsupportedLookAndFeelException | ClassNotFoundException | InstantiationException | IllegalAccessException e) {
-                // Carry on.
-            }
 
-            // Initialise singletons.
-            ColorAndFontConstants.init();
-            FontSizer.INSTANCE.initialise(controller);
-            CurrencyConverter.INSTANCE.initialise(finalController);
+                // Initialise singletons.
+                ColorAndFontConstants.init();
+                FontSizer.INSTANCE.initialise(controller);
+                CurrencyConverter.INSTANCE.initialise(finalController);
 
-            // This is when the GUI is first displayed to the user.
-            log.debug("Creating user interface with initial view : " + controller.getCurrentView());
-            swingViewSystem = new MultiBitFrame(coreController, bitcoinController, exchangeController, genericApplication, controller.getCurrentView());
+                // This is when the GUI is first displayed to the user.
+                log.debug("Creating user interface with initial view : " + controller.getCurrentView());
+                swingViewSystem = new MultiBitFrame(coreController, bitcoinController, exchangeController, genericApplication, controller.getCurrentView());
+            }
 
             log.debug("Registering with controller");
             coreController.registerViewSystem(swingViewSystem);
@@ -416,7 +448,9 @@ public final class MultiBit {
                     if (actualOrderToLoad.size() > 0) {
                         boolean thereWasAnErrorLoadingTheWallet = false;
 
-                        ((MultiBitFrame) swingViewSystem).setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+                        if (swingViewSystem instanceof MultiBitFrame) {
+                            ((MultiBitFrame) swingViewSystem).setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+                        }
                         for (String actualOrder : actualOrderToLoad) {
                             log.debug("Loading wallet from '{}'", actualOrder);
                             Message message = new Message(controller.getLocaliser().getString("multiBit.openingWallet",
@@ -488,7 +522,9 @@ public final class MultiBit {
                     }
                     controller.fireDataChangedUpdateNow();
 
-                    ((MultiBitFrame) swingViewSystem).setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
+                    if (swingViewSystem instanceof MultiBitFrame) {
+                        ((MultiBitFrame) swingViewSystem).setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
+                    }
                 }
             }
 
@@ -498,11 +534,17 @@ public final class MultiBit {
                 for (int i = 0; i < args.length; i++) {
                     log.debug("Started with args[{}]: '{}'", i, args[i]);
                 }
-                processCommandLineURI(bitcoinController, args[0]);
+                if (headless) {
+                    log.debug("Not processing the Bitcoin URI as running headless");
+                } else {
+                    processCommandLineURI(bitcoinController, args[0]);
+                }
             } else {
                 log.debug("No Bitcoin URI provided as an argument");
             }
 
+            startLocalApi(bitcoinController, userPreferences);
+
             // Indicate to the application that startup has completed.
             coreController.setApplicationStarting(false);
 
@@ -587,7 +629,10 @@ public final class MultiBit {
                 ReplayManager.INSTANCE.downloadBlockChain();
             }
 
-            if (OSUtils.isWindowsXPOrEarlier()) {
+            if (headless) {
+                HeadlessService.INSTANCE.start(coreController, bitcoinController);
+                HeadlessService.INSTANCE.awaitShutdown();
+            } else if (OSUtils.isWindowsXPOrEarlier()) {
               log.error("Windows XP or earlier detected. Issuing warning.");
               JOptionPane.showMessageDialog(
                 null, "This version of Windows is not recommended for security reasons.\nPlease upgrade.", "Error",
@@ -599,12 +644,45 @@ public final class MultiBit {
 
             // Try saving any dirty wallets.
             if (controller != null) {
-                ExitAction exitAction = new ExitAction(controller, (MultiBitFrame)swingViewSystem);
+                ExitAction exitAction = new ExitAction(controller,
+                        swingViewSystem instanceof MultiBitFrame ? (MultiBitFrame) swingViewSystem : null);
+                exitAction.setBitcoinController(bitcoinController);
                 exitAction.actionPerformed(null);
             }
         }
     }
 
+    /**
+     * Start the local API if a port is set in the user preferences.
+     */
+    static void startLocalApi(BitcoinController bitcoinController, Properties userPreferences) {
+        String localApiPort = userPreferences.getProperty(BitcoinModel.LOCAL_API_PORT);
+        if (localApiPort == null || "".equals(localApiPort.trim())) {
+            return;
+        }
+        try {
+            String token = userPreferences.getProperty(BitcoinModel.LOCAL_API_TOKEN);
+            if (token == null || "".equals(token.trim())) {
+                // Never run without a token - any program on the computer could otherwise send bitcoin.
+                File tokenFile = new File(bitcoinController.getApplicationDataDirectoryLocator().getApplicationDataDirectory(),
+                        WalletRequestHandler.TOKEN_FILENAME);
+                token = WalletRequestHandler.readOrCreateToken(tokenFile);
+                log.debug("The local API token is in '" + tokenFile.getAbsolutePath() + "'");
+            }
+            LocalApiServer localApiServer = new LocalApiServer(Integer.parseInt(localApiPort.trim()), new WalletRequestHandler(
+                    bitcoinController, token));
+            localApiServer.start();
+            if (bitcoinController.getMultiBitService() != null) {
+                // Stopped by the ExitAction before the wallets are saved.
+                bitcoinController.getMultiBitService().setLocalApiServer(localApiServer);
+            }
+        } catch (NumberFormatException nfe) {
+            log.error("The local API port '" + localApiPort + "' is not a number");
+        } catch (IOException ioe) {
+            log.error(ioe.getClass().getName() + " " + ioe.getMessage());
+        }
+    }
+
     static void processCommandLineURI(BitcoinController controller, String rawURI) {
         try {
             // Attempt to detect if the command line URI is valid.
@@ -0,0 +1,76 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.api;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * An HTTP request received by the local API, with the query string and any
+ * form encoded body decoded into parameters.
+ */
+public class HttpRequest {
+
+    private final String method;
+    private final String path;
+    private final Map<String, String> headers;
+    private final Map<String, String> parameters;
+    private final boolean keepAlive;
+
+    public HttpRequest(String method, String path, Map<String, String> headers, Map<String, String> parameters, boolean keepAlive) {
+        this.method = method;
+        this.path = path;
+        this.headers = Collections.unmodifiableMap(headers);
+        this.parameters = Collections.unmodifiableMap(parameters);
+        this.keepAlive = keepAlive;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @param name
+     *            the header name in lower case
+     */
+    public String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    public String getParameter(String name) {
+        return parameters.get(name);
+    }
+
+    public Map<String, String> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * @return false if the connection is to be closed after the response
+     */
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + path;
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.api;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Parses HTTP/1.x requests from the bytes read from a connection. Several
+ * requests may be in the buffer at once when the client pipelines them.
+ */
+class HttpRequestParser {
+
+    static final int MAXIMUM_HEADER_LENGTH = 8 * 1024;
+
+    static final int MAXIMUM_BODY_LENGTH = 64 * 1024;
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    /**
+     * A request that cannot be parsed. The connection is closed after the error response.
+     */
+    static class BadRequestException extends IOException {
+        private static final long serialVersionUID = 5264104872537460021L;
+
+        private final int status;
+        private final String reason;
+
+        BadRequestException(int status, String reason) {
+            super(reason);
+            this.status = status;
+            this.reason = reason;
+        }
+
+        HttpResponse toResponse() {
+            return HttpResponse.error(status, reason, reason);
+        }
+    }
+
+    private HttpRequestParser() {
+    }
+
+    /**
+     * Parse the next request in the buffer.
+     *
+     * @param buffer
+     *            the bytes read, ready for reading
+     * @return the request, with the buffer positioned after it, or null if the
+     *         request is not complete yet and the buffer is unchanged
+     */
+    static HttpRequest parse(ByteBuffer buffer) throws BadRequestException {
+        int start = buffer.position();
+        int headerEnd = indexOfHeaderEnd(buffer);
+        if (headerEnd < 0) {
+            if (buffer.remaining() > MAXIMUM_HEADER_LENGTH) {
+                throw new BadRequestException(431, "Request Header Fields Too Large");
+            }
+            return null;
+        }
+
+        byte[] headerBytes = new byte[headerEnd - start];
+        buffer.get(headerBytes);
+        buffer.position(start);
+        String[] lines = new String(headerBytes, ISO_8859_1).split("\r\n");
+
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+            throw new BadRequestException(400, "Bad Request");
+        }
+        String method = requestLine[0].toUpperCase(Locale.ENGLISH);
+        String target = requestLine[1];
+        boolean http10 = "HTTP/1.0".equals(requestLine[2]);
+
+        Map<String, String> headers = new HashMap<String, String>();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon <= 0) {
+                throw new BadRequestException(400, "Bad Request");
+            }
+            headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.ENGLISH), lines[i].substring(colon + 1).trim());
+        }
+
+        if (headers.containsKey("transfer-encoding")) {
+            throw new BadRequestException(411, "Length Required");
+        }
+        int contentLength = 0;
+        String contentLengthValue = headers.get("content-length");
+        if (contentLengthValue != null) {
+            try {
+                contentLength = Integer.parseInt(contentLengthValue);
+            } catch (NumberFormatException nfe) {
+                throw new BadRequestException(400, "Bad Request");
+            }
+            if (contentLength < 0) {
+                throw new BadRequestException(400, "Bad Request");
+            }
+            if (contentLength > MAXIMUM_BODY_LENGTH) {
+                throw new BadRequestException(413, "Request Entity Too Large");
+            }
+        }
+
+        int bodyStart = headerEnd + 4;
+        if (buffer.limit() - bodyStart < contentLength) {
+            // Wait for the rest of the body.
+            return null;
+        }
+        byte[] body = new byte[contentLength];
+        buffer.position(bodyStart);
+        buffer.get(body);
+
+        Map<String, String> parameters = new HashMap<String, String>();
+        String path = target;
+        int queryStart = target.indexOf('?');
+        if (queryStart >= 0) {
+            path = target.substring(0, queryStart);
+            decodeParameters(target.substring(queryStart + 1), parameters);
+        }
+        if (contentLength > 0) {
+            String contentType = headers.get("content-type");
+            if (contentType == null || contentType.toLowerCase(Locale.ENGLISH).startsWith("application/x-www-form-urlencoded")) {
+                decodeParameters(new String(body, ISO_8859_1), parameters);
+            }
+        }
+
+        String connection = headers.get("connection");
+        boolean keepAlive;
+        if (http10) {
+            keepAlive = "keep-alive".equalsIgnoreCase(connection);
+        } else {
+            keepAlive = !"close".equalsIgnoreCase(connection);
+        }
+
+        return new HttpRequest(method, decode(path), headers, parameters, keepAlive);
+    }
+
+    private static int indexOfHeaderEnd(ByteBuffer buffer) {
+        for (int i = buffer.position(); i + 3 < buffer.limit(); i++) {
+            if (buffer.get(i) == '\r' && buffer.get(i + 1) == '\n' && buffer.get(i + 2) == '\r' && buffer.get(i + 3) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void decodeParameters(String encoded, Map<String, String> parameters) throws BadRequestException {
+        for (String pair : encoded.split("&")) {
+            if (pair.length() == 0) {
+                continue;
+            }
+            int equals = pair.indexOf('=');
+            if (equals < 0) {
+                parameters.put(decode(pair), "");
+            } else {
+                parameters.put(decode(pair.substring(0, equals)), decode(pair.substring(equals + 1)));
+            }
+        }
+    }
+
+    private static String decode(String encoded) throws BadRequestException {
+        try {
+            return URLDecoder.decode(encoded, "UTF-8");
+        } catch (IllegalArgumentException iae) {
+            throw new BadRequestException(400, "Bad Request");
+        } catch (UnsupportedEncodingException uee) {
+            throw new BadRequestException(500, "Internal Server Error");
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.api;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.multibit.utils.JsonEncoder;
+
+/**
+ * A JSON response from the local API.
+ */
+public class HttpResponse {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final int status;
+    private final String reason;
+    private final String body;
+
+    public HttpResponse(int status, String reason, String body) {
+        this.status = status;
+        this.reason = reason;
+        this.body = body;
+    }
+
+    public static HttpResponse ok(String body) {
+        return new HttpResponse(200, "OK", body);
+    }
+
+    /**
+     * An error response with a body of the form {"error":"message"}.
+     */
+    public static HttpResponse error(int status, String reason, String message) {
+        StringBuilder body = new StringBuilder("{\"error\":");
+        JsonEncoder.appendString(body, message);
+        body.append('}');
+        return new HttpResponse(status, reason, body.toString());
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * Encode the status line, headers and body.
+     */
+    ByteBuffer toByteBuffer(boolean keepAlive) {
+        byte[] bodyBytes = body == null ? new byte[0] : body.getBytes(UTF_8);
+        StringBuilder head = new StringBuilder(128);
+        head.append("HTTP/1.1 ").append(status).append(' ').append(reason).append("\r\n");
+        head.append("Content-Type: application/json; charset=utf-8\r\n");
+        head.append("Content-Length: ").append(bodyBytes.length).append("\r\n");
+        head.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n\r\n");
+        byte[] headBytes = head.toString().getBytes(UTF_8);
+
+        ByteBuffer buffer = ByteBuffer.allocate(headBytes.length + bodyBytes.length);
+        buffer.put(headBytes).put(bodyBytes);
+        buffer.flip();
+        return buffer;
+    }
+}
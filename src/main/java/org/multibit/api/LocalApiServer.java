@@ -0,0 +1,419 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.api;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A small HTTP server on localhost for driving MultiBit from other programs.
+ *
+ * <p>
+ * One thread accepts, reads and writes all the connections without blocking.
+ * Requests are handled on a pool of worker threads, so a slow request such
+ * as a send does not hold up other connections. Clients may pipeline
+ * requests on a keep-alive connection. They are handled one after another
+ * in the order they arrived, so pipelined calls on one wallet do not find
+ * it busy with each other, and the responses are written in that order.
+ */
+public class LocalApiServer {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalApiServer.class);
+
+    /**
+     * The most requests a connection can have waiting for responses before it is no longer read.
+     */
+    static final int MAXIMUM_PIPELINED_REQUESTS = 64;
+
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+    private static final int WORKER_THREADS = 4;
+
+    /**
+     * How long stop waits for the requests being handled, such as a send, to finish.
+     */
+    static final long STOP_TIMEOUT = 30000; // ms
+
+    private final int port;
+
+    private final RequestHandler requestHandler;
+
+    private ServerSocketChannel serverSocketChannel;
+
+    private Selector selector;
+
+    private ExecutorService workers;
+
+    private Thread selectorThread;
+
+    private volatile boolean running = false;
+
+    /**
+     * Connections with a response that has been completed by a worker.
+     */
+    private final Queue<Connection> completedConnections = new ConcurrentLinkedQueue<Connection>();
+
+    /**
+     * @param port
+     *            the port to listen on, or 0 for any free port
+     */
+    public LocalApiServer(int port, RequestHandler requestHandler) {
+        this.port = port;
+        this.requestHandler = requestHandler;
+    }
+
+    /**
+     * Start listening on the loopback address.
+     *
+     * @return the port listened on
+     */
+    public synchronized int start() throws IOException {
+        selector = Selector.open();
+        serverSocketChannel = ServerSocketChannel.open();
+        serverSocketChannel.configureBlocking(false);
+        serverSocketChannel.socket().setReuseAddress(true);
+        serverSocketChannel.socket().bind(new InetSocketAddress(InetAddress.getByAddress(new byte[] { 127, 0, 0, 1 }), port));
+        serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+        workers = Executors.newFixedThreadPool(WORKER_THREADS, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Local API worker " + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        running = true;
+        selectorThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, "Local API");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+
+        int localPort = serverSocketChannel.socket().getLocalPort();
+        log.debug("Local API listening on port " + localPort);
+        return localPort;
+    }
+
+    /**
+     * Stop listening, close all the connections and wait for the requests being handled to finish.
+     */
+    public synchronized void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (selectorThread != null) {
+            try {
+                selectorThread.join(1000);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (workers != null) {
+            workers.shutdown();
+            try {
+                if (!workers.awaitTermination(STOP_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    log.error("Local API requests were still running after " + STOP_TIMEOUT + " ms");
+                    workers.shutdownNow();
+                }
+            } catch (InterruptedException ie) {
+                workers.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void serve() {
+        try {
+            while (running) {
+                selector.select();
+
+                Connection completedConnection;
+                while ((completedConnection = completedConnections.poll()) != null) {
+                    completedConnection.updateInterest();
+                }
+
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            Connection connection = (Connection) key.attachment();
+                            if (key.isReadable()) {
+                                connection.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.write();
+                            }
+                            if (key.isValid()) {
+                                connection.updateInterest();
+                            }
+                        }
+                    } catch (IOException ioe) {
+                        log.debug("Local API connection closed. " + ioe.getClass().getName() + " " + ioe.getMessage());
+                        if (key.attachment() instanceof Connection) {
+                            ((Connection) key.attachment()).close();
+                        }
+                    }
+                }
+            }
+        } catch (IOException ioe) {
+            log.error(ioe.getClass().getName() + " " + ioe.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).close();
+                }
+            }
+            try {
+                serverSocketChannel.close();
+                selector.close();
+            } catch (IOException ioe) {
+                log.error(ioe.getClass().getName() + " " + ioe.getMessage());
+            }
+            running = false;
+            log.debug("Local API is shut down.");
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel socketChannel = serverSocketChannel.accept();
+        if (socketChannel == null) {
+            return;
+        }
+        socketChannel.configureBlocking(false);
+        socketChannel.socket().setTcpNoDelay(true);
+        Connection connection = new Connection(socketChannel);
+        connection.key = socketChannel.register(selector, SelectionKey.OP_READ, connection);
+    }
+
+    /**
+     * A response in the order its request arrived, completed by a worker.
+     */
+    private static class PendingResponse {
+        private final boolean keepAlive;
+        private volatile ByteBuffer bytes;
+
+        PendingResponse(boolean keepAlive) {
+            this.keepAlive = keepAlive;
+        }
+    }
+
+    /**
+     * The state of one client connection. Only used on the selector thread,
+     * except that workers complete its pending responses.
+     */
+    private class Connection {
+        private final SocketChannel socketChannel;
+        private SelectionKey key;
+        private ByteBuffer input = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final Queue<PendingResponse> pendingResponses = new ArrayDeque<PendingResponse>();
+        /**
+         * False once the client has closed its side or asked for the connection to be closed.
+         */
+        private boolean acceptingRequests = true;
+        private boolean endOfInput = false;
+        /**
+         * Requests waiting for the one being handled on this connection to finish. Guarded by itself.
+         */
+        private final Queue<Runnable> waitingRequests = new ArrayDeque<Runnable>();
+        private boolean handlingRequest = false;
+
+        Connection(SocketChannel socketChannel) {
+            this.socketChannel = socketChannel;
+        }
+
+        void read() throws IOException {
+            if (!input.hasRemaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(input.capacity() * 2);
+                input.flip();
+                larger.put(input);
+                input = larger;
+            }
+            if (socketChannel.read(input) < 0) {
+                endOfInput = true;
+            }
+            parseRequests();
+        }
+
+        private void parseRequests() {
+            input.flip();
+            try {
+                while (acceptingRequests && pendingResponses.size() < MAXIMUM_PIPELINED_REQUESTS) {
+                    HttpRequest request = HttpRequestParser.parse(input);
+                    if (request == null) {
+                        break;
+                    }
+                    submit(request);
+                    if (!request.isKeepAlive()) {
+                        // Nothing after this request is answered.
+                        acceptingRequests = false;
+                    }
+                }
+            } catch (HttpRequestParser.BadRequestException bre) {
+                PendingResponse pendingResponse = new PendingResponse(false);
+                pendingResponse.bytes = bre.toResponse().toByteBuffer(false);
+                pendingResponses.add(pendingResponse);
+                acceptingRequests = false;
+            } finally {
+                input.compact();
+            }
+            if (endOfInput && pendingResponses.size() < MAXIMUM_PIPELINED_REQUESTS) {
+                // Any incomplete request left will never be finished.
+                acceptingRequests = false;
+            }
+        }
+
+        private void submit(final HttpRequest request) {
+            final PendingResponse pendingResponse = new PendingResponse(request.isKeepAlive());
+            pendingResponses.add(pendingResponse);
+            Runnable handleRequest = new Runnable() {
+                @Override
+                public void run() {
+                    HttpResponse response;
+                    try {
+                        response = requestHandler.handle(request);
+                    } catch (RuntimeException re) {
+                        log.error(re.getClass().getName() + " " + re.getMessage());
+                        response = HttpResponse.error(500, "Internal Server Error", re.getClass().getName() + " " + re.getMessage());
+                    }
+                    pendingResponse.bytes = response.toByteBuffer(pendingResponse.keepAlive);
+                    completedConnections.add(Connection.this);
+                    selector.wakeup();
+                    handleNextRequest();
+                }
+            };
+            synchronized (waitingRequests) {
+                if (handlingRequest) {
+                    waitingRequests.add(handleRequest);
+                    return;
+                }
+                handlingRequest = true;
+            }
+            execute(handleRequest);
+        }
+
+        /**
+         * Start the next request on this connection, now that the one before it has finished.
+         */
+        private void handleNextRequest() {
+            Runnable nextRequest;
+            synchronized (waitingRequests) {
+                nextRequest = waitingRequests.poll();
+                if (nextRequest == null) {
+                    handlingRequest = false;
+                    return;
+                }
+            }
+            execute(nextRequest);
+        }
+
+        private void execute(Runnable handleRequest) {
+            try {
+                workers.execute(handleRequest);
+            } catch (RejectedExecutionException ree) {
+                // The server is stopping, which closes the connection.
+                log.debug("Local API request dropped as the server is stopping");
+            }
+        }
+
+        void write() throws IOException {
+            PendingResponse head;
+            while ((head = pendingResponses.peek()) != null && head.bytes != null) {
+                socketChannel.write(head.bytes);
+                if (head.bytes.hasRemaining()) {
+                    // The socket buffer is full - carry on when it is writable.
+                    return;
+                }
+                pendingResponses.poll();
+                if (!head.keepAlive) {
+                    close();
+                    return;
+                }
+            }
+            if (acceptingRequests && input.position() > 0) {
+                // Requests held back while too many were waiting for responses.
+                parseRequests();
+            }
+        }
+
+        void updateInterest() {
+            if (!key.isValid()) {
+                return;
+            }
+            if (!acceptingRequests && pendingResponses.isEmpty()) {
+                close();
+                return;
+            }
+            int interest = 0;
+            if (acceptingRequests && !endOfInput && pendingResponses.size() < MAXIMUM_PIPELINED_REQUESTS) {
+                interest |= SelectionKey.OP_READ;
+            }
+            PendingResponse head = pendingResponses.peek();
+            if (head != null && head.bytes != null) {
+                interest |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(interest);
+        }
+
+        void close() {
+            key.cancel();
+            try {
+                socketChannel.close();
+            } catch (ClosedChannelException cce) {
+                // Already closed.
+            } catch (IOException ioe) {
+                log.debug(ioe.getClass().getName() + " " + ioe.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,495 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.api;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.swing.SwingUtilities;
+
+import org.bitcoinj.wallet.Protos.Wallet.EncryptionType;
+import org.multibit.controller.bitcoin.BitcoinController;
+import org.multibit.file.JsonLinesTransactionRowWriter;
+import org.multibit.file.WalletSaveException;
+import org.multibit.model.bitcoin.BitcoinModel;
+import org.multibit.model.bitcoin.WalletAddressBookData;
+import org.multibit.model.bitcoin.WalletData;
+import org.multibit.model.bitcoin.WalletInfoData;
+import org.multibit.model.core.CoreModel;
+import org.multibit.store.MultiBitWalletVersion;
+import org.multibit.utils.JsonEncoder;
+import org.multibit.viewsystem.swing.action.CreateNewReceivingAddressSubmitAction;
+import org.multibit.viewsystem.swing.view.components.FeeSlider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.bitcoin.core.Address;
+import com.google.bitcoin.core.AddressFormatException;
+import com.google.bitcoin.core.InsufficientMoneyException;
+import com.google.bitcoin.core.Transaction;
+import com.google.bitcoin.core.Utils;
+import com.google.bitcoin.core.Wallet;
+import com.google.bitcoin.core.Wallet.BalanceType;
+import com.google.bitcoin.core.Wallet.SendRequest;
+import com.google.bitcoin.crypto.KeyCrypterException;
+
+/**
+ * The wallet operations of the local API. Amounts are in satoshi, except the
+ * amount of a send which is in BTC as typed into the send view.
+ *
+ * <pre>
+ * GET  /wallets                                        the open wallets and their balances
+ * GET  /balance?wallet=                                the estimated and available balance
+ * POST /address?wallet=&amp;password=&amp;label=               a new receiving address
+ * GET  /transactions?wallet=&amp;limit=                     the most recent transactions
+ * POST /send?wallet=&amp;address=&amp;amount=&amp;password=          send bitcoin, returning the transaction id
+ * </pre>
+ *
+ * The wallet parameter is the wallet filename and defaults to the active
+ * wallet. Requests from a web page (with an Origin header) or for another host
+ * name are refused. Every request must send the token as
+ * "Authorization: Bearer &lt;token&gt;", as any program on the computer can
+ * connect to the port.
+ */
+public class WalletRequestHandler implements RequestHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(WalletRequestHandler.class);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int DEFAULT_TRANSACTION_LIMIT = 100;
+
+    /**
+     * The file in the application data directory holding the token when the user has not chosen one.
+     */
+    public static final String TOKEN_FILENAME = "localapi.token";
+
+    private static final int TOKEN_LENGTH = 32; // bytes
+
+    private final BitcoinController bitcoinController;
+
+    private final String token;
+
+    /**
+     * @param token
+     *            the token every request must carry. If it is null every request is refused.
+     */
+    public WalletRequestHandler(BitcoinController bitcoinController, String token) {
+        this.bitcoinController = bitcoinController;
+        this.token = token == null || token.trim().length() == 0 ? null : token.trim();
+    }
+
+    @Override
+    public HttpResponse handle(HttpRequest request) {
+        if (request.getHeader("origin") != null || !isLocalHost(request.getHeader("host"))) {
+            return HttpResponse.error(403, "Forbidden", "Only local programs may use the API");
+        }
+        if (!isAuthorised(request.getHeader("authorization"))) {
+            return HttpResponse.error(401, "Unauthorized", "The API token is missing or incorrect");
+        }
+
+        String path = request.getPath();
+        boolean post = "POST".equals(request.getMethod());
+        boolean get = "GET".equals(request.getMethod());
+        if ("/wallets".equals(path) && get) {
+            return wallets();
+        }
+
+        WalletData perWalletModelData = findWallet(request.getParameter("wallet"));
+        if ("/balance".equals(path) && get) {
+            return perWalletModelData == null ? walletNotFound() : balance(perWalletModelData);
+        } else if ("/address".equals(path) && post) {
+            return perWalletModelData == null ? walletNotFound() : createAddress(perWalletModelData, request);
+        } else if ("/transactions".equals(path) && get) {
+            return perWalletModelData == null ? walletNotFound() : transactions(perWalletModelData, request);
+        } else if ("/send".equals(path) && post) {
+            return perWalletModelData == null ? walletNotFound() : send(perWalletModelData, request);
+        } else if ("/wallets".equals(path) || "/balance".equals(path) || "/address".equals(path)
+                || "/transactions".equals(path) || "/send".equals(path)) {
+            return HttpResponse.error(405, "Method Not Allowed", request.getMethod() + " is not supported for " + path);
+        }
+        return HttpResponse.error(404, "Not Found", "Unknown path " + path);
+    }
+
+    private HttpResponse wallets() {
+        StringBuilder json = new StringBuilder("{\"wallets\":[");
+        List<WalletData> perWalletModelDataList = bitcoinController.getModel().getPerWalletModelDataList();
+        boolean first = true;
+        for (WalletData perWalletModelData : perWalletModelDataList) {
+            if (perWalletModelData.getWallet() == null) {
+                continue;
+            }
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append("{\"wallet\":");
+            JsonEncoder.appendString(json, perWalletModelData.getWalletFilename());
+            json.append(",\"description\":");
+            JsonEncoder.appendString(json, perWalletModelData.getWalletDescription());
+            appendBalances(json, perWalletModelData);
+            json.append('}');
+        }
+        json.append("]}");
+        return HttpResponse.ok(json.toString());
+    }
+
+    private HttpResponse balance(WalletData perWalletModelData) {
+        StringBuilder json = new StringBuilder("{\"wallet\":");
+        JsonEncoder.appendString(json, perWalletModelData.getWalletFilename());
+        appendBalances(json, perWalletModelData);
+        json.append('}');
+        return HttpResponse.ok(json.toString());
+    }
+
+    private void appendBalances(StringBuilder json, WalletData perWalletModelData) {
+        json.append(",\"estimated\":").append(perWalletModelData.getBalance(BalanceType.ESTIMATED));
+        json.append(",\"available\":").append(perWalletModelData.getBalance(BalanceType.AVAILABLE));
+    }
+
+    private HttpResponse createAddress(WalletData perWalletModelData, HttpRequest request) {
+        String password = request.getParameter("password");
+        HttpResponse passwordError = checkPassword(perWalletModelData, password);
+        if (passwordError != null) {
+            return passwordError;
+        }
+        if (!setBusy(perWalletModelData, "createNewReceivingAddressSubmitAction.tooltip")) {
+            return walletBusy(perWalletModelData);
+        }
+        try {
+            if (perWalletModelData.getWalletInfo() == null) {
+                perWalletModelData.setWalletInfo(new WalletInfoData(perWalletModelData.getWalletFilename(), perWalletModelData
+                        .getWallet(), MultiBitWalletVersion.PROTOBUF_ENCRYPTED));
+            }
+            boolean encryptNewKeys = perWalletModelData.getWallet().getEncryptionType() == EncryptionType.ENCRYPTED_SCRYPT_AES;
+            List<String> createdAddresses = new ArrayList<String>();
+            CreateNewReceivingAddressSubmitAction.createNewReceivingAddresses(bitcoinController, perWalletModelData, 1,
+                    encryptNewKeys, password == null ? "" : password, createdAddresses);
+            String address = createdAddresses.get(0);
+
+            String label = request.getParameter("label");
+            if (label != null && label.length() > 0) {
+                perWalletModelData.getWalletInfo().addReceivingAddress(new WalletAddressBookData(label, address), true);
+            }
+            bitcoinController.getFileHandler().savePerWalletModelData(perWalletModelData, false);
+
+            StringBuilder json = new StringBuilder("{\"address\":");
+            JsonEncoder.appendString(json, address);
+            json.append('}');
+            return HttpResponse.ok(json.toString());
+        } catch (IOException | KeyCrypterException | WalletSaveException e) {
+            log.error(e.getClass().getName() + " " + e.getMessage());
+            return HttpResponse.error(500, "Internal Server Error", e.getClass().getName() + " " + e.getMessage());
+        } finally {
+            clearBusy(perWalletModelData);
+        }
+    }
+
+    private HttpResponse transactions(WalletData perWalletModelData, HttpRequest request) {
+        int limit = DEFAULT_TRANSACTION_LIMIT;
+        if (request.getParameter("limit") != null) {
+            try {
+                limit = Integer.parseInt(request.getParameter("limit"));
+            } catch (NumberFormatException nfe) {
+                return HttpResponse.error(400, "Bad Request", "The limit is not a number");
+            }
+        }
+
+        // Work out the dates once and only create the rows that are returned.
+        final BitcoinModel model = bitcoinController.getModel();
+        Wallet wallet = perWalletModelData.getWallet();
+        Set<Transaction> walletTransactions = wallet.getTransactions(false);
+        List<Object[]> datedTransactions = new ArrayList<Object[]>();
+        for (Transaction transaction : walletTransactions) {
+            Date date = model.createDate(bitcoinController, transaction);
+            datedTransactions.add(new Object[] { date == null ? 0L : date.getTime(), transaction });
+        }
+        Collections.sort(datedTransactions, new Comparator<Object[]>() {
+            @Override
+            public int compare(Object[] o1, Object[] o2) {
+                return ((Long) o2[0]).compareTo((Long) o1[0]);
+            }
+        });
+
+        StringWriter rows = new StringWriter();
+        JsonLinesTransactionRowWriter rowWriter = new JsonLinesTransactionRowWriter(rows);
+        try {
+            rowWriter.writeHeader(Collections.singletonList(perWalletModelData));
+            for (int i = 0; i < datedTransactions.size() && i < limit; i++) {
+                Transaction transaction = (Transaction) datedTransactions.get(i)[1];
+                rowWriter.writeRow(0, model.createWalletTableData(bitcoinController, wallet, transaction));
+            }
+            rowWriter.close();
+        } catch (IOException ioe) {
+            // A StringWriter does not throw.
+            return HttpResponse.error(500, "Internal Server Error", ioe.getClass().getName() + " " + ioe.getMessage());
+        }
+
+        StringBuilder json = new StringBuilder("{\"transactions\":[");
+        String[] lines = rows.toString().split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i].length() == 0) {
+                continue;
+            }
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(lines[i]);
+        }
+        json.append("]}");
+        return HttpResponse.ok(json.toString());
+    }
+
+    private HttpResponse send(WalletData perWalletModelData, HttpRequest request) {
+        Address address;
+        BigInteger amount;
+        try {
+            address = new Address(bitcoinController.getModel().getNetworkParameters(), request.getParameter("address"));
+            amount = Utils.toNanoCoins(request.getParameter("amount"));
+        } catch (AddressFormatException | RuntimeException e) {
+            return HttpResponse.error(400, "Bad Request", "The address or amount is not valid");
+        }
+        if (amount.signum() <= 0) {
+            return HttpResponse.error(400, "Bad Request", "The address or amount is not valid");
+        }
+
+        String password = request.getParameter("password");
+        HttpResponse passwordError = checkPassword(perWalletModelData, password);
+        if (passwordError != null) {
+            return passwordError;
+        }
+        if (!setBusy(perWalletModelData, "sendBitcoinNowAction.sendingBitcoin")) {
+            return walletBusy(perWalletModelData);
+        }
+        try {
+            // The same request as the send view creates.
+            SendRequest sendRequest = SendRequest.to(address, amount);
+            sendRequest.ensureMinRequiredFee = true;
+            sendRequest.fee = BigInteger.ZERO;
+            sendRequest.feePerKb = BigInteger.valueOf(FeeSlider.parseAndNormaliseFeePerKB(bitcoinController.getModel()
+                    .getUserPreference(CoreModel.FEE_PER_KB)));
+            perWalletModelData.getWallet().completeTx(sendRequest, false);
+            // Sending resets the fee on the request, so keep the one the transaction was completed with.
+            BigInteger fee = sendRequest.fee == null ? BigInteger.ZERO : sendRequest.fee;
+
+            Transaction transaction = sendCoins(perWalletModelData, sendRequest, password);
+            if (transaction == null) {
+                return insufficientFunds();
+            }
+
+            StringBuilder json = new StringBuilder("{\"transactionId\":");
+            JsonEncoder.appendString(json, transaction.getHashAsString());
+            json.append(",\"fee\":").append(fee);
+            json.append('}');
+            return HttpResponse.ok(json.toString());
+        } catch (InsufficientMoneyException ime) {
+            return insufficientFunds();
+        } catch (IllegalStateException ise) {
+            log.error(ise.getClass().getName() + " " + ise.getMessage());
+            return HttpResponse.error(503, "Service Unavailable", bitcoinController.getLocaliser().getString("sendBitcoinNowAction.pingFailure"));
+        } catch (IOException | AddressFormatException | KeyCrypterException e) {
+            log.error(e.getClass().getName() + " " + e.getMessage());
+            return HttpResponse.error(500, "Internal Server Error", e.getClass().getName() + " " + e.getMessage());
+        } finally {
+            try {
+                bitcoinController.getFileHandler().savePerWalletModelData(perWalletModelData, false);
+            } catch (WalletSaveException wse) {
+                log.error(wse.getClass().getName() + " " + wse.getMessage());
+            }
+            clearBusy(perWalletModelData);
+        }
+    }
+
+    /**
+     * Sign, commit and broadcast a completed send request.
+     */
+    Transaction sendCoins(WalletData perWalletModelData, SendRequest sendRequest, String password) throws IOException,
+            AddressFormatException, KeyCrypterException {
+        return bitcoinController.getMultiBitService().sendCoins(perWalletModelData, sendRequest,
+                password == null ? "" : CharBuffer.wrap(password));
+    }
+
+    private WalletData findWallet(String walletFilename) {
+        WalletData perWalletModelData;
+        if (walletFilename == null || walletFilename.length() == 0) {
+            perWalletModelData = bitcoinController.getModel().getActivePerWalletModelData();
+        } else {
+            perWalletModelData = bitcoinController.getModel().getPerWalletModelDataByWalletFilename(walletFilename);
+        }
+        return perWalletModelData == null || perWalletModelData.getWallet() == null ? null : perWalletModelData;
+    }
+
+    /**
+     * @return an error if the wallet is encrypted and the password is missing or incorrect, otherwise null
+     */
+    private HttpResponse checkPassword(WalletData perWalletModelData, String password) {
+        if (perWalletModelData.getWallet().getEncryptionType() == EncryptionType.UNENCRYPTED) {
+            return null;
+        }
+        if (password == null || password.length() == 0) {
+            return HttpResponse.error(403, "Forbidden",
+                    bitcoinController.getLocaliser().getString("showExportPrivateKeysAction.youMustEnterTheWalletPassword"));
+        }
+        boolean passwordIsCorrect;
+        try {
+            passwordIsCorrect = perWalletModelData.getWallet().checkPassword(CharBuffer.wrap(password));
+        } catch (KeyCrypterException kce) {
+            log.debug(kce.getClass().getName() + " " + kce.getMessage());
+            passwordIsCorrect = false;
+        }
+        if (!passwordIsCorrect) {
+            return HttpResponse.error(403, "Forbidden",
+                    bitcoinController.getLocaliser().getString("createNewReceivingAddressSubmitAction.passwordIsIncorrect"));
+        }
+        return null;
+    }
+
+    /**
+     * Declare the wallet busy with a task, as the user interface does.
+     *
+     * @return false if the wallet is already busy
+     */
+    private boolean setBusy(WalletData perWalletModelData, String busyTaskKey) {
+        synchronized (perWalletModelData) {
+            if (perWalletModelData.isBusy()) {
+                return false;
+            }
+            perWalletModelData.setBusy(true);
+            perWalletModelData.setBusyTaskKey(busyTaskKey);
+            perWalletModelData.setBusyTaskVerbKey(busyTaskKey);
+        }
+        fireWalletBusyChange(true);
+        return true;
+    }
+
+    private void clearBusy(WalletData perWalletModelData) {
+        synchronized (perWalletModelData) {
+            perWalletModelData.setBusyTaskKey(null);
+            perWalletModelData.setBusyTaskVerbKey(null);
+            perWalletModelData.setBusy(false);
+        }
+        fireWalletBusyChange(false);
+    }
+
+    private void fireWalletBusyChange(final boolean newWalletIsBusy) {
+        // The listeners are views so are told on the Swing thread.
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                bitcoinController.fireWalletBusyChange(newWalletIsBusy);
+            }
+        });
+    }
+
+    private HttpResponse walletNotFound() {
+        return HttpResponse.error(404, "Not Found", "There is no open wallet with that filename");
+    }
+
+    private HttpResponse walletBusy(WalletData perWalletModelData) {
+        String busyTaskKey = perWalletModelData.getBusyTaskKey();
+        return HttpResponse.error(409, "Conflict", bitcoinController.getLocaliser().getString("multiBitSubmitAction.walletIsBusy",
+                new Object[] { busyTaskKey == null ? "" : bitcoinController.getLocaliser().getString(busyTaskKey) }));
+    }
+
+    private HttpResponse insufficientFunds() {
+        return HttpResponse.error(400, "Bad Request",
+                bitcoinController.getLocaliser().getString("sendBitcoinNowAction.thereWereInsufficientFundsForTheSend"));
+    }
+
+    private boolean isAuthorised(String authorization) {
+        if (token == null || authorization == null || !authorization.startsWith("Bearer ")) {
+            return false;
+        }
+        // Compare in constant time so the token cannot be guessed a character at a time.
+        return MessageDigest.isEqual(token.getBytes(UTF_8), authorization.substring("Bearer ".length()).trim().getBytes(UTF_8));
+    }
+
+    /**
+     * Read the token from the token file, creating the file with a random token
+     * that only the user can read if there is not one.
+     */
+    public static String readOrCreateToken(File tokenFile) throws IOException {
+        if (tokenFile.exists()) {
+            Reader reader = new InputStreamReader(new FileInputStream(tokenFile), UTF_8);
+            try {
+                StringBuilder token = new StringBuilder();
+                char[] buffer = new char[256];
+                int read;
+                while ((read = reader.read(buffer)) != -1) {
+                    token.append(buffer, 0, read);
+                }
+                if (token.toString().trim().length() > 0) {
+                    return token.toString().trim();
+                }
+            } finally {
+                reader.close();
+            }
+        }
+
+        byte[] tokenBytes = new byte[TOKEN_LENGTH];
+        new SecureRandom().nextBytes(tokenBytes);
+        String token = Utils.bytesToHexString(tokenBytes);
+
+        if (!tokenFile.exists() && !tokenFile.createNewFile()) {
+            throw new IOException("Could not create the local API token file '" + tokenFile.getAbsolutePath() + "'");
+        }
+        // Owner only, before the token is written.
+        tokenFile.setReadable(false, false);
+        tokenFile.setReadable(true, true);
+        tokenFile.setWritable(false, false);
+        tokenFile.setWritable(true, true);
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(tokenFile), UTF_8);
+        try {
+            writer.write(token);
+        } finally {
+            writer.close();
+        }
+        return token;
+    }
+
+    private static boolean isLocalHost(String host) {
+        if (host == null) {
+            // HTTP/1.0 clients need not send a Host.
+            return true;
+        }
+        String hostName = host.toLowerCase(Locale.ENGLISH);
+        int colon = hostName.lastIndexOf(':');
+        if (colon > 0 && !hostName.endsWith("]")) {
+            hostName = hostName.substring(0, colon);
+        }
+        return "localhost".equals(hostName) || "127.0.0.1".equals(hostName) || "[::1]".equals(hostName);
+    }
+}
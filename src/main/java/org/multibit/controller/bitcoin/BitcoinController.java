@@ -27,6 +27,7 @@ import org.multibit.message.MessageManager;
 import org.multibit.model.bitcoin.BitcoinModel;
 import org.multibit.model.bitcoin.WalletBusyListener;
 import org.multibit.model.bitcoin.WalletData;
+import org.multibit.model.bitcoin.WalletRelevanceIndex;
 import org.multibit.network.MultiBitService;
 import org.multibit.viewsystem.View;
 import org.multibit.viewsystem.ViewSystem;
@@ -75,6 +76,11 @@ public class BitcoinController extends AbstractController<CoreController> implem
      */
     private final PeerEventListener peerEventListener;
 
+    /**
+     * Routes transactions to the wallets they touch.
+     */
+    private final WalletRelevanceIndex walletRelevanceIndex;
+
     /**
      * The data model backing the views.
      */
@@ -89,6 +95,7 @@ public class BitcoinController extends AbstractController<CoreController> implem
         this.walletBusyListeners = new ArrayList<WalletBusyListener>();
         this.fileHandler = new FileHandler(this);
         this.eventHandler = new EventHandler(this);
+        this.walletRelevanceIndex = new WalletRelevanceIndex();
         this.peerEventListener = new BitcoinPeerEventListener(this);
         
         this.addEventHandler(this.getEventHandler());
@@ -343,6 +350,10 @@ public class BitcoinController extends AbstractController<CoreController> implem
         return peerEventListener;
     }
 
+    public WalletRelevanceIndex getWalletRelevanceIndex() {
+        return walletRelevanceIndex;
+    }
+
     @Override
     public final AbstractEventHandler getEventHandler() {
         return this.eventHandler;
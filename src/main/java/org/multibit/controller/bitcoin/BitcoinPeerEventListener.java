@@ -10,6 +10,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
+import java.util.Set;
 
 public class BitcoinPeerEventListener implements PeerEventListener {
 
@@ -75,15 +76,19 @@ public class BitcoinPeerEventListener implements PeerEventListener {
 
   @Override
   public void onTransaction(Peer peer, Transaction transaction) {
-    // Loop through all the wallets, seeing if the transaction is relevant and adding them as pending if so.
+    // Loop through the wallets the transaction touches, seeing if the transaction is relevant and adding them as pending if so.
     if (transaction != null) {
       try {
         java.util.List<WalletData> perWalletModelDataList = bitcoinController.getModel().getPerWalletModelDataList();
 
         if (perWalletModelDataList != null) {
+          Set<Wallet> touchedWallets = bitcoinController.getWalletRelevanceIndex().findWallets(transaction, perWalletModelDataList);
+          if (touchedWallets.isEmpty()) {
+            return;
+          }
           for (WalletData perWalletModelData : perWalletModelDataList) {
             Wallet loopWallet = perWalletModelData.getWallet();
-            if (loopWallet != null) {
+            if (loopWallet != null && touchedWallets.contains(loopWallet)) {
               if (loopWallet.isTransactionRelevant(transaction)) {
                 if (!(transaction.isTimeLocked()
                         && transaction.getConfidence().getSource() != TransactionConfidence.Source.SELF)
@@ -100,6 +105,7 @@ public class BitcoinPeerEventListener implements PeerEventListener {
                       perWalletModelData.setDirty(true);
                     }
                     loopWallet.receivePending(transaction, null);
+                    bitcoinController.getWalletRelevanceIndex().invalidate(loopWallet);
                   }
                 }
               }
@@ -0,0 +1,231 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.event;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Enum singleton that delivers MultiBit events to the Swing thread and runs
+ * the periodic background tasks.
+ *
+ * <p>
+ * The background tasks can block on the network or the disk for a long time,
+ * so they run on their own thread pool and never hold up the event deliveries,
+ * which have a thread to themselves.
+ *
+ * <p>
+ * Events posted within COALESCE_TIME of each other are coalesced by type and
+ * key and delivered to the listeners as one batch. Nothing is scheduled while
+ * no events are posted, and a new batch is not started until the listeners
+ * have finished with the previous one, so a busy UI receives fewer, larger
+ * batches rather than a backlog. Events posted during a delivery go in the
+ * next batch.
+ */
+public enum EventDispatcher {
+    INSTANCE;
+
+    private static final Logger log = LoggerFactory.getLogger(EventDispatcher.class);
+
+    /**
+     * How long events are gathered before they are delivered.
+     */
+    public static final int COALESCE_TIME = 500; // milliseconds
+
+    /**
+     * Enough for both tickers, the health check, a replay and the download progress to run at once.
+     */
+    static final int NUMBER_OF_TASK_THREADS = 5;
+
+    /**
+     * Only gathers events and hands them to the Swing thread.
+     */
+    private final ScheduledThreadPoolExecutor eventExecutor;
+
+    /**
+     * Runs the background tasks.
+     */
+    private final ScheduledThreadPoolExecutor taskExecutor;
+
+    private final List<MultiBitEventListener> listeners = new CopyOnWriteArrayList<MultiBitEventListener>();
+
+    /**
+     * Events waiting to be delivered, guarded by this.
+     */
+    private Map<MultiBitEvent, MultiBitEvent> pendingEvents = new LinkedHashMap<MultiBitEvent, MultiBitEvent>();
+
+    /**
+     * Whether a batch is scheduled or being delivered, guarded by this.
+     */
+    private boolean batchInProgress = false;
+
+    EventDispatcher() {
+        eventExecutor = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("MultiBit event dispatcher"));
+        taskExecutor = new ScheduledThreadPoolExecutor(NUMBER_OF_TASK_THREADS, new NamedThreadFactory("MultiBit scheduler"));
+    }
+
+    public void addListener(MultiBitEventListener listener) {
+        if (listener != null) {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeListener(MultiBitEventListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Post an event. Returns immediately.
+     *
+     * @param eventType
+     *            the type of event
+     * @param key
+     *            what the event is about, or null
+     */
+    public void post(EventType eventType, String key) {
+        MultiBitEvent event = new MultiBitEvent(eventType, key);
+        synchronized (this) {
+            MultiBitEvent pendingEvent = pendingEvents.get(event);
+            pendingEvents.put(event, pendingEvent == null ? event : pendingEvent.coalesce(event));
+
+            if (!batchInProgress) {
+                batchInProgress = true;
+                scheduleBatch();
+            }
+        }
+    }
+
+    private void scheduleBatch() {
+        eventExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                deliverBatch();
+            }
+        }, COALESCE_TIME, TimeUnit.MILLISECONDS);
+    }
+
+    private void deliverBatch() {
+        final List<MultiBitEvent> events;
+        synchronized (this) {
+            events = new ArrayList<MultiBitEvent>(pendingEvents.values());
+            pendingEvents = new LinkedHashMap<MultiBitEvent, MultiBitEvent>();
+        }
+
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (MultiBitEventListener listener : listeners) {
+                        try {
+                            listener.onEvents(events);
+                        } catch (RuntimeException re) {
+                            log.error(re.getClass().getName() + " " + re.getMessage());
+                        }
+                    }
+                } finally {
+                    synchronized (EventDispatcher.this) {
+                        if (pendingEvents.isEmpty()) {
+                            batchInProgress = false;
+                        } else {
+                            // Events arrived during the delivery - they go in the next batch.
+                            scheduleBatch();
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Run a task repeatedly on the task thread pool, waiting period milliseconds between the end of one run and the start of the next.
+     *
+     * @return the future to cancel the task with
+     */
+    public ScheduledFuture<?> schedule(final Runnable task, long initialDelay, long period) {
+        return taskExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                runSafely(task);
+            }
+        }, initialDelay, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run a task once on the task thread pool after a delay.
+     *
+     * @return the future to cancel the task with
+     */
+    public ScheduledFuture<?> schedule(final Runnable task, long delay) {
+        return taskExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                runSafely(task);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run a task on the task thread pool as soon as possible.
+     */
+    public void execute(final Runnable task) {
+        taskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                runSafely(task);
+            }
+        });
+    }
+
+    /**
+     * An exception would otherwise stop a repeating task for good.
+     */
+    private static void runSafely(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException re) {
+            log.error(re.getClass().getName() + " " + re.getMessage());
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        NamedThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + " " + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
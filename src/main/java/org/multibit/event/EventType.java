@@ -0,0 +1,41 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.event;
+
+/**
+ * The kinds of event delivered by the EventDispatcher.
+ */
+public enum EventType {
+    /**
+     * The transactions or balance of a wallet have changed.
+     */
+    WALLET_CHANGED,
+
+    /**
+     * The confidence of a wallet transaction has changed.
+     */
+    CONFIDENCE_CHANGED,
+
+    /**
+     * A block has been added to the block chain.
+     */
+    BLOCK_DOWNLOADED,
+
+    /**
+     * New exchange data has arrived from a ticker.
+     */
+    EXCHANGE_RATE_UPDATED
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.event;
+
+/**
+ * An event of a given type about a given subject, such as a wallet filename
+ * or an exchange name. Events with the same type and key are coalesced into
+ * one, counting how many were posted.
+ */
+public final class MultiBitEvent {
+    private final EventType eventType;
+    private final String key;
+    private final int count;
+
+    public MultiBitEvent(EventType eventType, String key) {
+        this(eventType, key, 1);
+    }
+
+    private MultiBitEvent(EventType eventType, String key, int count) {
+        this.eventType = eventType;
+        this.key = key;
+        this.count = count;
+    }
+
+    /**
+     * @return this event with another of the same type and key folded into it
+     */
+    MultiBitEvent coalesce(MultiBitEvent other) {
+        return new MultiBitEvent(eventType, key, count + other.count);
+    }
+
+    public EventType getEventType() {
+        return eventType;
+    }
+
+    /**
+     * @return the subject of the event, or null if the event is not about anything in particular
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return the number of events that were coalesced into this one
+     */
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * eventType.hashCode() + (key == null ? 0 : key.hashCode());
+    }
+
+    /**
+     * Events are equal if they have the same type and key, whatever their count.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof MultiBitEvent)) {
+            return false;
+        }
+        MultiBitEvent other = (MultiBitEvent) obj;
+        return eventType == other.eventType && (key == null ? other.key == null : key.equals(other.key));
+    }
+
+    @Override
+    public String toString() {
+        return "MultiBitEvent [eventType=" + eventType + ", key=" + key + ", count=" + count + "]";
+    }
+}
@@ -0,0 +1,29 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.event;
+
+import java.util.List;
+
+/**
+ * Receives the batches of events delivered by the EventDispatcher.
+ */
+public interface MultiBitEventListener {
+    /**
+     * Called on the Swing thread with all the events posted since the last batch.
+     * Each type and key appears at most once in a batch.
+     */
+    public void onEvents(List<MultiBitEvent> events);
+}
@@ -3,9 +3,7 @@ package org.multibit.exchange;
 import org.joda.money.CurrencyUnit;
 import org.joda.money.IllegalCurrencyException;
 import org.joda.money.Money;
-import org.joda.money.format.MoneyAmountStyle;
 import org.joda.money.format.MoneyFormatter;
-import org.joda.money.format.MoneyFormatterBuilder;
 import org.multibit.controller.Controller;
 import org.multibit.model.exchange.ExchangeData;
 import org.multibit.model.exchange.ExchangeModel;
@@ -45,16 +43,6 @@ public enum CurrencyConverter {
      */
     private CurrencyUnit currencyUnit;  
 
-    /**
-     * MoneyFormatter without currency code
-     */
-    MoneyFormatter moneyFormatter;
-    
-    /**
-     * MoneyFormatter with currency code
-     */
-    MoneyFormatter moneyFormatterWithCurrencyCode;
-    
     /**
      * The exchange rate i.e the value of 1 BTC in the currency.
      */
@@ -64,9 +52,37 @@ public enum CurrencyConverter {
      * The rate rate in terms of satoshi i.e. value of 1 satoshi in the currency
      */
     private BigDecimal rateDividedByNumberOfSatoshiInOneBitcoin;
-      
-    private String groupingSeparator;
-    
+
+    /**
+     * Converts with long arithmetic, or null if the rate cannot be held as a long.
+     */
+    private volatile FixedPointConverter fixedPointConverter;
+
+    /**
+     * Returned by convertFromSatoshiToFiatMinorUnits when the amount cannot be converted.
+     */
+    public static final long NO_FIAT_AMOUNT = Long.MIN_VALUE;
+
+    /**
+     * Rate changes smaller than this fraction of the rate the listeners were
+     * last told about are not passed on to them, as the fiat values would
+     * barely change.
+     */
+    public static final BigDecimal NOTIFICATION_THRESHOLD = new BigDecimal("0.0001");
+
+    /**
+     * The rate and currency the listeners were last told about, guarded by this.
+     */
+    private BigDecimal notifiedRate;
+    private CurrencyUnit notifiedCurrencyUnit;
+
+    /**
+     * Whether a notification is waiting for the Swing thread, guarded by this.
+     * Rates set before it runs are passed on in the same notification.
+     */
+    private boolean notificationPending;
+    private boolean foundNotificationPending;
+
     /**
      * Map of currency code to currency info.
      */
@@ -112,6 +128,20 @@ public enum CurrencyConverter {
         // Exchange rate is unknown.
         rate = null;
         rateDividedByNumberOfSatoshiInOneBitcoin = null;
+
+        // Use the last known exchange rate until the ticker fetches a new one.
+        ExchangeRateCache.CachedRate cachedRate = ExchangeRateCache.INSTANCE.getLatestRate(currencyUnit.getCode());
+        if (cachedRate != null) {
+            log.debug("Using cached exchange rate from " + cachedRate.getExchangeName() + " of " + cachedRate.getLast());
+            rate = cachedRate.getLast().getAmount();
+            rateDividedByNumberOfSatoshiInOneBitcoin = rate.divide(new BigDecimal(CurrencyConverter.NUMBER_OF_SATOSHI_IN_ONE_BITCOIN));
+        }
+        fixedPointConverter = rate == null ? null : FixedPointConverter.create(rate, currencyUnit.getDecimalPlaces());
+
+        synchronized (this) {
+            notifiedRate = rate;
+            notifiedCurrencyUnit = currencyUnit;
+        }
         
         // Setup listeners
         listeners = new ArrayList<CurrencyConverterListener>();
@@ -298,12 +328,12 @@ public enum CurrencyConverter {
         currencyCodeToDescriptionMap.put("ZWL", "Zimbabwean Dollar");
     }
     
+    /**
+     * Build the formatters for the current locale and currency so that the first format call does not have to.
+     */
     public void updateFormatters() {
-        moneyFormatter = getMoneyFormatter(false);
-        moneyFormatterWithCurrencyCode = getMoneyFormatter(true);
-        
-        DecimalFormat fiatFormatter = (DecimalFormat) DecimalFormat.getInstance(controller.getLocaliser().getLocale());
-        groupingSeparator = String.valueOf(fiatFormatter.getDecimalFormatSymbols().getGroupingSeparator());     
+        getMoneyFormatter(false);
+        getMoneyFormatter(true);
     }
 
     /**
@@ -315,6 +345,14 @@ public enum CurrencyConverter {
         if (rate == null) {
             return null;
         } else {
+            FixedPointConverter converter = fixedPointConverter;
+            if (converter != null && bitcoinAmountInSatoshi.bitLength() < 64) {
+                long satoshi = bitcoinAmountInSatoshi.longValue();
+                if (converter.canConvert(satoshi)) {
+                    return Money.ofMinor(currencyUnit, converter.toFiatMinorUnits(satoshi));
+                }
+            }
+
             Money bitcoin = Money.of(BITCOIN_CURRENCY_UNIT, new BigDecimal(bitcoinAmountInSatoshi));
             
             Money fiatAmount = null;
@@ -326,6 +364,39 @@ public enum CurrencyConverter {
         }
     }
     
+    /**
+     * Convert a number of satoshis to the minor units of the fiat currency (e.g. cents) without creating any objects.
+     * @param bitcoinAmountInSatoshi in satoshis
+     * @return equivalent fiat amount in minor units, or NO_FIAT_AMOUNT if the rate is not known or
+     * the amount is too large to convert this way
+     */
+    public long convertFromSatoshiToFiatMinorUnits(long bitcoinAmountInSatoshi) {
+        FixedPointConverter converter = fixedPointConverter;
+        if (converter == null || !converter.canConvert(bitcoinAmountInSatoshi)) {
+            return NO_FIAT_AMOUNT;
+        }
+        return converter.toFiatMinorUnits(bitcoinAmountInSatoshi);
+    }
+
+    /**
+     * Convert a number of satoshis to fiat at the exchange rate on the date.
+     * The current rate is used for today and for dates with no historical rate.
+     * @param bitcoinAmountInSatoshi in satoshis
+     * @param date the date of the transaction
+     * @return equivalent fiat amount
+     */
+    public Money convertFromBTCToFiat(BigInteger bitcoinAmountInSatoshi, Date date) {
+        if (date != null && currencyUnit != null && bitcoinAmountInSatoshi != null
+                && HistoricalRateStore.toDay(date) < HistoricalRateStore.toDay(new Date())) {
+            BigDecimal historicalRate = HistoricalRateStore.INSTANCE.getRate(currencyUnit.getCode(), date);
+            if (historicalRate != null) {
+                Money bitcoin = Money.of(BITCOIN_CURRENCY_UNIT, new BigDecimal(bitcoinAmountInSatoshi));
+                return bitcoin.convertedTo(currencyUnit, historicalRate.divide(new BigDecimal(CurrencyConverter.NUMBER_OF_SATOSHI_IN_ONE_BITCOIN)), RoundingMode.HALF_EVEN);
+            }
+        }
+        return convertFromBTCToFiat(bitcoinAmountInSatoshi);
+    }
+
     public CurrencyConverterResult convertFromFiatToBTC(String fiat) {
         if (rate == null || rate.equals(BigDecimal.ZERO)) {
             return new CurrencyConverterResult();
@@ -337,11 +408,10 @@ public enum CurrencyConverter {
             
             Money btcAmount = null;
             
-            DecimalFormat formatter = (DecimalFormat) DecimalFormat.getInstance(controller.getLocaliser().getLocale());
-            formatter.setParseBigDecimal(true);
+            DecimalFormat formatter = MoneyFormatterCache.INSTANCE.getParseFormat(controller.getLocaliser().getLocale());
             
             // Convert spaces to non breakable space.
-            fiat = fiat.replaceAll(" ", "\u00A0");
+            fiat = fiat.replace(' ', '\u00A0');
 
             try {
                 BigDecimal parsedFiat = (BigDecimal)formatter.parse(fiat);
@@ -379,8 +449,6 @@ public enum CurrencyConverter {
     }
     
     private MoneyFormatter getMoneyFormatter(boolean addCurrencySymbol) {
-        MoneyFormatter moneyFormatter;
-        
         // Suffix currency codes.
         String currencyCode = currencyUnit.getCurrencyCode();
         CurrencyInfo currencyInfo = currencyCodeToInfoMap.get(currencyCode);
@@ -390,55 +458,7 @@ public enum CurrencyConverter {
             currencyInfo.setHasSeparatingSpace(true);
         }
 
-        DecimalFormat formatter = (DecimalFormat) DecimalFormat.getInstance(controller.getLocaliser().getLocale());
-        char decimalSeparator = formatter.getDecimalFormatSymbols().getDecimalSeparator();
-        char groupingSeparator = formatter.getDecimalFormatSymbols().getGroupingSeparator();
-        MoneyAmountStyle moneyAmountStyle;
-        if ('.' == decimalSeparator) {
-            if (',' == groupingSeparator) {
-                moneyAmountStyle = MoneyAmountStyle.ASCII_DECIMAL_POINT_GROUP3_COMMA;
-            } else if (' ' == groupingSeparator || '\u00A0' == groupingSeparator) {
-                moneyAmountStyle = MoneyAmountStyle.ASCII_DECIMAL_POINT_GROUP3_SPACE;
-            } else {
-                moneyAmountStyle = MoneyAmountStyle.ASCII_DECIMAL_POINT_NO_GROUPING;
-            }
-        } else {
-            if (',' == decimalSeparator) {
-                if ('.' == groupingSeparator) {
-                    moneyAmountStyle = MoneyAmountStyle.ASCII_DECIMAL_COMMA_GROUP3_DOT;
-                } else if (' ' == groupingSeparator || '\u00A0' == groupingSeparator) {
-                    moneyAmountStyle = MoneyAmountStyle.ASCII_DECIMAL_COMMA_GROUP3_SPACE;
-                } else {
-                    moneyAmountStyle = MoneyAmountStyle.ASCII_DECIMAL_COMMA_NO_GROUPING;
-                }
-            } else {
-                // Do not really know - keep it simple.
-                moneyAmountStyle = MoneyAmountStyle.ASCII_DECIMAL_POINT_NO_GROUPING;                
-            }
-        }
-        
-        String separator;
-        if (currencyInfo.hasSeparatingSpace) {
-            separator = " ";
-        } else {
-            separator = "";
-        }
-        if (currencyInfo.isPrefix()) {
-            // Prefix currency code.
-            if (addCurrencySymbol) {
-                moneyFormatter = new MoneyFormatterBuilder().appendLiteral(currencyInfo.getCurrencySymbol()).appendLiteral(separator).appendAmount(moneyAmountStyle).toFormatter(controller.getLocaliser().getLocale());
-            } else {
-                moneyFormatter = new MoneyFormatterBuilder().appendAmount(moneyAmountStyle).toFormatter(controller.getLocaliser().getLocale());
-            }
-        } else {
-             // Postfix currency code.
-            if (addCurrencySymbol) {
-                moneyFormatter = new MoneyFormatterBuilder().appendAmount(moneyAmountStyle).appendLiteral(separator).appendLiteral(currencyInfo.getCurrencySymbol()).toFormatter(controller.getLocaliser().getLocale());
-            } else {
-                moneyFormatter = new MoneyFormatterBuilder().appendAmount(moneyAmountStyle).toFormatter(controller.getLocaliser().getLocale());
-            }
-        }
-        return moneyFormatter;
+        return MoneyFormatterCache.INSTANCE.getMoneyFormatter(controller.getLocaliser().getLocale(), currencyInfo, addCurrencySymbol);
     }
     
     public String getFiatAsLocalisedString(Money money) {
@@ -450,33 +470,13 @@ public enum CurrencyConverter {
             return "";
         }
         
-        MoneyFormatter moneyFormatterToUse;
-        if (addCurrencySymbol) {
-            if (moneyFormatterWithCurrencyCode == null) {
-                moneyFormatterWithCurrencyCode = getMoneyFormatter(true);
-            }
-            moneyFormatterToUse = moneyFormatterWithCurrencyCode;
-        } else {
-            if (moneyFormatter == null) {
-                moneyFormatter = getMoneyFormatter(false);
-            }
-            moneyFormatterToUse = moneyFormatter;
-            
-        }
-   
-        if (groupingSeparator == null) {
-            DecimalFormat fiatFormatter = (DecimalFormat) DecimalFormat.getInstance(controller.getLocaliser().getLocale());
-            groupingSeparator = String.valueOf(fiatFormatter.getDecimalFormatSymbols().getGroupingSeparator());
-        }
-
-        String toReturn =  moneyFormatterToUse.print(money);
+        String toReturn = getMoneyFormatter(addCurrencySymbol).print(money);
         
         // Get rid of negative sign followed by thousand separator
-        if (".".equals(groupingSeparator)) {
-             // Escape regex.
-            groupingSeparator = "\\.";
+        if (toReturn.indexOf('-') >= 0) {
+            char groupingSeparator = MoneyFormatterCache.INSTANCE.getDecimalFormatSymbols(controller.getLocaliser().getLocale()).getGroupingSeparator();
+            toReturn = toReturn.replace("-" + groupingSeparator, "-");
         }
-        toReturn = toReturn.replaceAll("-" + groupingSeparator, "-");
         
         if (addParenthesis) {
             toReturn = "  (" + toReturn + ")";
@@ -485,8 +485,7 @@ public enum CurrencyConverter {
     }
     
     public String getBTCAsLocalisedString(Money btcMoney) {
-        DecimalFormat formatter = (DecimalFormat) DecimalFormat.getInstance(controller.getLocaliser().getLocale());
-        formatter.setMaximumFractionDigits(NUMBER_OF_DECIMAL_POINTS_IN_A_BITCOIN);
+        DecimalFormat formatter = MoneyFormatterCache.INSTANCE.getBitcoinFormat(controller.getLocaliser().getLocale());
         String btcString = formatter.format(btcMoney.getAmount().divide(new BigDecimal(NUMBER_OF_SATOSHI_IN_ONE_BITCOIN)));
         return btcString;
     }
@@ -515,12 +514,11 @@ public enum CurrencyConverter {
         }
         
         // Convert spaces to non breakable space.
-        btcString = btcString.replaceAll(" ", "\u00A0");
+        btcString = btcString.replace(' ', '\u00A0');
         
         Money btcAmount = null;
         
-        DecimalFormat formatter = (DecimalFormat) DecimalFormat.getInstance(locale);
-        formatter.setParseBigDecimal(true);
+        DecimalFormat formatter = MoneyFormatterCache.INSTANCE.getParseFormat(locale);
         try {
             BigDecimal parsedBTC = ((BigDecimal)formatter.parse(btcString)).movePointRight(NUMBER_OF_DECIMAL_POINTS_IN_A_BITCOIN);
             //log.debug("For locale " + controller.getLocaliser().getLocale().toString() +  ", '" + btcString + "' parses to " + parsedBTC.toPlainString());
@@ -588,12 +586,12 @@ public enum CurrencyConverter {
         if (this.currencyUnit != null && !this.currencyUnit.equals(currencyUnit)) {
             rate = null;
             rateDividedByNumberOfSatoshiInOneBitcoin = null;
+            fixedPointConverter = null;
         }
         this.currencyUnit = currencyUnit;
         
-        // Reinitialise currency formatters.
-        moneyFormatter = getMoneyFormatter(false);
-        moneyFormatterWithCurrencyCode = getMoneyFormatter(true);
+        // Build the currency formatters.
+        updateFormatters();
     }
 
     public BigDecimal getRate() {
@@ -604,13 +602,26 @@ public enum CurrencyConverter {
         boolean fireFoundInsteadOfUpdated = (rate== null);
         this.rate = rate;
         rateDividedByNumberOfSatoshiInOneBitcoin = rate.divide(new BigDecimal(CurrencyConverter.NUMBER_OF_SATOSHI_IN_ONE_BITCOIN));
+        fixedPointConverter = FixedPointConverter.create(rate, currencyUnit.getDecimalPlaces());
         
         if (fireFoundInsteadOfUpdated) {
             notifyFoundExchangeRate();
-        } else {
+        } else if (isNotifiableChange(rate)) {
             notifyUpdatedExchangeRate();
         }
     }
+
+    /**
+     * @return true if the rate or currency differs enough from what the listeners were last told about
+     */
+    synchronized boolean isNotifiableChange(BigDecimal newRate) {
+        if (notifiedRate == null || newRate == null || notifiedCurrencyUnit == null
+                || !notifiedCurrencyUnit.equals(currencyUnit)) {
+            return true;
+        }
+        BigDecimal change = newRate.subtract(notifiedRate).abs();
+        return change.compareTo(notifiedRate.abs().multiply(NOTIFICATION_THRESHOLD)) > 0;
+    }
     
     public void addCurrencyConverterListener(CurrencyConverterListener listener) {
         if (listeners == null) {
@@ -620,25 +631,48 @@ public enum CurrencyConverter {
     }
     
     private void notifyFoundExchangeRate() {
-        SwingUtilities.invokeLater(new Runnable() {
-            @Override
-            public void run() {
-                if (listeners != null) {
-                    for (CurrencyConverterListener listener : listeners) {
-                        listener.foundExchangeRate(new ExchangeRate(currencyUnit, rate, new Date()));
-                    }
-                }
-            }
-        });
+        scheduleNotification(true);
     }
     
     private void notifyUpdatedExchangeRate() {
+        scheduleNotification(false);
+    }
+
+    /**
+     * Tell the listeners about the rate on the Swing thread. However many
+     * rates are set before it gets there they only hear about the latest.
+     */
+    private void scheduleNotification(boolean found) {
+        synchronized (this) {
+            notifiedRate = rate;
+            notifiedCurrencyUnit = currencyUnit;
+            if (found) {
+                foundNotificationPending = true;
+            }
+            if (notificationPending) {
+                return;
+            }
+            notificationPending = true;
+        }
+
         SwingUtilities.invokeLater(new Runnable() {
             @Override
             public void run() {
+                boolean found;
+                ExchangeRate exchangeRate;
+                synchronized (CurrencyConverter.this) {
+                    found = foundNotificationPending;
+                    foundNotificationPending = false;
+                    notificationPending = false;
+                    exchangeRate = new ExchangeRate(currencyUnit, rate, new Date());
+                }
                 if (listeners != null) {
                     for (CurrencyConverterListener listener : listeners) {
-                        listener.updatedExchangeRate(new ExchangeRate(currencyUnit, rate, new Date()));
+                        if (found) {
+                            listener.foundExchangeRate(exchangeRate);
+                        } else {
+                            listener.updatedExchangeRate(exchangeRate);
+                        }
                     }
                 }
             }
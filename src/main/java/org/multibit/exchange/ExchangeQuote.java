@@ -0,0 +1,102 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.exchange;
+
+import org.joda.money.BigMoney;
+
+import java.math.BigDecimal;
+
+/**
+ * The last, bid and ask price of one bitcoin at an exchange, as fetched at a
+ * point in time.
+ */
+public class ExchangeQuote {
+
+    private final String exchangeName;
+    private final String currency;
+    private final BigMoney last;
+    private final BigMoney bid;
+    private final BigMoney ask;
+    private final BigDecimal volume;
+    private final long fetchTime;
+
+    /**
+     * @param currency
+     *            the currency as the exchange names it, which is the key used in ExchangeData
+     */
+    public ExchangeQuote(String exchangeName, String currency, BigMoney last, BigMoney bid, BigMoney ask, long fetchTime) {
+        this(exchangeName, currency, last, bid, ask, null, fetchTime);
+    }
+
+    /**
+     * @param volume
+     *            the traded volume the exchange reports, or null if it does not
+     */
+    public ExchangeQuote(String exchangeName, String currency, BigMoney last, BigMoney bid, BigMoney ask, BigDecimal volume,
+            long fetchTime) {
+        this.exchangeName = exchangeName;
+        this.currency = currency;
+        this.last = last;
+        this.bid = bid;
+        this.ask = ask;
+        this.volume = volume;
+        this.fetchTime = fetchTime;
+    }
+
+    public String getExchangeName() {
+        return exchangeName;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public BigMoney getLast() {
+        return last;
+    }
+
+    public BigMoney getBid() {
+        return bid;
+    }
+
+    public BigMoney getAsk() {
+        return ask;
+    }
+
+    /**
+     * @return the traded volume the exchange reports, or null if it does not
+     */
+    public BigDecimal getVolume() {
+        return volume;
+    }
+
+    public long getFetchTime() {
+        return fetchTime;
+    }
+
+    /**
+     * @return true if there is a positive last price that can be used as the exchange rate
+     */
+    public boolean isUsable() {
+        return last != null && last.getAmount() != null && last.getAmount().signum() > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "ExchangeQuote [exchangeName=" + exchangeName + ", currency=" + currency + ", last=" + last + ", bid=" + bid
+                + ", ask=" + ask + ", fetchTime=" + fetchTime + "]";
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.exchange;
+
+/**
+ * An exchange that can be asked for the price of bitcoin.
+ */
+public interface ExchangeQuoteSource {
+    public String getExchangeName();
+
+    /**
+     * Fetch the current price, blocking until the exchange answers.
+     *
+     * @return the quote, or null if the exchange does not trade the currency
+     */
+    public ExchangeQuote fetchQuote(String currency) throws Exception;
+}
@@ -0,0 +1,304 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.exchange;
+
+import org.joda.money.BigMoney;
+import org.joda.money.CurrencyUnit;
+import org.multibit.model.exchange.ExchangeData;
+import org.multibit.model.exchange.ExchangeModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The last known exchange rates, kept in a small file so that fiat values can
+ * be shown as soon as MultiBit starts rather than after the first ticker poll.
+ *
+ * <p>
+ * Each rate has the time it was fetched and a tag made from its values. A
+ * poll that returns the same values as the cached rate only refreshes the
+ * time, so nothing that depends on the rate has to be recalculated.
+ */
+public enum ExchangeRateCache {
+    INSTANCE;
+
+    private static final Logger log = LoggerFactory.getLogger(ExchangeRateCache.class);
+
+    public static final String EXCHANGE_RATES_FILENAME = "multibit.exchangerates";
+
+    /**
+     * Rates older than this are not loaded at startup.
+     */
+    public static final long TIME_TO_LIVE = 86400000; // milliseconds
+
+    private static final String LAST = "last";
+    private static final String BID = "bid";
+    private static final String ASK = "ask";
+    private static final String UNIT = "unit";
+    private static final String TIME = "time";
+
+    private String filename;
+
+    private final Map<String, CachedRate> keyToRateMap = new HashMap<String, CachedRate>();
+
+    /**
+     * A rate as it was last fetched from an exchange.
+     */
+    public static class CachedRate {
+        private final String exchangeName;
+        private final String currency;
+        private final BigMoney last;
+        private final BigMoney bid;
+        private final BigMoney ask;
+        private final String tag;
+        private long fetchTime;
+
+        CachedRate(String exchangeName, String currency, BigMoney last, BigMoney bid, BigMoney ask, long fetchTime) {
+            this.exchangeName = exchangeName;
+            this.currency = currency;
+            this.last = last;
+            this.bid = bid;
+            this.ask = ask;
+            this.fetchTime = fetchTime;
+            this.tag = createTag(last, bid, ask);
+        }
+
+        public String getExchangeName() {
+            return exchangeName;
+        }
+
+        public String getCurrency() {
+            return currency;
+        }
+
+        public BigMoney getLast() {
+            return last;
+        }
+
+        public BigMoney getBid() {
+            return bid;
+        }
+
+        public BigMoney getAsk() {
+            return ask;
+        }
+
+        public long getFetchTime() {
+            return fetchTime;
+        }
+    }
+
+    /**
+     * @param applicationDataDirectory
+     *            the directory the rates file is kept in, or "" for the current directory
+     */
+    public synchronized void initialise(String applicationDataDirectory) {
+        if (applicationDataDirectory == null || "".equals(applicationDataDirectory)) {
+            filename = EXCHANGE_RATES_FILENAME;
+        } else {
+            filename = applicationDataDirectory + File.separator + EXCHANGE_RATES_FILENAME;
+        }
+        keyToRateMap.clear();
+    }
+
+    /**
+     * Read the rates file and put the rates that are younger than the time to
+     * live into the exchange data.
+     */
+    public synchronized void load(ExchangeModel exchangeModel) {
+        if (filename == null) {
+            return;
+        }
+        File file = new File(filename);
+        if (!file.exists()) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            properties.load(inputStream);
+        } catch (IOException e) {
+            log.error(e.getClass().getName() + " " + e.getMessage());
+            return;
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    log.error(e.getClass().getName() + " " + e.getMessage());
+                }
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        for (String propertyName : properties.stringPropertyNames()) {
+            if (!propertyName.endsWith("." + TIME)) {
+                continue;
+            }
+            String key = propertyName.substring(0, propertyName.length() - TIME.length() - 1);
+            int separator = key.lastIndexOf('.');
+            if (separator <= 0 || TickerTimerTask.isSimulated(key.substring(0, separator))) {
+                // Simulated rates saved by older versions are not real ones.
+                continue;
+            }
+            try {
+                long fetchTime = Long.parseLong(properties.getProperty(propertyName));
+                if (now - fetchTime > TIME_TO_LIVE) {
+                    continue;
+                }
+                CurrencyUnit currencyUnit = CurrencyUnit.of(properties.getProperty(key + "." + UNIT));
+                CachedRate cachedRate = new CachedRate(key.substring(0, separator), key.substring(separator + 1),
+                        toBigMoney(currencyUnit, properties.getProperty(key + "." + LAST)),
+                        toBigMoney(currencyUnit, properties.getProperty(key + "." + BID)),
+                        toBigMoney(currencyUnit, properties.getProperty(key + "." + ASK)), fetchTime);
+                if (cachedRate.getLast() == null) {
+                    continue;
+                }
+                keyToRateMap.put(key, cachedRate);
+
+                if (exchangeModel != null) {
+                    ExchangeData exchangeData = exchangeModel.getOrCreateExchangeData(cachedRate.getExchangeName());
+                    exchangeData.setPrices(cachedRate.getCurrency(), cachedRate.getLast(), cachedRate.getBid(),
+                            cachedRate.getAsk(), fetchTime);
+                }
+            } catch (RuntimeException e) {
+                // A damaged entry is dropped - the ticker will fetch it again.
+                log.debug("Ignoring cached rate " + key + " : " + e.getClass().getName() + " " + e.getMessage());
+            }
+        }
+        log.debug("Loaded " + keyToRateMap.size() + " cached exchange rates");
+    }
+
+    /**
+     * Record a quote that has just been fetched.
+     *
+     * @return true if the quote differs from the cached rate, false if only the fetch time has changed
+     */
+    public synchronized boolean update(ExchangeQuote quote) {
+        String key = quote.getExchangeName() + "." + quote.getCurrency();
+        CachedRate cachedRate = keyToRateMap.get(key);
+        if (cachedRate != null && cachedRate.tag.equals(createTag(quote.getLast(), quote.getBid(), quote.getAsk()))) {
+            cachedRate.fetchTime = Math.max(cachedRate.fetchTime, quote.getFetchTime());
+            return false;
+        }
+        keyToRateMap.put(key, new CachedRate(quote.getExchangeName(), quote.getCurrency(), quote.getLast(), quote.getBid(),
+                quote.getAsk(), quote.getFetchTime()));
+        return true;
+    }
+
+    /**
+     * @return the cached rate for the exchange and currency, or null if there is none
+     */
+    public synchronized CachedRate getRate(String exchangeName, String currency) {
+        return keyToRateMap.get(exchangeName + "." + currency);
+    }
+
+    /**
+     * @return the most recently fetched rate in the currency from any exchange, or null if there is none
+     */
+    public synchronized CachedRate getLatestRate(String currencyCode) {
+        CachedRate latestRate = null;
+        for (CachedRate cachedRate : keyToRateMap.values()) {
+            if (cachedRate.getLast() != null && currencyCode.equals(cachedRate.getLast().getCurrencyUnit().getCode())) {
+                if (latestRate == null || cachedRate.getFetchTime() > latestRate.getFetchTime()) {
+                    latestRate = cachedRate;
+                }
+            }
+        }
+        return latestRate;
+    }
+
+    /**
+     * Write the rates file. It is written to a temporary file first so that a
+     * crash cannot leave a partly written file behind.
+     */
+    public synchronized void save() {
+        if (filename == null) {
+            return;
+        }
+        Properties properties = new Properties();
+        for (Map.Entry<String, CachedRate> entry : keyToRateMap.entrySet()) {
+            CachedRate cachedRate = entry.getValue();
+            String key = entry.getKey();
+            properties.setProperty(key + "." + UNIT, cachedRate.getLast().getCurrencyUnit().getCode());
+            properties.setProperty(key + "." + LAST, cachedRate.getLast().getAmount().toPlainString());
+            if (cachedRate.getBid() != null) {
+                properties.setProperty(key + "." + BID, cachedRate.getBid().getAmount().toPlainString());
+            }
+            if (cachedRate.getAsk() != null) {
+                properties.setProperty(key + "." + ASK, cachedRate.getAsk().getAmount().toPlainString());
+            }
+            properties.setProperty(key + "." + TIME, Long.toString(cachedRate.getFetchTime()));
+        }
+
+        File file = new File(filename);
+        File temporaryFile = new File(filename + ".tmp");
+        OutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(temporaryFile);
+            properties.store(outputStream, "Last known exchange rates");
+            outputStream.close();
+            outputStream = null;
+            if (!temporaryFile.renameTo(file)) {
+                // Windows will not rename over an existing file.
+                file.delete();
+                if (!temporaryFile.renameTo(file)) {
+                    log.error("Could not write the exchange rates file " + filename);
+                }
+            }
+        } catch (IOException e) {
+            log.error(e.getClass().getName() + " " + e.getMessage());
+        } finally {
+            if (outputStream != null) {
+                try {
+                    outputStream.close();
+                } catch (IOException e) {
+                    log.error(e.getClass().getName() + " " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static BigMoney toBigMoney(CurrencyUnit currencyUnit, String amount) {
+        if (amount == null || amount.length() == 0) {
+            return null;
+        }
+        return BigMoney.of(currencyUnit, new BigDecimal(amount));
+    }
+
+    private static String createTag(BigMoney last, BigMoney bid, BigMoney ask) {
+        return toTagPart(last) + "/" + toTagPart(bid) + "/" + toTagPart(ask);
+    }
+
+    private static String toTagPart(BigMoney money) {
+        if (money == null) {
+            return "";
+        }
+        return money.getCurrencyUnit().getCode() + " " + money.getAmount().stripTrailingZeros().toPlainString();
+    }
+}
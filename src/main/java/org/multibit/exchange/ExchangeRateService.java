@@ -0,0 +1,193 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.exchange;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asks several exchanges for a quote at the same time and keeps track of
+ * which exchanges are answering.
+ *
+ * <p>
+ * Each fetch has to complete before a deadline, so one slow exchange cannot
+ * hold up the ticker. An exchange that fails several times in a row is left
+ * out for a while unless every exchange is failing.
+ */
+public enum ExchangeRateService {
+    INSTANCE;
+
+    private static final Logger log = LoggerFactory.getLogger(ExchangeRateService.class);
+
+    /**
+     * How long all the exchanges together have to answer.
+     */
+    public static final long DEFAULT_REQUEST_DEADLINE = 20000; // milliseconds
+
+    /**
+     * The number of consecutive failures after which an exchange is left out.
+     */
+    public static final int MAXIMUM_CONSECUTIVE_FAILURES = 3;
+
+    /**
+     * How long an exchange that keeps failing is left out for.
+     */
+    public static final long FAILED_EXCHANGE_BACKOFF = 1800000; // milliseconds
+
+    private final ExecutorService executorService = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "ExchangeRateService-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Map<String, ExchangeHealth> exchangeNameToHealthMap = new HashMap<String, ExchangeHealth>();
+
+    private static class ExchangeHealth {
+        int consecutiveFailures;
+        long backoffUntil;
+    }
+
+    /**
+     * Run a task on the exchange threads.
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        return executorService.submit(task);
+    }
+
+    /**
+     * Fetch quotes from all the sources in parallel.
+     *
+     * @param sources
+     *            the sources in order of preference
+     * @param deadline
+     *            how long to wait for all the sources, in milliseconds
+     * @return the usable quotes that arrived before the deadline, in the order of the sources
+     */
+    public List<ExchangeQuote> fetchQuotes(List<? extends ExchangeQuoteSource> sources, final String currency, long deadline) {
+        List<ExchangeQuoteSource> sourcesToAsk = new ArrayList<ExchangeQuoteSource>();
+        long now = System.currentTimeMillis();
+        for (ExchangeQuoteSource source : sources) {
+            if (!isBackedOff(source.getExchangeName(), now)) {
+                sourcesToAsk.add(source);
+            }
+        }
+        if (sourcesToAsk.isEmpty()) {
+            // Everything is failing so try them all rather than show nothing.
+            sourcesToAsk.addAll(sources);
+        }
+
+        List<Future<ExchangeQuote>> futures = new ArrayList<Future<ExchangeQuote>>();
+        for (final ExchangeQuoteSource source : sourcesToAsk) {
+            futures.add(executorService.submit(new Callable<ExchangeQuote>() {
+                @Override
+                public ExchangeQuote call() throws Exception {
+                    return source.fetchQuote(currency);
+                }
+            }));
+        }
+
+        List<ExchangeQuote> quotes = new ArrayList<ExchangeQuote>();
+        long deadlineTime = now + deadline;
+        for (int i = 0; i < futures.size(); i++) {
+            String exchangeName = sourcesToAsk.get(i).getExchangeName();
+            Future<ExchangeQuote> future = futures.get(i);
+            try {
+                ExchangeQuote quote = future.get(Math.max(0, deadlineTime - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                recordSuccess(exchangeName);
+                if (quote != null && quote.isUsable()) {
+                    quotes.add(quote);
+                }
+            } catch (TimeoutException e) {
+                log.debug("Exchange " + exchangeName + " did not answer in time");
+                future.cancel(true);
+                recordFailure(exchangeName);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() == null ? e : e.getCause();
+                log.error(exchangeName + " " + cause.getClass().getName() + " " + cause.getMessage());
+                recordFailure(exchangeName);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (int j = i; j < futures.size(); j++) {
+                    futures.get(j).cancel(true);
+                }
+                break;
+            }
+        }
+        return quotes;
+    }
+
+    /**
+     * @return the first usable quote, or null if there is none
+     */
+    public static ExchangeQuote chooseQuote(List<ExchangeQuote> quotes) {
+        if (quotes != null) {
+            for (ExchangeQuote quote : quotes) {
+                if (quote != null && quote.isUsable()) {
+                    return quote;
+                }
+            }
+        }
+        return null;
+    }
+
+    public synchronized boolean isBackedOff(String exchangeName, long now) {
+        ExchangeHealth health = exchangeNameToHealthMap.get(exchangeName);
+        return health != null && health.backoffUntil > now;
+    }
+
+    private synchronized void recordSuccess(String exchangeName) {
+        exchangeNameToHealthMap.remove(exchangeName);
+    }
+
+    private synchronized void recordFailure(String exchangeName) {
+        ExchangeHealth health = exchangeNameToHealthMap.get(exchangeName);
+        if (health == null) {
+            health = new ExchangeHealth();
+            exchangeNameToHealthMap.put(exchangeName, health);
+        }
+        health.consecutiveFailures++;
+        if (health.consecutiveFailures >= MAXIMUM_CONSECUTIVE_FAILURES) {
+            log.debug("Exchange " + exchangeName + " has failed " + health.consecutiveFailures + " times, leaving it out");
+            health.backoffUntil = System.currentTimeMillis() + FAILED_EXCHANGE_BACKOFF;
+        }
+    }
+
+    /**
+     * Forget the health of all the exchanges.
+     */
+    synchronized void reset() {
+        exchangeNameToHealthMap.clear();
+    }
+}
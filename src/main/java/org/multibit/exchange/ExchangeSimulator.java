@@ -0,0 +1,354 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.exchange;
+
+import com.xeiam.xchange.ExchangeException;
+import com.xeiam.xchange.currency.CurrencyPair;
+import com.xeiam.xchange.dto.marketdata.Ticker;
+import com.xeiam.xchange.service.polling.PollingMarketDataService;
+import org.joda.money.BigMoney;
+import org.joda.money.CurrencyUnit;
+import org.multibit.model.Model;
+import org.multibit.model.exchange.ExchangeData;
+import org.multibit.model.exchange.ExchangeModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An offline stand-in for an exchange, used to test the ticker, the
+ * CurrencyConverter and the fiat display without a network.
+ *
+ * <p>
+ * It replays a recorded or synthetic list of ticks for each currency through
+ * the same PollingMarketDataService interface as the real exchanges. The
+ * ticks advance at the tick rate (ticks per second), or by one tick per
+ * request if the tick rate is zero, and wrap around at the end. Each request
+ * can be delayed by a latency and fail with an ExchangeException at the
+ * failure rate.
+ *
+ * <p>
+ * It is used when the ticker exchange is set to "Simulator".
+ */
+public class ExchangeSimulator implements InvocationHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(ExchangeSimulator.class);
+
+    public static final double DEFAULT_TICK_RATE = 1.0; // ticks per second
+
+    public static final int SYNTHETIC_TICK_COUNT = 3600;
+
+    public static final BigDecimal SYNTHETIC_START_PRICE = new BigDecimal("250");
+
+    /**
+     * The seed for the random walk and the failures, so runs can be repeated.
+     */
+    public static final long DEFAULT_SEED = 1;
+
+    // Standard deviation of each step of the random walk, as a fraction of the price.
+    private static final double SYNTHETIC_VOLATILITY = 0.001;
+
+    // Half the bid/ask spread, as a fraction of the price.
+    private static final BigDecimal SYNTHETIC_HALF_SPREAD = new BigDecimal("0.001");
+
+    private static final int PRICE_SCALE = 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Map<String, List<SimulatedTick>> currencyToTicks;
+    private final Map<String, Long> currencyToRequestCount;
+    private final double tickRate;
+    private final long latency;
+    private final double failureRate;
+    private final Random random;
+    private final long startTime;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * @param ticks the ticks to replay, in order, for any number of currencies
+     * @param tickRate the number of ticks to advance each second, or zero to advance one tick per request
+     * @param latency the delay added to each request, in milliseconds
+     * @param failureRate the fraction of requests that fail, from 0 to 1
+     * @param seed the seed for the failures
+     */
+    public ExchangeSimulator(List<SimulatedTick> ticks, double tickRate, long latency, double failureRate, long seed) {
+        if (ticks == null || ticks.isEmpty()) {
+            throw new IllegalArgumentException("The exchange simulator needs at least one tick");
+        }
+        if (tickRate < 0 || latency < 0 || failureRate < 0 || failureRate > 1) {
+            throw new IllegalArgumentException("Bad exchange simulator settings: tickRate = " + tickRate + ", latency = "
+                    + latency + ", failureRate = " + failureRate);
+        }
+        currencyToTicks = new LinkedHashMap<String, List<SimulatedTick>>();
+        for (SimulatedTick tick : ticks) {
+            List<SimulatedTick> currencyTicks = currencyToTicks.get(tick.getCurrency());
+            if (currencyTicks == null) {
+                currencyTicks = new ArrayList<SimulatedTick>();
+                currencyToTicks.put(tick.getCurrency(), currencyTicks);
+            }
+            currencyTicks.add(tick);
+        }
+        currencyToRequestCount = new HashMap<String, Long>();
+        this.tickRate = tickRate;
+        this.latency = latency;
+        this.failureRate = failureRate;
+        this.random = new Random(seed);
+        this.startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Create a simulator from the exchangeSimulator user preferences. The
+     * ticks are read from the exchangeSimulatorTicks file if it is set,
+     * otherwise a random walk is used for the default currencies.
+     */
+    public static ExchangeSimulator create(Model model) throws IOException {
+        List<SimulatedTick> ticks;
+        String ticksFilename = model.getUserPreference(ExchangeModel.EXCHANGE_SIMULATOR_TICKS);
+        if (ticksFilename != null && ticksFilename.trim().length() > 0) {
+            Reader reader = new InputStreamReader(new FileInputStream(new File(ticksFilename.trim())), UTF_8);
+            try {
+                ticks = readTicks(reader);
+            } finally {
+                reader.close();
+            }
+        } else {
+            ticks = new ArrayList<SimulatedTick>();
+            for (String currency : ExchangeData.DEFAULT_CURRENCY_LIST) {
+                ticks.addAll(createSyntheticTicks(currency, SYNTHETIC_START_PRICE, SYNTHETIC_TICK_COUNT, DEFAULT_SEED));
+            }
+        }
+
+        double tickRate = parseDouble(model.getUserPreference(ExchangeModel.EXCHANGE_SIMULATOR_TICK_RATE), DEFAULT_TICK_RATE);
+        long latency = (long) parseDouble(model.getUserPreference(ExchangeModel.EXCHANGE_SIMULATOR_LATENCY), 0);
+        double failureRate = parseDouble(model.getUserPreference(ExchangeModel.EXCHANGE_SIMULATOR_FAILURE_RATE), 0);
+
+        log.debug("Exchange simulator with " + ticks.size() + " ticks, tickRate = " + tickRate + ", latency = " + latency
+                + ", failureRate = " + failureRate);
+        return new ExchangeSimulator(ticks, tickRate, latency, failureRate, DEFAULT_SEED);
+    }
+
+    private static double parseDouble(String text, double defaultValue) {
+        if (text == null || text.trim().length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(text.trim());
+        } catch (NumberFormatException nfe) {
+            log.error(nfe.getClass().getName() + " " + nfe.getMessage());
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Read recorded ticks, one per line as currency,last or currency,last,bid,ask.
+     * Blank lines and lines starting with # are skipped.
+     */
+    public static List<SimulatedTick> readTicks(Reader reader) throws IOException {
+        List<SimulatedTick> ticks = new ArrayList<SimulatedTick>();
+        BufferedReader bufferedReader = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = bufferedReader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.length() == 0 || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            if (fields.length != 2 && fields.length != 4) {
+                throw new IOException("Line " + lineNumber + " of the simulated ticks is not currency,last[,bid,ask]");
+            }
+            try {
+                BigDecimal last = new BigDecimal(fields[1].trim());
+                BigDecimal bid = fields.length == 4 ? new BigDecimal(fields[2].trim()) : null;
+                BigDecimal ask = fields.length == 4 ? new BigDecimal(fields[3].trim()) : null;
+                ticks.add(new SimulatedTick(fields[0].trim().toUpperCase(), last, bid, ask));
+            } catch (NumberFormatException nfe) {
+                throw new IOException("Line " + lineNumber + " of the simulated ticks has a bad price: " + line);
+            }
+        }
+        return ticks;
+    }
+
+    /**
+     * Create a random walk of prices starting at the start price, with the bid and ask either side.
+     */
+    public static List<SimulatedTick> createSyntheticTicks(String currency, BigDecimal startPrice, int count, long seed) {
+        List<SimulatedTick> ticks = new ArrayList<SimulatedTick>(count);
+        Random walk = new Random(seed);
+        double price = startPrice.doubleValue();
+        for (int i = 0; i < count; i++) {
+            BigDecimal last = BigDecimal.valueOf(price).setScale(PRICE_SCALE, RoundingMode.HALF_EVEN);
+            BigDecimal halfSpread = last.multiply(SYNTHETIC_HALF_SPREAD);
+            BigDecimal bid = last.subtract(halfSpread).setScale(PRICE_SCALE, RoundingMode.HALF_EVEN);
+            BigDecimal ask = last.add(halfSpread).setScale(PRICE_SCALE, RoundingMode.HALF_EVEN);
+            ticks.add(new SimulatedTick(currency, last, bid, ask));
+
+            price = Math.max(0.01, price * (1 + walk.nextGaussian() * SYNTHETIC_VOLATILITY));
+        }
+        return ticks;
+    }
+
+    /**
+     * @return a PollingMarketDataService that gets its tickers from this simulator
+     */
+    public PollingMarketDataService createMarketDataService() {
+        return (PollingMarketDataService) Proxy.newProxyInstance(PollingMarketDataService.class.getClassLoader(),
+                new Class<?>[] { PollingMarketDataService.class }, this);
+    }
+
+    /**
+     * The proxy answers getTicker and getExchangeSymbols. Order books and
+     * trades are not simulated.
+     */
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String methodName = method.getName();
+        if ("getTicker".equals(methodName) && args != null && args.length >= 2) {
+            return getTicker((String) args[0], (String) args[1]);
+        } else if ("getExchangeSymbols".equals(methodName)) {
+            return getExchangeSymbols();
+        } else if ("toString".equals(methodName)) {
+            return "ExchangeSimulator" + currencyToTicks.keySet();
+        } else if ("hashCode".equals(methodName)) {
+            return System.identityHashCode(proxy);
+        } else if ("equals".equals(methodName)) {
+            return args != null && args.length == 1 && proxy == args[0];
+        }
+        throw new UnsupportedOperationException("The exchange simulator does not support " + methodName);
+    }
+
+    private Ticker getTicker(String baseCurrency, String counterCurrency) {
+        String currency = "BTC".equalsIgnoreCase(baseCurrency) ? counterCurrency : baseCurrency;
+        SimulatedTick tick = requestTick(currency);
+
+        CurrencyUnit currencyUnit = CurrencyUnit.of(tick.getCurrency());
+        return Ticker.TickerBuilder.newInstance()
+                .withTradableIdentifier(baseCurrency)
+                .withLast(BigMoney.of(currencyUnit, tick.getLast()))
+                .withBid(tick.getBid() == null ? null : BigMoney.of(currencyUnit, tick.getBid()))
+                .withAsk(tick.getAsk() == null ? null : BigMoney.of(currencyUnit, tick.getAsk()))
+                .withHigh(BigMoney.of(currencyUnit, tick.getLast()))
+                .withLow(BigMoney.of(currencyUnit, tick.getLast()))
+                .withVolume(BigDecimal.ZERO)
+                .withTimestamp(new Date())
+                .build();
+    }
+
+    private List<CurrencyPair> getExchangeSymbols() {
+        List<CurrencyPair> exchangeSymbols = new ArrayList<CurrencyPair>();
+        for (String currency : currencyToTicks.keySet()) {
+            exchangeSymbols.add(new CurrencyPair("BTC", currency));
+        }
+        return exchangeSymbols;
+    }
+
+    /**
+     * Wait for the latency, then fail at the failure rate or return the current tick for the currency.
+     *
+     * @throws ExchangeException if the request fails, is interrupted or the currency is not simulated
+     */
+    public SimulatedTick requestTick(String currency) {
+        requests.incrementAndGet();
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                failures.incrementAndGet();
+                throw new ExchangeException("Simulated request for " + currency + " was interrupted");
+            }
+        }
+
+        boolean fail;
+        synchronized (random) {
+            fail = failureRate > 0 && random.nextDouble() < failureRate;
+        }
+        if (fail) {
+            failures.incrementAndGet();
+            throw new ExchangeException("Simulated failure getting " + currency);
+        }
+
+        SimulatedTick tick = getTick(currency, System.currentTimeMillis());
+        if (tick == null) {
+            failures.incrementAndGet();
+            throw new ExchangeException("No simulated ticks for " + currency);
+        }
+        return tick;
+    }
+
+    /**
+     * @return the tick for the currency at the time, or null if the currency is not simulated
+     */
+    SimulatedTick getTick(String currency, long now) {
+        List<SimulatedTick> ticks = currencyToTicks.get(currency);
+        if (ticks == null) {
+            return null;
+        }
+        long position;
+        if (tickRate > 0) {
+            position = (long) ((now - startTime) * tickRate / 1000);
+        } else {
+            synchronized (currencyToRequestCount) {
+                Long requestCount = currencyToRequestCount.get(currency);
+                position = requestCount == null ? 0 : requestCount;
+                currencyToRequestCount.put(currency, position + 1);
+            }
+        }
+        return ticks.get((int) (Math.max(0, position) % ticks.size()));
+    }
+
+    public Collection<String> getCurrencies() {
+        return currencyToTicks.keySet();
+    }
+
+    /**
+     * @return the number of ticks requested so far
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return the number of requests that failed so far
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+}
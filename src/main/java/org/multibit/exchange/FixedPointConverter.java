@@ -0,0 +1,100 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.exchange;
+
+import org.multibit.utils.FixedPointFormat;
+
+import java.math.BigDecimal;
+
+/**
+ * Converts satoshi to the minor units of a fiat currency (for instance
+ * cents) using long arithmetic only.
+ *
+ * <p>
+ * The exchange rate is held as an unscaled long and a power of ten, so the
+ * result is exactly what BigDecimal multiplication followed by HALF_EVEN
+ * rounding to the currency's decimal places gives. Rates with too many
+ * decimal places, and amounts whose product with the rate does not fit in a
+ * long, cannot be converted and must use the BigDecimal path.
+ *
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ */
+public class FixedPointConverter {
+
+    private static final int SATOSHI_SCALE = CurrencyConverter.NUMBER_OF_DECIMAL_POINTS_IN_A_BITCOIN;
+
+    private final long unscaledRate;
+    private final long divisor;
+    private final long maximumSatoshi;
+
+    private FixedPointConverter(long unscaledRate, long divisor) {
+        this.unscaledRate = unscaledRate;
+        this.divisor = divisor;
+        this.maximumSatoshi = unscaledRate == 0 ? Long.MAX_VALUE : Long.MAX_VALUE / unscaledRate;
+    }
+
+    /**
+     * @param rate
+     *            the value of 1 BTC in the fiat currency
+     * @param fiatDecimalPlaces
+     *            the number of decimal places of the fiat currency
+     * @return the converter, or null if the rate cannot be held exactly
+     */
+    public static FixedPointConverter create(BigDecimal rate, int fiatDecimalPlaces) {
+        if (rate == null || rate.signum() < 0 || fiatDecimalPlaces < 0) {
+            return null;
+        }
+        BigDecimal strippedRate = rate.stripTrailingZeros();
+        if (strippedRate.scale() < 0) {
+            strippedRate = strippedRate.setScale(0);
+        }
+        if (strippedRate.unscaledValue().bitLength() > 63) {
+            return null;
+        }
+        int divisorExponent = SATOSHI_SCALE + strippedRate.scale() - fiatDecimalPlaces;
+        if (divisorExponent < 0 || divisorExponent > FixedPointFormat.MAXIMUM_SCALE) {
+            return null;
+        }
+        return new FixedPointConverter(strippedRate.unscaledValue().longValue(), FixedPointFormat.powerOfTen(divisorExponent));
+    }
+
+    /**
+     * @return true if the amount can be converted without overflowing
+     */
+    public boolean canConvert(long satoshi) {
+        return satoshi >= -maximumSatoshi && satoshi <= maximumSatoshi;
+    }
+
+    /**
+     * Convert the amount, rounding HALF_EVEN. Check canConvert first.
+     *
+     * @return the fiat amount in minor units
+     */
+    public long toFiatMinorUnits(long satoshi) {
+        long product = satoshi * unscaledRate;
+        long quotient = product / divisor;
+        long remainder = Math.abs(product % divisor);
+        if (remainder != 0) {
+            // The remainder is less than 10^18 so doubling it cannot overflow.
+            long twiceRemainder = remainder * 2;
+            if (twiceRemainder > divisor || (twiceRemainder == divisor && (quotient & 1) != 0)) {
+                quotient += product < 0 ? -1 : 1;
+            }
+        }
+        return quotient;
+    }
+}
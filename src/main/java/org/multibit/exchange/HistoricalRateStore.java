@@ -0,0 +1,373 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.exchange;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Daily exchange rates per currency, so that transactions can be valued at
+ * the rate on the day they were made.
+ *
+ * <p>
+ * The rates are kept in an append only file of fixed length records:
+ * currency code (3 ASCII bytes), day number since 1970-01-01 UTC (int) and
+ * the value of 1 BTC in the currency with 8 decimal places (long). A day
+ * that is written again replaces the earlier rate. The file is read into
+ * sorted arrays when the store is initialised so lookups are a binary search
+ * and never go to the network.
+ *
+ * <p>
+ * The ticker records the first rate it sees each day. Older rates can be
+ * imported from a CSV file with lines of the form
+ * <code>2014-03-01,USD,563.25</code>.
+ */
+public enum HistoricalRateStore {
+    INSTANCE;
+
+    private static final Logger log = LoggerFactory.getLogger(HistoricalRateStore.class);
+
+    public static final String HISTORICAL_RATES_FILENAME = "multibit.historicalrates";
+
+    /**
+     * A CSV file with this name in the data directory is imported at startup.
+     */
+    public static final String IMPORT_FILENAME = "historical-rates.csv";
+    public static final String IMPORTED_SUFFIX = ".imported";
+
+    /**
+     * How many days before a date a rate can be and still be used for it.
+     */
+    public static final int MAXIMUM_DAYS_BEFORE = 7;
+
+    private static final int RATE_SCALE = 8;
+    private static final int CURRENCY_CODE_LENGTH = 3;
+    private static final int RECORD_LENGTH = CURRENCY_CODE_LENGTH + 4 + 8;
+    private static final long MILLISECONDS_IN_A_DAY = 86400000L;
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private String filename;
+
+    private final Map<String, DailyRates> currencyToRatesMap = new HashMap<String, DailyRates>();
+
+    private static class Record {
+        final String currencyCode;
+        final int day;
+        final long rate;
+
+        Record(String currencyCode, int day, long rate) {
+            this.currencyCode = currencyCode;
+            this.day = day;
+            this.rate = rate;
+        }
+    }
+
+    /**
+     * The rates for one currency, sorted by day.
+     */
+    private static class DailyRates {
+        int[] days = new int[64];
+        long[] rates = new long[64];
+        int size;
+
+        void put(int day, long rate) {
+            if (size > 0 && day > days[size - 1]) {
+                insertAt(size, day, rate);
+                return;
+            }
+            int index = Arrays.binarySearch(days, 0, size, day);
+            if (index >= 0) {
+                rates[index] = rate;
+            } else {
+                insertAt(-index - 1, day, rate);
+            }
+        }
+
+        private void insertAt(int index, int day, long rate) {
+            if (size == days.length) {
+                days = Arrays.copyOf(days, size * 2);
+                rates = Arrays.copyOf(rates, size * 2);
+            }
+            System.arraycopy(days, index, days, index + 1, size - index);
+            System.arraycopy(rates, index, rates, index + 1, size - index);
+            days[index] = day;
+            rates[index] = rate;
+            size++;
+        }
+
+        boolean contains(int day) {
+            return Arrays.binarySearch(days, 0, size, day) >= 0;
+        }
+
+        /**
+         * @return the index of the latest day on or before the day, or -1
+         */
+        int floor(int day) {
+            int index = Arrays.binarySearch(days, 0, size, day);
+            return index >= 0 ? index : -index - 2;
+        }
+    }
+
+    /**
+     * Read the rates file in the directory and import the CSV file if there is one.
+     *
+     * @param applicationDataDirectory
+     *            the directory the rates file is kept in, or "" for the current directory
+     */
+    public synchronized void initialise(String applicationDataDirectory) {
+        String directoryPrefix = "";
+        if (applicationDataDirectory != null && !"".equals(applicationDataDirectory)) {
+            directoryPrefix = applicationDataDirectory + File.separator;
+        }
+        filename = directoryPrefix + HISTORICAL_RATES_FILENAME;
+        currencyToRatesMap.clear();
+
+        try {
+            load();
+        } catch (IOException e) {
+            log.error(e.getClass().getName() + " " + e.getMessage());
+        }
+
+        File importFile = new File(directoryPrefix + IMPORT_FILENAME);
+        if (importFile.exists()) {
+            Reader reader = null;
+            try {
+                reader = new InputStreamReader(new FileInputStream(importFile), "UTF-8");
+                int numberImported = importCsv(reader);
+                log.debug("Imported " + numberImported + " historical rates from " + importFile.getAbsolutePath());
+            } catch (IOException e) {
+                log.error(e.getClass().getName() + " " + e.getMessage());
+            } finally {
+                if (reader != null) {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        log.error(e.getClass().getName() + " " + e.getMessage());
+                    }
+                }
+            }
+            if (!importFile.renameTo(new File(importFile.getAbsolutePath() + IMPORTED_SUFFIX))) {
+                log.error("Could not rename " + importFile.getAbsolutePath() + " after importing it");
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        File file = new File(filename);
+        if (!file.exists()) {
+            return;
+        }
+        // Drop a record that was only partly written so later records are appended on a record boundary.
+        long partialRecordLength = file.length() % RECORD_LENGTH;
+        if (partialRecordLength != 0) {
+            log.debug("Removing " + partialRecordLength + " bytes of a partly written historical rate");
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                randomAccessFile.setLength(file.length() - partialRecordLength);
+            } finally {
+                randomAccessFile.close();
+            }
+        }
+
+        DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            byte[] currencyCode = new byte[CURRENCY_CODE_LENGTH];
+            int numberOfRecords = 0;
+            while (true) {
+                try {
+                    inputStream.readFully(currencyCode);
+                    int day = inputStream.readInt();
+                    long rate = inputStream.readLong();
+                    put(new String(currencyCode, ASCII), day, rate);
+                    numberOfRecords++;
+                } catch (EOFException e) {
+                    // The end of the file.
+                    break;
+                }
+            }
+            log.debug("Loaded " + numberOfRecords + " historical rates");
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * @return the rate on the day of the date, or on the most recent day
+     *         before it within MAXIMUM_DAYS_BEFORE days, or null if there is
+     *         no rate that close
+     */
+    public synchronized BigDecimal getRate(String currencyCode, Date date) {
+        DailyRates dailyRates = currencyToRatesMap.get(currencyCode);
+        if (dailyRates == null || date == null) {
+            return null;
+        }
+        int day = toDay(date);
+        int index = dailyRates.floor(day);
+        if (index < 0 || day - dailyRates.days[index] > MAXIMUM_DAYS_BEFORE) {
+            return null;
+        }
+        return BigDecimal.valueOf(dailyRates.rates[index], RATE_SCALE);
+    }
+
+    /**
+     * Record the rate for the day of the date, unless there is already one for that day.
+     */
+    public synchronized void record(String currencyCode, Date date, BigDecimal rate) {
+        if (!isValid(currencyCode, rate)) {
+            return;
+        }
+        int day = toDay(date);
+        DailyRates dailyRates = currencyToRatesMap.get(currencyCode);
+        if (dailyRates != null && dailyRates.contains(day)) {
+            return;
+        }
+        try {
+            List<Record> records = new ArrayList<Record>();
+            records.add(new Record(currencyCode, day, toFixedPoint(rate)));
+            append(records);
+        } catch (ArithmeticException e) {
+            log.error(e.getClass().getName() + " " + e.getMessage());
+        }
+    }
+
+    /**
+     * Import rates from CSV lines of date (yyyy-MM-dd), currency code and the
+     * value of 1 BTC in the currency. Lines that cannot be read, such as a
+     * header line, are skipped. Imported rates replace any already held for the
+     * same day.
+     *
+     * @return the number of rates imported
+     */
+    public synchronized int importCsv(Reader reader) throws IOException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.ENGLISH);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        dateFormat.setLenient(false);
+
+        List<Record> records = new ArrayList<Record>();
+        BufferedReader bufferedReader = new BufferedReader(reader);
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            String[] fields = line.split(",");
+            if (fields.length < 3) {
+                continue;
+            }
+            try {
+                Date date = dateFormat.parse(fields[0].trim());
+                String currencyCode = fields[1].trim().toUpperCase(Locale.ENGLISH);
+                BigDecimal rate = new BigDecimal(fields[2].trim());
+                if (isValid(currencyCode, rate)) {
+                    records.add(new Record(currencyCode, toDay(date), toFixedPoint(rate)));
+                }
+            } catch (ParseException e) {
+                log.debug("Skipping historical rate line '" + line + "'");
+            } catch (NumberFormatException e) {
+                log.debug("Skipping historical rate line '" + line + "'");
+            } catch (ArithmeticException e) {
+                log.debug("Skipping historical rate line '" + line + "'");
+            }
+        }
+        append(records);
+        return records.size();
+    }
+
+    /**
+     * Add the records to the arrays and write them to the end of the file.
+     */
+    private void append(List<Record> records) {
+        for (Record record : records) {
+            put(record.currencyCode, record.day, record.rate);
+        }
+        if (filename == null || records.isEmpty()) {
+            return;
+        }
+        DataOutputStream outputStream = null;
+        try {
+            outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename, true)));
+            for (Record record : records) {
+                outputStream.write(record.currencyCode.getBytes(ASCII));
+                outputStream.writeInt(record.day);
+                outputStream.writeLong(record.rate);
+            }
+        } catch (IOException e) {
+            log.error(e.getClass().getName() + " " + e.getMessage());
+        } finally {
+            if (outputStream != null) {
+                try {
+                    outputStream.close();
+                } catch (IOException e) {
+                    log.error(e.getClass().getName() + " " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void put(String currencyCode, int day, long rate) {
+        DailyRates dailyRates = currencyToRatesMap.get(currencyCode);
+        if (dailyRates == null) {
+            dailyRates = new DailyRates();
+            currencyToRatesMap.put(currencyCode, dailyRates);
+        }
+        dailyRates.put(day, rate);
+    }
+
+    private static boolean isValid(String currencyCode, BigDecimal rate) {
+        return currencyCode != null && currencyCode.matches("[A-Z]{" + CURRENCY_CODE_LENGTH + "}") && rate != null && rate.signum() > 0;
+    }
+
+    private static long toFixedPoint(BigDecimal rate) {
+        BigInteger unscaledRate = rate.setScale(RATE_SCALE, BigDecimal.ROUND_HALF_EVEN).unscaledValue();
+        if (unscaledRate.bitLength() > 63) {
+            throw new ArithmeticException("Rate " + rate + " is too large");
+        }
+        return unscaledRate.longValue();
+    }
+
+    /**
+     * @return the number of days between 1970-01-01 UTC and the date
+     */
+    public static int toDay(Date date) {
+        long time = date.getTime();
+        return (int) (time >= 0 ? time / MILLISECONDS_IN_A_DAY : (time - MILLISECONDS_IN_A_DAY + 1) / MILLISECONDS_IN_A_DAY);
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.exchange;
+
+import org.joda.money.format.MoneyAmountStyle;
+import org.joda.money.format.MoneyFormatter;
+import org.joda.money.format.MoneyFormatterBuilder;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Formatters used by the CurrencyConverter, built once and then reused.
+ *
+ * <p>
+ * MoneyFormatters are immutable so each one is shared by all threads. It is
+ * keyed by the locale, the currency code and symbol, where the symbol goes
+ * and whether it is printed. The grouping style comes from the locale.
+ * DecimalFormat is not thread safe so the formats used for parsing are kept
+ * per thread.
+ */
+enum MoneyFormatterCache {
+    INSTANCE;
+
+    private final ConcurrentMap<FormatterKey, MoneyFormatter> moneyFormatters = new ConcurrentHashMap<FormatterKey, MoneyFormatter>();
+
+    private final ConcurrentMap<Locale, DecimalFormatSymbols> decimalFormatSymbols = new ConcurrentHashMap<Locale, DecimalFormatSymbols>();
+
+    private final ThreadLocal<Map<Locale, DecimalFormat>> parseFormats = new ThreadLocal<Map<Locale, DecimalFormat>>() {
+        @Override
+        protected Map<Locale, DecimalFormat> initialValue() {
+            return new HashMap<Locale, DecimalFormat>();
+        }
+    };
+
+    private final ThreadLocal<Map<Locale, DecimalFormat>> bitcoinFormats = new ThreadLocal<Map<Locale, DecimalFormat>>() {
+        @Override
+        protected Map<Locale, DecimalFormat> initialValue() {
+            return new HashMap<Locale, DecimalFormat>();
+        }
+    };
+
+    private static final class FormatterKey {
+        private final Locale locale;
+        private final String currencyCode;
+        private final String currencySymbol;
+        private final boolean isPrefix;
+        private final boolean hasSeparatingSpace;
+        private final boolean addCurrencySymbol;
+
+        FormatterKey(Locale locale, CurrencyInfo currencyInfo, boolean addCurrencySymbol) {
+            this.locale = locale;
+            this.currencyCode = currencyInfo.getCurrencyCode();
+            this.currencySymbol = currencyInfo.getCurrencySymbol();
+            this.isPrefix = currencyInfo.isPrefix();
+            this.hasSeparatingSpace = currencyInfo.isHasSeparatingSpace();
+            this.addCurrencySymbol = addCurrencySymbol;
+        }
+
+        @Override
+        public int hashCode() {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + locale.hashCode();
+            result = prime * result + ((currencyCode == null) ? 0 : currencyCode.hashCode());
+            result = prime * result + ((currencySymbol == null) ? 0 : currencySymbol.hashCode());
+            result = prime * result + (isPrefix ? 1231 : 1237);
+            result = prime * result + (hasSeparatingSpace ? 1231 : 1237);
+            result = prime * result + (addCurrencySymbol ? 1231 : 1237);
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof FormatterKey)) {
+                return false;
+            }
+            FormatterKey other = (FormatterKey) obj;
+            return locale.equals(other.locale) && equal(currencyCode, other.currencyCode)
+                    && equal(currencySymbol, other.currencySymbol) && isPrefix == other.isPrefix
+                    && hasSeparatingSpace == other.hasSeparatingSpace && addCurrencySymbol == other.addCurrencySymbol;
+        }
+
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    /**
+     * @return the formatter for fiat amounts in the currency, shared by all threads
+     */
+    MoneyFormatter getMoneyFormatter(Locale locale, CurrencyInfo currencyInfo, boolean addCurrencySymbol) {
+        FormatterKey key = new FormatterKey(locale, currencyInfo, addCurrencySymbol);
+        MoneyFormatter moneyFormatter = moneyFormatters.get(key);
+        if (moneyFormatter == null) {
+            moneyFormatter = createMoneyFormatter(locale, currencyInfo, addCurrencySymbol);
+            MoneyFormatter existingMoneyFormatter = moneyFormatters.putIfAbsent(key, moneyFormatter);
+            if (existingMoneyFormatter != null) {
+                moneyFormatter = existingMoneyFormatter;
+            }
+        }
+        return moneyFormatter;
+    }
+
+    /**
+     * @return the decimal format symbols of the locale, which must not be changed
+     */
+    DecimalFormatSymbols getDecimalFormatSymbols(Locale locale) {
+        DecimalFormatSymbols symbols = decimalFormatSymbols.get(locale);
+        if (symbols == null) {
+            symbols = ((DecimalFormat) DecimalFormat.getInstance(locale)).getDecimalFormatSymbols();
+            DecimalFormatSymbols existingSymbols = decimalFormatSymbols.putIfAbsent(locale, symbols);
+            if (existingSymbols != null) {
+                symbols = existingSymbols;
+            }
+        }
+        return symbols;
+    }
+
+    /**
+     * @return a format that parses to BigDecimal in the locale, for use on the calling thread only
+     */
+    DecimalFormat getParseFormat(Locale locale) {
+        Map<Locale, DecimalFormat> formats = parseFormats.get();
+        DecimalFormat format = formats.get(locale);
+        if (format == null) {
+            format = (DecimalFormat) DecimalFormat.getInstance(locale);
+            format.setParseBigDecimal(true);
+            formats.put(locale, format);
+        }
+        return format;
+    }
+
+    /**
+     * @return a format for bitcoin amounts in the locale, for use on the calling thread only
+     */
+    DecimalFormat getBitcoinFormat(Locale locale) {
+        Map<Locale, DecimalFormat> formats = bitcoinFormats.get();
+        DecimalFormat format = formats.get(locale);
+        if (format == null) {
+            format = (DecimalFormat) DecimalFormat.getInstance(locale);
+            format.setMaximumFractionDigits(CurrencyConverter.NUMBER_OF_DECIMAL_POINTS_IN_A_BITCOIN);
+            formats.put(locale, format);
+        }
+        return format;
+    }
+
+    private MoneyFormatter createMoneyFormatter(Locale locale, CurrencyInfo currencyInfo, boolean addCurrencySymbol) {
+        DecimalFormatSymbols symbols = getDecimalFormatSymbols(locale);
+        char decimalSeparator = symbols.getDecimalSeparator();
+        char groupingSeparator = symbols.getGroupingSeparator();
+        MoneyAmountStyle moneyAmountStyle;
+        if ('.' == decimalSeparator) {
+            if (',' == groupingSeparator) {
+                moneyAmountStyle = MoneyAmountStyle.ASCII_DECIMAL_POINT_GROUP3_COMMA;
+            } else if (' ' == groupingSeparator || '\u00A0' == groupingSeparator) {
+                moneyAmountStyle = MoneyAmountStyle.ASCII_DECIMAL_POINT_GROUP3_SPACE;
+            } else {
+                moneyAmountStyle = MoneyAmountStyle.ASCII_DECIMAL_POINT_NO_GROUPING;
+            }
+        } else {
+            if (',' == decimalSeparator) {
+                if ('.' == groupingSeparator) {
+                    moneyAmountStyle = MoneyAmountStyle.ASCII_DECIMAL_COMMA_GROUP3_DOT;
+                } else if (' ' == groupingSeparator || '\u00A0' == groupingSeparator) {
+                    moneyAmountStyle = MoneyAmountStyle.ASCII_DECIMAL_COMMA_GROUP3_SPACE;
+                } else {
+                    moneyAmountStyle = MoneyAmountStyle.ASCII_DECIMAL_COMMA_NO_GROUPING;
+                }
+            } else {
+                // Do not really know - keep it simple.
+                moneyAmountStyle = MoneyAmountStyle.ASCII_DECIMAL_POINT_NO_GROUPING;
+            }
+        }
+
+        String separator;
+        if (currencyInfo.isHasSeparatingSpace()) {
+            separator = " ";
+        } else {
+            separator = "";
+        }
+        if (currencyInfo.isPrefix()) {
+            // Prefix currency code.
+            if (addCurrencySymbol) {
+                return new MoneyFormatterBuilder().appendLiteral(currencyInfo.getCurrencySymbol()).appendLiteral(separator).appendAmount(moneyAmountStyle).toFormatter(locale);
+            } else {
+                return new MoneyFormatterBuilder().appendAmount(moneyAmountStyle).toFormatter(locale);
+            }
+        } else {
+            // Postfix currency code.
+            if (addCurrencySymbol) {
+                return new MoneyFormatterBuilder().appendAmount(moneyAmountStyle).appendLiteral(separator).appendLiteral(currencyInfo.getCurrencySymbol()).toFormatter(locale);
+            } else {
+                return new MoneyFormatterBuilder().appendAmount(moneyAmountStyle).toFormatter(locale);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.exchange;
+
+import java.math.BigDecimal;
+
+/**
+ * One price from the ExchangeSimulator, in units of the currency per BTC.
+ */
+public class SimulatedTick {
+
+    private final String currency;
+    private final BigDecimal last;
+    private final BigDecimal bid;
+    private final BigDecimal ask;
+
+    public SimulatedTick(String currency, BigDecimal last, BigDecimal bid, BigDecimal ask) {
+        if (currency == null || last == null) {
+            throw new IllegalArgumentException("A simulated tick needs a currency and a last price");
+        }
+        this.currency = currency;
+        this.last = last;
+        this.bid = bid;
+        this.ask = ask;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public BigDecimal getLast() {
+        return last;
+    }
+
+    /**
+     * @return the bid, or null if it is not known
+     */
+    public BigDecimal getBid() {
+        return bid;
+    }
+
+    /**
+     * @return the ask, or null if it is not known
+     */
+    public BigDecimal getAsk() {
+        return ask;
+    }
+
+    @Override
+    public String toString() {
+        return "SimulatedTick [currency=" + currency + ", last=" + last + ", bid=" + bid + ", ask=" + ask + "]";
+    }
+}
@@ -0,0 +1,248 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.exchange;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps one HTTP connection open to a ticker stream and passes price changes
+ * to a StreamingTickerListener.
+ *
+ * <p>
+ * The stream is text, one tick per line as currency,last or
+ * currency,last,bid,ask. Blank lines are heartbeats. The server may keep
+ * the response open and write a line whenever the price changes (streaming)
+ * or close it after each line (long polling); either way the client
+ * reconnects straight away. If the connection fails the client waits before
+ * reconnecting, twice as long each time up to MAXIMUM_RECONNECT_DELAY.
+ *
+ * <p>
+ * Lines with the same prices as the last line for their currency are
+ * dropped without creating any objects.
+ */
+public class StreamingTickerClient {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamingTickerClient.class);
+
+    public static final int CONNECT_TIMEOUT = 10000; // milliseconds
+
+    /**
+     * The connection is dropped if nothing, not even a heartbeat, is received for this long.
+     */
+    public static final int READ_TIMEOUT = 60000; // milliseconds
+
+    public static final long INITIAL_RECONNECT_DELAY = 1000; // milliseconds
+    public static final long MAXIMUM_RECONNECT_DELAY = 60000; // milliseconds
+
+    static final int MAXIMUM_LINE_LENGTH = 256;
+
+    private static final int READ_BUFFER_SIZE = 4096;
+
+    private final URL url;
+    private final StreamingTickerListener listener;
+
+    private final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+    private final byte[] lineBuffer = new byte[MAXIMUM_LINE_LENGTH];
+    private final TickerLineParser parser = new TickerLineParser();
+
+    // The prices last passed to the listener for each currency.
+    private final Map<String, long[]> currencyToPrices = new HashMap<String, long[]>();
+
+    private Thread thread;
+    private volatile boolean running = false;
+    private volatile boolean connected = false;
+    private volatile HttpURLConnection connection;
+    private volatile long lastReceivedTime;
+
+    public StreamingTickerClient(URL url, StreamingTickerListener listener) {
+        this.url = url;
+        this.listener = listener;
+    }
+
+    /**
+     * Start streaming on a daemon thread.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                stream();
+            }
+        }, "Streaming ticker");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop streaming and close the connection.
+     */
+    public synchronized void stop() {
+        running = false;
+        HttpURLConnection connectionToClose = connection;
+        if (connectionToClose != null) {
+            connectionToClose.disconnect();
+        }
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(1000);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+        connected = false;
+    }
+
+    /**
+     * @return true if the connection is open and something has been received within the READ_TIMEOUT
+     */
+    public boolean isConnected() {
+        return connected && System.currentTimeMillis() - lastReceivedTime < READ_TIMEOUT;
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    private void stream() {
+        long reconnectDelay = INITIAL_RECONNECT_DELAY;
+        while (running) {
+            boolean receivedData = false;
+            try {
+                receivedData = readConnection();
+            } catch (IOException ioe) {
+                if (running) {
+                    log.debug("Ticker stream failed. " + ioe.getClass().getName() + " " + ioe.getMessage());
+                }
+            } finally {
+                connected = false;
+                HttpURLConnection closedConnection = connection;
+                connection = null;
+                if (closedConnection != null) {
+                    closedConnection.disconnect();
+                }
+            }
+
+            if (receivedData) {
+                // A long poll that was answered, or a stream that worked for a while.
+                reconnectDelay = INITIAL_RECONNECT_DELAY;
+                continue;
+            }
+            try {
+                Thread.sleep(reconnectDelay);
+            } catch (InterruptedException ie) {
+                // Stopped.
+                break;
+            }
+            reconnectDelay = Math.min(reconnectDelay * 2, MAXIMUM_RECONNECT_DELAY);
+        }
+    }
+
+    /**
+     * Read the response until it ends.
+     *
+     * @return true if anything, even a heartbeat, was received
+     */
+    private boolean readConnection() throws IOException {
+        HttpURLConnection newConnection = (HttpURLConnection) url.openConnection();
+        newConnection.setConnectTimeout(CONNECT_TIMEOUT);
+        newConnection.setReadTimeout(READ_TIMEOUT);
+        newConnection.setUseCaches(false);
+        newConnection.setRequestProperty("Accept", "text/plain");
+        connection = newConnection;
+        if (!running) {
+            return false;
+        }
+
+        int responseCode = newConnection.getResponseCode();
+        if (responseCode != HttpURLConnection.HTTP_OK) {
+            throw new IOException("Ticker stream " + url + " answered " + responseCode);
+        }
+        connected = true;
+        lastReceivedTime = System.currentTimeMillis();
+        log.debug("Connected to ticker stream " + url);
+
+        boolean receivedData = false;
+        int lineLength = 0;
+        boolean lineTooLong = false;
+        InputStream inputStream = newConnection.getInputStream();
+        try {
+            int bytesRead;
+            while (running && (bytesRead = inputStream.read(readBuffer)) != -1) {
+                lastReceivedTime = System.currentTimeMillis();
+                receivedData = true;
+                for (int i = 0; i < bytesRead; i++) {
+                    byte character = readBuffer[i];
+                    if (character == '\n') {
+                        if (!lineTooLong) {
+                            processLine(lineLength);
+                        }
+                        lineLength = 0;
+                        lineTooLong = false;
+                    } else if (character != '\r') {
+                        if (lineLength < MAXIMUM_LINE_LENGTH) {
+                            lineBuffer[lineLength++] = character;
+                        } else {
+                            lineTooLong = true;
+                        }
+                    }
+                }
+            }
+            // A long poll answer may not end with a line ending.
+            if (running && lineLength > 0 && !lineTooLong) {
+                processLine(lineLength);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return receivedData;
+    }
+
+    private void processLine(int lineLength) {
+        if (!parser.parse(lineBuffer, 0, lineLength)) {
+            return;
+        }
+        String currency = parser.getCurrency();
+        long[] prices = currencyToPrices.get(currency);
+        if (prices == null) {
+            prices = new long[TickerLineParser.pricesLength()];
+            currencyToPrices.put(currency, prices);
+        } else if (parser.hasSamePrices(prices)) {
+            return;
+        }
+        parser.copyPrices(prices);
+
+        try {
+            listener.tickerUpdated(currency, parser.getPrice(TickerLineParser.LAST), parser.getPrice(TickerLineParser.BID),
+                    parser.getPrice(TickerLineParser.ASK), lastReceivedTime);
+        } catch (RuntimeException re) {
+            log.error(re.getClass().getName() + " " + re.getMessage());
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.exchange;
+
+import java.math.BigDecimal;
+
+/**
+ * Interface for receiving the price changes from a StreamingTickerClient.
+ */
+public interface StreamingTickerListener {
+    /**
+     * The prices for the currency have changed. Called on the streaming thread.
+     *
+     * @param bid the bid, or null if the stream does not give one
+     * @param ask the ask, or null if the stream does not give one
+     * @param time the time the change was received
+     */
+    public void tickerUpdated(String currency, BigDecimal last, BigDecimal bid, BigDecimal ask, long time);
+}
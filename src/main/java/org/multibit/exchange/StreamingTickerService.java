@@ -0,0 +1,145 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.exchange;
+
+import org.joda.money.BigMoney;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.IllegalCurrencyException;
+import org.multibit.controller.exchange.ExchangeController;
+import org.multibit.event.EventDispatcher;
+import org.multibit.event.EventType;
+import org.multibit.model.exchange.ExchangeData;
+import org.multibit.model.exchange.ExchangeModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Date;
+
+/**
+ * Enum singleton that feeds the first row of the ticker from a streaming
+ * ticker, set with the tickerStreamUrl user preference, instead of polling.
+ *
+ * <p>
+ * Each price change goes straight into the ExchangeData and the
+ * CurrencyConverter, and an exchange rate event is posted so the ticker is
+ * refreshed with the next batch of events. While the stream is connected the
+ * first row TickerTimerTask does not poll.
+ */
+public enum StreamingTickerService implements StreamingTickerListener {
+    INSTANCE;
+
+    private static final Logger log = LoggerFactory.getLogger(StreamingTickerService.class);
+
+    /**
+     * How often the streamed rates are written to the exchange rate cache.
+     */
+    public static final long CACHE_SAVE_INTERVAL = 60000; // milliseconds
+
+    // Read by the streaming thread without locking, so that stopping the stream cannot wait on it.
+    private volatile ExchangeController exchangeController;
+    private volatile String exchangeName;
+
+    private StreamingTickerClient client;
+    private long lastSaveTime;
+
+    /**
+     * Start streaming if the tickerStreamUrl user preference is set, stopping any existing stream.
+     */
+    public synchronized void start(ExchangeController exchangeController) {
+        stop();
+        this.exchangeController = exchangeController;
+
+        String streamUrl = exchangeController.getModel().getUserPreference(ExchangeModel.TICKER_STREAM_URL);
+        if (streamUrl == null || streamUrl.trim().length() == 0) {
+            return;
+        }
+        URL url;
+        try {
+            url = new URL(streamUrl.trim());
+        } catch (MalformedURLException mue) {
+            log.error(mue.getClass().getName() + " " + mue.getMessage());
+            return;
+        }
+
+        exchangeName = exchangeController.getModel().getUserPreference(ExchangeModel.TICKER_FIRST_ROW_EXCHANGE);
+        if (exchangeName == null || exchangeName.length() == 0) {
+            exchangeName = ExchangeData.DEFAULT_EXCHANGE;
+        }
+        log.debug("Streaming the ticker for " + exchangeName + " from " + url);
+        client = new StreamingTickerClient(url, this);
+        client.start();
+    }
+
+    public synchronized void stop() {
+        if (client != null) {
+            client.stop();
+            client = null;
+        }
+    }
+
+    /**
+     * @return true if the exchange is being streamed and the stream is connected
+     */
+    public synchronized boolean isStreaming(String shortExchangeName) {
+        return client != null && client.isConnected() && exchangeName != null && exchangeName.equals(shortExchangeName);
+    }
+
+    @Override
+    public void tickerUpdated(String currency, BigDecimal last, BigDecimal bid, BigDecimal ask, long time) {
+        ExchangeController controller = exchangeController;
+        String streamedExchangeName = exchangeName;
+        if (controller == null || streamedExchangeName == null) {
+            return;
+        }
+
+        CurrencyUnit currencyUnit;
+        try {
+            currencyUnit = CurrencyUnit.of(currency);
+        } catch (IllegalCurrencyException ice) {
+            log.debug("Ignoring streamed ticker for unknown currency " + currency);
+            return;
+        }
+        BigMoney lastMoney = BigMoney.of(currencyUnit, last);
+        BigMoney bidMoney = bid == null ? null : BigMoney.of(currencyUnit, bid);
+        BigMoney askMoney = ask == null ? null : BigMoney.of(currencyUnit, ask);
+
+        ExchangeData exchangeData = controller.getModel().getOrCreateExchangeData(streamedExchangeName);
+        exchangeData.setPrices(currency, lastMoney, bidMoney, askMoney, time);
+        exchangeData.recordTick(currency, time, lastMoney, bidMoney, askMoney, null);
+
+        // Simulated rates are never kept as real ones.
+        boolean simulated = TickerTimerTask.isSimulated(streamedExchangeName);
+        if (!simulated) {
+            ExchangeRateCache.INSTANCE.update(new ExchangeQuote(streamedExchangeName, currency, lastMoney, bidMoney, askMoney, time));
+            if (time - lastSaveTime >= CACHE_SAVE_INTERVAL) {
+                lastSaveTime = time;
+                ExchangeRateCache.INSTANCE.save();
+            }
+        }
+
+        if (currencyUnit.equals(CurrencyConverter.INSTANCE.getCurrencyUnit())) {
+            CurrencyConverter.INSTANCE.setRate(last);
+            if (!simulated) {
+                HistoricalRateStore.INSTANCE.record(currency, new Date(time), last);
+            }
+        }
+
+        EventDispatcher.INSTANCE.post(EventType.EXCHANGE_RATE_UPDATED, null);
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.exchange;
+
+import java.math.BigDecimal;
+
+/**
+ * Parses the lines of a streamed ticker, currency,last[,bid,ask], straight
+ * from the bytes read off the connection.
+ *
+ * <p>
+ * The prices are held as an unscaled long and a scale so that a line with
+ * the same prices as the last one can be recognised without creating any
+ * objects. The currency String is only created when it differs from the
+ * previous line. One parser is used by one thread.
+ */
+final class TickerLineParser {
+
+    static final int LAST = 0;
+    static final int BID = 1;
+    static final int ASK = 2;
+
+    private static final int NUMBER_OF_PRICES = 3;
+
+    private static final int MAXIMUM_CURRENCY_LENGTH = 8;
+
+    // Digits that always fit in a long.
+    private static final int MAXIMUM_DIGITS = 18;
+
+    private final byte[] currencyBytes = new byte[MAXIMUM_CURRENCY_LENGTH];
+    private int currencyLength;
+    private String currency;
+
+    private final long[] unscaled = new long[NUMBER_OF_PRICES];
+    private final int[] scale = new int[NUMBER_OF_PRICES];
+    private final boolean[] present = new boolean[NUMBER_OF_PRICES];
+
+    /**
+     * Parse one line, without its line ending.
+     *
+     * @return true if the line is a tick, false if it is blank (a heartbeat), a comment or not understood
+     */
+    boolean parse(byte[] line, int offset, int length) {
+        int end = offset + length;
+        int position = offset;
+        while (position < end && line[position] == ' ') {
+            position++;
+        }
+        if (position == end || line[position] == '#') {
+            return false;
+        }
+
+        // Currency code.
+        int currencyStart = position;
+        while (position < end && line[position] != ',') {
+            position++;
+        }
+        if (!setCurrency(line, currencyStart, position)) {
+            return false;
+        }
+
+        present[BID] = false;
+        present[ASK] = false;
+        for (int field = LAST; field < NUMBER_OF_PRICES; field++) {
+            if (position == end) {
+                // Bid and ask are optional, but come together.
+                return field == BID;
+            }
+            // Skip the comma.
+            position++;
+            int fieldStart = position;
+            while (position < end && line[position] != ',') {
+                position++;
+            }
+            if (!parsePrice(line, fieldStart, position, field)) {
+                return false;
+            }
+        }
+        return position == end;
+    }
+
+    private boolean setCurrency(byte[] line, int start, int end) {
+        while (end > start && line[end - 1] == ' ') {
+            end--;
+        }
+        int length = end - start;
+        if (length == 0 || length > MAXIMUM_CURRENCY_LENGTH) {
+            return false;
+        }
+        boolean sameCurrency = currency != null && length == currencyLength;
+        for (int i = 0; i < length; i++) {
+            byte character = line[start + i];
+            if (character >= 'a' && character <= 'z') {
+                character = (byte) (character - 'a' + 'A');
+            } else if (character < 'A' || character > 'Z') {
+                return false;
+            }
+            if (sameCurrency && currencyBytes[i] != character) {
+                sameCurrency = false;
+            }
+            currencyBytes[i] = character;
+        }
+        if (!sameCurrency) {
+            currencyLength = length;
+            char[] characters = new char[length];
+            for (int i = 0; i < length; i++) {
+                characters[i] = (char) currencyBytes[i];
+            }
+            currency = new String(characters);
+        }
+        return true;
+    }
+
+    private boolean parsePrice(byte[] line, int start, int end, int field) {
+        while (start < end && line[start] == ' ') {
+            start++;
+        }
+        while (end > start && line[end - 1] == ' ') {
+            end--;
+        }
+        long value = 0;
+        int digits = 0;
+        int decimalPlaces = -1;
+        for (int i = start; i < end; i++) {
+            byte character = line[i];
+            if (character == '.' && decimalPlaces < 0) {
+                decimalPlaces = 0;
+            } else if (character >= '0' && character <= '9') {
+                if (digits == MAXIMUM_DIGITS) {
+                    return false;
+                }
+                value = value * 10 + (character - '0');
+                if (value != 0) {
+                    digits++;
+                }
+                if (decimalPlaces >= 0) {
+                    decimalPlaces++;
+                }
+            } else {
+                return false;
+            }
+        }
+        if (end == start || (decimalPlaces >= 0 && end - start == 1)) {
+            return false;
+        }
+        unscaled[field] = value;
+        scale[field] = decimalPlaces < 0 ? 0 : decimalPlaces;
+        present[field] = true;
+        return true;
+    }
+
+    /**
+     * @return the currency of the last line parsed, the same String while the currency does not change
+     */
+    String getCurrency() {
+        return currency;
+    }
+
+    boolean hasPrice(int field) {
+        return present[field];
+    }
+
+    long getUnscaled(int field) {
+        return unscaled[field];
+    }
+
+    int getScale(int field) {
+        return scale[field];
+    }
+
+    /**
+     * @return the price, or null if the line did not have it
+     */
+    BigDecimal getPrice(int field) {
+        return present[field] ? BigDecimal.valueOf(unscaled[field], scale[field]) : null;
+    }
+
+    /**
+     * Copy the prices into the array, for comparing with the next line.
+     * A missing price is stored with a scale of -1.
+     */
+    void copyPrices(long[] prices) {
+        for (int field = 0; field < NUMBER_OF_PRICES; field++) {
+            prices[2 * field] = unscaled[field];
+            prices[2 * field + 1] = present[field] ? scale[field] : -1;
+        }
+    }
+
+    /**
+     * @return true if the prices are the same as those copied into the array by copyPrices
+     */
+    boolean hasSamePrices(long[] prices) {
+        for (int field = 0; field < NUMBER_OF_PRICES; field++) {
+            if (prices[2 * field] != unscaled[field] || prices[2 * field + 1] != (present[field] ? scale[field] : -1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the length of the array used by copyPrices
+     */
+    static int pricesLength() {
+        return 2 * NUMBER_OF_PRICES;
+    }
+}
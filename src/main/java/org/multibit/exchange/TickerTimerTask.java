@@ -16,13 +16,6 @@
 package org.multibit.exchange;
 
 import com.xeiam.xchange.Exchange;
-import com.xeiam.xchange.ExchangeFactory;
-import com.xeiam.xchange.ExchangeSpecification;
-import com.xeiam.xchange.currency.Currencies;
-import com.xeiam.xchange.currency.CurrencyPair;
-import com.xeiam.xchange.dto.marketdata.Ticker;
-import com.xeiam.xchange.service.polling.PollingMarketDataService;
-import org.joda.money.BigMoney;
 import org.joda.money.CurrencyUnit;
 import org.multibit.controller.Controller;
 import org.multibit.controller.exchange.ExchangeController;
@@ -33,8 +26,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.TimerTask;
 
@@ -45,6 +38,16 @@ public class TickerTimerTask extends TimerTask {
 
     public static final int DEFAULT_REPEAT_RATE = 600000; // milliseconds
 
+    /**
+     * The shortest repeat rate for real exchanges, to limit the load on their servers.
+     */
+    public static final int MINIMUM_REPEAT_RATE = 60000; // milliseconds
+
+    /**
+     * The shortest repeat rate for the exchange simulator, used for soak testing.
+     */
+    public static final int MINIMUM_SIMULATOR_REPEAT_RATE = 10; // milliseconds
+
     public static final int INITIAL_DELAY = 0; // milliseconds
     public static final int TASK_SEPARATION = 1000; // milliseconds
 
@@ -61,9 +64,13 @@ public class TickerTimerTask extends TimerTask {
 
     private String shortExchangeName;
     private String currency;
-    private Exchange exchange;
-    private PollingMarketDataService marketDataService;
-    private List<CurrencyPair> exchangeSymbols;
+    private XChangeQuoteSource primarySource;
+
+    // The other exchanges, used when the primary exchange is slow or down.
+    private List<XChangeQuoteSource> failoverSources;
+
+    // The first run always refreshes the views, later runs only when the prices change.
+    private boolean hasFiredExchangeDataChanged = false;
 
     /**
      * Constructs the TickerTimerTask.
@@ -98,11 +105,20 @@ public class TickerTimerTask extends TimerTask {
                 controller.getModel().getUserPreference(ExchangeModel.TICKER_SHOW_SECOND_ROW))) {
             return;
         }
+
+        // The first row is fed by the streaming ticker while it is connected.
+        if (isFirstExchange && StreamingTickerService.INSTANCE.isStreaming(shortExchangeName)) {
+            log.debug("Not polling " + shortExchangeName + " as it is being streamed");
+            return;
+        }
         
         try {
+            List<XChangeQuoteSource> sources = new ArrayList<XChangeQuoteSource>();
+            boolean exchangeDataChanged = false;
+
             // Create exchange.
             synchronized (this) {
-                if (exchange == null) {
+                if (primarySource == null || !primarySource.isAvailable()) {
                     log.debug("exchange is null ... creating exchange ... (isFirstExchange = " + isFirstExchange + ")");
                     if (shortExchangeName == null) {
                         log.debug("shortExchangeName is null, defaulting to " + ExchangeData.DEFAULT_EXCHANGE);
@@ -111,163 +127,92 @@ public class TickerTimerTask extends TimerTask {
 
                     createExchangeObjects(shortExchangeName);
 
-                    if (exchange == null) {
+                    if (!primarySource.isAvailable()) {
                         log.debug("Cannot create exchange (isFirstExchange = " + isFirstExchange + ")");
                     }
                 }
+                sources.add(primarySource);
+                sources.addAll(getFailoverSources());
             }
 
-            if (marketDataService != null) {
-                if (exchangeSymbols != null) {
-                    // Only get data from server if ticker is being shown if
-                    // currency conversion is switched on.
-                    // (This is to minimise the load on the remote servers).
-                    if (!Boolean.FALSE.toString().equals(controller.getModel().getUserPreference(ExchangeModel.TICKER_SHOW))
-                            || !Boolean.FALSE.toString().equals(
-                                    controller.getModel().getUserPreference(ExchangeModel.SHOW_BITCOIN_CONVERTED_TO_FIAT))) {
-                        // Get symbol ticker if it is one of the
-                        // currencies we are interested in.
-                        // (This is to save hitting the server for every
-                        // currency).
-                        boolean getItFromTheServer = false;
-                        // Is the amount quoted the reciprocal of number
-                        // of currency units per BTC
-                        boolean invertedRates = false;
-
-                        // Is the currency pair the other way round ie
-                        // base currency = other, counter currency = BTC
-                        boolean reverseRates = ExchangeData.doesExchangeUseReverseRates(shortExchangeName);
-                        CurrencyPair currencyPairToUse = null;
-
-                        for (CurrencyPair loopSymbolPair : exchangeSymbols) {
-                            if (ExchangeData.OPEN_EXCHANGE_RATES_EXCHANGE_NAME.equals(shortExchangeName)) {
-                                if (loopSymbolPair.baseCurrency.equals(currency)) {
-                                    getItFromTheServer = true;
-                                    invertedRates = true;
-                                    currencyPairToUse = loopSymbolPair;
-                                    break;
-                                }
-                            } else {
-                                if ("BTC".equals(loopSymbolPair.baseCurrency) && loopSymbolPair.counterCurrency.equals(currency)) {
-                                    getItFromTheServer = true;
-                                    currencyPairToUse = loopSymbolPair;
-                                    break;
-                                }
-                                if ("BTC".equals(loopSymbolPair.counterCurrency) && loopSymbolPair.baseCurrency.equals(currency)) {
-                                    getItFromTheServer = true;
-                                    invertedRates = true;
-                                    currencyPairToUse = loopSymbolPair;
-                                    break;
-                                }
-                            }
+            // Only get data from server if ticker is being shown if
+            // currency conversion is switched on.
+            // (This is to minimise the load on the remote servers).
+            if (!Boolean.FALSE.toString().equals(controller.getModel().getUserPreference(ExchangeModel.TICKER_SHOW))
+                    || !Boolean.FALSE.toString().equals(
+                            controller.getModel().getUserPreference(ExchangeModel.SHOW_BITCOIN_CONVERTED_TO_FIAT))) {
+                List<ExchangeQuote> quotes = ExchangeRateService.INSTANCE.fetchQuotes(sources, currency,
+                        ExchangeRateService.DEFAULT_REQUEST_DEADLINE);
+
+                boolean cacheUpdated = false;
+                for (ExchangeQuote quote : quotes) {
+                    ExchangeData exchangeData = exchangeController.getModel().getOrCreateExchangeData(quote.getExchangeName());
+                    // Simulated prices are not cached, so are always treated as changed.
+                    boolean changed = true;
+                    if (!isSimulated(quote.getExchangeName())) {
+                        changed = ExchangeRateCache.INSTANCE.update(quote);
+                        cacheUpdated = true;
+                    }
+                    // Unchanged prices only need their time updating.
+                    if (changed || exchangeData.getLastPrice(quote.getCurrency()) == null) {
+                        exchangeData.setPrices(quote.getCurrency(), quote.getLast(), quote.getBid(), quote.getAsk(),
+                                quote.getFetchTime());
+                        exchangeData.recordTick(quote.getCurrency(), quote.getFetchTime(), quote.getLast(), quote.getBid(),
+                                quote.getAsk(), quote.getVolume());
+                        exchangeDataChanged = true;
+                    } else {
+                        if (exchangeData.isStale(quote.getCurrency())) {
+                            // The ticker stops showing the price as stale.
+                            exchangeDataChanged = true;
                         }
+                        exchangeData.setLastUpdated(quote.getCurrency(), quote.getFetchTime());
+                    }
 
-                        if (getItFromTheServer) {
-                            BigMoney last = null;
-                            BigMoney bid = null;
-                            BigMoney ask = null;
-
-                            Ticker loopTicker;
-
-                            if (ExchangeData.OPEN_EXCHANGE_RATES_EXCHANGE_NAME.equals(shortExchangeName)) {
-                                log.debug("Getting loopTicker for " + currency + " USD");
-                                loopTicker = marketDataService.getTicker(currency, "USD");
-                                System.out.println("loopTicker = " + loopTicker);
-                                Ticker btcUsdTicker = null;
-                                log.debug("Getting btcUsdTicker for BTC/USD");
-                                btcUsdTicker = marketDataService.getTicker(Currencies.BTC, Currencies.USD);
-                                System.out.println("btcUsdTicker = " + btcUsdTicker);
-
-                                BigMoney usdBtcRateMoney = btcUsdTicker.getLast();
-                                BigDecimal usdBtcRate = null;
-                                if (usdBtcRateMoney != null) {
-                                    usdBtcRate = usdBtcRateMoney.getAmount();
-                                    if (loopTicker.getLast() != null) {
-                                        last = loopTicker.getLast().dividedBy(usdBtcRate, RoundingMode.HALF_EVEN);
-                                    }
-                                    if (loopTicker.getBid() != null) {
-                                        bid = loopTicker.getBid().dividedBy(usdBtcRate, RoundingMode.HALF_EVEN);
-                                    }
-                                    if (loopTicker.getAsk() != null) {
-                                        ask = loopTicker.getAsk().dividedBy(usdBtcRate, RoundingMode.HALF_EVEN);
-                                    }
-                                }
-                            } else {
-                                log.debug("Getting ticker for " + currencyPairToUse.baseCurrency + " "
-                                        + currencyPairToUse.counterCurrency);
-                                loopTicker = marketDataService.getTicker(currencyPairToUse.baseCurrency,
-                                        currencyPairToUse.counterCurrency);
-
-                                log.debug("Got ticker for " + currencyPairToUse.baseCurrency + " "
-                                        + currencyPairToUse.counterCurrency);
-                                last = loopTicker.getLast();
-                                bid = loopTicker.getBid();
-                                ask = loopTicker.getAsk();
-
-                                if (invertedRates && !reverseRates) {
-                                    if (last != null && last.getAmount() != BigDecimal.ZERO) {
-                                        last = BigMoney.of(last.getCurrencyUnit(), BigDecimal.ONE.divide(last.getAmount(),
-                                                NUMBER_OF_SIGNIFICANT_DIGITS, BigDecimal.ROUND_HALF_EVEN));
-                                    } else {
-                                        last = null;
-                                    }
-                                    if (bid != null && bid.getAmount() != BigDecimal.ZERO) {
-                                        bid = BigMoney.of(last.getCurrencyUnit(), BigDecimal.ONE.divide(bid.getAmount(),
-                                                NUMBER_OF_SIGNIFICANT_DIGITS, BigDecimal.ROUND_HALF_EVEN));
-                                    } else {
-                                        bid = null;
-                                    }
-
-                                    if (ask != null && ask.getAmount() != BigDecimal.ZERO) {
-                                        ask = BigMoney.of(last.getCurrencyUnit(), BigDecimal.ONE.divide(ask.getAmount(),
-                                                NUMBER_OF_SIGNIFICANT_DIGITS, BigDecimal.ROUND_HALF_EVEN));
-                                    } else {
-                                        ask = null;
-                                    }
-                                }
-
-                                if (invertedRates) {
-                                    if (reverseRates) {
-                                        // USD/ BTC, reciprocal rate
-                                        currency = currencyPairToUse.baseCurrency;
-                                    } else {
-                                        // BTC/ USD, reciprocal rate
-                                        currency = currencyPairToUse.counterCurrency;
-                                    }
-                                } else {
-                                    if (reverseRates) {
-                                        // USD/ BTC, normal rate
-                                        currency = currencyPairToUse.baseCurrency;
-                                    } else {
-                                        // BTC/ USD, normal rate
-                                        currency = currencyPairToUse.counterCurrency;
-                                    }
-                                }
-                            }
+                    if (shortExchangeName.equals(quote.getExchangeName())) {
+                        currency = quote.getCurrency();
+                    }
+                }
 
-                            this.exchangeController.getModel().getExchangeData(shortExchangeName).setLastPrice(currency, last);
-                            this.exchangeController.getModel().getExchangeData(shortExchangeName).setLastBid(currency, bid);
-                            this.exchangeController.getModel().getExchangeData(shortExchangeName).setLastAsk(currency, ask);
-                            log.debug("Exchange = " + shortExchangeName);
-
-                            // Put the exchange rate into the currency converter.
-                            if (isFirstExchange) {
-                                String newCurrencyCode = currency;
-                                if (ExchangeData.BITCOIN_CHARTS_EXCHANGE_NAME.equals(shortExchangeName)) {
-                                    // Use only the last three characters - the
-                                    // currency code.
-                                    if (currency.length() >= 3) {
-                                        newCurrencyCode = currency.substring(currency.length() - 3);
-                                    }
-                                }
-                                CurrencyConverter.INSTANCE.setCurrencyUnit(CurrencyUnit.of(newCurrencyCode));
-                                CurrencyConverter.INSTANCE.setRate(last.getAmount());
+                ExchangeQuote chosenQuote = ExchangeRateService.chooseQuote(quotes);
+                if (chosenQuote != null) {
+                    log.debug("Exchange = " + chosenQuote.getExchangeName());
+
+                    // Put the exchange rate into the currency converter.
+                    if (isFirstExchange) {
+                        String newCurrencyCode = chosenQuote.getCurrency();
+                        if (ExchangeData.BITCOIN_CHARTS_EXCHANGE_NAME.equals(chosenQuote.getExchangeName())) {
+                            // Use only the last three characters - the
+                            // currency code.
+                            if (newCurrencyCode.length() >= 3) {
+                                newCurrencyCode = newCurrencyCode.substring(newCurrencyCode.length() - 3);
                             }
                         }
+                        CurrencyUnit newCurrencyUnit = CurrencyUnit.of(newCurrencyCode);
+                        BigDecimal currentRate = CurrencyConverter.INSTANCE.getRate();
+                        if (!newCurrencyUnit.equals(CurrencyConverter.INSTANCE.getCurrencyUnit()) || currentRate == null
+                                || currentRate.compareTo(chosenQuote.getLast().getAmount()) != 0) {
+                            CurrencyConverter.INSTANCE.setCurrencyUnit(newCurrencyUnit);
+                            CurrencyConverter.INSTANCE.setRate(chosenQuote.getLast().getAmount());
+                        }
+                        if (!isSimulated(chosenQuote.getExchangeName())) {
+                            HistoricalRateStore.INSTANCE.record(newCurrencyCode, new Date(chosenQuote.getFetchTime()),
+                                    chosenQuote.getLast().getAmount());
+                        }
                     }
                 }
 
-                // Fire exchange rate data changed - used by rest of MultiBit.
+                if (quotes.isEmpty()) {
+                    // Nothing was fetched so the prices may now be shown as stale.
+                    exchangeDataChanged = true;
+                } else if (cacheUpdated) {
+                    ExchangeRateCache.INSTANCE.save();
+                }
+            }
+
+            // Fire exchange rate data changed - used by rest of MultiBit.
+            // Polls that changed nothing do not refresh the views.
+            if (exchangeDataChanged || !hasFiredExchangeDataChanged) {
+                hasFiredExchangeDataChanged = true;
                 mainFrame.fireExchangeDataChanged();
             }
         } catch (Exception e) {
@@ -279,109 +224,77 @@ public class TickerTimerTask extends TimerTask {
         }
     }
 
-    public void createExchangeObjects(String newExchangeName) {
-        exchange = createExchange(newExchangeName);
-
-        if (exchange != null) {
-            // Interested in the public market data feed (no authentication).
-            marketDataService = exchange.getPollingMarketDataService();
-            log.debug("marketDataService = " + marketDataService);
-
-            // Get the list of available currencies.
-            exchangeSymbols = marketDataService.getExchangeSymbols();
-            log.debug("exchangeSymbols = " + exchangeSymbols);
-
-            if (exchangeSymbols != null) {
-                Collection<String> availableCurrencies = new java.util.TreeSet<String>();
-
-                for (int i = 0; i < exchangeSymbols.size(); i++) {
-                    String baseCurrency = exchangeSymbols.get(i).baseCurrency;
-                    String counterCurrency = exchangeSymbols.get(i).counterCurrency;
-
-                    if (ExchangeData.OPEN_EXCHANGE_RATES_EXCHANGE_NAME.equals(newExchangeName)) {
-                        if ("USD".equalsIgnoreCase(baseCurrency) && !"BTC".equalsIgnoreCase(counterCurrency)) {
-                            if (!"EEK".equalsIgnoreCase(counterCurrency) && !"CLF".equalsIgnoreCase(counterCurrency) 
-                             && !"JEP".equalsIgnoreCase(counterCurrency) && ! "SVC".equalsIgnoreCase(counterCurrency)) {
-                                availableCurrencies.add(counterCurrency);
-                            }
-                        }
-                        if ("USD".equalsIgnoreCase(counterCurrency) && !"BTC".equalsIgnoreCase(baseCurrency)) {
-                            if (!"EEK".equalsIgnoreCase(baseCurrency) && !"CLF".equalsIgnoreCase(baseCurrency) 
-                                    && !"JEP".equalsIgnoreCase(baseCurrency) && ! "SVC".equalsIgnoreCase(baseCurrency)) {
-                                availableCurrencies.add(baseCurrency);
-                            }
-                        }
-                    } else {
-                        if ("BTC".equalsIgnoreCase(baseCurrency)) {
-                            availableCurrencies.add(counterCurrency);
-                        }
-                        if ("BTC".equalsIgnoreCase(counterCurrency)) {
-                            availableCurrencies.add(baseCurrency);
-                        }
+    /**
+     * The exchanges tried when the primary exchange fails. Only the first row
+     * of the ticker feeds the CurrencyConverter so only it fails over.
+     */
+    private List<XChangeQuoteSource> getFailoverSources() {
+        if (failoverSources == null) {
+            failoverSources = new ArrayList<XChangeQuoteSource>();
+            // The simulator is used for offline testing so never fails over to a real exchange.
+            if (isFirstExchange && !ExchangeData.SIMULATOR_EXCHANGE_NAME.equals(shortExchangeName)
+                    && !Boolean.FALSE.toString().equals(
+                    controller.getModel().getUserPreference(ExchangeModel.TICKER_FAILOVER))) {
+                String openExchangeRatesApiCode = controller.getModel().getUserPreference(ExchangeModel.OPEN_EXCHANGE_RATES_API_CODE);
+                for (String exchangeName : ExchangeData.getAvailableExchanges()) {
+                    if (exchangeName.equals(shortExchangeName)) {
+                        continue;
                     }
+                    if (ExchangeData.OPEN_EXCHANGE_RATES_EXCHANGE_NAME.equals(exchangeName)
+                            && (openExchangeRatesApiCode == null || openExchangeRatesApiCode.trim().length() == 0)) {
+                        continue;
+                    }
+                    failoverSources.add(new XChangeQuoteSource(exchangeController, exchangeName));
                 }
-                ExchangeData.setAvailableCurrenciesForExchange(newExchangeName, availableCurrencies);
             }
         }
+        return failoverSources;
     }
 
     /**
-     * Create the exchange specified by the exchange short name
-     * 
-     * @param exchangeShortname The name of the exchange to create
+     * The time between polls, from the tickerRepeatRate user preference. Only
+     * the exchange simulator can be polled more often than once a minute.
      */
-    private Exchange createExchange(String exchangeShortname) {
-        log.debug("creating exchange from exchangeShortname  = " + exchangeShortname);
-        if (exchangeShortname == null) {
-            return null;
+    public static long getRepeatRate(Controller controller) {
+        String repeatRateText = controller.getModel().getUserPreference(ExchangeModel.TICKER_REPEAT_RATE);
+        if (repeatRateText == null || repeatRateText.trim().length() == 0) {
+            return DEFAULT_REPEAT_RATE;
         }
-
+        long repeatRate;
         try {
-            // Demonstrate the public market data service.
-            // Use the factory to get the exchange API using default settings.
-            String exchangeClassname = ExchangeData.convertExchangeShortNameToClassname(exchangeShortname);
-
-            if (exchangeClassname == null) {
-                return null;
-            }
+            repeatRate = Long.parseLong(repeatRateText.trim());
+        } catch (NumberFormatException nfe) {
+            log.error(nfe.getClass().getName() + " " + nfe.getMessage());
+            return DEFAULT_REPEAT_RATE;
+        }
+        boolean simulated = isSimulated(controller.getModel().getUserPreference(ExchangeModel.TICKER_FIRST_ROW_EXCHANGE));
+        return Math.max(repeatRate, simulated ? MINIMUM_SIMULATOR_REPEAT_RATE : MINIMUM_REPEAT_RATE);
+    }
 
-            Exchange exchangeToReturn;
-            if (ExchangeData.OPEN_EXCHANGE_RATES_EXCHANGE_NAME.equalsIgnoreCase(exchangeShortname)) {
-                ExchangeSpecification exchangeSpecification = new ExchangeSpecification(exchangeClassname);
-                exchangeSpecification.setPlainTextUri("http://openexchangerates.org");
-                exchangeSpecification
-                        .setApiKey(controller.getModel().getUserPreference(ExchangeModel.OPEN_EXCHANGE_RATES_API_CODE));
-                exchangeToReturn = ExchangeFactory.INSTANCE.createExchange(exchangeSpecification);
-            } else {
-                exchangeToReturn = ExchangeFactory.INSTANCE.createExchange(exchangeClassname);
-            }
-            
-            if (this.exchangeController.getModel().getExchangeData(shortExchangeName) == null) {
-                ExchangeData exchangeData = new ExchangeData();
-                exchangeData.setShortExchangeName(shortExchangeName);
-                this.exchangeController.getModel().getShortExchangeNameToExchangeMap().put(exchangeShortname, exchangeData);
-            }
+    /**
+     * @return true if the exchange is the simulator, whose made up rates must
+     *         not be cached or recorded as real ones
+     */
+    static boolean isSimulated(String shortExchangeName) {
+        return ExchangeData.SIMULATOR_EXCHANGE_NAME.equals(shortExchangeName);
+    }
 
-            return exchangeToReturn;
-        } catch (com.xeiam.xchange.ExchangeException e) {
-            // Probably xchange is not on classpath - ticker will not run
-            // but error should not spread out from here to rest of MultiBit.
-            log.error(e.getClass().getName() + " " + e.getMessage());
-        }catch (NoClassDefFoundError e) {
-            // Probably xchange is not on classpath - ticker will not run
-            // but error should not spread out from here to rest of MultiBit.
-            log.error(e.getClass().getName() + " " + e.getMessage());
-        } catch (NullPointerException e) {
-            log.error(e.getClass().getName() + " " + e.getMessage());
+    /**
+     * Create the exchange objects for the exchange, which records the currencies it trades.
+     */
+    public void createExchangeObjects(String newExchangeName) {
+        XChangeQuoteSource source = new XChangeQuoteSource(exchangeController, newExchangeName);
+        source.createExchangeObjects();
+        if (primarySource == null || newExchangeName == null || newExchangeName.equals(shortExchangeName)) {
+            primarySource = source;
         }
-        return null;
     }
 
     /**
      * Get the exchange used by this TickerTimerTask.
      */
     public Exchange getExchange() {
-        return exchange;
+        return primarySource == null ? null : primarySource.getExchange();
     }
 
     public boolean isFirstExchange() {
@@ -0,0 +1,335 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.exchange;
+
+import com.xeiam.xchange.Exchange;
+import com.xeiam.xchange.ExchangeFactory;
+import com.xeiam.xchange.ExchangeSpecification;
+import com.xeiam.xchange.currency.Currencies;
+import com.xeiam.xchange.currency.CurrencyPair;
+import com.xeiam.xchange.dto.marketdata.Ticker;
+import com.xeiam.xchange.service.polling.PollingMarketDataService;
+import org.joda.money.BigMoney;
+import org.multibit.controller.exchange.ExchangeController;
+import org.multibit.model.exchange.ExchangeData;
+import org.multibit.model.exchange.ExchangeModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Fetches quotes from an exchange through its XChange polling market data service.
+ */
+public class XChangeQuoteSource implements ExchangeQuoteSource {
+
+    private static Logger log = LoggerFactory.getLogger(XChangeQuoteSource.class);
+
+    private final ExchangeController exchangeController;
+    private final String shortExchangeName;
+
+    private Exchange exchange;
+    private PollingMarketDataService marketDataService;
+    private List<CurrencyPair> exchangeSymbols;
+
+    /**
+     * The exchange objects are created by createExchangeObjects or by the first fetch.
+     */
+    public XChangeQuoteSource(ExchangeController exchangeController, String shortExchangeName) {
+        this.exchangeController = exchangeController;
+        this.shortExchangeName = shortExchangeName;
+    }
+
+    @Override
+    public String getExchangeName() {
+        return shortExchangeName;
+    }
+
+    public synchronized Exchange getExchange() {
+        return exchange;
+    }
+
+    /**
+     * @return true if the market data service has been created
+     */
+    public synchronized boolean isAvailable() {
+        return marketDataService != null;
+    }
+
+    @Override
+    public ExchangeQuote fetchQuote(String currency) throws Exception {
+        final PollingMarketDataService marketDataService;
+        List<CurrencyPair> exchangeSymbols;
+        synchronized (this) {
+            if (marketDataService == null) {
+                createExchangeObjects();
+            }
+            marketDataService = this.marketDataService;
+            exchangeSymbols = this.exchangeSymbols;
+        }
+        if (marketDataService == null || exchangeSymbols == null) {
+            return null;
+        }
+
+        // Get symbol ticker if it is one of the currencies we are interested in.
+        // (This is to save hitting the server for every currency).
+        boolean getItFromTheServer = false;
+        // Is the amount quoted the reciprocal of number of currency units per BTC
+        boolean invertedRates = false;
+
+        // Is the currency pair the other way round ie
+        // base currency = other, counter currency = BTC
+        boolean reverseRates = ExchangeData.doesExchangeUseReverseRates(shortExchangeName);
+        CurrencyPair currencyPairToUse = null;
+
+        for (CurrencyPair loopSymbolPair : exchangeSymbols) {
+            if (ExchangeData.OPEN_EXCHANGE_RATES_EXCHANGE_NAME.equals(shortExchangeName)) {
+                if (loopSymbolPair.baseCurrency.equals(currency)) {
+                    getItFromTheServer = true;
+                    invertedRates = true;
+                    currencyPairToUse = loopSymbolPair;
+                    break;
+                }
+            } else {
+                if ("BTC".equals(loopSymbolPair.baseCurrency) && loopSymbolPair.counterCurrency.equals(currency)) {
+                    getItFromTheServer = true;
+                    currencyPairToUse = loopSymbolPair;
+                    break;
+                }
+                if ("BTC".equals(loopSymbolPair.counterCurrency) && loopSymbolPair.baseCurrency.equals(currency)) {
+                    getItFromTheServer = true;
+                    invertedRates = true;
+                    currencyPairToUse = loopSymbolPair;
+                    break;
+                }
+            }
+        }
+
+        if (!getItFromTheServer) {
+            return null;
+        }
+
+        BigMoney last = null;
+        BigMoney bid = null;
+        BigMoney ask = null;
+        BigDecimal volume = null;
+        String quoteCurrency = currency;
+
+        if (ExchangeData.OPEN_EXCHANGE_RATES_EXCHANGE_NAME.equals(shortExchangeName)) {
+            // Ask for the BTC/USD rate at the same time as the currency rate.
+            Future<Ticker> btcUsdTickerFuture = ExchangeRateService.INSTANCE.submit(new Callable<Ticker>() {
+                @Override
+                public Ticker call() throws Exception {
+                    log.debug("Getting btcUsdTicker for BTC/USD");
+                    return marketDataService.getTicker(Currencies.BTC, Currencies.USD);
+                }
+            });
+            Ticker loopTicker;
+            Ticker btcUsdTicker;
+            try {
+                log.debug("Getting loopTicker for " + currency + " USD");
+                loopTicker = marketDataService.getTicker(currency, "USD");
+                btcUsdTicker = btcUsdTickerFuture.get();
+            } finally {
+                btcUsdTickerFuture.cancel(true);
+            }
+
+            BigMoney usdBtcRateMoney = btcUsdTicker.getLast();
+            if (usdBtcRateMoney != null) {
+                BigDecimal usdBtcRate = usdBtcRateMoney.getAmount();
+                if (loopTicker.getLast() != null) {
+                    last = loopTicker.getLast().dividedBy(usdBtcRate, RoundingMode.HALF_EVEN);
+                }
+                if (loopTicker.getBid() != null) {
+                    bid = loopTicker.getBid().dividedBy(usdBtcRate, RoundingMode.HALF_EVEN);
+                }
+                if (loopTicker.getAsk() != null) {
+                    ask = loopTicker.getAsk().dividedBy(usdBtcRate, RoundingMode.HALF_EVEN);
+                }
+            }
+        } else {
+            log.debug("Getting ticker for " + currencyPairToUse.baseCurrency + " " + currencyPairToUse.counterCurrency);
+            Ticker loopTicker = marketDataService.getTicker(currencyPairToUse.baseCurrency, currencyPairToUse.counterCurrency);
+
+            log.debug("Got ticker for " + currencyPairToUse.baseCurrency + " " + currencyPairToUse.counterCurrency);
+            last = loopTicker.getLast();
+            bid = loopTicker.getBid();
+            ask = loopTicker.getAsk();
+            volume = loopTicker.getVolume();
+
+            if (invertedRates && !reverseRates) {
+                last = reciprocal(last);
+                bid = reciprocal(bid);
+                ask = reciprocal(ask);
+            }
+
+            if (invertedRates) {
+                if (reverseRates) {
+                    // USD/ BTC, reciprocal rate
+                    quoteCurrency = currencyPairToUse.baseCurrency;
+                } else {
+                    // BTC/ USD, reciprocal rate
+                    quoteCurrency = currencyPairToUse.counterCurrency;
+                }
+            } else {
+                if (reverseRates) {
+                    // USD/ BTC, normal rate
+                    quoteCurrency = currencyPairToUse.baseCurrency;
+                } else {
+                    // BTC/ USD, normal rate
+                    quoteCurrency = currencyPairToUse.counterCurrency;
+                }
+            }
+        }
+
+        return new ExchangeQuote(shortExchangeName, quoteCurrency, last, bid, ask, volume, System.currentTimeMillis());
+    }
+
+    private static BigMoney reciprocal(BigMoney money) {
+        if (money == null || money.getAmount().signum() == 0) {
+            return null;
+        }
+        return BigMoney.of(money.getCurrencyUnit(), BigDecimal.ONE.divide(money.getAmount(),
+                TickerTimerTask.NUMBER_OF_SIGNIFICANT_DIGITS, BigDecimal.ROUND_HALF_EVEN));
+    }
+
+    /**
+     * Create the exchange and record the currencies it trades in ExchangeData.
+     */
+    public synchronized void createExchangeObjects() {
+        if (ExchangeData.SIMULATOR_EXCHANGE_NAME.equals(shortExchangeName)) {
+            exchange = null;
+            marketDataService = createSimulatedMarketDataService();
+        } else {
+            exchange = createExchange();
+            // Interested in the public market data feed (no authentication).
+            marketDataService = exchange == null ? null : exchange.getPollingMarketDataService();
+        }
+
+        if (marketDataService != null) {
+            log.debug("marketDataService = " + marketDataService);
+
+            // Get the list of available currencies.
+            exchangeSymbols = marketDataService.getExchangeSymbols();
+            log.debug("exchangeSymbols = " + exchangeSymbols);
+
+            if (exchangeSymbols != null) {
+                Collection<String> availableCurrencies = new java.util.TreeSet<String>();
+
+                for (int i = 0; i < exchangeSymbols.size(); i++) {
+                    String baseCurrency = exchangeSymbols.get(i).baseCurrency;
+                    String counterCurrency = exchangeSymbols.get(i).counterCurrency;
+
+                    if (ExchangeData.OPEN_EXCHANGE_RATES_EXCHANGE_NAME.equals(shortExchangeName)) {
+                        if ("USD".equalsIgnoreCase(baseCurrency) && !"BTC".equalsIgnoreCase(counterCurrency)) {
+                            if (!"EEK".equalsIgnoreCase(counterCurrency) && !"CLF".equalsIgnoreCase(counterCurrency)
+                             && !"JEP".equalsIgnoreCase(counterCurrency) && ! "SVC".equalsIgnoreCase(counterCurrency)) {
+                                availableCurrencies.add(counterCurrency);
+                            }
+                        }
+                        if ("USD".equalsIgnoreCase(counterCurrency) && !"BTC".equalsIgnoreCase(baseCurrency)) {
+                            if (!"EEK".equalsIgnoreCase(baseCurrency) && !"CLF".equalsIgnoreCase(baseCurrency)
+                                    && !"JEP".equalsIgnoreCase(baseCurrency) && ! "SVC".equalsIgnoreCase(baseCurrency)) {
+                                availableCurrencies.add(baseCurrency);
+                            }
+                        }
+                    } else {
+                        if ("BTC".equalsIgnoreCase(baseCurrency)) {
+                            availableCurrencies.add(counterCurrency);
+                        }
+                        if ("BTC".equalsIgnoreCase(counterCurrency)) {
+                            availableCurrencies.add(baseCurrency);
+                        }
+                    }
+                }
+                ExchangeData.setAvailableCurrenciesForExchange(shortExchangeName, availableCurrencies);
+            }
+        }
+    }
+
+    /**
+     * Create the offline stand-in for an exchange from the exchangeSimulator user preferences.
+     */
+    private PollingMarketDataService createSimulatedMarketDataService() {
+        try {
+            PollingMarketDataService simulatedMarketDataService = ExchangeSimulator.create(exchangeController.getModel())
+                    .createMarketDataService();
+            addExchangeData();
+            return simulatedMarketDataService;
+        } catch (IOException ioe) {
+            log.error(ioe.getClass().getName() + " " + ioe.getMessage());
+        } catch (IllegalArgumentException iae) {
+            log.error(iae.getClass().getName() + " " + iae.getMessage());
+        }
+        return null;
+    }
+
+    private void addExchangeData() {
+        exchangeController.getModel().getOrCreateExchangeData(shortExchangeName);
+    }
+
+    /**
+     * Create the exchange specified by the exchange short name
+     */
+    private Exchange createExchange() {
+        log.debug("creating exchange from exchangeShortname  = " + shortExchangeName);
+        if (shortExchangeName == null) {
+            return null;
+        }
+
+        try {
+            // Demonstrate the public market data service.
+            // Use the factory to get the exchange API using default settings.
+            String exchangeClassname = ExchangeData.convertExchangeShortNameToClassname(shortExchangeName);
+
+            if (exchangeClassname == null) {
+                return null;
+            }
+
+            Exchange exchangeToReturn;
+            if (ExchangeData.OPEN_EXCHANGE_RATES_EXCHANGE_NAME.equalsIgnoreCase(shortExchangeName)) {
+                ExchangeSpecification exchangeSpecification = new ExchangeSpecification(exchangeClassname);
+                exchangeSpecification.setPlainTextUri("http://openexchangerates.org");
+                exchangeSpecification.setApiKey(exchangeController.getModel().getUserPreference(
+                        ExchangeModel.OPEN_EXCHANGE_RATES_API_CODE));
+                exchangeToReturn = ExchangeFactory.INSTANCE.createExchange(exchangeSpecification);
+            } else {
+                exchangeToReturn = ExchangeFactory.INSTANCE.createExchange(exchangeClassname);
+            }
+
+            addExchangeData();
+
+            return exchangeToReturn;
+        } catch (com.xeiam.xchange.ExchangeException e) {
+            // Probably xchange is not on classpath - ticker will not run
+            // but error should not spread out from here to rest of MultiBit.
+            log.error(e.getClass().getName() + " " + e.getMessage());
+        } catch (NoClassDefFoundError e) {
+            // Probably xchange is not on classpath - ticker will not run
+            // but error should not spread out from here to rest of MultiBit.
+            log.error(e.getClass().getName() + " " + e.getMessage());
+        } catch (NullPointerException e) {
+            log.error(e.getClass().getName() + " " + e.getMessage());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,302 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.file;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Append only storage of serialised filtered blocks and their matched
+ * transactions, indexed by block height.
+ *
+ * <p>
+ * Three files share a filename prefix:
+ * <ul>
+ * <li>the data file holds the records: height, filter id, block bytes and the
+ * matched transaction bytes</li>
+ * <li>the index file holds a fixed size entry per record: height, filter id
+ * and the offset of the record in the data file</li>
+ * <li>the filters file holds the serialised bloom filters the blocks were
+ * matched against</li>
+ * </ul>
+ *
+ * <p>
+ * A height that is written again replaces the earlier record in the index.
+ * The index is read into memory when the archive is opened, and an index
+ * entry or filter that was only partly written, by a crash, is cut off.
+ */
+public class BlockArchiveFile {
+
+    public static final String DATA_SUFFIX = ".blockarchive";
+    public static final String INDEX_SUFFIX = ".blockarchive-index";
+    public static final String FILTERS_SUFFIX = ".blockarchive-filters";
+
+    public static final int UNKNOWN_FILTER_ID = -1;
+
+    private static final int INDEX_ENTRY_LENGTH = 16;
+
+    // The filter id and length before each filter.
+    private static final int FILTER_HEADER_LENGTH = 8;
+
+    private final String filenamePrefix;
+
+    private RandomAccessFile dataFile;
+    private DataOutputStream indexStream;
+    private DataOutputStream filtersStream;
+
+    private final TreeMap<Integer, IndexEntry> index = new TreeMap<Integer, IndexEntry>();
+
+    private final Map<Integer, byte[]> filters = new HashMap<Integer, byte[]>();
+
+    private int nextFilterId = 0;
+
+    public BlockArchiveFile(String filenamePrefix) {
+        this.filenamePrefix = filenamePrefix;
+    }
+
+    /**
+     * Open the archive, creating the files if they do not exist, and read the index and filters.
+     */
+    public synchronized void open() throws IOException {
+        File indexFile = new File(filenamePrefix + INDEX_SUFFIX);
+        File filtersFile = new File(filenamePrefix + FILTERS_SUFFIX);
+
+        dataFile = new RandomAccessFile(filenamePrefix + DATA_SUFFIX, "rw");
+        long dataLength = dataFile.length();
+
+        if (indexFile.exists()) {
+            long entries = indexFile.length() / INDEX_ENTRY_LENGTH;
+            DataInputStream indexInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            try {
+                for (long i = 0; i < entries; i++) {
+                    int height = indexInputStream.readInt();
+                    int filterId = indexInputStream.readInt();
+                    long offset = indexInputStream.readLong();
+                    // Ignore entries for records that did not make it to disk.
+                    if (offset < dataLength) {
+                        index.put(height, new IndexEntry(filterId, offset));
+                    }
+                }
+            } finally {
+                indexInputStream.close();
+            }
+            // Cut off an entry that was only partly written so later entries are appended on an entry boundary.
+            truncate(indexFile, entries * INDEX_ENTRY_LENGTH);
+        }
+
+        if (filtersFile.exists()) {
+            long filtersLength = filtersFile.length();
+            long completeLength = 0;
+            DataInputStream filtersInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(filtersFile)));
+            try {
+                while (completeLength + FILTER_HEADER_LENGTH <= filtersLength) {
+                    int filterId = filtersInputStream.readInt();
+                    int filterLength = filtersInputStream.readInt();
+                    if (filterLength < 0 || filterLength > filtersLength - completeLength - FILTER_HEADER_LENGTH) {
+                        // A filter that was only partly written.
+                        break;
+                    }
+                    byte[] filter = new byte[filterLength];
+                    filtersInputStream.readFully(filter);
+                    filters.put(filterId, filter);
+                    nextFilterId = Math.max(nextFilterId, filterId + 1);
+                    completeLength += FILTER_HEADER_LENGTH + filterLength;
+                }
+            } finally {
+                filtersInputStream.close();
+            }
+            truncate(filtersFile, completeLength);
+        }
+
+        indexStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true)));
+        filtersStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filtersFile, true)));
+    }
+
+    /**
+     * Cut the file back to the length if it is longer.
+     */
+    private static void truncate(File file, long length) throws IOException {
+        if (file.length() <= length) {
+            return;
+        }
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(length);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Store a bloom filter that later records are matched against.
+     *
+     * @return the id of the filter
+     */
+    public synchronized int addFilter(byte[] filter) throws IOException {
+        int filterId = nextFilterId++;
+        filters.put(filterId, filter);
+        filtersStream.writeInt(filterId);
+        filtersStream.writeInt(filter.length);
+        filtersStream.write(filter);
+        filtersStream.flush();
+        return filterId;
+    }
+
+    public synchronized byte[] getFilter(int filterId) {
+        return filters.get(filterId);
+    }
+
+    /**
+     * Append a block and its matched transactions.
+     */
+    public synchronized void append(int height, int filterId, byte[] block, List<byte[]> transactions) throws IOException {
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(block.length + 64);
+        DataOutputStream record = new DataOutputStream(recordBytes);
+        record.writeInt(height);
+        record.writeInt(filterId);
+        record.writeInt(block.length);
+        record.write(block);
+        record.writeInt(transactions.size());
+        for (byte[] transaction : transactions) {
+            record.writeInt(transaction.length);
+            record.write(transaction);
+        }
+        record.flush();
+
+        long offset = dataFile.length();
+        dataFile.seek(offset);
+        dataFile.write(recordBytes.toByteArray());
+
+        indexStream.writeInt(height);
+        indexStream.writeInt(filterId);
+        indexStream.writeLong(offset);
+        indexStream.flush();
+
+        index.put(height, new IndexEntry(filterId, offset));
+    }
+
+    /**
+     * Read the record at a height.
+     *
+     * @return the record or null if the height is not in the archive
+     */
+    public synchronized Record read(int height) throws IOException {
+        IndexEntry entry = index.get(height);
+        if (entry == null) {
+            return null;
+        }
+        dataFile.seek(entry.offset);
+        int storedHeight = dataFile.readInt();
+        int filterId = dataFile.readInt();
+        if (storedHeight != height) {
+            throw new IOException("Block archive index is corrupt at height " + height);
+        }
+        byte[] block = new byte[dataFile.readInt()];
+        dataFile.readFully(block);
+
+        int numberOfTransactions = dataFile.readInt();
+        List<byte[]> transactions = new ArrayList<byte[]>(numberOfTransactions);
+        for (int i = 0; i < numberOfTransactions; i++) {
+            byte[] transaction = new byte[dataFile.readInt()];
+            dataFile.readFully(transaction);
+            transactions.add(transaction);
+        }
+        return new Record(height, filterId, block, transactions);
+    }
+
+    /**
+     * The filter id of the record at a height.
+     *
+     * @return the filter id or UNKNOWN_FILTER_ID if the height is not in the archive
+     */
+    public synchronized int getFilterId(int height) {
+        IndexEntry entry = index.get(height);
+        return entry == null ? UNKNOWN_FILTER_ID : entry.filterId;
+    }
+
+    public synchronized boolean contains(int height) {
+        return index.containsKey(height);
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    public synchronized void close() throws IOException {
+        try {
+            if (indexStream != null) {
+                indexStream.close();
+            }
+            if (filtersStream != null) {
+                filtersStream.close();
+            }
+        } finally {
+            if (dataFile != null) {
+                dataFile.close();
+            }
+            indexStream = null;
+            filtersStream = null;
+            dataFile = null;
+        }
+    }
+
+    private static class IndexEntry {
+        final int filterId;
+        final long offset;
+
+        IndexEntry(int filterId, long offset) {
+            this.filterId = filterId;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * A block and its matched transactions as stored in the archive.
+     */
+    public static class Record {
+        private final int height;
+        private final int filterId;
+        private final byte[] block;
+        private final List<byte[]> transactions;
+
+        public Record(int height, int filterId, byte[] block, List<byte[]> transactions) {
+            this.height = height;
+            this.filterId = filterId;
+            this.block = block;
+            this.transactions = transactions;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getFilterId() {
+            return filterId;
+        }
+
+        public byte[] getBlock() {
+            return block;
+        }
+
+        public List<byte[]> getTransactions() {
+            return transactions;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.file;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.List;
+
+import org.multibit.model.bitcoin.WalletData;
+import org.multibit.model.bitcoin.WalletTableData;
+
+/**
+ * Writes the transactions in a compact binary format, a block of rows at a
+ * time with each column stored contiguously.
+ *
+ * <pre>
+ * magic "MBTX", int version
+ * int number of wallets, then each wallet filename (modified UTF-8)
+ * blocks, each:
+ *   int number of rows (0 ends the file)
+ *   dates:          var long per row, the first as millis and the rest as the difference from the row before (0 if unknown)
+ *   wallet indices: var long per row
+ *   credits:        var long per row, in satoshi
+ *   debits:         var long per row, in satoshi
+ *   transaction ids: 32 bytes per row
+ *   descriptions:   modified UTF-8 per row
+ * </pre>
+ *
+ * Var longs are zig-zag encoded 7 bits to a byte, least significant first.
+ */
+public class ColumnarTransactionRowWriter implements TransactionRowWriter {
+
+    public static final byte[] MAGIC = new byte[] { 'M', 'B', 'T', 'X' };
+
+    public static final int VERSION = 1;
+
+    public static final int ROWS_PER_BLOCK = 4096;
+
+    private static final int TRANSACTION_ID_LENGTH = 32;
+
+    private final DataOutputStream outputStream;
+
+    private final long[] dates = new long[ROWS_PER_BLOCK];
+    private final long[] walletIndices = new long[ROWS_PER_BLOCK];
+    private final long[] credits = new long[ROWS_PER_BLOCK];
+    private final long[] debits = new long[ROWS_PER_BLOCK];
+    private final byte[][] transactionIds = new byte[ROWS_PER_BLOCK][];
+    private final String[] descriptions = new String[ROWS_PER_BLOCK];
+    private int numberOfRows = 0;
+
+    public ColumnarTransactionRowWriter(OutputStream outputStream) {
+        this.outputStream = new DataOutputStream(outputStream);
+    }
+
+    @Override
+    public void writeHeader(List<WalletData> perWalletModelDataList) throws IOException {
+        outputStream.write(MAGIC);
+        outputStream.writeInt(VERSION);
+        outputStream.writeInt(perWalletModelDataList.size());
+        for (WalletData perWalletModelData : perWalletModelDataList) {
+            String walletFilename = perWalletModelData.getWalletFilename();
+            outputStream.writeUTF(walletFilename == null ? "" : walletFilename);
+        }
+    }
+
+    @Override
+    public void writeRow(int walletIndex, WalletTableData walletTableData) throws IOException {
+        dates[numberOfRows] = walletTableData.getDate() == null ? 0 : walletTableData.getDate().getTime();
+        walletIndices[numberOfRows] = walletIndex;
+        credits[numberOfRows] = toSatoshi(walletTableData.getCredit());
+        debits[numberOfRows] = toSatoshi(walletTableData.getDebit());
+        transactionIds[numberOfRows] = walletTableData.getTransaction() == null ? new byte[TRANSACTION_ID_LENGTH] : walletTableData
+                .getTransaction().getHash().getBytes();
+        descriptions[numberOfRows] = walletTableData.getDescription() == null ? "" : walletTableData.getDescription();
+        numberOfRows++;
+
+        if (numberOfRows == ROWS_PER_BLOCK) {
+            writeBlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (numberOfRows > 0) {
+                writeBlock();
+            }
+            outputStream.writeInt(0);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        outputStream.writeInt(numberOfRows);
+
+        long previousDate = 0;
+        for (int i = 0; i < numberOfRows; i++) {
+            writeVarLong(dates[i] - previousDate);
+            previousDate = dates[i];
+        }
+        for (int i = 0; i < numberOfRows; i++) {
+            writeVarLong(walletIndices[i]);
+        }
+        for (int i = 0; i < numberOfRows; i++) {
+            writeVarLong(credits[i]);
+        }
+        for (int i = 0; i < numberOfRows; i++) {
+            writeVarLong(debits[i]);
+        }
+        for (int i = 0; i < numberOfRows; i++) {
+            outputStream.write(transactionIds[i], 0, TRANSACTION_ID_LENGTH);
+        }
+        for (int i = 0; i < numberOfRows; i++) {
+            outputStream.writeUTF(descriptions[i]);
+            transactionIds[i] = null;
+            descriptions[i] = null;
+        }
+        numberOfRows = 0;
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        long zigZag = (value << 1) ^ (value >> 63);
+        while ((zigZag & ~0x7FL) != 0) {
+            outputStream.write((int) ((zigZag & 0x7F) | 0x80));
+            zigZag >>>= 7;
+        }
+        outputStream.write((int) zigZag);
+    }
+
+    private static long toSatoshi(BigInteger amount) {
+        return amount == null ? 0 : amount.longValue();
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.file;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import org.multibit.controller.bitcoin.BitcoinController;
+import org.multibit.model.bitcoin.WalletData;
+import org.multibit.model.bitcoin.WalletTableData;
+
+import com.googlecode.jcsv.CSVStrategy;
+import com.googlecode.jcsv.writer.CSVWriter;
+import com.googlecode.jcsv.writer.internal.CSVWriterBuilder;
+
+/**
+ * Writes the transactions as the CSV columns shown in the transactions view.
+ */
+public class CsvTransactionRowWriter implements TransactionRowWriter {
+
+    private final Writer writer;
+
+    private final BitcoinController bitcoinController;
+
+    private CSVWriter<WalletTableData> csvWriter;
+
+    public CsvTransactionRowWriter(BitcoinController bitcoinController, Writer writer) {
+        this.bitcoinController = bitcoinController;
+        this.writer = writer;
+    }
+
+    @Override
+    public void writeHeader(List<WalletData> perWalletModelDataList) throws IOException {
+        WalletTableDataHeaderEntryConverter headerConverter = new WalletTableDataHeaderEntryConverter();
+        headerConverter.setBitcoinController(bitcoinController);
+        CSVWriter<WalletTableData> csvHeaderWriter = new CSVWriterBuilder<WalletTableData>(writer).strategy(CSVStrategy.UK_DEFAULT)
+                .entryConverter(headerConverter).build();
+        csvHeaderWriter.write(new WalletTableData(null));
+
+        WalletTableDataEntryConverter converter = new WalletTableDataEntryConverter();
+        converter.setBitcoinController(bitcoinController);
+        csvWriter = new CSVWriterBuilder<WalletTableData>(writer).strategy(CSVStrategy.UK_DEFAULT).entryConverter(converter).build();
+    }
+
+    @Override
+    public void writeRow(int walletIndex, WalletTableData walletTableData) throws IOException {
+        csvWriter.write(walletTableData);
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
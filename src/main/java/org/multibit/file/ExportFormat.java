@@ -0,0 +1,87 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.file;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Locale;
+
+import org.multibit.controller.bitcoin.BitcoinController;
+import org.multibit.model.bitcoin.BitcoinModel;
+
+/**
+ * The file formats transactions can be exported in, chosen by file extension.
+ * Each creates a TransactionRowWriter for the export file. The CSV export
+ * appends to the file as it always has. The other formats replace it, so that
+ * the file holds a single export that can be read back.
+ */
+public enum ExportFormat {
+    CSV(BitcoinModel.CSV_FILE_EXTENSION) {
+        @Override
+        public TransactionRowWriter createRowWriter(BitcoinController bitcoinController, File exportFile) throws IOException {
+            return new CsvTransactionRowWriter(bitcoinController, new BufferedWriter(Channels.newWriter(
+                    new FileOutputStream(exportFile, true).getChannel(), "UTF-8"), BUFFER_SIZE));
+        }
+    },
+
+    JSON_LINES("jsonl") {
+        @Override
+        public TransactionRowWriter createRowWriter(BitcoinController bitcoinController, File exportFile) throws IOException {
+            return new JsonLinesTransactionRowWriter(new BufferedWriter(Channels.newWriter(
+                    new FileOutputStream(exportFile).getChannel(), "UTF-8"), BUFFER_SIZE));
+        }
+    },
+
+    COLUMNAR("mbtx") {
+        @Override
+        public TransactionRowWriter createRowWriter(BitcoinController bitcoinController, File exportFile) throws IOException {
+            return new ColumnarTransactionRowWriter(new BufferedOutputStream(new FileOutputStream(exportFile), BUFFER_SIZE));
+        }
+    };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String fileExtension;
+
+    private ExportFormat(String fileExtension) {
+        this.fileExtension = fileExtension;
+    }
+
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+    public abstract TransactionRowWriter createRowWriter(BitcoinController bitcoinController, File exportFile) throws IOException;
+
+    /**
+     * Get the format for an export filename, CSV if the extension is not recognised.
+     */
+    public static ExportFormat forFilename(String filename) {
+        if (filename != null) {
+            String lowerCaseFilename = filename.toLowerCase(Locale.ENGLISH);
+            for (ExportFormat exportFormat : values()) {
+                if (lowerCaseFilename.endsWith("." + exportFormat.fileExtension)) {
+                    return exportFormat;
+                }
+            }
+        }
+        return CSV;
+    }
+}
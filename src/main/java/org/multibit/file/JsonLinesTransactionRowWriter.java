@@ -0,0 +1,90 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.file;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.multibit.model.bitcoin.WalletData;
+import org.multibit.model.bitcoin.WalletTableData;
+import org.multibit.utils.JsonEncoder;
+
+/**
+ * Writes each transaction as a JSON object on its own line, for loading into
+ * other tools. Dates are ISO 8601 in UTC and amounts are in satoshi:
+ *
+ * <pre>
+ * {"date":"2013-07-29T10:23:00Z","wallet":"protobuf1.wallet","description":"...","credit":0,"debit":1500000,"transactionId":"..."}
+ * </pre>
+ */
+public class JsonLinesTransactionRowWriter implements TransactionRowWriter {
+
+    private final Writer writer;
+
+    private final DateFormat dateFormatter;
+
+    private List<String> walletNames = new ArrayList<String>();
+
+    public JsonLinesTransactionRowWriter(Writer writer) {
+        this.writer = writer;
+        dateFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        dateFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    @Override
+    public void writeHeader(List<WalletData> perWalletModelDataList) throws IOException {
+        walletNames = new ArrayList<String>();
+        for (WalletData perWalletModelData : perWalletModelDataList) {
+            walletNames.add(perWalletModelData.getWalletFilename());
+        }
+    }
+
+    @Override
+    public void writeRow(int walletIndex, WalletTableData walletTableData) throws IOException {
+        StringBuilder line = new StringBuilder(256);
+        line.append("{\"date\":");
+        if (walletTableData.getDate() == null || walletTableData.getDate().getTime() == 0) {
+            line.append("null");
+        } else {
+            JsonEncoder.appendString(line, dateFormatter.format(walletTableData.getDate()));
+        }
+        line.append(",\"wallet\":");
+        JsonEncoder.appendString(line, walletIndex < walletNames.size() ? walletNames.get(walletIndex) : null);
+        line.append(",\"description\":");
+        JsonEncoder.appendString(line, walletTableData.getDescription());
+        line.append(",\"credit\":").append(toSatoshi(walletTableData.getCredit()));
+        line.append(",\"debit\":").append(toSatoshi(walletTableData.getDebit()));
+        line.append(",\"transactionId\":");
+        JsonEncoder.appendString(line, walletTableData.getTransaction() == null ? null : walletTableData.getTransaction().getHashAsString());
+        line.append("}\n");
+        writer.write(line.toString());
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private static String toSatoshi(BigInteger amount) {
+        return amount == null ? "0" : amount.toString();
+    }
+}
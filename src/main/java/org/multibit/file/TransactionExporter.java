@@ -0,0 +1,334 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.file;
+
+import com.google.bitcoin.core.Transaction;
+import com.google.bitcoin.core.Wallet;
+import org.multibit.controller.bitcoin.BitcoinController;
+import org.multibit.model.bitcoin.WalletData;
+import org.multibit.model.bitcoin.WalletTableData;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Exports the transactions of one or more wallets, most recent first.
+ *
+ * <p>
+ * Only an index of the transaction dates is held and sorted, and the date
+ * range is applied to the index so rows outside it are never created. Each
+ * wallet's rows are created on their own thread and the wallets are merged by
+ * date as the rows are written, so memory use does not grow with the number
+ * of rows and the file fills as the export proceeds. An export can be
+ * cancelled from another thread.
+ */
+public class TransactionExporter {
+
+    /**
+     * Receives the progress of an export.
+     */
+    public interface ProgressListener {
+        /**
+         * @param rowsWritten
+         *            the number of transactions written so far
+         * @param numberOfRows
+         *            the number of transactions being exported
+         */
+        public void exportProgress(int rowsWritten, int numberOfRows);
+    }
+
+    /**
+     * The number of rows written between progress reports.
+     */
+    private static final int PROGRESS_INTERVAL = 1000;
+
+    /**
+     * The most rows each wallet can have created ahead of the writer.
+     */
+    private static final int ROWS_AHEAD_PER_WALLET = 256;
+
+    /**
+     * Sort by date descending. Transactions with no date come first.
+     */
+    private static final Comparator<IndexEntry> BY_DATE_DESCENDING = new Comparator<IndexEntry>() {
+        @Override
+        public int compare(IndexEntry o1, IndexEntry o2) {
+            if (o1.time == 0) {
+                return o2.time == 0 ? o1.walletIndex - o2.walletIndex : -1;
+            }
+            if (o2.time == 0) {
+                return 1;
+            }
+            if (o1.time != o2.time) {
+                return o1.time > o2.time ? -1 : 1;
+            }
+            return o1.walletIndex - o2.walletIndex;
+        }
+    };
+
+    private final BitcoinController bitcoinController;
+
+    private volatile boolean cancelled = false;
+
+    public TransactionExporter(BitcoinController bitcoinController) {
+        this.bitcoinController = bitcoinController;
+    }
+
+    /**
+     * Stop the export at the next row.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Export all the transactions of a wallet, appending to the file in the format matching its extension.
+     *
+     * @return false if the export was cancelled before all the rows were written
+     */
+    public boolean export(WalletData walletData, File exportFile, ProgressListener progressListener) throws IOException {
+        List<WalletData> perWalletModelDataList = new ArrayList<WalletData>();
+        if (walletData != null) {
+            perWalletModelDataList.add(walletData);
+        }
+        TransactionRowWriter rowWriter = ExportFormat.forFilename(exportFile.getName()).createRowWriter(bitcoinController, exportFile);
+        return export(perWalletModelDataList, rowWriter, null, null, progressListener);
+    }
+
+    /**
+     * Export the transactions of several wallets in a date range, merged by date.
+     *
+     * @param perWalletModelDataList
+     *            the wallets to export
+     * @param rowWriter
+     *            the format to write, closed at the end of the export
+     * @param fromDate
+     *            the earliest date included, or null for no limit
+     * @param toDate
+     *            the date before which transactions are included, or null for no limit
+     * @param progressListener
+     *            told of the progress, or null
+     * @return false if the export was cancelled before all the rows were written
+     */
+    public boolean export(List<WalletData> perWalletModelDataList, TransactionRowWriter rowWriter, Date fromDate, Date toDate,
+            ProgressListener progressListener) throws IOException {
+        final int numberOfWallets = perWalletModelDataList.size();
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1,
+                Math.min(numberOfWallets, Runtime.getRuntime().availableProcessors())));
+        try {
+            rowWriter.writeHeader(perWalletModelDataList);
+
+            // Index the wallets in parallel.
+            List<Future<List<IndexEntry>>> indexFutures = new ArrayList<Future<List<IndexEntry>>>();
+            for (int walletIndex = 0; walletIndex < numberOfWallets; walletIndex++) {
+                final Wallet wallet = perWalletModelDataList.get(walletIndex).getWallet();
+                final int finalWalletIndex = walletIndex;
+                final long fromTime = fromDate == null ? Long.MIN_VALUE : fromDate.getTime();
+                final long toTime = toDate == null ? Long.MAX_VALUE : toDate.getTime();
+                final boolean includeUndated = fromDate == null && toDate == null;
+                indexFutures.add(executorService.submit(new Callable<List<IndexEntry>>() {
+                    @Override
+                    public List<IndexEntry> call() {
+                        return createIndex(wallet, finalWalletIndex, fromTime, toTime, includeUndated);
+                    }
+                }));
+            }
+
+            int numberOfRows = 0;
+            List<List<IndexEntry>> indices = new ArrayList<List<IndexEntry>>();
+            for (Future<List<IndexEntry>> indexFuture : indexFutures) {
+                List<IndexEntry> index = getResult(indexFuture);
+                indices.add(index);
+                numberOfRows += index.size();
+            }
+
+            // Create each wallet's rows in parallel, in date order.
+            List<BlockingQueue<Row>> rowQueues = new ArrayList<BlockingQueue<Row>>();
+            for (int walletIndex = 0; walletIndex < numberOfWallets; walletIndex++) {
+                BlockingQueue<Row> rowQueue = new ArrayBlockingQueue<Row>(ROWS_AHEAD_PER_WALLET);
+                rowQueues.add(rowQueue);
+                executorService.execute(new RowProducer(perWalletModelDataList.get(walletIndex).getWallet(), indices.get(walletIndex), rowQueue));
+            }
+
+            // Merge the wallets by date as the rows are written.
+            PriorityQueue<Row> nextRows = new PriorityQueue<Row>(Math.max(1, numberOfWallets), new Comparator<Row>() {
+                @Override
+                public int compare(Row row1, Row row2) {
+                    return BY_DATE_DESCENDING.compare(row1.indexEntry, row2.indexEntry);
+                }
+            });
+            for (BlockingQueue<Row> rowQueue : rowQueues) {
+                addNextRow(nextRows, rowQueue);
+            }
+
+            int rowsWritten = 0;
+            while (!nextRows.isEmpty()) {
+                if (cancelled) {
+                    return false;
+                }
+                Row row = nextRows.poll();
+                rowWriter.writeRow(row.indexEntry.walletIndex, row.walletTableData);
+                rowsWritten++;
+                addNextRow(nextRows, rowQueues.get(row.indexEntry.walletIndex));
+
+                if (progressListener != null && rowsWritten % PROGRESS_INTERVAL == 0) {
+                    progressListener.exportProgress(rowsWritten, numberOfRows);
+                }
+            }
+            if (progressListener != null) {
+                progressListener.exportProgress(rowsWritten, numberOfRows);
+            }
+            return true;
+        } finally {
+            // Stops any wallets still creating rows, for instance if cancelled.
+            executorService.shutdownNow();
+            rowWriter.close();
+        }
+    }
+
+    private void addNextRow(PriorityQueue<Row> nextRows, BlockingQueue<Row> rowQueue) throws IOException {
+        Row row;
+        try {
+            row = rowQueue.take();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The export was interrupted.");
+        }
+        if (row.failure != null) {
+            throw new IOException(row.failure.getClass().getName() + " " + row.failure.getMessage());
+        }
+        if (row != Row.END) {
+            nextRows.add(row);
+        }
+    }
+
+    private List<IndexEntry> createIndex(Wallet wallet, int walletIndex, long fromTime, long toTime, boolean includeUndated) {
+        List<IndexEntry> index = new ArrayList<IndexEntry>();
+        if (wallet == null) {
+            return index;
+        }
+
+        Set<Transaction> transactions = wallet.getTransactions(false);
+        if (transactions != null) {
+            for (Transaction transaction : transactions) {
+                Date date = bitcoinController.getModel().createDate(bitcoinController, transaction);
+                long time = date == null ? 0 : date.getTime();
+                if (time == 0 ? includeUndated : (time >= fromTime && time < toTime)) {
+                    index.add(new IndexEntry(time, walletIndex, transaction));
+                }
+            }
+        }
+        Collections.sort(index, BY_DATE_DESCENDING);
+        return index;
+    }
+
+    private static <T> T getResult(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The export was interrupted.");
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause() == null ? ee : ee.getCause();
+            throw new IOException(cause.getClass().getName() + " " + cause.getMessage());
+        }
+    }
+
+    /**
+     * Creates the rows of one wallet in index order, ending with Row.END or a failure.
+     */
+    private class RowProducer implements Runnable {
+        private final Wallet wallet;
+        private final List<IndexEntry> index;
+        private final BlockingQueue<Row> rowQueue;
+
+        RowProducer(Wallet wallet, List<IndexEntry> index, BlockingQueue<Row> rowQueue) {
+            this.wallet = wallet;
+            this.index = index;
+            this.rowQueue = rowQueue;
+        }
+
+        @Override
+        public void run() {
+            try {
+                try {
+                    for (IndexEntry indexEntry : index) {
+                        if (cancelled) {
+                            break;
+                        }
+                        rowQueue.put(new Row(indexEntry, bitcoinController.getModel().createWalletTableData(bitcoinController, wallet,
+                                indexEntry.transaction)));
+                    }
+                    rowQueue.put(Row.END);
+                } catch (RuntimeException re) {
+                    rowQueue.put(new Row(re));
+                }
+            } catch (InterruptedException ie) {
+                // The export has finished without waiting for the rest of the rows.
+            }
+        }
+    }
+
+    private static class IndexEntry {
+        final long time;
+        final int walletIndex;
+        final Transaction transaction;
+
+        IndexEntry(long time, int walletIndex, Transaction transaction) {
+            this.time = time;
+            this.walletIndex = walletIndex;
+            this.transaction = transaction;
+        }
+    }
+
+    private static class Row {
+        static final Row END = new Row(null, null);
+
+        final IndexEntry indexEntry;
+        final WalletTableData walletTableData;
+        final RuntimeException failure;
+
+        Row(IndexEntry indexEntry, WalletTableData walletTableData) {
+            this.indexEntry = indexEntry;
+            this.walletTableData = walletTableData;
+            this.failure = null;
+        }
+
+        Row(RuntimeException failure) {
+            this.indexEntry = null;
+            this.walletTableData = null;
+            this.failure = failure;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+import org.multibit.model.bitcoin.WalletData;
+import org.multibit.model.bitcoin.WalletTableData;
+
+/**
+ * Writes exported transactions in one file format. Rows are written one at a
+ * time from a single thread, most recent first. Closing the writer finishes
+ * the file.
+ */
+public interface TransactionRowWriter extends Closeable {
+    /**
+     * Called once before any rows.
+     *
+     * @param perWalletModelDataList
+     *            the wallets being exported, in wallet index order
+     */
+    public void writeHeader(List<WalletData> perWalletModelDataList) throws IOException;
+
+    /**
+     * @param walletIndex
+     *            the index of the wallet the transaction is from
+     * @param walletTableData
+     *            the transaction
+     */
+    public void writeRow(int walletIndex, WalletTableData walletTableData) throws IOException;
+}
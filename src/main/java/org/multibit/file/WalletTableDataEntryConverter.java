@@ -56,12 +56,12 @@ public class WalletTableDataEntryConverter implements CSVEntryConverter<WalletTa
         String amountFiat = "";
         if (CurrencyConverter.INSTANCE.isShowingFiat()) {
             if (walletTableData.getDebit() != null && walletTableData.getDebit().compareTo(BigInteger.ZERO) > 0) {
-                Money debitAmountFiat = CurrencyConverter.INSTANCE.convertFromBTCToFiat(walletTableData.getDebit());
+                Money debitAmountFiat = CurrencyConverter.INSTANCE.convertFromBTCToFiat(walletTableData.getDebit(), walletTableData.getDate());
                 if (debitAmountFiat != null) {
                     amountFiat = CurrencyConverter.INSTANCE.getFiatAsLocalisedString(debitAmountFiat.negated(), false, false);
                 }
             } else {
-                Money creditAmountFiat = CurrencyConverter.INSTANCE.convertFromBTCToFiat(walletTableData.getCredit());
+                Money creditAmountFiat = CurrencyConverter.INSTANCE.convertFromBTCToFiat(walletTableData.getCredit(), walletTableData.getDate());
                 if (creditAmountFiat != null) {
                     amountFiat = CurrencyConverter.INSTANCE.getFiatAsLocalisedString(creditAmountFiat, false, false);
                 }
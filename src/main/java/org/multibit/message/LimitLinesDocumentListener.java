@@ -95,20 +95,22 @@ public class LimitLinesDocumentListener implements DocumentListener {
         Document document = e.getDocument();
         Element root = document.getDefaultRootElement();
 
-        while (root.getElementCount() > maximumLines) {
-            if (isRemoveFromStart) {
-                removeFromStart(document, root);
-            } else {
+        if (isRemoveFromStart) {
+            if (root.getElementCount() > maximumLines) {
+                removeFromStart(document, root, root.getElementCount() - maximumLines);
+            }
+        } else {
+            while (root.getElementCount() > maximumLines) {
                 removeFromEnd(document, root);
             }
         }
     }
 
     /*
-     * Remove lines from the start of the Document
+     * Remove lines from the start of the Document, all in one edit
      */
-    private void removeFromStart(Document document, Element root) {
-        Element line = root.getElement(0);
+    private void removeFromStart(Document document, Element root, int numberOfLines) {
+        Element line = root.getElement(numberOfLines - 1);
         int end = line.getEndOffset();
 
         try {
@@ -1,5 +1,7 @@
 package org.multibit.message;
 
+import java.util.List;
+
 /**
  * An interface for receiving message notifications.
  * @author jim
@@ -8,7 +10,8 @@ package org.multibit.message;
 public interface MessageListener {
 
     /**
-     * Method indicating a new message has been received
+     * Method indicating new messages have been received.
+     * Called on the Swing thread with the messages in the order they were added.
      */
-    public void newMessageReceived(Message newMessage);
+    public void newMessagesReceived(List<Message> newMessages);
 }
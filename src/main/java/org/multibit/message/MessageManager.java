@@ -18,59 +18,102 @@ package org.multibit.message;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Enum singleton to manage MultiBit (and in future system wide) messages.
+ *
+ * <p>
+ * Messages are added to a lock free ring buffer without blocking the caller.
+ * A single dispatch on the Swing thread hands the listeners all the messages
+ * added since the previous dispatch as one batch.
+ *
  * @author jim
  */
 public enum MessageManager {
     INSTANCE;
 
+    private static final Logger log = LoggerFactory.getLogger(MessageManager.class);
+
     public static final int MAXIMUM_NUMBER_OF_MESSAGES_STORED = 512;
     
     /**
-     * Queue containing Messages received.
+     * The messages received.
      */
-    private LinkedBlockingQueue<Message> messageQueue;
+    private final MessageRingBuffer messageBuffer;
     
     /**
      * Message listeners.
      */
-    private Collection<MessageListener> messageListeners;
+    private final Collection<MessageListener> messageListeners;
+
+    /**
+     * Whether a dispatch to the listeners is waiting to run.
+     */
+    private final AtomicBoolean dispatchScheduled = new AtomicBoolean(false);
+
+    /**
+     * The sequence number of the first message not yet dispatched. Only used on the Swing thread.
+     */
+    private long nextSequenceToDispatch = 0;
+
+    private final Runnable dispatchTask = new Runnable() {
+        @Override
+        public void run() {
+            dispatch();
+        }
+    };
     
     MessageManager() {
-        messageQueue = new LinkedBlockingQueue<Message>(MAXIMUM_NUMBER_OF_MESSAGES_STORED);
-        messageListeners = new ArrayList<MessageListener>();
+        messageBuffer = new MessageRingBuffer(MAXIMUM_NUMBER_OF_MESSAGES_STORED);
+        messageListeners = new CopyOnWriteArrayList<MessageListener>();
     }
     
-    synchronized public void addMessage(Message message) {
+    public void addMessage(Message message) {
         if (message != null) {
-            boolean wasAdded = messageQueue.offer(message);
-            if (!wasAdded) {
-                // remove the oldest message
-                messageQueue.poll();
-                
-                // add it again
-                messageQueue.offer(message);
+            messageBuffer.add(message);
+
+            // One dispatch serves all the messages added before it runs.
+            if (dispatchScheduled.compareAndSet(false, true)) {
+                SwingUtilities.invokeLater(dispatchTask);
             }
-            notifyMessageListeners(message);
         }
     }
     
     public void addMessageListener(MessageListener messageListener) {
-        messageListeners.add(messageListener);
+        if (messageListener != null) {
+            messageListeners.add(messageListener);
+        }
     }
     
-    private void notifyMessageListeners(Message message) {
+    private void dispatch() {
+        // Clear the flag first so that a message added during the dispatch schedules another.
+        dispatchScheduled.set(false);
+
+        List<Message> newMessages = new ArrayList<Message>();
+        nextSequenceToDispatch = messageBuffer.read(nextSequenceToDispatch, true, newMessages);
+        if (newMessages.isEmpty()) {
+            return;
+        }
+
+        List<Message> unmodifiableNewMessages = Collections.unmodifiableList(newMessages);
         for (MessageListener listener : messageListeners) {
-            if (listener != null) {
-                listener.newMessageReceived(message);
+            try {
+                listener.newMessagesReceived(unmodifiableNewMessages);
+            } catch (RuntimeException re) {
+                log.error(re.getClass().getName() + " " + re.getMessage());
             }
         }
     }
     
     public Collection<Message> getMessages() {
-        return Collections.unmodifiableCollection(messageQueue);
+        return Collections.unmodifiableCollection(messageBuffer.getMessages());
     }   
 }
@@ -0,0 +1,125 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock free store of the most recent messages that any number of
+ * threads can add to at once.
+ *
+ * <p>
+ * Each message is given the next sequence number and written to the slot
+ * for that sequence number, overwriting the message one capacity older.
+ * Readers ask for the messages from a sequence number onwards and skip any
+ * slot whose writer has not finished yet.
+ */
+public class MessageRingBuffer {
+
+    private final int capacity;
+    private final int mask;
+
+    private final AtomicReferenceArray<Entry> slots;
+
+    /**
+     * The sequence number the next message will be given.
+     */
+    private final AtomicLong nextSequence = new AtomicLong(0);
+
+    /**
+     * @param capacity
+     *            the number of messages kept, which must be a power of two
+     */
+    public MessageRingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two but was " + capacity);
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.slots = new AtomicReferenceArray<Entry>(capacity);
+    }
+
+    /**
+     * Add a message, overwriting the oldest if the buffer is full.
+     *
+     * @return the sequence number of the message
+     */
+    public long add(Message message) {
+        long sequence = nextSequence.getAndIncrement();
+        slots.set((int) (sequence & mask), new Entry(sequence, message));
+        return sequence;
+    }
+
+    /**
+     * @return the sequence number the next message will be given
+     */
+    public long getNextSequence() {
+        return nextSequence.get();
+    }
+
+    /**
+     * Read the messages with sequence numbers from fromSequence onwards, oldest first.
+     * Messages that have already been overwritten are left out.
+     *
+     * @param fromSequence
+     *            the first sequence number wanted
+     * @param stopAtUnfinished
+     *            if true stop at the first message that is still being written,
+     *            otherwise skip over it
+     * @param result
+     *            the list the messages are added to
+     * @return the sequence number to read from next time
+     */
+    public long read(long fromSequence, boolean stopAtUnfinished, List<Message> result) {
+        long endSequence = nextSequence.get();
+        long sequence = Math.max(fromSequence, endSequence - capacity);
+        for (; sequence < endSequence; sequence++) {
+            Entry entry = slots.get((int) (sequence & mask));
+            if (entry == null || entry.sequence < sequence) {
+                // Claimed but not written yet.
+                if (stopAtUnfinished) {
+                    return sequence;
+                }
+            } else if (entry.sequence == sequence) {
+                result.add(entry.message);
+            }
+            // Otherwise it has since been overwritten by a newer message.
+        }
+        return sequence;
+    }
+
+    /**
+     * @return a copy of the messages currently held, oldest first
+     */
+    public List<Message> getMessages() {
+        List<Message> messages = new ArrayList<Message>(capacity);
+        read(0, false, messages);
+        return messages;
+    }
+
+    private static final class Entry {
+        final long sequence;
+        final Message message;
+
+        Entry(long sequence, Message message) {
+            this.sequence = sequence;
+            this.message = message;
+        }
+    }
+}
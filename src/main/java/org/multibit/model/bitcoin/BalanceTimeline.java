@@ -0,0 +1,290 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.model.bitcoin;
+
+import com.google.bitcoin.core.*;
+import com.google.bitcoin.script.Script;
+import com.google.bitcoin.utils.Threading;
+import org.multibit.utils.Downsampler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * The running balance of a wallet after each of its transactions, in time order.
+ *
+ * <p>
+ * The value of each transaction is worked out once. When the wallet is
+ * updated, only the transactions that are new are valued and, if they are
+ * later than all the others, appended. The timeline is rebuilt from the
+ * remembered values if a transaction has gone or moved in time, and revalued
+ * entirely after a reorganise or when the wallet gains keys or watched
+ * scripts, as its existing transactions may then be worth more to it.
+ */
+public class BalanceTimeline {
+    private static final Logger log = LoggerFactory.getLogger(BalanceTimeline.class);
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final Comparator<Entry> BY_TIME = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry entry1, Entry entry2) {
+            return entry1.time < entry2.time ? -1 : (entry1.time == entry2.time ? 0 : 1);
+        }
+    };
+
+    /**
+     * The time and value of each transaction, by transaction hash.
+     */
+    private Map<Sha256Hash, Entry> entries = new HashMap<Sha256Hash, Entry>();
+
+    /**
+     * The time of each transaction and the balance after it, in time order.
+     */
+    private long[] times = new long[INITIAL_CAPACITY];
+    private long[] balances = new long[INITIAL_CAPACITY];
+    private int size = 0;
+
+    private volatile boolean revalueNeeded = false;
+
+    private final WalletEventListener revalueListener = new AbstractWalletEventListener() {
+        @Override
+        public void onReorganize(Wallet wallet) {
+            revalue();
+        }
+
+        @Override
+        public void onKeysAdded(Wallet wallet, List<ECKey> keys) {
+            revalue();
+        }
+
+        @Override
+        public void onScriptsAdded(Wallet wallet, List<Script> scripts) {
+            revalue();
+        }
+    };
+
+    /**
+     * @param wallet
+     *            the wallet to listen to for changes to the values of its transactions. The timeline does not keep a reference to it.
+     */
+    public BalanceTimeline(Wallet wallet) {
+        wallet.addEventListener(revalueListener, Threading.SAME_THREAD);
+    }
+
+    /**
+     * Forget the values of the transactions so they are all worked out again on the next update.
+     */
+    void revalue() {
+        revalueNeeded = true;
+    }
+
+    /**
+     * Bring the timeline up to date with the transactions in the wallet.
+     *
+     * @return false if the thread was interrupted first, in which case the timeline is unchanged
+     */
+    public synchronized boolean update(Wallet wallet) {
+        Map<Sha256Hash, Entry> knownEntries = entries;
+        if (revalueNeeded) {
+            revalueNeeded = false;
+            knownEntries = new HashMap<Sha256Hash, Entry>();
+        }
+
+        Set<Transaction> transactions = wallet.getTransactions(false);
+        Map<Sha256Hash, Entry> currentEntries = new HashMap<Sha256Hash, Entry>(transactions.size() * 2);
+        List<Entry> newEntries = new ArrayList<Entry>();
+        boolean rebuildNeeded = knownEntries != entries;
+
+        for (Transaction transaction : transactions) {
+            if (Thread.currentThread().isInterrupted()) {
+                if (knownEntries != entries) {
+                    revalueNeeded = true;
+                }
+                return false;
+            }
+
+            long time = transaction.getUpdateTime() == null ? 0 : transaction.getUpdateTime().getTime();
+            Entry entry = knownEntries.get(transaction.getHash());
+            if (entry == null) {
+                entry = new Entry(time, getValue(transaction, wallet));
+                newEntries.add(entry);
+            } else if (entry.time != time) {
+                entry = new Entry(time, entry.value);
+                rebuildNeeded = true;
+            }
+            currentEntries.put(transaction.getHash(), entry);
+        }
+
+        if (currentEntries.size() != knownEntries.size() + newEntries.size()) {
+            // Some transactions have gone.
+            rebuildNeeded = true;
+        }
+
+        Collections.sort(newEntries, BY_TIME);
+        if (!rebuildNeeded && (newEntries.isEmpty() || size == 0 || newEntries.get(0).time >= times[size - 1])) {
+            append(newEntries);
+        } else {
+            List<Entry> allEntries = new ArrayList<Entry>(currentEntries.values());
+            Collections.sort(allEntries, BY_TIME);
+            size = 0;
+            append(allEntries);
+        }
+        entries = currentEntries;
+        return true;
+    }
+
+    /**
+     * Get the balance over a time window as a step line. There is a point at
+     * the start of the window, a pair of points for the balance before and
+     * after each later transaction, and a point at the end of the window.
+     *
+     * @param fromTime
+     *            the start of the window
+     * @param toTime
+     *            the end of the window
+     * @return the times and balances of the points
+     */
+    public synchronized Points getSteps(long fromTime, long toTime) {
+        return getSteps(fromTime, toTime, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get the balance over a time window as a step line with at most
+     * maximumSteps steps. If there are more transactions than that in the
+     * window, the transactions to draw a step at are chosen with
+     * Downsampler.largestTriangleThreeBuckets over the balance after each
+     * transaction. The transactions in between are merged into the next step,
+     * so the line is still drawn as steps and ends at the latest balance.
+     *
+     * @param fromTime
+     *            the start of the window
+     * @param toTime
+     *            the end of the window
+     * @param maximumSteps
+     *            the most steps to draw
+     * @return the times and balances of the points
+     */
+    public synchronized Points getSteps(long fromTime, long toTime, int maximumSteps) {
+        // The first transaction after the start of the window.
+        int first = 0;
+        int last = size;
+        while (first < last) {
+            int middle = (first + last) >>> 1;
+            if (times[middle] <= fromTime) {
+                first = middle + 1;
+            } else {
+                last = middle;
+            }
+        }
+
+        int numberOfTransactions = size - first;
+        int[] selected = null;
+        if (numberOfTransactions > maximumSteps) {
+            double[] x = new double[numberOfTransactions];
+            double[] y = new double[numberOfTransactions];
+            for (int i = 0; i < numberOfTransactions; i++) {
+                x[i] = times[first + i];
+                y[i] = balances[first + i];
+            }
+            selected = Downsampler.largestTriangleThreeBuckets(x, y, numberOfTransactions, maximumSteps);
+        }
+        int numberOfSteps = selected == null ? numberOfTransactions : selected.length;
+
+        Points points = new Points(2 * numberOfSteps + 2);
+        long balance = first == 0 ? 0 : balances[first - 1];
+        points.add(fromTime, balance);
+        for (int step = 0; step < numberOfSteps; step++) {
+            int i = first + (selected == null ? step : selected[step]);
+            points.add(times[i], balance);
+            balance = balances[i];
+            points.add(times[i], balance);
+        }
+        points.add(toTime, balance);
+        return points;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private void append(List<Entry> entriesToAppend) {
+        if (size + entriesToAppend.size() > times.length) {
+            int capacity = Math.max(times.length * 2, size + entriesToAppend.size());
+            times = Arrays.copyOf(times, capacity);
+            balances = Arrays.copyOf(balances, capacity);
+        }
+        long balance = size == 0 ? 0 : balances[size - 1];
+        for (Entry entry : entriesToAppend) {
+            balance += entry.value;
+            times[size] = entry.time;
+            balances[size] = balance;
+            size++;
+        }
+    }
+
+    private static long getValue(Transaction transaction, Wallet wallet) {
+        try {
+            return transaction.getValue(wallet).longValue();
+        } catch (ScriptException se) {
+            log.error(se.getClass().getName() + " " + se.getMessage());
+            return 0;
+        }
+    }
+
+    private static class Entry {
+        final long time;
+        final long value;
+
+        Entry(long time, long value) {
+            this.time = time;
+            this.value = value;
+        }
+    }
+
+    /**
+     * The points of a line, in time order.
+     */
+    public static class Points {
+        private final long[] times;
+        private final long[] balances;
+        private int size = 0;
+
+        Points(int capacity) {
+            times = new long[capacity];
+            balances = new long[capacity];
+        }
+
+        void add(long time, long balance) {
+            times[size] = time;
+            balances[size] = balance;
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long getTime(int index) {
+            return times[index];
+        }
+
+        public long getBalance(int index) {
+            return balances[index];
+        }
+    }
+}
@@ -121,6 +121,16 @@ public class BitcoinModel extends AbstractModel<CoreModel> {
     public static final String SINGLE_NODE_CONNECTION = "singleNodeConnection";
     public static final String PEERS = "peers";
 
+    // Download large catch ups from all the connected peers.
+    public static final String PARALLEL_BLOCK_CHAIN_DOWNLOAD = "parallelBlockChainDownload";
+
+    // Keep the downloaded blocks locally so that replays can be served without the network.
+    public static final String BLOCK_ARCHIVE = "blockArchive";
+
+    // Serve the local API on this port of localhost, requiring the token if one is set.
+    public static final String LOCAL_API_PORT = "localApiPort";
+    public static final String LOCAL_API_TOKEN = "localApiToken";
+
     // User preferences undo.
     public static final String PREVIOUS_OPEN_URI_SHOW_DIALOG = "previousOpenUriShowDialog";
     public static final String PREVIOUS_OPEN_URI_USE_URI = "previousOpenUriUseUri";
@@ -210,11 +220,7 @@ public class BitcoinModel extends AbstractModel<CoreModel> {
      * @return The estimated balance
      */
     public BigInteger getActiveWalletEstimatedBalance() {
-        if (activeWalletModelData.getWallet() == null) {
-            return BigInteger.ZERO;
-        } else {
-            return activeWalletModelData.getWallet().getBalance(BalanceType.ESTIMATED);
-        }
+        return activeWalletModelData.getBalance(BalanceType.ESTIMATED);
     }
 
     /**
@@ -223,11 +229,7 @@ public class BitcoinModel extends AbstractModel<CoreModel> {
      * @return the available balance
      */
     public BigInteger getActiveWalletAvailableBalance() {
-        if (activeWalletModelData.getWallet() == null) {
-            return BigInteger.ZERO;
-        } else {
-            return activeWalletModelData.getWallet().getBalance(BalanceType.AVAILABLE);
-        }
+        return activeWalletModelData.getBalance(BalanceType.AVAILABLE);
     }
 
     /**
@@ -415,46 +417,51 @@ public class BitcoinModel extends AbstractModel<CoreModel> {
 
         if (transactions != null) {
             for (Transaction loopTransaction : transactions) {
-                WalletTableData walletDataRow = new WalletTableData(loopTransaction);
-                walletData.add(walletDataRow);
-                walletDataRow.setCredit(loopTransaction.getValueSentToMe(perWalletModelData.getWallet()));
-                try {
-                    walletDataRow.setDebit(loopTransaction.getValueSentFromMe(perWalletModelData.getWallet()));
-                } catch (ScriptException e) {
-                    log.error(e.getMessage(), e);
-
-                }
-                List<TransactionInput> transactionInputs = loopTransaction.getInputs();
-                List<TransactionOutput> transactionOutputs = loopTransaction.getOutputs();
-                if (transactionInputs != null) {
-                    TransactionInput firstInput = transactionInputs.get(0);
-                    if (firstInput != null) {
-                        walletDataRow.setDescription(createDescription(bitcoinController, perWalletModelData.getWallet(), transactionInputs,
-                                transactionOutputs, walletDataRow.getCredit(), walletDataRow.getDebit()));
-                    }
-                }
-                walletDataRow.setDate(createDate(bitcoinController, loopTransaction));
-                walletDataRow.setHeight(workOutHeight(loopTransaction));
+                walletData.add(createWalletTableData(bitcoinController, perWalletModelData.getWallet(), loopTransaction));
             }
         }
 
-        // Run through all the walletdata to see if both credit and debit are
-        // set (this means change was received).
-        for (WalletTableData walletDataRow : walletData) {
-            if (walletDataRow.getCredit() != null && (walletDataRow.getCredit().compareTo(BigInteger.ZERO) > 0)
-                    && (walletDataRow.getDebit() != null) && walletDataRow.getDebit().compareTo(BigInteger.ZERO) > 0) {
-                BigInteger net = walletDataRow.getCredit().subtract(walletDataRow.getDebit());
-                if (net.compareTo(BigInteger.ZERO) >= 0) {
-                    walletDataRow.setCredit(net);
-                    walletDataRow.setDebit(BigInteger.ZERO);
-                } else {
-                    walletDataRow.setCredit(BigInteger.ZERO);
-                    walletDataRow.setDebit(net.negate());
-                }
+        return walletData;
+    }
+
+    /**
+     * Convert a single transaction into a walletdata record.
+     */
+    public WalletTableData createWalletTableData(final BitcoinController bitcoinController, Wallet wallet, Transaction transaction) {
+        WalletTableData walletDataRow = new WalletTableData(transaction);
+        walletDataRow.setCredit(transaction.getValueSentToMe(wallet));
+        try {
+            walletDataRow.setDebit(transaction.getValueSentFromMe(wallet));
+        } catch (ScriptException e) {
+            log.error(e.getMessage(), e);
+
+        }
+        List<TransactionInput> transactionInputs = transaction.getInputs();
+        List<TransactionOutput> transactionOutputs = transaction.getOutputs();
+        if (transactionInputs != null) {
+            TransactionInput firstInput = transactionInputs.get(0);
+            if (firstInput != null) {
+                walletDataRow.setDescription(createDescription(bitcoinController, wallet, transactionInputs,
+                        transactionOutputs, walletDataRow.getCredit(), walletDataRow.getDebit()));
+            }
+        }
+        walletDataRow.setDate(createDate(bitcoinController, transaction));
+        walletDataRow.setHeight(workOutHeight(transaction));
+
+        // See if both credit and debit are set (this means change was received).
+        if (walletDataRow.getCredit() != null && (walletDataRow.getCredit().compareTo(BigInteger.ZERO) > 0)
+                && (walletDataRow.getDebit() != null) && walletDataRow.getDebit().compareTo(BigInteger.ZERO) > 0) {
+            BigInteger net = walletDataRow.getCredit().subtract(walletDataRow.getDebit());
+            if (net.compareTo(BigInteger.ZERO) >= 0) {
+                walletDataRow.setCredit(net);
+                walletDataRow.setDebit(BigInteger.ZERO);
+            } else {
+                walletDataRow.setCredit(BigInteger.ZERO);
+                walletDataRow.setDebit(net.negate());
             }
         }
 
-        return walletData;
+        return walletDataRow;
     }
 
     /**
@@ -602,12 +609,12 @@ public class BitcoinModel extends AbstractModel<CoreModel> {
     }
 
     /**
-     * Work out the transaction date.
+     * Work out the transaction date: its update time, or failing that the time of the block it appeared in.
      *
      * @param transaction
-     * @return Date date of transaction
+     * @return Date date of transaction, or null if it is not known
      */
-    private Date createDate(final BitcoinController bitcoinController, Transaction transaction) {
+    public Date createDate(final BitcoinController bitcoinController, Transaction transaction) {
         // If transaction has altered date - return that.
         if (transaction.getUpdateTime() != null) {
             return transaction.getUpdateTime();
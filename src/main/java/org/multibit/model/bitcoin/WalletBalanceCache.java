@@ -0,0 +1,125 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.model.bitcoin;
+
+import com.google.bitcoin.core.*;
+import com.google.bitcoin.core.Wallet.BalanceType;
+import com.google.bitcoin.utils.Threading;
+
+import java.math.BigInteger;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Remembers the balances of a wallet so that redrawing the UI does not walk
+ * the wallet's coin pools each time.
+ *
+ * <p>
+ * The cached balances are dropped whenever the wallet receives or sends coins,
+ * reorganises or a transaction's confidence changes. The listener runs on the
+ * thread changing the wallet, before the UI is told about the change, so a
+ * reader never sees a balance from before the change.
+ */
+public class WalletBalanceCache {
+
+    private final Wallet wallet;
+
+    /**
+     * The balances calculated since the last change, guarded by this.
+     */
+    private final Map<BalanceType, BigInteger> balances = new EnumMap<BalanceType, BigInteger>(BalanceType.class);
+
+    /**
+     * Incremented on each change so that a balance calculated across a change is not cached, guarded by this.
+     */
+    private long generation = 0;
+
+    private final WalletEventListener walletChangeListener = new AbstractWalletEventListener() {
+        @Override
+        public void onCoinsReceived(Wallet wallet, Transaction tx, BigInteger prevBalance, BigInteger newBalance) {
+            invalidate();
+        }
+
+        @Override
+        public void onCoinsSent(Wallet wallet, Transaction tx, BigInteger prevBalance, BigInteger newBalance) {
+            invalidate();
+        }
+
+        @Override
+        public void onReorganize(Wallet wallet) {
+            invalidate();
+        }
+
+        @Override
+        public void onTransactionConfidenceChanged(Wallet wallet, Transaction tx) {
+            invalidate();
+        }
+
+        @Override
+        public void onWalletChanged(Wallet wallet) {
+            invalidate();
+        }
+    };
+
+    public WalletBalanceCache(Wallet wallet) {
+        this.wallet = wallet;
+        wallet.addEventListener(walletChangeListener, Threading.SAME_THREAD);
+    }
+
+    /**
+     * Get a balance of the wallet, calculating it only if the wallet has changed since it was last asked for.
+     */
+    public BigInteger getBalance(BalanceType balanceType) {
+        long generationBefore;
+        synchronized (this) {
+            BigInteger balance = balances.get(balanceType);
+            if (balance != null) {
+                return balance;
+            }
+            generationBefore = generation;
+        }
+
+        // Calculated outside the lock as the wallet lock is held while invalidating.
+        BigInteger balance = wallet.getBalance(balanceType);
+
+        synchronized (this) {
+            if (generation == generationBefore) {
+                balances.put(balanceType, balance);
+            }
+        }
+        return balance;
+    }
+
+    /**
+     * Drop the cached balances, for when the wallet has been changed without telling its listeners.
+     */
+    public synchronized void invalidate() {
+        generation++;
+        balances.clear();
+    }
+
+    /**
+     * Stop listening to the wallet, for when it is replaced or closed.
+     */
+    public void release() {
+        wallet.removeEventListener(walletChangeListener);
+        invalidate();
+    }
+
+    public Wallet getWallet() {
+        return wallet;
+    }
+}
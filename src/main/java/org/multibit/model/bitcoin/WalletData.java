@@ -16,8 +16,10 @@
 package org.multibit.model.bitcoin;
 
 import com.google.bitcoin.core.Wallet;
+import com.google.bitcoin.core.Wallet.BalanceType;
 import org.multibit.viewsystem.swing.view.walletlist.SingleWalletPanelDownloadListener;
 
+import java.math.BigInteger;
 import java.util.List;
 import java.util.UUID;
 
@@ -85,6 +87,10 @@ public class WalletData {
      */
     private transient SingleWalletPanelDownloadListener singleWalletDownloadListener;
 
+    /**
+     * The balances of the wallet, shared by everything that displays them.
+     */
+    private transient WalletBalanceCache balanceCache;
     
     public WalletData() {
         isDirty = false;
@@ -95,9 +101,40 @@ public class WalletData {
     }
 
     public void setWallet(Wallet wallet) {
+        if (balanceCache != null && balanceCache.getWallet() != wallet) {
+            balanceCache.release();
+            balanceCache = null;
+        }
+        if (wallet != null && balanceCache == null) {
+            balanceCache = new WalletBalanceCache(wallet);
+        }
         this.wallet = wallet;
     }
 
+    /**
+     * Get a balance of the wallet, cached until the wallet next changes.
+     *
+     * @return the balance, or zero if there is no wallet
+     */
+    public BigInteger getBalance(BalanceType balanceType) {
+        WalletBalanceCache currentBalanceCache = balanceCache;
+        if (currentBalanceCache == null) {
+            return BigInteger.ZERO;
+        }
+        return currentBalanceCache.getBalance(balanceType);
+    }
+
+    /**
+     * Recalculate the balances next time they are asked for, for when the
+     * wallet has been changed in a way that does not notify its listeners.
+     */
+    public void invalidateBalances() {
+        WalletBalanceCache currentBalanceCache = balanceCache;
+        if (currentBalanceCache != null) {
+            currentBalanceCache.invalidate();
+        }
+    }
+
     public String getWalletFilename() {
         return walletFilename;
     }
@@ -0,0 +1,316 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.model.bitcoin;
+
+import com.google.bitcoin.core.*;
+import com.google.bitcoin.script.Script;
+import com.google.bitcoin.utils.Threading;
+
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * An index over all the open wallets from output script and outpoint to the
+ * wallets they belong to.
+ *
+ * <p>
+ * A transaction is routed to the wallets it touches with a single pass over
+ * its inputs and outputs, rather than each wallet scanning every transaction.
+ * A wallet's entries are rebuilt only when that wallet receives or sends
+ * coins, gains keys or watched scripts, or reorganises.
+ */
+public class WalletRelevanceIndex {
+
+    private static final byte OP_DUP = (byte) 0x76;
+    private static final byte OP_HASH160 = (byte) 0xa9;
+    private static final byte OP_EQUALVERIFY = (byte) 0x88;
+    private static final byte OP_CHECKSIG = (byte) 0xac;
+
+    /**
+     * Output script to the wallets that own it.
+     */
+    private final Map<ScriptKey, Set<Wallet>> scriptIndex = new HashMap<ScriptKey, Set<Wallet>>();
+
+    /**
+     * Outpoint of a wallet's own output to the wallets that own it.
+     */
+    private final Map<OutPointKey, Set<Wallet>> outPointIndex = new HashMap<OutPointKey, Set<Wallet>>();
+
+    /**
+     * What each indexed wallet has contributed to the index.
+     */
+    private final Map<Wallet, WalletEntries> walletEntries = new IdentityHashMap<Wallet, WalletEntries>();
+
+    /**
+     * Find the wallets that a transaction pays to or spends from.
+     *
+     * @param transaction
+     *            the transaction to route
+     * @param perWalletModelDataList
+     *            the currently open wallets
+     * @return the wallets the transaction touches, compared by identity
+     */
+    public synchronized Set<Wallet> findWallets(Transaction transaction, List<WalletData> perWalletModelDataList) {
+        refresh(perWalletModelDataList);
+
+        Set<Wallet> wallets = Collections.newSetFromMap(new IdentityHashMap<Wallet, Boolean>());
+        if (transaction == null) {
+            return wallets;
+        }
+
+        for (TransactionInput input : transaction.getInputs()) {
+            TransactionOutPoint outPoint = input.getOutpoint();
+            if (outPoint != null) {
+                Set<Wallet> spenders = outPointIndex.get(new OutPointKey(outPoint.getHash(), outPoint.getIndex()));
+                if (spenders != null) {
+                    wallets.addAll(spenders);
+                }
+            }
+        }
+        for (TransactionOutput output : transaction.getOutputs()) {
+            Set<Wallet> receivers = scriptIndex.get(new ScriptKey(output.getScriptBytes()));
+            if (receivers != null) {
+                wallets.addAll(receivers);
+            }
+        }
+        return wallets;
+    }
+
+    /**
+     * Mark a wallet's entries as out of date, for when a transaction has just been
+     * added to it and the wallet's own change events may not have arrived yet.
+     */
+    public synchronized void invalidate(Wallet wallet) {
+        WalletEntries entries = walletEntries.get(wallet);
+        if (entries != null) {
+            entries.dirty = true;
+        }
+    }
+
+    /**
+     * Add newly opened wallets, drop closed ones and rebuild the entries of any wallet that has changed.
+     */
+    private void refresh(List<WalletData> perWalletModelDataList) {
+        Set<Wallet> openWallets = Collections.newSetFromMap(new IdentityHashMap<Wallet, Boolean>());
+        if (perWalletModelDataList != null) {
+            for (WalletData perWalletModelData : perWalletModelDataList) {
+                Wallet wallet = perWalletModelData.getWallet();
+                if (wallet != null) {
+                    openWallets.add(wallet);
+                }
+            }
+        }
+
+        Iterator<Map.Entry<Wallet, WalletEntries>> iterator = walletEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Wallet, WalletEntries> entry = iterator.next();
+            if (!openWallets.contains(entry.getKey())) {
+                removeEntries(entry.getKey(), entry.getValue());
+                entry.getKey().removeEventListener(entry.getValue().changeListener);
+                iterator.remove();
+            }
+        }
+
+        for (Wallet wallet : openWallets) {
+            WalletEntries entries = walletEntries.get(wallet);
+            if (entries == null) {
+                entries = new WalletEntries();
+                walletEntries.put(wallet, entries);
+                // Run on the wallet's own thread so the entries are dirty before the change is seen anywhere else.
+                wallet.addEventListener(entries.changeListener, Threading.SAME_THREAD);
+                addEntries(wallet, entries);
+            } else if (entries.dirty) {
+                removeEntries(wallet, entries);
+                addEntries(wallet, entries);
+            }
+        }
+    }
+
+    private void addEntries(Wallet wallet, WalletEntries entries) {
+        entries.dirty = false;
+        entries.scripts.clear();
+        entries.outPoints.clear();
+
+        List<ECKey> keys = wallet.getKeychain();
+        if (keys != null) {
+            for (ECKey key : keys) {
+                entries.scripts.add(new ScriptKey(createPayToAddressScript(key.getPubKeyHash())));
+                entries.scripts.add(new ScriptKey(createPayToPubKeyScript(key.getPubKey())));
+            }
+        }
+
+        List<Script> watchedScripts = wallet.getWatchedScripts();
+        if (watchedScripts != null) {
+            for (Script watchedScript : watchedScripts) {
+                entries.scripts.add(new ScriptKey(watchedScript.getProgram()));
+            }
+        }
+
+        // Outputs of the wallet's own transactions that pay to it can be spent by later transactions.
+        for (Transaction transaction : wallet.getTransactions(true)) {
+            List<TransactionOutput> outputs = transaction.getOutputs();
+            for (int i = 0; i < outputs.size(); i++) {
+                if (entries.scripts.contains(new ScriptKey(outputs.get(i).getScriptBytes()))) {
+                    entries.outPoints.add(new OutPointKey(transaction.getHash(), i));
+                }
+            }
+        }
+
+        // A transaction that double spends a pending transaction is relevant to the wallet too.
+        for (Transaction transaction : wallet.getPendingTransactions()) {
+            for (TransactionInput input : transaction.getInputs()) {
+                TransactionOutPoint outPoint = input.getOutpoint();
+                if (outPoint != null) {
+                    entries.outPoints.add(new OutPointKey(outPoint.getHash(), outPoint.getIndex()));
+                }
+            }
+        }
+
+        for (ScriptKey scriptKey : entries.scripts) {
+            addToIndex(scriptIndex, scriptKey, wallet);
+        }
+        for (OutPointKey outPointKey : entries.outPoints) {
+            addToIndex(outPointIndex, outPointKey, wallet);
+        }
+    }
+
+    private void removeEntries(Wallet wallet, WalletEntries entries) {
+        for (ScriptKey scriptKey : entries.scripts) {
+            removeFromIndex(scriptIndex, scriptKey, wallet);
+        }
+        for (OutPointKey outPointKey : entries.outPoints) {
+            removeFromIndex(outPointIndex, outPointKey, wallet);
+        }
+    }
+
+    private static <K> void addToIndex(Map<K, Set<Wallet>> index, K key, Wallet wallet) {
+        Set<Wallet> wallets = index.get(key);
+        if (wallets == null) {
+            wallets = Collections.newSetFromMap(new IdentityHashMap<Wallet, Boolean>());
+            index.put(key, wallets);
+        }
+        wallets.add(wallet);
+    }
+
+    private static <K> void removeFromIndex(Map<K, Set<Wallet>> index, K key, Wallet wallet) {
+        Set<Wallet> wallets = index.get(key);
+        if (wallets != null) {
+            wallets.remove(wallet);
+            if (wallets.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    static byte[] createPayToAddressScript(byte[] pubKeyHash) {
+        byte[] script = new byte[pubKeyHash.length + 5];
+        script[0] = OP_DUP;
+        script[1] = OP_HASH160;
+        script[2] = (byte) pubKeyHash.length;
+        System.arraycopy(pubKeyHash, 0, script, 3, pubKeyHash.length);
+        script[pubKeyHash.length + 3] = OP_EQUALVERIFY;
+        script[pubKeyHash.length + 4] = OP_CHECKSIG;
+        return script;
+    }
+
+    static byte[] createPayToPubKeyScript(byte[] pubKey) {
+        byte[] script = new byte[pubKey.length + 2];
+        script[0] = (byte) pubKey.length;
+        System.arraycopy(pubKey, 0, script, 1, pubKey.length);
+        script[pubKey.length + 1] = OP_CHECKSIG;
+        return script;
+    }
+
+    /**
+     * The entries a single wallet has contributed and whether they are out of date.
+     */
+    private static class WalletEntries {
+        final Set<ScriptKey> scripts = new HashSet<ScriptKey>();
+        final Set<OutPointKey> outPoints = new HashSet<OutPointKey>();
+        volatile boolean dirty = false;
+
+        final WalletEventListener changeListener = new AbstractWalletEventListener() {
+            @Override
+            public void onCoinsReceived(Wallet wallet, Transaction tx, BigInteger prevBalance, BigInteger newBalance) {
+                dirty = true;
+            }
+
+            @Override
+            public void onCoinsSent(Wallet wallet, Transaction tx, BigInteger prevBalance, BigInteger newBalance) {
+                dirty = true;
+            }
+
+            @Override
+            public void onKeysAdded(Wallet wallet, List<ECKey> keys) {
+                dirty = true;
+            }
+
+            @Override
+            public void onScriptsAdded(Wallet wallet, List<Script> scripts) {
+                dirty = true;
+            }
+
+            @Override
+            public void onReorganize(Wallet wallet) {
+                dirty = true;
+            }
+        };
+    }
+
+    static final class ScriptKey {
+        private final byte[] bytes;
+        private final int hashCode;
+
+        ScriptKey(byte[] bytes) {
+            this.bytes = bytes == null ? new byte[0] : bytes;
+            this.hashCode = Arrays.hashCode(this.bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof ScriptKey && Arrays.equals(bytes, ((ScriptKey) obj).bytes);
+        }
+    }
+
+    static final class OutPointKey {
+        private final Sha256Hash hash;
+        private final long index;
+
+        OutPointKey(Sha256Hash hash, long index) {
+            this.hash = hash;
+            this.index = index;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * hash.hashCode() + (int) (index ^ (index >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof OutPointKey)) {
+                return false;
+            }
+            OutPointKey other = (OutPointKey) obj;
+            return index == other.index && hash.equals(other.hash);
+        }
+    }
+}
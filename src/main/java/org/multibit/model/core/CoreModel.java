@@ -58,6 +58,9 @@ public class CoreModel extends BaseModel<CoreModel> {
     
     public static final String FEE_PER_KB = "feePerKB";
 
+    // Run without a user interface.
+    public static final String HEADLESS = "headless";
+
     
     public CoreModel() {
         this(null);
@@ -22,10 +22,14 @@ import com.xeiam.xchange.oer.OERExchange;
 import com.xeiam.xchange.virtex.VirtExExchange;
 import org.joda.money.BigMoney;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 //import com.xeiam.xchange.btcchina.BTCChinaExchange;
 
@@ -45,6 +49,7 @@ public class ExchangeData {
     public static final String OPEN_EXCHANGE_RATES_EXCHANGE_NAME = "OpenExchangeRates";
     public static final String MT_GOX_EXCHANGE_NAME = "MtGox";  // No longer presently to user
     public static final String VIRTEX_EXCHANGE_NAME = "VirtEx";
+    public static final String SIMULATOR_EXCHANGE_NAME = "Simulator";  // Offline testing only, not shown to user
 
     public static final String DEFAULT_EXCHANGE = BITSTAMP_EXCHANGE_NAME;
     
@@ -58,23 +63,114 @@ public class ExchangeData {
     }
     
     public static final BigMoney DO_NOT_KNOW = null;
+
+    /**
+     * Prices that have not been fetched for this long are stale.
+     */
+    public static final long STALE_AGE = 1800000; // milliseconds
     
     private String shortExchangeName;
-    private Map<String, BigMoney> currencyToLastPriceMap;
-    private Map<String, BigMoney> currencyToAskMap;
-    private Map<String, BigMoney> currencyToBidMap;
-       
-    private static Map<String,  Collection<String>> exchangeNameToAvailableCurrenciesMap  = new HashMap<String, Collection<String>>();
+
+    /**
+     * The prices for one currency, set and read together.
+     */
+    public static final class CurrencyPrices {
+        static final CurrencyPrices NONE = new CurrencyPrices(null, null, null, null);
+
+        private final BigMoney last;
+        private final BigMoney bid;
+        private final BigMoney ask;
+        private final Long lastUpdated;
+
+        public CurrencyPrices(BigMoney last, BigMoney bid, BigMoney ask, Long lastUpdated) {
+            this.last = last;
+            this.bid = bid;
+            this.ask = ask;
+            this.lastUpdated = lastUpdated;
+        }
+
+        public BigMoney getLast() {
+            return last;
+        }
+
+        public BigMoney getBid() {
+            return bid;
+        }
+
+        public BigMoney getAsk() {
+            return ask;
+        }
+
+        /**
+         * @return the time the prices were last fetched, or null if they never have been
+         */
+        public Long getLastUpdated() {
+            return lastUpdated;
+        }
+
+        /**
+         * @return true if the prices are older than the STALE_AGE
+         */
+        public boolean isStale() {
+            return lastUpdated == null || System.currentTimeMillis() - lastUpdated > STALE_AGE;
+        }
+    }
+
+    /**
+     * The prices for every currency at one moment. It is never changed, so
+     * the Swing thread can read it while the tickers write a new one.
+     */
+    public static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(Collections.<String, CurrencyPrices> emptyMap());
+
+        private final Map<String, CurrencyPrices> currencyToPricesMap;
+
+        private Snapshot(Map<String, CurrencyPrices> currencyToPricesMap) {
+            this.currencyToPricesMap = currencyToPricesMap;
+        }
+
+        /**
+         * @return the prices for the currency, with null prices if they are not known
+         */
+        public CurrencyPrices getPrices(String currency) {
+            CurrencyPrices prices = currencyToPricesMap.get(currency);
+            return prices == null ? CurrencyPrices.NONE : prices;
+        }
+
+        public Collection<String> getCurrencies() {
+            return currencyToPricesMap.keySet();
+        }
+
+        Snapshot with(String currency, CurrencyPrices prices) {
+            Map<String, CurrencyPrices> newCurrencyToPricesMap = new HashMap<String, CurrencyPrices>(currencyToPricesMap);
+            newCurrencyToPricesMap.put(currency, prices);
+            return new Snapshot(Collections.unmodifiableMap(newCurrencyToPricesMap));
+        }
+    }
+
+    /**
+     * Replaced as a whole when a price changes (copy on write). Writers are serialised by writeLock.
+     */
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private final Object writeLock = new Object();
+
+    private final ConcurrentMap<String, TickHistory> currencyToTickHistoryMap = new ConcurrentHashMap<String, TickHistory>();
+
+    private static final ConcurrentMap<String, Collection<String>> exchangeNameToAvailableCurrenciesMap = new ConcurrentHashMap<String, Collection<String>>();
     
     public ExchangeData() {
         setShortExchangeName(EXCHANGE_NOT_SET);
-        currencyToLastPriceMap = new HashMap<String, BigMoney>();
-        currencyToBidMap = new HashMap<String, BigMoney>();
-        currencyToAskMap = new HashMap<String, BigMoney>();
+    }
+
+    /**
+     * @return the prices for all the currencies, which will not change while they are being read
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
     }
     
     public BigMoney getLastPrice(String currency) {
-        BigMoney lastPrice = currencyToLastPriceMap.get(currency);
+        BigMoney lastPrice = snapshot.getPrices(currency).getLast();
         if (lastPrice == null) {
             return DO_NOT_KNOW;
         } else {
@@ -83,7 +179,7 @@ public class ExchangeData {
     }
 
     public BigMoney getLastBid(String currency) {
-        BigMoney bid = currencyToBidMap.get(currency);
+        BigMoney bid = snapshot.getPrices(currency).getBid();
         if (bid == null) {
             return DO_NOT_KNOW;
         } else {
@@ -92,7 +188,7 @@ public class ExchangeData {
     }
     
     public BigMoney getLastAsk(String currency) {
-        BigMoney ask = currencyToAskMap.get(currency);
+        BigMoney ask = snapshot.getPrices(currency).getAsk();
         if (ask == null) {
             return DO_NOT_KNOW;
         } else {
@@ -100,16 +196,83 @@ public class ExchangeData {
         }
     }
 
+    /**
+     * Set the last price, bid, ask and time for the currency at once, so readers never see a mixture of old and new.
+     */
+    public void setPrices(String currency, BigMoney lastPrice, BigMoney lastBid, BigMoney lastAsk, long lastUpdated) {
+        synchronized (writeLock) {
+            snapshot = snapshot.with(currency, new CurrencyPrices(lastPrice, lastBid, lastAsk, lastUpdated));
+        }
+    }
+
     public void setLastPrice(String currency, BigMoney lastPrice) {
-        currencyToLastPriceMap.put(currency, lastPrice);
+        synchronized (writeLock) {
+            CurrencyPrices prices = snapshot.getPrices(currency);
+            snapshot = snapshot.with(currency, new CurrencyPrices(lastPrice, prices.getBid(), prices.getAsk(), prices.getLastUpdated()));
+        }
     }
 
     public void setLastBid(String currency, BigMoney lastBid) {
-        currencyToBidMap.put(currency, lastBid);
+        synchronized (writeLock) {
+            CurrencyPrices prices = snapshot.getPrices(currency);
+            snapshot = snapshot.with(currency, new CurrencyPrices(prices.getLast(), lastBid, prices.getAsk(), prices.getLastUpdated()));
+        }
     }
 
     public void setLastAsk(String currency, BigMoney lastAsk) {
-        currencyToAskMap.put(currency, lastAsk);
+        synchronized (writeLock) {
+            CurrencyPrices prices = snapshot.getPrices(currency);
+            snapshot = snapshot.with(currency, new CurrencyPrices(prices.getLast(), prices.getBid(), lastAsk, prices.getLastUpdated()));
+        }
+    }
+
+    /**
+     * @return the time the prices for the currency were last fetched, or null if they never have been
+     */
+    public Long getLastUpdated(String currency) {
+        return snapshot.getPrices(currency).getLastUpdated();
+    }
+
+    public void setLastUpdated(String currency, long lastUpdated) {
+        synchronized (writeLock) {
+            CurrencyPrices prices = snapshot.getPrices(currency);
+            snapshot = snapshot.with(currency, new CurrencyPrices(prices.getLast(), prices.getBid(), prices.getAsk(), lastUpdated));
+        }
+    }
+
+    /**
+     * Add the prices to the recent history for the currency.
+     *
+     * @param volume the traded volume the exchange reports, or null if it does not
+     */
+    public void recordTick(String currency, long time, BigMoney last, BigMoney bid, BigMoney ask, BigDecimal volume) {
+        if (last == null) {
+            return;
+        }
+        TickHistory tickHistory = currencyToTickHistoryMap.get(currency);
+        if (tickHistory == null) {
+            TickHistory newTickHistory = new TickHistory();
+            tickHistory = currencyToTickHistoryMap.putIfAbsent(currency, newTickHistory);
+            if (tickHistory == null) {
+                tickHistory = newTickHistory;
+            }
+        }
+        tickHistory.record(time, last.getAmount().doubleValue(), bid == null ? Double.NaN : bid.getAmount().doubleValue(),
+                ask == null ? Double.NaN : ask.getAmount().doubleValue(), volume == null ? Double.NaN : volume.doubleValue());
+    }
+
+    /**
+     * @return the recent history of the prices for the currency, or null if none have been recorded
+     */
+    public TickHistory getTickHistory(String currency) {
+        return currencyToTickHistoryMap.get(currency);
+    }
+
+    /**
+     * @return true if the prices for the currency are older than the STALE_AGE
+     */
+    public boolean isStale(String currency) {
+        return snapshot.getPrices(currency).isStale();
     }
 
     /**
@@ -138,17 +301,25 @@ public class ExchangeData {
             VIRTEX_EXCHANGE_NAME};
     }
 
+    /**
+     * @return the currencies the exchange trades, which cannot be changed
+     */
     public static Collection<String> getAvailableCurrenciesForExchange(String shortExchangeName) {
-        Collection<String>availableCurrencies = exchangeNameToAvailableCurrenciesMap.get(shortExchangeName);
+        Collection<String> availableCurrencies = shortExchangeName == null ? null
+                : exchangeNameToAvailableCurrenciesMap.get(shortExchangeName);
         if (availableCurrencies == null) {
-            return new ArrayList<String>();
+            return Collections.emptyList();
         } else {
             return availableCurrencies;
         }
     }
 
+    /**
+     * Replace the currencies the exchange trades with a copy of the currencies, keeping their order.
+     */
     public static void setAvailableCurrenciesForExchange(String exchangeName, Collection<String> currencies) {
-        exchangeNameToAvailableCurrenciesMap.put(exchangeName, currencies);
+        exchangeNameToAvailableCurrenciesMap.put(exchangeName,
+                Collections.unmodifiableList(new ArrayList<String>(currencies)));
     }
     
     
@@ -27,8 +27,9 @@ import org.multibit.model.AbstractModel;
 import org.multibit.model.ModelEnum;
 import org.multibit.model.core.CoreModel;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  *
@@ -45,13 +46,23 @@ public class ExchangeModel extends AbstractModel<CoreModel> {
     public static final String TICKER_SHOW_SECOND_ROW = "tickerShowSecondRow";
     public static final String TICKER_SECOND_ROW_EXCHANGE = "tickerSecondRowExchange";
     public static final String TICKER_SECOND_ROW_CURRENCY = "tickerSecondRowCurrency";
+    public static final String TICKER_FAILOVER = "tickerFailover";   // boolean
+    public static final String TICKER_REPEAT_RATE = "tickerRepeatRate";   // milliseconds
+    public static final String TICKER_STREAM_URL = "tickerStreamUrl";
+
+    // Offline exchange simulator.
+    public static final String EXCHANGE_SIMULATOR_TICKS = "exchangeSimulatorTicks";
+    public static final String EXCHANGE_SIMULATOR_TICK_RATE = "exchangeSimulatorTickRate";   // ticks per second
+    public static final String EXCHANGE_SIMULATOR_LATENCY = "exchangeSimulatorLatency";   // milliseconds
+    public static final String EXCHANGE_SIMULATOR_FAILURE_RATE = "exchangeSimulatorFailureRate";   // 0 to 1
     
     // Currency support.
     public static final String SHOW_BITCOIN_CONVERTED_TO_FIAT = "showBitcoinConvertedToFiat";   // boolean
     public static final String OPEN_EXCHANGE_RATES_API_CODE = "openExchangeRatesApiCode";
     
     
-    private Map<String, ExchangeData> shortExchangeNameToExchangeMap;
+    // Written by the ticker threads and read by the Swing thread.
+    private ConcurrentMap<String, ExchangeData> shortExchangeNameToExchangeMap;
     
     
     public ExchangeModel(CoreModel coreModel){
@@ -63,7 +74,7 @@ public class ExchangeModel extends AbstractModel<CoreModel> {
         exchangeData1.setShortExchangeName(getUserPreference(ExchangeModel.TICKER_FIRST_ROW_EXCHANGE));
         exchangeData2.setShortExchangeName(getUserPreference(ExchangeModel.TICKER_SECOND_ROW_EXCHANGE));
         
-        shortExchangeNameToExchangeMap = new HashMap<String, ExchangeData>();
+        shortExchangeNameToExchangeMap = new ConcurrentHashMap<String, ExchangeData>();
         shortExchangeNameToExchangeMap.put(ExchangeModel.TICKER_FIRST_ROW_EXCHANGE, exchangeData1);
         shortExchangeNameToExchangeMap.put(ExchangeModel.TICKER_SECOND_ROW_EXCHANGE, exchangeData2);
         
@@ -75,8 +86,27 @@ public class ExchangeModel extends AbstractModel<CoreModel> {
     }
     
     public ExchangeData getExchangeData(String shortExchangeName) {
+        if (shortExchangeName == null) {
+            return null;
+        }
         return shortExchangeNameToExchangeMap.get(shortExchangeName);
     }
+
+    /**
+     * @return the ExchangeData for the exchange, added if there is not one yet
+     */
+    public ExchangeData getOrCreateExchangeData(String shortExchangeName) {
+        ExchangeData exchangeData = shortExchangeNameToExchangeMap.get(shortExchangeName);
+        if (exchangeData == null) {
+            ExchangeData newExchangeData = new ExchangeData();
+            newExchangeData.setShortExchangeName(shortExchangeName);
+            exchangeData = shortExchangeNameToExchangeMap.putIfAbsent(shortExchangeName, newExchangeData);
+            if (exchangeData == null) {
+                exchangeData = newExchangeData;
+            }
+        }
+        return exchangeData;
+    }
     
     public Map<String, ExchangeData> getShortExchangeNameToExchangeMap() {
         return shortExchangeNameToExchangeMap;
@@ -0,0 +1,257 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.model.exchange;
+
+/**
+ * A fixed size ring of the recent ticks for one currency on one exchange,
+ * with rolling analytics for the ticker.
+ *
+ * <p>
+ * Ticks are kept for the window before the latest tick, up to the capacity.
+ * The volume weighted average price, average spread and change over the
+ * window are kept as running sums that are updated as ticks are added and
+ * dropped, so reading them is constant time. The sums are recalculated
+ * from the ring once per capacity ticks to stop rounding errors building up.
+ * Nothing is allocated after construction.
+ *
+ * <p>
+ * The volume the exchanges report is what has traded over the last 24 hours,
+ * so each tick is weighted by how much that volume grew since the previous
+ * tick with a volume, which is roughly what traded at about its price. Ticks
+ * whose volume is not known or did not grow have no weight. While no tick in
+ * the window has any weight the plain average of the last prices is used.
+ */
+public class TickHistory {
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    public static final long DEFAULT_WINDOW = 24 * 60 * 60 * 1000L; // milliseconds
+
+    private final int capacity;
+    private final long window;
+
+    private final long[] times;
+    private final double[] lasts;
+    private final double[] bids;
+    private final double[] asks;
+    private final double[] weights;
+
+    // Index of the oldest tick.
+    private int head = 0;
+    private int size = 0;
+
+    // The volume of the latest tick that had one, to weight the next tick by.
+    private double previousVolume = Double.NaN;
+
+    private double priceSum = 0;
+    private double weightedPriceSum = 0;
+    private double weightSum = 0;
+    private double spreadSum = 0;
+    private int spreadCount = 0;
+
+    private int ticksSinceRecalculation = 0;
+
+    public TickHistory() {
+        this(DEFAULT_CAPACITY, DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param capacity the most ticks kept
+     * @param window how long before the latest tick ticks are kept, in milliseconds
+     */
+    public TickHistory(int capacity, long window) {
+        if (capacity < 1 || window < 1) {
+            throw new IllegalArgumentException("Tick history capacity and window must be positive");
+        }
+        this.capacity = capacity;
+        this.window = window;
+        times = new long[capacity];
+        lasts = new double[capacity];
+        bids = new double[capacity];
+        asks = new double[capacity];
+        weights = new double[capacity];
+    }
+
+    /**
+     * Add a tick. Ticks are expected in time order; one older than the latest is ignored.
+     *
+     * @param bid the bid, or NaN if it is not known
+     * @param ask the ask, or NaN if it is not known
+     * @param volume the volume traded over the last 24 hours, or NaN or zero if it is not known
+     */
+    public synchronized void record(long time, double last, double bid, double ask, double volume) {
+        if (Double.isNaN(last) || Double.isInfinite(last) || (size > 0 && time < times[index(size - 1)])) {
+            return;
+        }
+
+        // Drop the ticks that are now outside the window, then make room.
+        while (size > 0 && times[head] < time - window) {
+            removeOldest();
+        }
+        if (size == capacity) {
+            removeOldest();
+        }
+
+        int tail = index(size);
+        times[tail] = time;
+        lasts[tail] = last;
+        bids[tail] = bid;
+        asks[tail] = ask;
+        weights[tail] = 0;
+        if (volume > 0 && !Double.isInfinite(volume)) {
+            if (volume > previousVolume) {
+                weights[tail] = volume - previousVolume;
+            }
+            previousVolume = volume;
+        }
+        size++;
+        add(tail);
+
+        if (++ticksSinceRecalculation >= capacity) {
+            recalculate();
+        }
+    }
+
+    private int index(int position) {
+        return (head + position) % capacity;
+    }
+
+    private void add(int index) {
+        priceSum += lasts[index];
+        weightedPriceSum += lasts[index] * weights[index];
+        weightSum += weights[index];
+        if (hasSpread(index)) {
+            spreadSum += asks[index] - bids[index];
+            spreadCount++;
+        }
+    }
+
+    private void removeOldest() {
+        if (hasSpread(head)) {
+            spreadSum -= asks[head] - bids[head];
+            spreadCount--;
+        }
+        priceSum -= lasts[head];
+        weightedPriceSum -= lasts[head] * weights[head];
+        weightSum -= weights[head];
+        head = (head + 1) % capacity;
+        size--;
+        if (size == 0) {
+            clearSums();
+        }
+    }
+
+    private boolean hasSpread(int index) {
+        return !Double.isNaN(bids[index]) && !Double.isNaN(asks[index]);
+    }
+
+    private void clearSums() {
+        priceSum = 0;
+        weightedPriceSum = 0;
+        weightSum = 0;
+        spreadSum = 0;
+        spreadCount = 0;
+    }
+
+    private void recalculate() {
+        clearSums();
+        for (int position = 0; position < size; position++) {
+            add(index(position));
+        }
+        ticksSinceRecalculation = 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getWindow() {
+        return window;
+    }
+
+    /**
+     * @return the volume weighted average last price over the window, the
+     *         average last price if no tick has a weight, or NaN if there are no ticks
+     */
+    public synchronized double getVolumeWeightedAveragePrice() {
+        if (size == 0) {
+            return Double.NaN;
+        }
+        return weightSum > 0 ? weightedPriceSum / weightSum : priceSum / size;
+    }
+
+    /**
+     * @return the latest ask minus the latest bid, or NaN if they are not known
+     */
+    public synchronized double getSpread() {
+        if (size == 0) {
+            return Double.NaN;
+        }
+        int latest = index(size - 1);
+        return hasSpread(latest) ? asks[latest] - bids[latest] : Double.NaN;
+    }
+
+    /**
+     * @return the average spread over the window, or NaN if no tick had a bid and ask
+     */
+    public synchronized double getAverageSpread() {
+        return spreadCount == 0 ? Double.NaN : spreadSum / spreadCount;
+    }
+
+    /**
+     * @return the latest last price minus the oldest in the window, or NaN if there are no ticks
+     */
+    public synchronized double getChange() {
+        return size == 0 ? Double.NaN : lasts[index(size - 1)] - lasts[head];
+    }
+
+    /**
+     * @return the change over the window as a percentage of the oldest last price, or NaN if it is not known
+     */
+    public synchronized double getChangePercent() {
+        if (size == 0 || lasts[head] == 0) {
+            return Double.NaN;
+        }
+        return 100 * (lasts[index(size - 1)] - lasts[head]) / lasts[head];
+    }
+
+    /**
+     * @return the time of the oldest tick in the window, or 0 if there are no ticks
+     */
+    public synchronized long getOldestTime() {
+        return size == 0 ? 0 : times[head];
+    }
+
+    /**
+     * Copy the times and last prices, oldest first, for charting.
+     *
+     * @return the number of ticks copied, at most the length of the arrays
+     */
+    public synchronized int copyLastPrices(long[] timesCopy, double[] lastsCopy) {
+        int count = Math.min(size, Math.min(timesCopy.length, lastsCopy.length));
+        int skip = size - count;
+        for (int position = 0; position < count; position++) {
+            int index = index(skip + position);
+            timesCopy[position] = times[index];
+            lastsCopy[position] = lasts[index];
+        }
+        return count;
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Holds blocks that arrive out of order from several peers and releases them
+ * strictly in height order.
+ *
+ * @param <T>
+ *            the type of block held
+ */
+public class BlockReorderBuffer<T> {
+
+    private final SortedMap<Integer, T> waitingBlocks = new TreeMap<Integer, T>();
+
+    /**
+     * The height of the next block to release.
+     */
+    private int nextHeight;
+
+    public BlockReorderBuffer(int firstHeight) {
+        this.nextHeight = firstHeight;
+    }
+
+    /**
+     * Add a block to the buffer.
+     *
+     * @return false if the block has already been released or is already waiting
+     */
+    public synchronized boolean offer(int height, T block) {
+        if (height < nextHeight || waitingBlocks.containsKey(height)) {
+            return false;
+        }
+        waitingBlocks.put(height, block);
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Remove and return the run of consecutive blocks starting at the next height.
+     *
+     * @return the blocks in height order, empty if the next block has not arrived
+     */
+    public synchronized List<T> takeReady() {
+        List<T> readyBlocks = new ArrayList<T>();
+        T block = waitingBlocks.remove(nextHeight);
+        while (block != null) {
+            readyBlocks.add(block);
+            nextHeight++;
+            block = waitingBlocks.remove(nextHeight);
+        }
+        return readyBlocks;
+    }
+
+    /**
+     * Wait until the next block has arrived or the timeout expires.
+     */
+    public synchronized void awaitReady(long timeout) throws InterruptedException {
+        if (!waitingBlocks.containsKey(nextHeight)) {
+            wait(timeout);
+        }
+    }
+
+    public synchronized int getNextHeight() {
+        return nextHeight;
+    }
+
+    public synchronized int size() {
+        return waitingBlocks.size();
+    }
+}
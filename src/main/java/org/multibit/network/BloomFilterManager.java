@@ -0,0 +1,170 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.network;
+
+import com.google.bitcoin.core.PeerGroup;
+import com.google.bitcoin.core.Wallet;
+import org.multibit.controller.bitcoin.BitcoinController;
+import org.multibit.event.EventDispatcher;
+import org.multibit.model.bitcoin.WalletData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Looks after the bloom filter sent to the peers.
+ *
+ * <p>
+ * Requests to recalculate the filter are batched: the first request opens a
+ * window of RECALCULATION_DELAY and any further requests within that window
+ * are served by the same recalculation. Before each recalculation the false
+ * positive rate is sized to the total number of filter elements over all the
+ * wallets so that the filter does not grow beyond MAXIMUM_FILTER_SIZE.
+ */
+public class BloomFilterManager {
+    private static final Logger log = LoggerFactory.getLogger(BloomFilterManager.class);
+
+    public static final int RECALCULATION_DELAY = 2000; // ms
+
+    /**
+     * The false positive rate used whilst the filter is small.
+     */
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.0005;
+
+    /**
+     * The false positive rate is never relaxed beyond this.
+     */
+    public static final double MAXIMUM_FALSE_POSITIVE_RATE = 0.005;
+
+    /**
+     * The largest filter, in bytes, that is sent to the peers before the false positive rate is relaxed.
+     */
+    public static final int MAXIMUM_FILTER_SIZE = 16000;
+
+    private final BitcoinController bitcoinController;
+
+    private final PeerGroup peerGroup;
+
+    private ScheduledFuture<?> pendingRecalculation;
+
+    private boolean stopped = false;
+
+    // Read by the PeerGroup and written by the recalculation task.
+    private volatile double falsePositiveRate = DEFAULT_FALSE_POSITIVE_RATE;
+
+    private volatile FilteredBlockRecorder filteredBlockRecorder;
+
+    public BloomFilterManager(BitcoinController bitcoinController, PeerGroup peerGroup) {
+        this.bitcoinController = bitcoinController;
+        this.peerGroup = peerGroup;
+    }
+
+    /**
+     * Ask for the filter to be recalculated and sent to the peers. Returns immediately.
+     */
+    public synchronized void requestRecalculation() {
+        if (stopped || pendingRecalculation != null) {
+            // Already batched into the next recalculation.
+            return;
+        }
+        pendingRecalculation = EventDispatcher.INSTANCE.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (BloomFilterManager.this) {
+                    if (stopped) {
+                        return;
+                    }
+                    pendingRecalculation = null;
+                }
+                recalculateNow();
+            }
+        }, RECALCULATION_DELAY);
+    }
+
+    /**
+     * Resize the false positive rate and recalculate the filter straight away.
+     */
+    public void recalculateNow() {
+        try {
+            double newFalsePositiveRate = calculateFalsePositiveRate(getTotalElementCount());
+            if (newFalsePositiveRate != falsePositiveRate) {
+                log.debug("Bloom filter false positive rate changed from " + falsePositiveRate + " to " + newFalsePositiveRate);
+                falsePositiveRate = newFalsePositiveRate;
+                peerGroup.setBloomFilterFalsePositiveRate(falsePositiveRate);
+            }
+            peerGroup.recalculateFastCatchupAndFilter(PeerGroup.FilterRecalculateMode.SEND_IF_CHANGED);
+
+            if (filteredBlockRecorder != null && bitcoinController.getModel() != null) {
+                filteredBlockRecorder.filterRecalculated(bitcoinController.getModel().getPerWalletModelDataList());
+            }
+        } catch (RuntimeException re) {
+            log.error(re.getClass().getName() + " " + re.getMessage());
+        }
+    }
+
+    /**
+     * Tell the block archive whenever the filter is recalculated.
+     */
+    public void setFilteredBlockRecorder(FilteredBlockRecorder filteredBlockRecorder) {
+        this.filteredBlockRecorder = filteredBlockRecorder;
+    }
+
+    public synchronized void stop() {
+        stopped = true;
+        if (pendingRecalculation != null) {
+            pendingRecalculation.cancel(false);
+            pendingRecalculation = null;
+        }
+    }
+
+    private int getTotalElementCount() {
+        int totalElementCount = 0;
+        if (bitcoinController.getModel() != null) {
+            List<WalletData> perWalletModelDataList = bitcoinController.getModel().getPerWalletModelDataList();
+            if (perWalletModelDataList != null) {
+                for (WalletData perWalletModelData : perWalletModelDataList) {
+                    Wallet wallet = perWalletModelData.getWallet();
+                    if (wallet != null) {
+                        totalElementCount += wallet.getBloomFilterElementCount();
+                    }
+                }
+            }
+        }
+        return totalElementCount;
+    }
+
+    /**
+     * Work out the false positive rate for a filter holding the given number of
+     * elements. The default rate is used unless that would make the filter
+     * larger than MAXIMUM_FILTER_SIZE, in which case the rate is relaxed to fit.
+     */
+    public static double calculateFalsePositiveRate(int elementCount) {
+        if (elementCount <= 0) {
+            return DEFAULT_FALSE_POSITIVE_RATE;
+        }
+        // Optimal filter size in bits is -n ln(p) / (ln 2)^2, so the rate that fills m bits is exp(-m (ln 2)^2 / n).
+        double maximumBits = MAXIMUM_FILTER_SIZE * 8.0;
+        double rateToFit = Math.exp(-maximumBits * Math.log(2) * Math.log(2) / elementCount);
+
+        return Math.min(MAXIMUM_FALSE_POSITIVE_RATE, Math.max(DEFAULT_FALSE_POSITIVE_RATE, rateToFit));
+    }
+
+    public double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.network;
+
+import com.google.bitcoin.core.AbstractWalletEventListener;
+import com.google.bitcoin.core.BloomFilter;
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.PeerFilterProvider;
+import com.google.bitcoin.core.ScriptException;
+import com.google.bitcoin.core.Transaction;
+import com.google.bitcoin.core.TransactionOutPoint;
+import com.google.bitcoin.core.TransactionOutput;
+import com.google.bitcoin.core.Wallet;
+import com.google.bitcoin.script.Script;
+import com.google.bitcoin.script.ScriptChunk;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Wraps a Wallet as a PeerFilterProvider and keeps the wallet's contribution to
+ * the combined bloom filter.
+ *
+ * <p>
+ * The PeerGroup merges the filters of all its wallets whenever the filter is
+ * recalculated. With this wrapper only the wallets whose keys, scripts or
+ * outpoints have changed since the last recalculation are scanned again.
+ *
+ * <p>
+ * The filter size follows the element count of all the wallets, so the
+ * wallet's filter elements are kept rather than a filter of one size. A change
+ * to another wallet only costs inserting the kept elements into a filter of
+ * the new size.
+ */
+public class CachingPeerFilterProvider implements PeerFilterProvider {
+
+    private volatile Wallet wallet;
+
+    private final Lock lock = new ReentrantLock();
+
+    private final WalletChangeListener walletChangeListener = new WalletChangeListener();
+
+    /**
+     * Scripts shorter than this are too common to put in the filter. Matches the Wallet.
+     */
+    static final int MINIMUM_BLOOM_DATA_LENGTH = 8;
+
+    /**
+     * The wallet's filter elements, and the element count and earliest key time of the wallet they were read at.
+     */
+    private List<byte[]> cachedElements;
+    private int cachedElementCount;
+    private long cachedEarliestKeyCreationTime;
+
+    /**
+     * The last filter built from the cached elements, and the parameters it was built with.
+     */
+    private BloomFilter cachedFilter;
+    private int cachedSize;
+    private double cachedFalsePositiveRate;
+    private long cachedTweak;
+
+    public CachingPeerFilterProvider(Wallet wallet) {
+        this.wallet = wallet;
+        wallet.addEventListener(walletChangeListener);
+    }
+
+    public long getEarliestKeyCreationTime() {
+        Wallet currentWallet = wallet;
+        return currentWallet == null ? Long.MAX_VALUE : currentWallet.getEarliestKeyCreationTime();
+    }
+
+    public int getBloomFilterElementCount() {
+        Wallet currentWallet = wallet;
+        return currentWallet == null ? 0 : currentWallet.getBloomFilterElementCount();
+    }
+
+    public BloomFilter getBloomFilter(int size, double falsePositiveRate, long nTweak) {
+        lock.lock();
+        try {
+            Wallet currentWallet = wallet;
+            if (currentWallet == null) {
+                // The wallet has been closed - contribute nothing.
+                return new BloomFilter(size, falsePositiveRate, nTweak);
+            }
+
+            int elementCount = currentWallet.getBloomFilterElementCount();
+            long earliestKeyCreationTime = currentWallet.getEarliestKeyCreationTime();
+            if (cachedElements == null || cachedElementCount != elementCount
+                    || cachedEarliestKeyCreationTime != earliestKeyCreationTime) {
+                cachedElements = readElements(currentWallet);
+                cachedElementCount = elementCount;
+                cachedEarliestKeyCreationTime = earliestKeyCreationTime;
+                cachedFilter = null;
+            }
+
+            if (cachedFilter == null || cachedSize != size || cachedFalsePositiveRate != falsePositiveRate || cachedTweak != nTweak) {
+                BloomFilter filter = new BloomFilter(size, falsePositiveRate, nTweak);
+                for (byte[] element : cachedElements) {
+                    filter.insert(element);
+                }
+                cachedFilter = filter;
+                cachedSize = size;
+                cachedFalsePositiveRate = falsePositiveRate;
+                cachedTweak = nTweak;
+            }
+            return cachedFilter;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Read the elements the wallet puts in its bloom filter: its keys, the data in its watched scripts
+     * and the outpoints of its outputs that are spent without naming a key.
+     */
+    static List<byte[]> readElements(Wallet wallet) {
+        List<byte[]> elements = new ArrayList<byte[]>();
+        List<ECKey> keys = wallet.getKeychain();
+        if (keys != null) {
+            for (ECKey key : keys) {
+                elements.add(key.getPubKey());
+                elements.add(key.getPubKeyHash());
+            }
+        }
+        for (Script script : wallet.getWatchedScripts()) {
+            for (ScriptChunk scriptChunk : script.getChunks()) {
+                if (!scriptChunk.isOpCode() && scriptChunk.data.length >= MINIMUM_BLOOM_DATA_LENGTH) {
+                    elements.add(scriptChunk.data);
+                }
+            }
+        }
+        for (Transaction transaction : wallet.getTransactions(false)) {
+            List<TransactionOutput> outputs = transaction.getOutputs();
+            for (int i = 0; i < outputs.size(); i++) {
+                TransactionOutput output = outputs.get(i);
+                try {
+                    if ((output.isMine(wallet) && output.getScriptPubKey().isSentToRawPubKey()) || output.isWatched(wallet)) {
+                        elements.add(new TransactionOutPoint(wallet.getNetworkParameters(), i, transaction).bitcoinSerialize());
+                    }
+                } catch (ScriptException se) {
+                    // Not a script the wallet can spend, so not one to hear about.
+                }
+            }
+        }
+        return elements;
+    }
+
+    public boolean isRequiringUpdateAllBloomFilter() {
+        Wallet currentWallet = wallet;
+        return currentWallet != null && currentWallet.isRequiringUpdateAllBloomFilter();
+    }
+
+    public Lock getLock() {
+        return lock;
+    }
+
+    /**
+     * Mark the cached filter as out of date.
+     */
+    public void invalidate() {
+        lock.lock();
+        try {
+            cachedElements = null;
+            cachedFilter = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop providing the wallet's keys, for when the wallet is closed.
+     */
+    public void release() {
+        Wallet currentWallet = wallet;
+        if (currentWallet != null) {
+            currentWallet.removeEventListener(walletChangeListener);
+        }
+        wallet = null;
+        invalidate();
+    }
+
+    public Wallet getWallet() {
+        return wallet;
+    }
+
+    /**
+     * Invalidates the cached filter when the wallet changes what it wants to hear about.
+     */
+    private class WalletChangeListener extends AbstractWalletEventListener {
+        @Override
+        public void onKeysAdded(Wallet wallet, List<ECKey> keys) {
+            invalidate();
+        }
+
+        @Override
+        public void onScriptsAdded(Wallet wallet, List<Script> scripts) {
+            invalidate();
+        }
+
+        @Override
+        public void onCoinsReceived(Wallet wallet, Transaction tx, BigInteger prevBalance, BigInteger newBalance) {
+            invalidate();
+        }
+
+        @Override
+        public void onReorganize(Wallet wallet) {
+            invalidate();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.network;
+
+import com.google.bitcoin.core.*;
+import org.multibit.file.BlockArchiveFile;
+import org.multibit.model.bitcoin.WalletData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A local archive of the filtered blocks and matched transactions downloaded
+ * from the peers.
+ *
+ * <p>
+ * Each block is stored with the id of the wallet filter it was matched
+ * against. The filter is kept as the set of public key hashes of all the
+ * wallets, so whether a wallet's keys are covered by an archived block can be
+ * answered exactly. A replay of wallets whose keys are all covered is served
+ * from the archive and only the heights that are missing are downloaded again.
+ */
+public class FilteredBlockArchive {
+    private static final Logger log = LoggerFactory.getLogger(FilteredBlockArchive.class);
+
+    private static final int PUB_KEY_HASH_LENGTH = 20;
+
+    private final NetworkParameters networkParameters;
+
+    private final BlockArchiveFile blockArchiveFile;
+
+    /**
+     * The decoded filters, by filter id.
+     */
+    private final Map<Integer, Set<String>> filters = new HashMap<Integer, Set<String>>();
+
+    private Set<String> currentFilter;
+
+    private volatile int currentFilterId = BlockArchiveFile.UNKNOWN_FILTER_ID;
+
+    public FilteredBlockArchive(NetworkParameters networkParameters, String filenamePrefix) {
+        this.networkParameters = networkParameters;
+        this.blockArchiveFile = new BlockArchiveFile(filenamePrefix);
+    }
+
+    public void open() throws IOException {
+        blockArchiveFile.open();
+    }
+
+    public void close() {
+        try {
+            blockArchiveFile.close();
+        } catch (IOException ioe) {
+            log.error(ioe.getClass().getName() + " " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Take a snapshot of the keys of all the open wallets as the filter that
+     * blocks are now matched against.
+     *
+     * @return true if the filter has changed
+     */
+    public synchronized boolean updateFilter(List<WalletData> perWalletModelDataList) {
+        Map<String, byte[]> pubKeyHashes = new TreeMap<String, byte[]>();
+        if (perWalletModelDataList != null) {
+            for (WalletData perWalletModelData : perWalletModelDataList) {
+                addKeys(pubKeyHashes, perWalletModelData.getWallet());
+            }
+        }
+        Set<String> filter = new HashSet<String>(pubKeyHashes.keySet());
+        if (filter.equals(currentFilter)) {
+            return false;
+        }
+
+        byte[] filterBytes = new byte[pubKeyHashes.size() * PUB_KEY_HASH_LENGTH];
+        int offset = 0;
+        for (byte[] pubKeyHash : pubKeyHashes.values()) {
+            System.arraycopy(pubKeyHash, 0, filterBytes, offset, PUB_KEY_HASH_LENGTH);
+            offset += PUB_KEY_HASH_LENGTH;
+        }
+        try {
+            currentFilterId = blockArchiveFile.addFilter(filterBytes);
+            currentFilter = filter;
+            filters.put(currentFilterId, filter);
+        } catch (IOException ioe) {
+            log.error(ioe.getClass().getName() + " " + ioe.getMessage());
+            currentFilterId = BlockArchiveFile.UNKNOWN_FILTER_ID;
+            currentFilter = null;
+        }
+        return true;
+    }
+
+    public int getCurrentFilterId() {
+        return currentFilterId;
+    }
+
+    /**
+     * Store a block that was added to the chain. Blocks missing any of their
+     * matched transactions are not stored.
+     */
+    public void record(FilteredBlock filteredBlock, int height, int filterId) {
+        if (filterId == BlockArchiveFile.UNKNOWN_FILTER_ID) {
+            return;
+        }
+        Map<Sha256Hash, Transaction> associatedTransactions = filteredBlock.getAssociatedTransactions();
+        List<byte[]> transactions = new ArrayList<byte[]>();
+        for (Sha256Hash hash : filteredBlock.getTransactionHashes()) {
+            Transaction transaction = associatedTransactions.get(hash);
+            if (transaction == null) {
+                log.debug("Not archiving block " + filteredBlock.getHash() + " as transaction " + hash + " is missing.");
+                return;
+            }
+            transactions.add(transaction.bitcoinSerialize());
+        }
+        try {
+            blockArchiveFile.append(height, filterId, filteredBlock.bitcoinSerialize(), transactions);
+        } catch (IOException ioe) {
+            log.error(ioe.getClass().getName() + " " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Add the archived blocks following the chain head to the chain, for as
+     * long as the blocks connect and the keys of all the wallets being
+     * replayed were in the filter the blocks were matched against.
+     *
+     * @return the number of blocks added
+     */
+    public int replay(AbstractBlockChain chain, List<WalletData> perWalletModelDataToReplay) {
+        Map<String, byte[]> replayKeys = new HashMap<String, byte[]>();
+        if (perWalletModelDataToReplay != null) {
+            for (WalletData perWalletModelData : perWalletModelDataToReplay) {
+                addKeys(replayKeys, perWalletModelData.getWallet());
+            }
+        }
+
+        Map<Integer, Boolean> filterCoversKeys = new HashMap<Integer, Boolean>();
+        int numberOfBlocksReplayed = 0;
+        int height = chain.getBestChainHeight() + 1;
+        try {
+            while (true) {
+                BlockArchiveFile.Record record = blockArchiveFile.read(height);
+                if (record == null) {
+                    break;
+                }
+                Boolean covered = filterCoversKeys.get(record.getFilterId());
+                if (covered == null) {
+                    Set<String> filter = getFilter(record.getFilterId());
+                    covered = filter != null && filter.containsAll(replayKeys.keySet());
+                    filterCoversKeys.put(record.getFilterId(), covered);
+                }
+                if (!covered) {
+                    log.debug("Archived block at height " + height + " was not matched against all the keys being replayed.");
+                    break;
+                }
+
+                FilteredBlock filteredBlock = new FilteredBlock(networkParameters, record.getBlock());
+                for (byte[] transactionBytes : record.getTransactions()) {
+                    filteredBlock.provideTransaction(new Transaction(networkParameters, transactionBytes));
+                }
+                if (!chain.add(filteredBlock) || chain.getBestChainHeight() != height) {
+                    log.debug("Archived block at height " + height + " does not connect to the chain.");
+                    break;
+                }
+                numberOfBlocksReplayed++;
+                height++;
+            }
+        } catch (Exception e) {
+            log.error("Could not replay archived block at height " + height + ". " + e.getClass().getName() + " "
+                    + e.getMessage());
+        }
+        return numberOfBlocksReplayed;
+    }
+
+    private synchronized Set<String> getFilter(int filterId) {
+        Set<String> filter = filters.get(filterId);
+        if (filter == null) {
+            byte[] filterBytes = blockArchiveFile.getFilter(filterId);
+            if (filterBytes != null) {
+                filter = new HashSet<String>();
+                for (int offset = 0; offset + PUB_KEY_HASH_LENGTH <= filterBytes.length; offset += PUB_KEY_HASH_LENGTH) {
+                    filter.add(Utils.bytesToHexString(Arrays.copyOfRange(filterBytes, offset, offset + PUB_KEY_HASH_LENGTH)));
+                }
+                filters.put(filterId, filter);
+            }
+        }
+        return filter;
+    }
+
+    private static void addKeys(Map<String, byte[]> pubKeyHashes, Wallet wallet) {
+        if (wallet == null) {
+            return;
+        }
+        List<ECKey> keys = wallet.getKeychain();
+        if (keys != null) {
+            for (ECKey key : keys) {
+                byte[] pubKeyHash = key.getPubKeyHash();
+                pubKeyHashes.put(Utils.bytesToHexString(pubKeyHash), pubKeyHash);
+            }
+        }
+    }
+}
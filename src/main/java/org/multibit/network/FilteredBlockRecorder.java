@@ -0,0 +1,191 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.network;
+
+import com.google.bitcoin.core.*;
+import com.google.bitcoin.utils.Threading;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.multibit.file.BlockArchiveFile;
+import org.multibit.model.bitcoin.WalletData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Copies the filtered blocks a PeerGroup adds to the chain into the
+ * FilteredBlockArchive.
+ *
+ * <p>
+ * When the wallet filter changes each peer is pinged. Blocks that arrive from
+ * a peer before its pong may have been matched against the old filter and are
+ * not archived.
+ */
+public class FilteredBlockRecorder extends AbstractPeerEventListener {
+    private static final Logger log = LoggerFactory.getLogger(FilteredBlockRecorder.class);
+
+    /**
+     * The most filtered blocks held waiting to be added to the chain.
+     */
+    private static final int MAXIMUM_PENDING_BLOCKS = 1000;
+
+    private final FilteredBlockArchive filteredBlockArchive;
+
+    private final PeerGroup peerGroup;
+
+    private final AbstractBlockChain chain;
+
+    /**
+     * The filter id each peer is known to be matching blocks against.
+     */
+    private final ConcurrentMap<Peer, Integer> peerFilterIds = new ConcurrentHashMap<Peer, Integer>();
+
+    /**
+     * Filtered blocks that have arrived but have not yet been added to the chain, by block hash.
+     */
+    private final Map<Sha256Hash, PendingBlock> pendingBlocks = new LinkedHashMap<Sha256Hash, PendingBlock>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Sha256Hash, PendingBlock> eldest) {
+            return size() > MAXIMUM_PENDING_BLOCKS;
+        }
+    };
+
+    public FilteredBlockRecorder(FilteredBlockArchive filteredBlockArchive, PeerGroup peerGroup, AbstractBlockChain chain) {
+        this.filteredBlockArchive = filteredBlockArchive;
+        this.peerGroup = peerGroup;
+        this.chain = chain;
+    }
+
+    /**
+     * Snapshot the wallet filter after it has been recalculated and wait for
+     * each peer to acknowledge it.
+     */
+    public void filterRecalculated(List<WalletData> perWalletModelDataList) {
+        if (!filteredBlockArchive.updateFilter(perWalletModelDataList)) {
+            return;
+        }
+        final int filterId = filteredBlockArchive.getCurrentFilterId();
+        for (final Peer peer : peerGroup.getConnectedPeers()) {
+            peerFilterIds.put(peer, BlockArchiveFile.UNKNOWN_FILTER_ID);
+            try {
+                ListenableFuture<Long> pong = peer.ping();
+                pong.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (filterId == filteredBlockArchive.getCurrentFilterId() && peerFilterIds.containsKey(peer)) {
+                            peerFilterIds.put(peer, filterId);
+                        }
+                    }
+                }, Threading.SAME_THREAD);
+            } catch (Exception e) {
+                log.debug("Could not ping peer " + peer.getAddress() + ". " + e.getClass().getName() + " " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * The filter id blocks from a peer are currently being matched against.
+     */
+    public int getFilterId(Peer peer) {
+        Integer filterId = peer == null ? null : peerFilterIds.get(peer);
+        return filterId == null ? BlockArchiveFile.UNKNOWN_FILTER_ID : filterId;
+    }
+
+    /**
+     * Archive a block that has been added to the chain outside the regular download.
+     */
+    public void record(Peer peer, FilteredBlock filteredBlock, int height) {
+        filteredBlockArchive.record(filteredBlock, height, getFilterId(peer));
+    }
+
+    @Override
+    public void onPeerConnected(Peer peer, int peerCount) {
+        // A new peer is sent the current filter before any blocks are requested.
+        peerFilterIds.put(peer, filteredBlockArchive.getCurrentFilterId());
+    }
+
+    @Override
+    public void onPeerDisconnected(Peer peer, int peerCount) {
+        if (peer != null) {
+            peerFilterIds.remove(peer);
+        }
+    }
+
+    /**
+     * Runs on the network thread of each peer. Remembers each filtered block
+     * and the filter it was matched against until it is added to the chain.
+     */
+    @Override
+    public Message onPreMessageReceived(Peer peer, Message message) {
+        if (message instanceof FilteredBlock) {
+            FilteredBlock filteredBlock = (FilteredBlock) message;
+            synchronized (pendingBlocks) {
+                pendingBlocks.put(filteredBlock.getHash(), new PendingBlock(filteredBlock, getFilterId(peer)));
+            }
+        }
+        return message;
+    }
+
+    @Override
+    public void onBlocksDownloaded(Peer peer, Block block, int blocksLeft) {
+        PendingBlock pendingBlock;
+        synchronized (pendingBlocks) {
+            pendingBlock = pendingBlocks.remove(block.getHash());
+        }
+        if (pendingBlock == null) {
+            return;
+        }
+
+        try {
+            StoredBlock storedBlock = chain.getBlockStore().get(block.getHash());
+            if (storedBlock == null) {
+                // An orphan.
+                return;
+            }
+
+            // The peer does not resend transactions it has already relayed to us.
+            FilteredBlock filteredBlock = pendingBlock.filteredBlock;
+            Map<Sha256Hash, Transaction> associatedTransactions = filteredBlock.getAssociatedTransactions();
+            for (Sha256Hash hash : filteredBlock.getTransactionHashes()) {
+                if (!associatedTransactions.containsKey(hash)) {
+                    Transaction transaction = peerGroup.getMemoryPool().get(hash);
+                    if (transaction != null) {
+                        filteredBlock.provideTransaction(transaction);
+                    }
+                }
+            }
+            filteredBlockArchive.record(filteredBlock, storedBlock.getHeight(), pendingBlock.filterId);
+        } catch (Exception e) {
+            log.error("Could not archive block " + block.getHash() + ". " + e.getClass().getName() + " " + e.getMessage());
+        }
+    }
+
+    private static class PendingBlock {
+        final FilteredBlock filteredBlock;
+        final int filterId;
+
+        PendingBlock(FilteredBlock filteredBlock, int filterId) {
+            this.filteredBlock = filteredBlock;
+            this.filterId = filterId;
+        }
+    }
+}
@@ -19,16 +19,27 @@ package org.multibit.network;
 import com.google.bitcoin.core.DownloadListener;
 import org.multibit.controller.Controller;
 import org.multibit.controller.bitcoin.BitcoinController;
+import org.multibit.event.EventDispatcher;
 import org.multibit.message.Message;
 import org.multibit.message.MessageManager;
+import org.multibit.viewsystem.ViewSystem;
+import org.multibit.viewsystem.swing.MultiBitFrame;
 import org.multibit.viewsystem.swing.view.walletlist.SingleWalletPanelDownloadListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.awt.Frame;
+import java.awt.Window;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.text.DateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
 
 /**
@@ -42,6 +53,11 @@ import java.util.List;
  * Methods are called with the event listener object locked so your
  * implementation does not have to be thread safe.
  * 
+ * <p>
+ * Progress is reported to the user at most every PROGRESS_REPORT_INTERVAL,
+ * with the latest progress at that time, and not at all whilst the MultiBit
+ * window is minimised. The latest progress is reported when the window is
+ * restored.
  */
 public class MultiBitDownloadListener extends DownloadListener {
     private static final Logger log = LoggerFactory.getLogger(MultiBitDownloadListener.class);
@@ -51,6 +67,11 @@ public class MultiBitDownloadListener extends DownloadListener {
                                                           // rounding
     private static final int CRITERIA_LARGE_NUMBER_OF_BLOCKS = 1000;
 
+    /**
+     * Time between progress reports - 10 per second.
+     */
+    public static final int PROGRESS_REPORT_INTERVAL = 100; // milliseconds
+
     private final Controller controller;
     private final BitcoinController bitcoinController;
     
@@ -60,10 +81,93 @@ public class MultiBitDownloadListener extends DownloadListener {
     
     private int blocksToDownloadAtStart = -1;
 
+    /**
+     * The latest progress not yet reported, guarded by lockObject.
+     */
+    private ProgressSample pendingProgress;
+
+    /**
+     * Whether a progress report is scheduled, guarded by lockObject.
+     */
+    private boolean progressReportScheduled = false;
+
+    /**
+     * Incremented whenever a download starts or finishes so that progress
+     * sampled beforehand is not reported afterwards, guarded by lockObject.
+     */
+    private int downloadGeneration = 0;
+
+    /**
+     * The MultiBit frames watched for being minimised and those of them that
+     * currently are, guarded by lockObject.
+     */
+    private final List<MultiBitFrame> frames = new ArrayList<MultiBitFrame>();
+    private final Set<Window> minimisedFrames = new HashSet<Window>();
+
+    private final WindowAdapter frameStateListener = new WindowAdapter() {
+        @Override
+        public void windowIconified(WindowEvent e) {
+            synchronized (lockObject) {
+                minimisedFrames.add(e.getWindow());
+            }
+        }
+
+        @Override
+        public void windowDeiconified(WindowEvent e) {
+            synchronized (lockObject) {
+                minimisedFrames.remove(e.getWindow());
+                if (pendingProgress != null && !progressReportScheduled && !isMinimised()) {
+                    // Show the progress made whilst minimised straight away.
+                    progressReportScheduled = true;
+                    EventDispatcher.INSTANCE.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            reportProgress();
+                        }
+                    });
+                }
+            }
+        }
+    };
+
+    private DateFormat blockDateFormat;
+    private Locale blockDateFormatLocale;
+
     public MultiBitDownloadListener(BitcoinController controller) {
         this.bitcoinController = controller;
         this.controller = this.bitcoinController;
         this.singleWalletPanelDownloadListeners = new ArrayList<SingleWalletPanelDownloadListener>();
+
+        Collection<ViewSystem> viewSystems = controller == null ? null : controller.getViewSystem();
+        if (viewSystems != null) {
+            synchronized (lockObject) {
+                for (ViewSystem viewSystem : viewSystems) {
+                    if (viewSystem instanceof MultiBitFrame) {
+                        MultiBitFrame frame = (MultiBitFrame) viewSystem;
+                        frames.add(frame);
+                        if ((frame.getExtendedState() & Frame.ICONIFIED) != 0) {
+                            minimisedFrames.add(frame);
+                        }
+                        frame.addWindowListener(frameStateListener);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop watching the MultiBit frames. Called when this listener is replaced
+     * by the one of a new peer group.
+     */
+    public void stop() {
+        synchronized (lockObject) {
+            for (MultiBitFrame frame : frames) {
+                frame.removeWindowListener(frameStateListener);
+            }
+            frames.clear();
+            minimisedFrames.clear();
+            pendingProgress = null;
+        }
     }
 
     public void addSingleWalletPanelDownloadListener(SingleWalletPanelDownloadListener downloadListener) {
@@ -90,43 +194,104 @@ public class MultiBitDownloadListener extends DownloadListener {
             // we are done downloading
             doneDownload();
         } else {
-            //log.debug("Download - blocksSoFar = " + blocksSoFar);
             synchronized (lockObject) {
-                String downloadStatusText = controller.getLocaliser().getString("multiBitDownloadListener.startDownloadTextShort",
-                        new Object[] {blocksSoFar})
-                        + " "
-                        + controller.getLocaliser().getString(
-                                "multiBitDownloadListener.blockDateText",
-                                new Object[] { DateFormat.getDateInstance(DateFormat.MEDIUM, controller.getLocaliser().getLocale())
-                                        .format(date) });
-
-                // Work out the percent as the total amount of blocks at beginning of the replay task.
-                // (If a peer dies and a new one starts the download listener percents are based on the
-                // total that peer knows about which is confusing in the UI).
-                ReplayTask currentReplayTask = ReplayManager.INSTANCE.getCurrentReplayTask();
-                if (currentReplayTask != null) {
-                    if (currentReplayTask.getStartHeight() != ReplayTask.UNKNOWN_START_HEIGHT) {
-                        double denominator = Math.max(blocksToDownloadAtStart, ReplayManager.INSTANCE.getActualLastChainHeight() - currentReplayTask.getStartHeight());
-                        pct = (int)(100 * ( 1.0 - (double)blocksSoFar/denominator));
-                    }
-                    //log.debug("blocksSoFar = " + blocksSoFar + ", actualLastChainHeight = " + ReplayManager.INSTANCE.getActualLastChainHeight() +
-                    //        ", startHeight = " + currentReplayTask.getStartHeight() + ", percent = " + pct);
-                }
-                
-                // When busy occasionally the localiser fails to localise.
-                if (!(downloadStatusText.indexOf("multiBitDownloadListener") > -1)) {
-                    Message message = new Message(downloadStatusText, pct);
-                    MessageManager.INSTANCE.addMessage(message);
-                }
-                
-                for (SingleWalletPanelDownloadListener singleWalletPanelDownloadListener : singleWalletPanelDownloadListeners) {
-                    singleWalletPanelDownloadListener.progress(pct, blocksSoFar, date);
+                // Only the latest progress is reported.
+                pendingProgress = new ProgressSample(pct, blocksSoFar, date, downloadGeneration);
+                if (!progressReportScheduled && !isMinimised()) {
+                    progressReportScheduled = true;
+                    EventDispatcher.INSTANCE.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            reportProgress();
+                        }
+                    }, PROGRESS_REPORT_INTERVAL);
                 }
             }
-            this.bitcoinController.fireBlockDownloaded();
         }
     }
 
+    /**
+     * Report the latest progress to the user.
+     */
+    private void reportProgress() {
+        ProgressSample progress;
+        synchronized (lockObject) {
+            if (pendingProgress == null) {
+                progressReportScheduled = false;
+                return;
+            }
+            progressReportScheduled = false;
+            if (isMinimised()) {
+                // The latest progress is reported when the window is restored.
+                return;
+            }
+            progress = pendingProgress;
+            pendingProgress = null;
+        }
+
+        double pct = progress.pct;
+        int blocksSoFar = progress.blocksSoFar;
+        Date date = progress.date;
+
+        String downloadStatusText = controller.getLocaliser().getString("multiBitDownloadListener.startDownloadTextShort",
+                new Object[] {blocksSoFar})
+                + " "
+                + controller.getLocaliser().getString(
+                        "multiBitDownloadListener.blockDateText",
+                        new Object[] { formatBlockDate(date) });
+
+        // Work out the percent as the total amount of blocks at beginning of the replay task.
+        // (If a peer dies and a new one starts the download listener percents are based on the
+        // total that peer knows about which is confusing in the UI).
+        ReplayTask currentReplayTask = ReplayManager.INSTANCE.getCurrentReplayTask();
+        if (currentReplayTask != null) {
+            if (currentReplayTask.getStartHeight() != ReplayTask.UNKNOWN_START_HEIGHT) {
+                double denominator = Math.max(blocksToDownloadAtStart, ReplayManager.INSTANCE.getActualLastChainHeight() - currentReplayTask.getStartHeight());
+                pct = (int)(100 * ( 1.0 - (double)blocksSoFar/denominator));
+            }
+        }
+
+        synchronized (lockObject) {
+            if (progress.downloadGeneration != downloadGeneration) {
+                // The download started again or finished since this progress was made.
+                return;
+            }
+
+            // When busy occasionally the localiser fails to localise.
+            if (!(downloadStatusText.indexOf("multiBitDownloadListener") > -1)) {
+                Message message = new Message(downloadStatusText, pct);
+                MessageManager.INSTANCE.addMessage(message);
+            }
+
+            for (SingleWalletPanelDownloadListener singleWalletPanelDownloadListener : singleWalletPanelDownloadListeners) {
+                singleWalletPanelDownloadListener.progress(pct, blocksSoFar, date);
+            }
+        }
+        this.bitcoinController.fireBlockDownloaded();
+    }
+
+    /**
+     * DateFormat instances are expensive to create so one is kept per locale.
+     * Only used from reportProgress, which does not run concurrently.
+     */
+    private String formatBlockDate(Date date) {
+        Locale locale = controller.getLocaliser().getLocale();
+        if (blockDateFormat == null || !locale.equals(blockDateFormatLocale)) {
+            blockDateFormat = DateFormat.getDateInstance(DateFormat.MEDIUM, locale);
+            blockDateFormatLocale = locale;
+        }
+        return blockDateFormat.format(date);
+    }
+
+    /**
+     * Must be called holding lockObject.
+     *
+     * @return true if the MultiBit window is minimised so there is no one to see the progress
+     */
+    private boolean isMinimised() {
+        return !frames.isEmpty() && minimisedFrames.size() == frames.size();
+    }
+
     /**
      * Called when download is initiated.
      * 
@@ -140,6 +305,8 @@ public class MultiBitDownloadListener extends DownloadListener {
         } else {
             synchronized (lockObject) {
                 blocksToDownloadAtStart = blocks;
+                pendingProgress = null;
+                downloadGeneration++;
                 
                 String startDownloadText;
                 if (blocks <= CRITERIA_LARGE_NUMBER_OF_BLOCKS) {
@@ -176,17 +343,37 @@ public class MultiBitDownloadListener extends DownloadListener {
         ReplayManager.INSTANCE.taskHasCompleted(null);
 
         String downloadStatusText = controller.getLocaliser().getString("multiBitDownloadListener.doneDownloadText");
-     
-        Message message = new Message(downloadStatusText, true, Message.NOT_RELEVANT_PERCENTAGE_COMPLETE);
-        MessageManager.INSTANCE.addMessage(message);
 
-        message = new Message(downloadStatusText, 100);
-        MessageManager.INSTANCE.addMessage(message);
+        synchronized (lockObject) {
+            // Any progress not yet reported, or being reported, is out of date.
+            pendingProgress = null;
+            downloadGeneration++;
+
+            Message message = new Message(downloadStatusText, true, Message.NOT_RELEVANT_PERCENTAGE_COMPLETE);
+            MessageManager.INSTANCE.addMessage(message);
+
+            message = new Message(downloadStatusText, 100);
+            MessageManager.INSTANCE.addMessage(message);
 
-        for (SingleWalletPanelDownloadListener singleWalletPanelDownloadListener : singleWalletPanelDownloadListeners) {
-            singleWalletPanelDownloadListener.doneDownload();
+            for (SingleWalletPanelDownloadListener singleWalletPanelDownloadListener : singleWalletPanelDownloadListeners) {
+                singleWalletPanelDownloadListener.doneDownload();
+            }
         }
                 
         this.bitcoinController.fireBlockDownloaded();
     }
-}
\ No newline at end of file
+
+    private static class ProgressSample {
+        final double pct;
+        final int blocksSoFar;
+        final Date date;
+        final int downloadGeneration;
+
+        ProgressSample(double pct, int blocksSoFar, Date date, int downloadGeneration) {
+            this.pct = pct;
+            this.blocksSoFar = blocksSoFar;
+            this.date = date;
+            this.downloadGeneration = downloadGeneration;
+        }
+    }
+}
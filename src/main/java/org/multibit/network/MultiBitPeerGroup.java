@@ -15,40 +15,274 @@
  */
 package org.multibit.network;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.multibit.controller.Controller;
 import org.multibit.controller.bitcoin.BitcoinController;
+import org.multibit.event.EventDispatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.google.bitcoin.core.AbstractPeerEventListener;
 import com.google.bitcoin.core.BlockChain;
 import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.Peer;
+import com.google.bitcoin.core.PeerFilterProvider;
 import com.google.bitcoin.core.PeerGroup;
+import com.google.bitcoin.core.Wallet;
+import com.google.bitcoin.utils.Threading;
 
 
 public class MultiBitPeerGroup extends PeerGroup {
+    private static final Logger log = LoggerFactory.getLogger(MultiBitPeerGroup.class);
+
     private final Controller controller;
     private final BitcoinController bitcoinController;
+    private final NetworkParameters networkParameters;
+    private final BlockChain chain;
     MultiBitDownloadListener multiBitDownloadListener = null;
 
     public static final int MAXIMUM_NUMBER_OF_PEERS = 6;
 
-        
+    /**
+     * The number of peers to connect to whilst catching up a large number of blocks.
+     */
+    public static final int CATCH_UP_NUMBER_OF_PEERS = 10;
+
+    /**
+     * The number of blocks left to download above which the connection count is raised.
+     */
+    public static final int LARGE_CATCH_UP_NUMBER_OF_BLOCKS = 2016;
+
+    /**
+     * The number of connected peers a parallel download waits for before it starts.
+     */
+    static final int PARALLEL_DOWNLOAD_NUMBER_OF_PEERS = 3;
+
+    /**
+     * The longest a parallel download waits for PARALLEL_DOWNLOAD_NUMBER_OF_PEERS to connect.
+     * After that it uses the peers that have connected.
+     */
+    static final long PARALLEL_DOWNLOAD_PEER_WAIT = 20000; // ms
+
+    private final PeerScoreBoard peerScoreBoard;
+
+    private ScheduledFuture<?> peerMonitor;
+
+    /**
+     * Starts the waiting download with the peers that have connected, if they do not reach PARALLEL_DOWNLOAD_NUMBER_OF_PEERS in time.
+     */
+    private volatile ScheduledFuture<?> peerWait;
+
+    /**
+     * The filter providers wrapping each wallet, keyed by wallet.
+     */
+    private final Map<Wallet, CachingPeerFilterProvider> cachingPeerFilterProviders = new ConcurrentHashMap<Wallet, CachingPeerFilterProvider>();
+
+    /**
+     * Whether the connection count follows the download. Off when the user specifies the peers.
+     */
+    private volatile boolean adaptiveConnectionCount = true;
+
+    /**
+     * Whether large downloads fetch blocks from all the connected peers.
+     */
+    private volatile boolean parallelDownload = false;
+
+    /**
+     * Set while a download is waiting for enough peers to connect to decide how to download.
+     */
+    private final AtomicBoolean waitingForDownloadPeers = new AtomicBoolean(false);
+
+    /**
+     * Copies downloaded blocks into the block archive, if there is one.
+     */
+    private volatile FilteredBlockRecorder filteredBlockRecorder;
+
     public MultiBitPeerGroup(BitcoinController bitcoinController, NetworkParameters params, BlockChain chain) {
         super(params, chain);
         this.bitcoinController = bitcoinController;
         this.controller = this.bitcoinController;
+        this.networkParameters = params;
+        this.chain = chain;
         multiBitDownloadListener = new MultiBitDownloadListener(this.bitcoinController);
 
+        peerScoreBoard = new PeerScoreBoard();
+        addEventListener(peerScoreBoard);
+
+        addEventListener(new AbstractPeerEventListener() {
+            @Override
+            public void onPeerConnected(Peer peer, int peerCount) {
+                downloadPeerConnected(peerCount);
+            }
+        });
+
         setMaxConnections(MAXIMUM_NUMBER_OF_PEERS);
     }
+
+    /**
+     * Wrap wallets so that their contribution to the bloom filter is only rebuilt when they change.
+     */
+    @Override
+    public void addPeerFilterProvider(PeerFilterProvider provider) {
+        if (provider instanceof Wallet) {
+            Wallet wallet = (Wallet) provider;
+            CachingPeerFilterProvider cachingPeerFilterProvider = new CachingPeerFilterProvider(wallet);
+            cachingPeerFilterProviders.put(wallet, cachingPeerFilterProvider);
+            super.addPeerFilterProvider(cachingPeerFilterProvider);
+        } else {
+            super.addPeerFilterProvider(provider);
+        }
+    }
+
+    @Override
+    public void removeWallet(Wallet wallet) {
+        super.removeWallet(wallet);
+
+        // The PeerGroup only knows the wallet by its wrapper.
+        CachingPeerFilterProvider cachingPeerFilterProvider = cachingPeerFilterProviders.remove(wallet);
+        if (cachingPeerFilterProvider != null) {
+            removePeerFilterProvider(cachingPeerFilterProvider);
+            cachingPeerFilterProvider.release();
+        }
+    }
+
+    /**
+     * Pick the highest scoring peer that can serve the download, falling back to the
+     * bitcoinj selection if none of the peers is suitable.
+     */
+    @Override
+    protected Peer selectDownloadPeer(List<Peer> peers) {
+        long minimumHeight = chain == null ? 0 : chain.getBestChainHeight();
+        Peer bestPeer = peerScoreBoard.selectBestPeer(peers, minimumHeight);
+        if (bestPeer == null) {
+            return super.selectDownloadPeer(peers);
+        }
+        log.debug("Selected download peer " + bestPeer.getAddress() + ", " + peerScoreBoard.getScore(bestPeer));
+        return bestPeer;
+    }
+
+    /**
+     * Raise the number of connections during a large catch up and drop back once the chain is synced.
+     */
+    void adjustMaxConnections(int blocksLeft) {
+        if (!adaptiveConnectionCount) {
+            return;
+        }
+        int targetConnections = blocksLeft > LARGE_CATCH_UP_NUMBER_OF_BLOCKS ? CATCH_UP_NUMBER_OF_PEERS : MAXIMUM_NUMBER_OF_PEERS;
+        if (getMaxConnections() != targetConnections) {
+            log.debug("Blocks left = " + blocksLeft + ", changing maximum number of connections to " + targetConnections);
+            setMaxConnections(targetConnections);
+        }
+    }
+
+    /**
+     * Start watching the download peer for stalls.
+     */
+    public void startPeerMonitor() {
+        stopPeerMonitor();
+        peerMonitor = EventDispatcher.INSTANCE.schedule(new PeerMonitorTimerTask(this, peerScoreBoard),
+                PeerMonitorTimerTask.DEFAULT_REPEAT_TIME, PeerMonitorTimerTask.DEFAULT_REPEAT_TIME);
+    }
+
+    public void stopPeerMonitor() {
+        if (peerMonitor != null) {
+            peerMonitor.cancel(false);
+            peerMonitor = null;
+        }
+    }
+
+    public void setAdaptiveConnectionCount(boolean adaptiveConnectionCount) {
+        this.adaptiveConnectionCount = adaptiveConnectionCount;
+    }
+
+    public void setParallelDownload(boolean parallelDownload) {
+        this.parallelDownload = parallelDownload;
+    }
+
+    public PeerScoreBoard getPeerScoreBoard() {
+        return peerScoreBoard;
+    }
+
+    /**
+     * Archive the filtered blocks downloaded by this PeerGroup.
+     */
+    public void setFilteredBlockArchive(FilteredBlockArchive filteredBlockArchive) {
+        filteredBlockRecorder = new FilteredBlockRecorder(filteredBlockArchive, this, chain);
+        addEventListener(filteredBlockRecorder, Threading.SAME_THREAD);
+    }
+
+    public FilteredBlockRecorder getFilteredBlockRecorder() {
+        return filteredBlockRecorder;
+    }
     
     /**
      * Download the blockchain from peers.
      * 
      * <p>This method wait until the download is complete.  "Complete" is defined as downloading
      * from at least one peer all the blocks that are in that peer's inventory.
+     *
+     * <p>A parallel download is called for just after the PeerGroup is started, when few peers
+     * have connected, so the choice between a parallel and a regular download is made once
+     * PARALLEL_DOWNLOAD_NUMBER_OF_PEERS have connected or PARALLEL_DOWNLOAD_PEER_WAIT has passed.
      */
     @Override
     public void downloadBlockChain() {
-        startBlockChainDownload(multiBitDownloadListener);
+        if (!parallelDownload) {
+            startBlockChainDownload(multiBitDownloadListener);
+            return;
+        }
+
+        waitingForDownloadPeers.set(true);
+        int peerCount = getConnectedPeers().size();
+        if (peerCount >= PARALLEL_DOWNLOAD_NUMBER_OF_PEERS) {
+            startDownload(peerCount);
+        } else {
+            log.debug("Waiting for " + PARALLEL_DOWNLOAD_NUMBER_OF_PEERS + " peers before starting the block chain download.");
+            peerWait = EventDispatcher.INSTANCE.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    startDownload(getConnectedPeers().size());
+                }
+            }, PARALLEL_DOWNLOAD_PEER_WAIT);
+        }
+    }
+
+    void downloadPeerConnected(int peerCount) {
+        if (peerCount >= PARALLEL_DOWNLOAD_NUMBER_OF_PEERS) {
+            startDownload(peerCount);
+        }
+    }
+
+    /**
+     * Start the download that is waiting for peers, if there is one, spreading it over the peers if there are several.
+     */
+    private void startDownload(int peerCount) {
+        if (!waitingForDownloadPeers.compareAndSet(true, false)) {
+            return;
+        }
+        ScheduledFuture<?> waitingPeerWait = peerWait;
+        if (waitingPeerWait != null) {
+            // The peers connected in time.
+            waitingPeerWait.cancel(false);
+            peerWait = null;
+        }
+        if (peerCount > 1) {
+            log.debug("Starting a parallel block chain download from " + peerCount + " peers.");
+            Thread downloadThread = new Thread(createParallelBlockChainDownload(), "ParallelBlockChainDownload");
+            downloadThread.setDaemon(true);
+            downloadThread.start();
+        } else {
+            startBlockChainDownload(multiBitDownloadListener);
+        }
+    }
+
+    Runnable createParallelBlockChainDownload() {
+        return new ParallelBlockChainDownload(this, chain, networkParameters, multiBitDownloadListener);
     }
 
     public MultiBitDownloadListener getMultiBitDownloadListener() {
@@ -27,6 +27,7 @@ import com.google.common.util.concurrent.ListenableFuture;
 import org.bitcoinj.wallet.Protos.Wallet.EncryptionType;
 import org.multibit.ApplicationDataDirectoryLocator;
 import org.multibit.MultiBit;
+import org.multibit.api.LocalApiServer;
 import org.multibit.controller.Controller;
 import org.multibit.controller.bitcoin.BitcoinController;
 import org.multibit.file.BackupManager;
@@ -93,6 +94,12 @@ public class MultiBitService {
 
   private MultiBitPeerGroup peerGroup;
 
+  private BloomFilterManager bloomFilterManager;
+
+  private FilteredBlockArchive filteredBlockArchive;
+
+  private LocalApiServer localApiServer;
+
   private String blockchainFilename;
 
   private MultiBitBlockChain blockChain;
@@ -160,6 +167,11 @@ public class MultiBitService {
       blockChain = new MultiBitBlockChain(networkParameters, blockStore);
       log.debug("Created blockchain '" + blockChain + "' with height " + blockChain.getBestChainHeight());
 
+      // Keep the downloaded blocks locally for replays if the user has asked for it.
+      if (Boolean.TRUE.toString().equalsIgnoreCase(controller.getModel().getUserPreference(BitcoinModel.BLOCK_ARCHIVE))) {
+        filteredBlockArchive = createFilteredBlockArchive();
+      }
+
       log.debug("Creating peergroup ...");
       createNewPeerGroup();
       log.debug("Created peergroup '" + peerGroup + "'");
@@ -304,8 +316,37 @@ public class MultiBitService {
     return blockStore;
   }
 
+  private FilteredBlockArchive createFilteredBlockArchive() {
+    String filenamePrefix;
+    if ("".equals(controller.getApplicationDataDirectoryLocator().getApplicationDataDirectory())) {
+      filenamePrefix = getFilePrefix();
+    } else {
+      filenamePrefix = controller.getApplicationDataDirectoryLocator().getApplicationDataDirectory() + File.separator
+              + getFilePrefix();
+    }
+    log.debug("Opening / Creating block archive '{}'", filenamePrefix);
+
+    FilteredBlockArchive archive = new FilteredBlockArchive(networkParameters, filenamePrefix);
+    try {
+      archive.open();
+      return archive;
+    } catch (IOException e) {
+      log.error("Could not open block archive " + e.getClass().getName() + " " + e.getMessage());
+      archive.close();
+      return null;
+    }
+  }
+
   public void createNewPeerGroup() {
+    if (peerGroup != null) {
+      peerGroup.stopPeerMonitor();
+      peerGroup.getMultiBitDownloadListener().stop();
+    }
+    if (bloomFilterManager != null) {
+      bloomFilterManager.stop();
+    }
     peerGroup = new MultiBitPeerGroup(bitcoinController, networkParameters, blockChain);
+    bloomFilterManager = new BloomFilterManager(bitcoinController, peerGroup);
     peerGroup.setFastCatchupTimeSecs(0); // genesis block
     peerGroup.setUserAgent("MultiBit", controller.getLocaliser().getVersionNumber());
 
@@ -316,6 +357,7 @@ public class MultiBitService {
       try {
         peerGroup.addAddress(new PeerAddress(InetAddress.getByName(singleNodeConnection.trim())));
         peerGroup.setMaxConnections(1);
+        peerGroup.setAdaptiveConnectionCount(false);
         peersSpecified = true;
       } catch (UnknownHostException e) {
         log.error(e.getMessage(), e);
@@ -335,6 +377,7 @@ public class MultiBitService {
           }
         }
         peerGroup.setMaxConnections(numberOfPeersAdded);
+        peerGroup.setAdaptiveConnectionCount(false);
         peersSpecified = true;
       }
     }
@@ -352,6 +395,13 @@ public class MultiBitService {
     // Add the controller as a PeerEventListener.
     peerGroup.addEventListener(bitcoinController.getPeerEventListener());
 
+    // Download large catch ups from all the connected peers if the user has asked for it.
+    peerGroup.setParallelDownload(Boolean.TRUE.toString().equalsIgnoreCase(
+            controller.getModel().getUserPreference(BitcoinModel.PARALLEL_BLOCK_CHAIN_DOWNLOAD)));
+
+    // Watch the download peer for stalls.
+    peerGroup.startPeerMonitor();
+
     // Add all existing wallets to the PeerGroup.
     if (controller != null && controller.getModel() != null) {
       List<WalletData> perWalletDataModels = bitcoinController.getModel().getPerWalletModelDataList();
@@ -367,11 +417,24 @@ public class MultiBitService {
         }
       }
     }
+
+    // Archive the downloaded blocks.
+    if (filteredBlockArchive != null) {
+      peerGroup.setFilteredBlockArchive(filteredBlockArchive);
+      bloomFilterManager.setFilteredBlockRecorder(peerGroup.getFilteredBlockRecorder());
+    }
+
+    // Size the bloom filter false positive rate to the wallets.
+    bloomFilterManager.recalculateNow();
   }
 
+  /**
+   * Recalculate the bloom filter and send it to the peers.
+   * Returns immediately - requests made in quick succession are batched into one recalculation.
+   */
   public void recalculateFastCatchupAndFilter() {
-    if (peerGroup != null) {
-      peerGroup.recalculateFastCatchupAndFilter(PeerGroup.FilterRecalculateMode.FORCE_SEND);
+    if (bloomFilterManager != null) {
+      bloomFilterManager.requestRecalculation();
     }
   }
 
@@ -619,6 +682,7 @@ public class MultiBitService {
       // to sign it, commit it and broadcast it.
       perWalletModelData.getWallet().sign(sendRequest);
       perWalletModelData.getWallet().commitTx(sendRequest.tx);
+      bitcoinController.getWalletRelevanceIndex().invalidate(perWalletModelData.getWallet());
 
       // The tx has been committed to the pending pool by this point (via sendCoinsOffline -> commitTx), so it has
       // a txConfidenceListener registered. Once the tx is broadcast the peers will update the memory pool with the
@@ -660,10 +724,11 @@ public class MultiBitService {
         List<WalletData> perWalletModelDataList = bitcoinController.getModel().getPerWalletModelDataList();
 
         if (perWalletModelDataList != null) {
+          Set<Wallet> touchedWallets = bitcoinController.getWalletRelevanceIndex().findWallets(sendTransaction, perWalletModelDataList);
           for (WalletData loopPerWalletModelData : perWalletModelDataList) {
             if (!perWalletModelData.getWalletFilename().equals(loopPerWalletModelData.getWalletFilename())) {
               Wallet loopWallet = loopPerWalletModelData.getWallet();
-              if (loopWallet.isPendingTransactionRelevant(sendTransaction)) {
+              if (touchedWallets.contains(loopWallet) && loopWallet.isPendingTransactionRelevant(sendTransaction)) {
                 // The loopPerWalletModelData is marked as dirty.
                 if (loopPerWalletModelData.getWalletInfo() != null) {
                   synchronized (loopPerWalletModelData.getWalletInfo()) {
@@ -676,6 +741,7 @@ public class MultiBitService {
                   log.debug("MultiBit adding a new pending transaction for the wallet '"
                           + loopPerWalletModelData.getWalletDescription() + "'\n" + sendTransaction.toString());
                   loopWallet.receivePending(sendTransaction, null);
+                  bitcoinController.getWalletRelevanceIndex().invalidate(loopWallet);
                 }
               }
             }
@@ -700,6 +766,28 @@ public class MultiBitService {
     return blockStore;
   }
 
+  public BloomFilterManager getBloomFilterManager() {
+    return bloomFilterManager;
+  }
+
+  /**
+   * @return the local block archive, or null if blocks are not being archived
+   */
+  public FilteredBlockArchive getFilteredBlockArchive() {
+    return filteredBlockArchive;
+  }
+
+  /**
+   * @return the local API server, or null if the local API is not running
+   */
+  public LocalApiServer getLocalApiServer() {
+    return localApiServer;
+  }
+
+  public void setLocalApiServer(LocalApiServer localApiServer) {
+    this.localApiServer = localApiServer;
+  }
+
   public SecureRandom getSecureRandom() {
     return secureRandom;
   }
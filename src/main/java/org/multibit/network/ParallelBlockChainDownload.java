@@ -0,0 +1,480 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.network;
+
+import com.google.bitcoin.core.*;
+import com.google.bitcoin.store.BlockStoreException;
+import com.google.bitcoin.utils.Threading;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A header first block chain download that spreads the filtered block requests
+ * over all the connected peers.
+ *
+ * <p>
+ * The headers are fetched from a single peer. The heights they cover are then
+ * split into disjoint ranges which are handed out to the connected peers. The
+ * filtered blocks that come back are held in a BlockReorderBuffer and added to
+ * the block chain strictly in height order.
+ *
+ * <p>
+ * Blocks mined whilst the parallel download is running, and the completion of
+ * the download, are left to the regular bitcoinj chain download which is
+ * started once the parallel download finishes. Until then the peers are told
+ * not to download the blocks they hear about, as bitcoinj would take such a
+ * block for an orphan and start downloading the same heights itself.
+ */
+public class ParallelBlockChainDownload extends AbstractPeerEventListener implements Runnable {
+    private static final Logger log = LoggerFactory.getLogger(ParallelBlockChainDownload.class);
+
+    /**
+     * A peer never sends more headers than this in one message.
+     */
+    static final int MAXIMUM_HEADERS_PER_MESSAGE = 2000;
+
+    /**
+     * The number of blocks handed to a peer at a time.
+     */
+    static final int BLOCKS_PER_RANGE = 500;
+
+    /**
+     * Ranges are not handed out further than this ahead of the next block to add to the chain.
+     * This bounds the size of the reorder buffer.
+     */
+    static final int MAXIMUM_BLOCKS_AHEAD = 10 * BLOCKS_PER_RANGE;
+
+    static final long HEADERS_TIMEOUT = 30000; // ms
+
+    static final long RANGE_TIMEOUT = 60000; // ms
+
+    private static final long POLL_TIME = 250; // ms
+
+    private final MultiBitPeerGroup peerGroup;
+
+    private final AbstractBlockChain chain;
+
+    private final NetworkParameters networkParameters;
+
+    private final MultiBitDownloadListener downloadListener;
+
+    /**
+     * The peer asked for headers and the queue its reply is passed back on.
+     */
+    private volatile Peer headersPeer;
+    private final BlockingQueue<List<Block>> headersReplies = new LinkedBlockingQueue<List<Block>>();
+
+    /**
+     * The ranges of heights still to hand out, in height order.
+     */
+    private final LinkedList<BlockRange> pendingRanges = new LinkedList<BlockRange>();
+
+    private final Map<Peer, PeerWork> peerWorks = new ConcurrentHashMap<Peer, PeerWork>();
+
+    private BlockReorderBuffer<FilteredBlock> reorderBuffer;
+
+    public ParallelBlockChainDownload(MultiBitPeerGroup peerGroup, AbstractBlockChain chain, NetworkParameters networkParameters,
+            MultiBitDownloadListener downloadListener) {
+        this.peerGroup = peerGroup;
+        this.chain = chain;
+        this.networkParameters = networkParameters;
+        this.downloadListener = downloadListener;
+    }
+
+    @Override
+    public void run() {
+        // Listen on the network threads so that the headers and filtered blocks can be taken before the Peer sees them.
+        peerGroup.addEventListener(this, Threading.SAME_THREAD);
+        suspendBlockDownloads();
+        try {
+            List<Sha256Hash> hashes = downloadHeaders();
+            if (hashes.size() < MultiBitPeerGroup.LARGE_CATCH_UP_NUMBER_OF_BLOCKS) {
+                log.debug("Only " + hashes.size() + " blocks to download - using a regular block chain download.");
+            } else {
+                downloadBlocks(hashes);
+            }
+        } catch (BlockStoreException bse) {
+            log.error(bse.getClass().getName() + " " + bse.getMessage());
+        } catch (InterruptedException ie) {
+            log.debug("Parallel block chain download was interrupted.");
+        } finally {
+            peerGroup.removeEventListener(this);
+            peerWorks.clear();
+            resumeBlockDownloads();
+        }
+
+        // Pick up any blocks mined in the meantime and complete the download.
+        if (peerGroup.isRunning()) {
+            peerGroup.startBlockChainDownload(downloadListener);
+        }
+    }
+
+    /**
+     * Fetch the headers that follow the chain head from the best peer.
+     *
+     * @return the hashes of the blocks to download in height order
+     */
+    private List<Sha256Hash> downloadHeaders() throws BlockStoreException, InterruptedException {
+        List<Sha256Hash> hashes = new ArrayList<Sha256Hash>();
+
+        Peer peer = peerGroup.getPeerScoreBoard().selectBestPeer(peerGroup.getConnectedPeers(), chain.getBestChainHeight());
+        if (peer == null) {
+            return hashes;
+        }
+
+        List<Sha256Hash> locator = createBlockLocator();
+        Sha256Hash previousHash = locator.get(0);
+        while (peerGroup.isRunning()) {
+            headersPeer = peer;
+            peer.sendMessage(new GetHeadersMessage(networkParameters, locator, Sha256Hash.ZERO_HASH));
+
+            List<Block> headers = headersReplies.poll(HEADERS_TIMEOUT, TimeUnit.MILLISECONDS);
+            if (headers == null) {
+                log.debug("Peer " + peer.getAddress() + " did not reply to the headers request.");
+                break;
+            }
+            for (Block header : headers) {
+                if (!header.getPrevBlockHash().equals(previousHash)) {
+                    log.debug("Peer " + peer.getAddress() + " sent a header that does not connect: " + header.getHashAsString());
+                    return hashes;
+                }
+                previousHash = header.getHash();
+                hashes.add(previousHash);
+            }
+            if (headers.size() < MAXIMUM_HEADERS_PER_MESSAGE) {
+                break;
+            }
+            locator = Collections.singletonList(previousHash);
+        }
+        headersPeer = null;
+        return hashes;
+    }
+
+    /**
+     * A block locator for the chain head, walking back a few blocks in case the
+     * head has been orphaned.
+     */
+    private List<Sha256Hash> createBlockLocator() throws BlockStoreException {
+        List<Sha256Hash> locator = new ArrayList<Sha256Hash>();
+        StoredBlock cursor = chain.getChainHead();
+        for (int i = 0; cursor != null && i < 10; i++) {
+            locator.add(cursor.getHeader().getHash());
+            cursor = cursor.getPrev(chain.getBlockStore());
+        }
+        return locator;
+    }
+
+    private void downloadBlocks(List<Sha256Hash> hashes) throws InterruptedException {
+        int firstHeight = chain.getBestChainHeight() + 1;
+        int endHeight = firstHeight + hashes.size();
+        log.debug("Downloading blocks " + firstHeight + " to " + (endHeight - 1) + " in parallel.");
+
+        queueRanges(firstHeight, hashes);
+
+        downloadListener.onChainDownloadStarted(null, hashes.size());
+
+        while (reorderBuffer.getNextHeight() < endHeight && peerGroup.isRunning()) {
+            // The peer group turns downloading back on for a new download peer.
+            suspendBlockDownloads();
+            requeueTimedOutRanges(System.currentTimeMillis());
+            assignRanges();
+
+            reorderBuffer.awaitReady(POLL_TIME);
+            for (FilteredBlock filteredBlock : reorderBuffer.takeReady()) {
+                if (!addToChain(filteredBlock)) {
+                    return;
+                }
+                // Leave the final block for the regular download to report.
+                int blocksLeft = Math.max(1, endHeight - reorderBuffer.getNextHeight());
+                downloadListener.onBlocksDownloaded(null, filteredBlock.getBlockHeader(), blocksLeft);
+            }
+        }
+    }
+
+    private boolean addToChain(FilteredBlock filteredBlock) {
+        try {
+            if (chain.add(filteredBlock)) {
+                return true;
+            }
+            log.debug("Block " + filteredBlock.getHash() + " did not connect to the chain.");
+        } catch (Exception e) {
+            log.error("Could not add block " + filteredBlock.getHash() + " to the chain. " + e.getClass().getName() + " "
+                    + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Split the blocks to download into ranges to hand out.
+     *
+     * @param firstHeight
+     *            the height of the first block
+     * @param hashes
+     *            the hashes of the blocks in height order
+     */
+    void queueRanges(int firstHeight, List<Sha256Hash> hashes) {
+        synchronized (pendingRanges) {
+            for (int start = 0; start < hashes.size(); start += BLOCKS_PER_RANGE) {
+                int end = Math.min(start + BLOCKS_PER_RANGE, hashes.size());
+                pendingRanges.add(new BlockRange(firstHeight + start, hashes.subList(start, end)));
+            }
+        }
+        reorderBuffer = new BlockReorderBuffer<FilteredBlock>(firstHeight);
+    }
+
+    BlockReorderBuffer<FilteredBlock> getReorderBuffer() {
+        return reorderBuffer;
+    }
+
+    /**
+     * Give each idle connected peer the next range.
+     */
+    void assignRanges() {
+        for (Peer peer : peerGroup.getConnectedPeers()) {
+            if (peerWorks.containsKey(peer)) {
+                continue;
+            }
+            BlockRange range;
+            synchronized (pendingRanges) {
+                range = pendingRanges.peek();
+                if (range == null || range.startHeight >= reorderBuffer.getNextHeight() + MAXIMUM_BLOCKS_AHEAD) {
+                    return;
+                }
+                pendingRanges.poll();
+            }
+
+            PeerWork peerWork = new PeerWork(range);
+            peerWorks.put(peer, peerWork);
+
+            GetDataMessage getDataMessage = new GetDataMessage(networkParameters);
+            for (Sha256Hash hash : range.hashes) {
+                getDataMessage.addFilteredBlock(hash);
+            }
+            try {
+                peer.sendMessage(getDataMessage);
+                // The pong marks the end of the last filtered block.
+                peer.ping();
+            } catch (Exception e) {
+                log.debug("Could not request blocks from peer " + peer.getAddress() + " " + e.getMessage());
+                releaseWork(peer);
+            }
+        }
+    }
+
+    /**
+     * Take back ranges from peers that have been too slow, drop those peers and
+     * hand the ranges out again.
+     *
+     * @param now
+     *            the current time in milliseconds
+     */
+    void requeueTimedOutRanges(long now) {
+        for (Map.Entry<Peer, PeerWork> entry : peerWorks.entrySet()) {
+            if (now - entry.getValue().lastActivityTime > RANGE_TIMEOUT) {
+                Peer peer = entry.getKey();
+                log.info("Peer " + peer.getAddress() + " timed out delivering blocks from height " + entry.getValue().range.startHeight);
+                releaseWork(peer);
+                peerGroup.getPeerScoreBoard().recordStall(peer);
+                peer.close();
+            }
+        }
+    }
+
+    /**
+     * Put the undelivered part of a peer's range back at the front of the queue.
+     */
+    private void releaseWork(Peer peer) {
+        PeerWork peerWork = peerWorks.remove(peer);
+        if (peerWork == null) {
+            return;
+        }
+        synchronized (peerWork) {
+            BlockRange undelivered = peerWork.undeliveredRange();
+            if (undelivered != null) {
+                synchronized (pendingRanges) {
+                    pendingRanges.addFirst(undelivered);
+                    Collections.sort(pendingRanges);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop the connected peers from downloading the blocks they hear about.
+     */
+    void suspendBlockDownloads() {
+        for (Peer peer : peerGroup.getConnectedPeers()) {
+            peer.setDownloadData(false);
+        }
+    }
+
+    /**
+     * Let the download peer download the blocks it hears about again.
+     */
+    void resumeBlockDownloads() {
+        Peer downloadPeer = peerGroup.getDownloadPeer();
+        if (downloadPeer != null) {
+            downloadPeer.setDownloadData(true);
+        }
+    }
+
+    @Override
+    public void onPeerConnected(Peer peer, int peerCount) {
+        peer.setDownloadData(false);
+    }
+
+    @Override
+    public void onPeerDisconnected(Peer peer, int peerCount) {
+        releaseWork(peer);
+    }
+
+    /**
+     * Runs on the network thread of each peer. Takes the headers and filtered
+     * blocks that were asked for and lets everything else through.
+     */
+    @Override
+    public Message onPreMessageReceived(Peer peer, Message message) {
+        if (message instanceof HeadersMessage && peer == headersPeer) {
+            headersPeer = null;
+            headersReplies.offer(((HeadersMessage) message).getBlockHeaders());
+            return null;
+        }
+
+        PeerWork peerWork = peerWorks.get(peer);
+        if (peerWork == null) {
+            return message;
+        }
+
+        synchronized (peerWork) {
+            peerWork.lastActivityTime = System.currentTimeMillis();
+
+            if (message instanceof Transaction && peerWork.currentBlock != null) {
+                try {
+                    if (peerWork.currentBlock.provideTransaction((Transaction) message)) {
+                        return null;
+                    }
+                } catch (VerificationException ve) {
+                    log.debug("Transaction does not belong in block " + ve.getMessage());
+                }
+                return message;
+            }
+
+            // Any other message means the matched transactions of the current block have all arrived.
+            finishCurrentBlock(peer, peerWork);
+
+            if (message instanceof FilteredBlock) {
+                FilteredBlock filteredBlock = (FilteredBlock) message;
+                if (peerWork.range.hashes.contains(filteredBlock.getHash())) {
+                    peerWork.currentBlock = filteredBlock;
+                    return null;
+                }
+            }
+        }
+        return message;
+    }
+
+    private void finishCurrentBlock(Peer peer, PeerWork peerWork) {
+        FilteredBlock filteredBlock = peerWork.currentBlock;
+        if (filteredBlock == null) {
+            return;
+        }
+        peerWork.currentBlock = null;
+
+        // The peer does not resend transactions it has already relayed to us.
+        try {
+            Map<Sha256Hash, Transaction> associatedTransactions = filteredBlock.getAssociatedTransactions();
+            for (Sha256Hash hash : filteredBlock.getTransactionHashes()) {
+                if (!associatedTransactions.containsKey(hash)) {
+                    Transaction transaction = peerGroup.getMemoryPool().get(hash);
+                    if (transaction != null) {
+                        filteredBlock.provideTransaction(transaction);
+                    }
+                }
+            }
+        } catch (VerificationException ve) {
+            log.debug("Could not complete block " + filteredBlock.getHash() + " " + ve.getMessage());
+        }
+
+        int height = peerWork.range.heightOf(filteredBlock.getHash());
+        if (reorderBuffer.offer(height, filteredBlock)) {
+            peerGroup.getPeerScoreBoard().onBlocksDownloaded(peer, filteredBlock.getBlockHeader(), 1);
+
+            FilteredBlockRecorder filteredBlockRecorder = peerGroup.getFilteredBlockRecorder();
+            if (filteredBlockRecorder != null) {
+                filteredBlockRecorder.record(peer, filteredBlock, height);
+            }
+        }
+        peerWork.delivered.add(filteredBlock.getHash());
+        if (peerWork.delivered.size() == peerWork.range.hashes.size()) {
+            // Range complete - the peer is free for another one.
+            peerWorks.remove(peer);
+        }
+    }
+
+    /**
+     * A run of consecutive blocks.
+     */
+    static class BlockRange implements Comparable<BlockRange> {
+        final int startHeight;
+        final List<Sha256Hash> hashes;
+
+        BlockRange(int startHeight, List<Sha256Hash> hashes) {
+            this.startHeight = startHeight;
+            this.hashes = hashes;
+        }
+
+        int heightOf(Sha256Hash hash) {
+            return startHeight + hashes.indexOf(hash);
+        }
+
+        @Override
+        public int compareTo(BlockRange other) {
+            return startHeight < other.startHeight ? -1 : (startHeight == other.startHeight ? 0 : 1);
+        }
+    }
+
+    /**
+     * The range a peer is working on and what it has delivered so far.
+     */
+    static class PeerWork {
+        final BlockRange range;
+        final Set<Sha256Hash> delivered = new HashSet<Sha256Hash>();
+        FilteredBlock currentBlock;
+        long lastActivityTime = System.currentTimeMillis();
+
+        PeerWork(BlockRange range) {
+            this.range = range;
+        }
+
+        /**
+         * The range starting from the first block not yet delivered.
+         */
+        BlockRange undeliveredRange() {
+            for (int i = 0; i < range.hashes.size(); i++) {
+                if (!delivered.contains(range.hashes.get(i))) {
+                    return new BlockRange(range.startHeight + i, range.hashes.subList(i, range.hashes.size()));
+                }
+            }
+            return null;
+        }
+    }
+}
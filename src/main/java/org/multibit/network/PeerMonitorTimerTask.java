@@ -0,0 +1,79 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.network;
+
+import com.google.bitcoin.core.Peer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.TimerTask;
+
+/**
+ * The timer task used to watch the download peer for stalls and to size the
+ * number of connections to the amount of block chain left to download.
+ */
+public class PeerMonitorTimerTask extends TimerTask {
+    private static final Logger log = LoggerFactory.getLogger(PeerMonitorTimerTask.class);
+
+    public static final int DEFAULT_REPEAT_TIME = 5000; // ms
+
+    /**
+     * The download peer is considered stalled if it has delivered no blocks for this long.
+     */
+    public static final long STALL_TIMEOUT = 30000; // ms
+
+    private final MultiBitPeerGroup peerGroup;
+
+    private final PeerScoreBoard peerScoreBoard;
+
+    public PeerMonitorTimerTask(MultiBitPeerGroup peerGroup, PeerScoreBoard peerScoreBoard) {
+        this.peerGroup = peerGroup;
+        this.peerScoreBoard = peerScoreBoard;
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (!peerGroup.isRunning()) {
+                return;
+            }
+
+            List<Peer> connectedPeers = peerGroup.getConnectedPeers();
+            peerScoreBoard.recordLatencies(connectedPeers);
+
+            int blocksLeft = peerScoreBoard.getBlocksLeft();
+            peerGroup.adjustMaxConnections(blocksLeft);
+
+            // Only drop a stalled download peer if there is another peer to switch to.
+            Peer downloadPeer = peerGroup.getDownloadPeer();
+            if (downloadPeer != null && blocksLeft > 0 && connectedPeers != null && connectedPeers.size() > 1) {
+                long timeSinceProgress = System.currentTimeMillis() - peerScoreBoard.getLastProgressTime();
+                if (timeSinceProgress > STALL_TIMEOUT) {
+                    log.info("Download peer " + downloadPeer.getAddress() + " has not delivered a block for " + timeSinceProgress
+                            + " ms. Switching download peer.");
+                    peerScoreBoard.recordStall(downloadPeer);
+
+                    // The PeerGroup picks a new download peer when this one dies.
+                    downloadPeer.close();
+                }
+            }
+        } catch (RuntimeException re) {
+            // Never let an exception kill the timer thread.
+            log.error(re.getClass().getName() + " " + re.getMessage());
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.network;
+
+/**
+ * The running performance record of a single peer.
+ *
+ * <p>
+ * Tracks the ping latency, the rate at which the peer delivers blocks and the
+ * number of times the peer has stalled whilst being the download peer. These
+ * are combined into a single score - higher is better.
+ */
+public class PeerScore {
+
+    public static final long UNKNOWN_LATENCY = Long.MAX_VALUE;
+
+    /**
+     * The score a peer starts with before anything is known about it.
+     */
+    static final double BASE_SCORE = 100.0;
+
+    /**
+     * Each millisecond of latency costs this many points.
+     */
+    static final double POINTS_PER_MILLISECOND_OF_LATENCY = 0.1;
+
+    /**
+     * Each block per second delivered earns this many points.
+     */
+    static final double POINTS_PER_BLOCK_PER_SECOND = 2.0;
+
+    /**
+     * Each stall costs this many points.
+     */
+    static final double POINTS_PER_STALL = 50.0;
+
+    /**
+     * Weight given to the latest measurement in the moving average of the block rate.
+     */
+    static final double BLOCK_RATE_SMOOTHING = 0.2;
+
+    /**
+     * Blocks are counted in buckets of this length before the block rate is updated.
+     */
+    static final long BLOCK_RATE_SAMPLE_PERIOD = 1000; // ms
+
+    private long latency = UNKNOWN_LATENCY;
+
+    private long blocksDelivered = 0;
+
+    private long lastBlockTime = 0;
+
+    private double blocksPerSecond = 0.0;
+
+    private int stallCount = 0;
+
+    private long sampleStartTime = 0;
+
+    private int blocksInSample = 0;
+
+    public synchronized void recordLatency(long latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * Record that the peer delivered a block.
+     *
+     * @param now
+     *            the current time in milliseconds
+     */
+    public synchronized void recordBlock(long now) {
+        blocksDelivered++;
+        lastBlockTime = now;
+
+        if (sampleStartTime == 0) {
+            sampleStartTime = now;
+        }
+        blocksInSample++;
+
+        long elapsed = now - sampleStartTime;
+        if (elapsed >= BLOCK_RATE_SAMPLE_PERIOD) {
+            double sampleRate = blocksInSample * 1000.0 / elapsed;
+            blocksPerSecond = BLOCK_RATE_SMOOTHING * sampleRate + (1.0 - BLOCK_RATE_SMOOTHING) * blocksPerSecond;
+            sampleStartTime = now;
+            blocksInSample = 0;
+        }
+    }
+
+    public synchronized void recordStall() {
+        stallCount++;
+
+        // A stalled peer has no current block rate.
+        blocksPerSecond = 0.0;
+        sampleStartTime = 0;
+        blocksInSample = 0;
+    }
+
+    public synchronized double getScore() {
+        double score = BASE_SCORE;
+        if (latency != UNKNOWN_LATENCY) {
+            score -= latency * POINTS_PER_MILLISECOND_OF_LATENCY;
+        }
+        score += blocksPerSecond * POINTS_PER_BLOCK_PER_SECOND;
+        score -= stallCount * POINTS_PER_STALL;
+        return score;
+    }
+
+    public synchronized long getLatency() {
+        return latency;
+    }
+
+    public synchronized long getBlocksDelivered() {
+        return blocksDelivered;
+    }
+
+    public synchronized long getLastBlockTime() {
+        return lastBlockTime;
+    }
+
+    public synchronized double getBlocksPerSecond() {
+        return blocksPerSecond;
+    }
+
+    public synchronized int getStallCount() {
+        return stallCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PeerScore [latency=" + latency + ", blocksDelivered=" + blocksDelivered + ", blocksPerSecond=" + blocksPerSecond
+                + ", stallCount=" + stallCount + ", score=" + getScore() + "]";
+    }
+}
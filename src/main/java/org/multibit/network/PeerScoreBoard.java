@@ -0,0 +1,164 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.network;
+
+import com.google.bitcoin.core.AbstractPeerEventListener;
+import com.google.bitcoin.core.Block;
+import com.google.bitcoin.core.Peer;
+import com.google.bitcoin.core.PeerAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps a PeerScore for every peer the PeerGroup talks to and uses them to
+ * choose the best peer to download the block chain from.
+ *
+ * <p>
+ * Scores are keyed by peer address so that a peer that stalled keeps its
+ * penalty if it reconnects.
+ */
+public class PeerScoreBoard extends AbstractPeerEventListener {
+    private static final Logger log = LoggerFactory.getLogger(PeerScoreBoard.class);
+
+    private final ConcurrentMap<PeerAddress, PeerScore> peerScores = new ConcurrentHashMap<PeerAddress, PeerScore>();
+
+    /**
+     * The number of blocks left to download as last reported by the download peer.
+     */
+    private volatile int blocksLeft = 0;
+
+    /**
+     * The time the chain download last made progress.
+     */
+    private volatile long lastProgressTime = 0;
+
+    @Override
+    public void onPeerConnected(Peer peer, int peerCount) {
+        if (peer != null) {
+            getScore(peer);
+        }
+    }
+
+    @Override
+    public void onPeerDisconnected(Peer peer, int peerCount) {
+        if (peer == null || peer.getAddress() == null) {
+            return;
+        }
+        // Forget well behaved peers so that the board does not grow without bound.
+        PeerScore peerScore = peerScores.get(peer.getAddress());
+        if (peerScore != null && peerScore.getStallCount() == 0) {
+            peerScores.remove(peer.getAddress());
+        }
+    }
+
+    @Override
+    public void onChainDownloadStarted(Peer peer, int blocksLeft) {
+        this.blocksLeft = blocksLeft;
+        lastProgressTime = System.currentTimeMillis();
+    }
+
+    @Override
+    public void onBlocksDownloaded(Peer peer, Block block, int blocksLeft) {
+        long now = System.currentTimeMillis();
+        this.blocksLeft = blocksLeft;
+        lastProgressTime = now;
+
+        if (peer != null) {
+            getScore(peer).recordBlock(now);
+        }
+    }
+
+    /**
+     * Update the latency of each of the peers from their last ping.
+     */
+    public void recordLatencies(List<Peer> peers) {
+        if (peers == null) {
+            return;
+        }
+        for (Peer peer : peers) {
+            long pingTime = peer.getLastPingTime();
+            if (pingTime != Long.MAX_VALUE) {
+                getScore(peer).recordLatency(pingTime);
+            }
+        }
+    }
+
+    /**
+     * Record that a peer stalled the chain download.
+     */
+    public void recordStall(Peer peer) {
+        PeerScore peerScore = getScore(peer);
+        peerScore.recordStall();
+        log.debug("Peer " + peer.getAddress() + " stalled, " + peerScore);
+
+        // Give the next download peer a full stall timeout.
+        lastProgressTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Choose the highest scoring peer from the list.
+     *
+     * @param peers
+     *            the candidate peers
+     * @param minimumHeight
+     *            peers that claim a best height lower than this cannot serve
+     *            the download and are ignored
+     * @return the best peer or null if there is no suitable peer
+     */
+    public Peer selectBestPeer(List<Peer> peers, long minimumHeight) {
+        if (peers == null) {
+            return null;
+        }
+        Peer bestPeer = null;
+        double bestScore = -Double.MAX_VALUE;
+        for (Peer peer : peers) {
+            if (peer.getBestHeight() < minimumHeight) {
+                continue;
+            }
+            double score = getScore(peer).getScore();
+            if (score > bestScore) {
+                bestScore = score;
+                bestPeer = peer;
+            }
+        }
+        return bestPeer;
+    }
+
+    public PeerScore getScore(Peer peer) {
+        PeerAddress address = peer.getAddress();
+        PeerScore peerScore = peerScores.get(address);
+        if (peerScore == null) {
+            PeerScore newPeerScore = new PeerScore();
+            peerScore = peerScores.putIfAbsent(address, newPeerScore);
+            if (peerScore == null) {
+                peerScore = newPeerScore;
+            }
+        }
+        return peerScore;
+    }
+
+    public int getBlocksLeft() {
+        return blocksLeft;
+    }
+
+    public long getLastProgressTime() {
+        return lastProgressTime;
+    }
+}
@@ -21,6 +21,7 @@ import com.google.bitcoin.core.PeerGroup;
 import com.google.bitcoin.core.StoredBlock;
 import com.google.bitcoin.store.BlockStoreException;
 import org.multibit.controller.bitcoin.BitcoinController;
+import org.multibit.event.EventDispatcher;
 import org.multibit.message.Message;
 import org.multibit.message.MessageManager;
 import org.multibit.model.bitcoin.WalletData;
@@ -34,7 +35,6 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.util.*;
-import java.util.Timer;
 
 
 /**
@@ -50,7 +50,6 @@ public enum ReplayManager {
 
   private static final Logger log = LoggerFactory.getLogger(ReplayManager.class);
   private ReplayManagerTimerTask replayManagerTimerTask;
-  private Timer replayManagerTimer;
 
   /**
    * The actual chain height prior to any replay
@@ -58,9 +57,6 @@ public enum ReplayManager {
    */
   private int actualLastChainHeight;
 
-  private static final int REPLAY_MANAGER_DELAY_TIME = 0; // ms
-  private static final int REPLAY_MANAGER_REPEAT_TIME = 333; // ms
-
   private BitcoinController controller;
 
   private final Queue<ReplayTask> replayTaskQueue = new LinkedList<ReplayTask>();
@@ -75,8 +71,17 @@ public enum ReplayManager {
       replayTaskQueue.clear();
     }
     replayManagerTimerTask = new ReplayManagerTimerTask(controller, replayTaskQueue);
-    replayManagerTimer = new Timer();
-    replayManagerTimer.scheduleAtFixedRate(replayManagerTimerTask, REPLAY_MANAGER_DELAY_TIME, REPLAY_MANAGER_REPEAT_TIME);
+    checkReplayTaskQueue();
+  }
+
+  /**
+   * Start the next replay task if there is one and nothing else is running.
+   * Called whenever the queue or the state of the current task changes.
+   */
+  private void checkReplayTaskQueue() {
+    if (replayManagerTimerTask != null) {
+      EventDispatcher.INSTANCE.execute(replayManagerTimerTask);
+    }
   }
 
   /**
@@ -144,6 +149,13 @@ public enum ReplayManager {
     log.debug("dateToReplayFrom = " + dateToReplayFrom + ", newChainHeightAfterTruncate = " + newChainHeightAfterTruncate);
     replayTask.setStartHeight(newChainHeightAfterTruncate);
 
+    // Replay what is in the local block archive - the network is only used for the rest.
+    FilteredBlockArchive filteredBlockArchive = controller.getMultiBitService().getFilteredBlockArchive();
+    if (filteredBlockArchive != null) {
+      int numberOfBlocksReplayed = filteredBlockArchive.replay(controller.getMultiBitService().getChain(), perWalletModelDataList);
+      log.debug("Replayed " + numberOfBlocksReplayed + " blocks from the block archive.");
+    }
+
     // Create a new PeerGroup.
     controller.getMultiBitService().createNewPeerGroup();
     log.debug("Recreated PeerGroup.");
@@ -255,6 +267,7 @@ public enum ReplayManager {
         }
       }
     }
+    checkReplayTaskQueue();
     return true;
   }
 
@@ -300,6 +313,7 @@ public enum ReplayManager {
 
       // Everything is completed - clear to start the next task.
       replayManagerTimerTask.currentTaskHasCompleted();
+      checkReplayTaskQueue();
     }
   }
 
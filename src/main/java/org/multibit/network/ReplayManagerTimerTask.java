@@ -13,8 +13,8 @@ import java.util.TimerTask;
 
 
 /**
- * The timer task used to poll the replay task queue and initiate replays.
- * 
+ * The task used to check the replay task queue and initiate replays.
+ * It is run on the EventDispatcher whenever a task is offered or completes.
  */
 public class ReplayManagerTimerTask extends TimerTask {
     private final Controller controller;
@@ -23,9 +23,9 @@ public class ReplayManagerTimerTask extends TimerTask {
     private static final Logger log = LoggerFactory.getLogger(ReplayManager.class);
 
     // State control booleans.
-    private boolean currentlyRunningATask = false;
-    private boolean currentTaskHasCompleted = false;
-    private boolean currentTaskIsTidyingUp = false;
+    private volatile boolean currentlyRunningATask = false;
+    private volatile boolean currentTaskHasCompleted = false;
+    private volatile boolean currentTaskIsTidyingUp = false;
 
     final private Queue<ReplayTask> replayTaskQueue;
 
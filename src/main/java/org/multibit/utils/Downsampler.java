@@ -0,0 +1,99 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.utils;
+
+/**
+ * Reduces the number of points in a line to plot while keeping its shape.
+ */
+public class Downsampler {
+
+    private Downsampler() {
+    }
+
+    /**
+     * Choose which points of a line to keep using the Largest Triangle Three
+     * Buckets algorithm. The first and last points are always kept and one
+     * point is kept from each of the threshold - 2 buckets in between: the one
+     * making the largest triangle with the point kept from the previous bucket
+     * and the average of the next bucket.
+     *
+     * @param x
+     *            the x values, in ascending order
+     * @param y
+     *            the y values
+     * @param size
+     *            the number of points
+     * @param threshold
+     *            the most points to keep
+     * @return the indices of the points to keep, in ascending order
+     */
+    public static int[] largestTriangleThreeBuckets(double[] x, double[] y, int size, int threshold) {
+        if (threshold >= size || threshold < 3) {
+            int[] all = new int[size];
+            for (int i = 0; i < size; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+
+        int[] selected = new int[threshold];
+        int numberSelected = 0;
+
+        // Bucket size, leaving out the first and last points.
+        double bucketSize = (double) (size - 2) / (threshold - 2);
+
+        int previous = 0;
+        selected[numberSelected++] = previous;
+
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            // The average of the next bucket, or the last point for the last bucket.
+            int nextStart = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) Math.floor((bucket + 2) * bucketSize) + 1, size);
+            double averageX = 0;
+            double averageY = 0;
+            if (nextStart >= nextEnd) {
+                averageX = x[size - 1];
+                averageY = y[size - 1];
+            } else {
+                for (int i = nextStart; i < nextEnd; i++) {
+                    averageX += x[i];
+                    averageY += y[i];
+                }
+                averageX /= nextEnd - nextStart;
+                averageY /= nextEnd - nextStart;
+            }
+
+            // The point in this bucket making the largest triangle.
+            int start = (int) Math.floor(bucket * bucketSize) + 1;
+            int end = Math.min((int) Math.floor((bucket + 1) * bucketSize) + 1, size - 1);
+            double maximumArea = -1;
+            int chosen = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((x[previous] - averageX) * (y[i] - y[previous]) - (x[previous] - x[i]) * (averageY - y[previous]));
+                if (area > maximumArea) {
+                    maximumArea = area;
+                    chosen = i;
+                }
+            }
+
+            selected[numberSelected++] = chosen;
+            previous = chosen;
+        }
+
+        selected[numberSelected++] = size - 1;
+        return selected;
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.utils;
+
+import java.text.DecimalFormatSymbols;
+
+/**
+ * Writes fixed point numbers held as a long, such as satoshi amounts, in the
+ * same way as a DecimalFormat with no minimum fraction digits would, without
+ * creating any objects.
+ */
+public class FixedPointFormat {
+
+    /**
+     * The largest scale that can be written, as 10^18 is the largest power of ten in a long.
+     */
+    public static final int MAXIMUM_SCALE = 18;
+
+    private static final long[] POWERS_OF_TEN = new long[MAXIMUM_SCALE + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAXIMUM_SCALE; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /**
+     * @return 10 to the power of the exponent, for exponents from 0 to MAXIMUM_SCALE
+     */
+    public static long powerOfTen(int exponent) {
+        return POWERS_OF_TEN[exponent];
+    }
+
+    /**
+     * Append unscaledValue / 10^scale. Trailing zeros in the fraction are
+     * left out, as is the decimal separator if there is no fraction.
+     *
+     * @param unscaledValue
+     *            the value to write, which must not be negative
+     * @param groupingSize
+     *            the number of integer digits between grouping separators, or 0 for no grouping
+     */
+    public static void appendDecimal(StringBuilder builder, long unscaledValue, int scale, DecimalFormatSymbols symbols,
+            int groupingSize) {
+        if (unscaledValue < 0) {
+            throw new IllegalArgumentException("Value cannot be negative");
+        }
+        if (scale < 0 || scale > MAXIMUM_SCALE) {
+            throw new IllegalArgumentException("Scale must be from 0 to " + MAXIMUM_SCALE);
+        }
+        char zeroDigit = symbols.getZeroDigit();
+
+        long integerPart = unscaledValue / POWERS_OF_TEN[scale];
+        long fractionPart = unscaledValue % POWERS_OF_TEN[scale];
+
+        int numberOfIntegerDigits = 1;
+        while (numberOfIntegerDigits <= MAXIMUM_SCALE && integerPart >= POWERS_OF_TEN[numberOfIntegerDigits]) {
+            numberOfIntegerDigits++;
+        }
+        for (int position = numberOfIntegerDigits - 1; position >= 0; position--) {
+            builder.append((char) (zeroDigit + (integerPart / POWERS_OF_TEN[position]) % 10));
+            if (groupingSize > 0 && position > 0 && position % groupingSize == 0) {
+                builder.append(symbols.getGroupingSeparator());
+            }
+        }
+
+        if (fractionPart != 0) {
+            int numberOfFractionDigits = scale;
+            while (fractionPart % 10 == 0) {
+                fractionPart = fractionPart / 10;
+                numberOfFractionDigits--;
+            }
+            builder.append(symbols.getDecimalSeparator());
+            for (int position = numberOfFractionDigits - 1; position >= 0; position--) {
+                builder.append((char) (zeroDigit + (fractionPart / POWERS_OF_TEN[position]) % 10));
+            }
+        }
+    }
+}
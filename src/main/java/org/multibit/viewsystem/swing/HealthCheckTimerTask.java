@@ -48,7 +48,7 @@ public class HealthCheckTimerTask extends TimerTask {
   private final Controller controller;
   private final BitcoinController bitcoinController;
 
-  private boolean isRunning = false;
+  private volatile boolean isRunning = false;
 
   /**
    * Constructs the object, sets the string to be output in function run()
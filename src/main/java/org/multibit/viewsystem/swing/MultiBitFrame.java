@@ -27,9 +27,14 @@ import org.multibit.controller.Controller;
 import org.multibit.controller.bitcoin.BitcoinController;
 import org.multibit.controller.core.CoreController;
 import org.multibit.controller.exchange.ExchangeController;
+import org.multibit.event.EventDispatcher;
+import org.multibit.event.EventType;
+import org.multibit.event.MultiBitEvent;
+import org.multibit.event.MultiBitEventListener;
 import org.multibit.exchange.CurrencyConverter;
 import org.multibit.exchange.CurrencyConverterListener;
 import org.multibit.exchange.ExchangeRate;
+import org.multibit.exchange.StreamingTickerService;
 import org.multibit.exchange.TickerTimerTask;
 import org.multibit.message.Message;
 import org.multibit.message.MessageManager;
@@ -70,13 +75,13 @@ import java.awt.font.TextAttribute;
 import java.math.BigInteger;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
+import java.util.concurrent.ScheduledFuture;
 
 
 /*
  * JFrame displaying Swing version of MultiBit
  */
-public class MultiBitFrame extends JFrame implements ViewSystem, ApplicationListener, WalletBusyListener, CurrencyConverterListener {
+public class MultiBitFrame extends JFrame implements ViewSystem, ApplicationListener, WalletBusyListener, CurrencyConverterListener, MultiBitEventListener {
 
   private static final Logger log = LoggerFactory.getLogger(MultiBitFrame.class);
 
@@ -176,11 +181,10 @@ public class MultiBitFrame extends JFrame implements ViewSystem, ApplicationList
 
   private ViewFactory viewFactory;
 
-  private Timer fileChangeTimer;
   private HealthCheckTimerTask healthCheckTimerTask;
 
-  private Timer tickerTimer1;
-  private Timer tickerTimer2;
+  private ScheduledFuture<?> tickerTimer1;
+  private ScheduledFuture<?> tickerTimer2;
   private TickerTimerTask tickerTimerTask1;
   private TickerTimerTask tickerTimerTask2;
 
@@ -199,19 +203,6 @@ public class MultiBitFrame extends JFrame implements ViewSystem, ApplicationList
   private MultiBitWalletBusyAction showCheckPrivateKeysAction;
   private MultiBitWalletBusyAction resetTransactionsAction;
 
-  /**
-   * For events coming from Peers condense the events into regular updates.
-   * This is to prevent the UI thrashing with hundreds of events per second.
-   */
-  public static final int FIRE_DATA_CHANGED_UPDATE_LATER_DELAY_TIME = 1000; // milliseconds
-
-  /**
-   * Timer used to condense multiple updates
-   */
-  private static Timer fireDataChangedTimer;
-
-  private static FireDataChangedTimerTask fireDataChangedTimerTask;
-
   @SuppressWarnings("deprecation")
   public MultiBitFrame(CoreController coreController, BitcoinController bitcoinController, ExchangeController exchangeController, GenericApplication application, View initialView) {
     this.coreController = coreController;
@@ -266,19 +257,17 @@ public class MultiBitFrame extends JFrame implements ViewSystem, ApplicationList
 
     this.bitcoinController.registerWalletBusyListener(this);
 
-    // Initialise the file change timer.
-    fileChangeTimer = new Timer();
+    // Initialise the file change check.
     healthCheckTimerTask = new HealthCheckTimerTask(this.bitcoinController);
-    fileChangeTimer.schedule(healthCheckTimerTask, HealthCheckTimerTask.INITIAL_DELAY, HealthCheckTimerTask.DEFAULT_REPEAT_RATE);
+    EventDispatcher.INSTANCE.schedule(healthCheckTimerTask, HealthCheckTimerTask.INITIAL_DELAY, HealthCheckTimerTask.DEFAULT_REPEAT_RATE);
 
     // Initialise the tickers.
-    tickerTimer1 = new Timer();
     tickerTimerTask1 = new TickerTimerTask(this.exchangeController, this, true);
-    tickerTimer1.schedule(tickerTimerTask1, TickerTimerTask.INITIAL_DELAY, TickerTimerTask.DEFAULT_REPEAT_RATE);
+    tickerTimer1 = EventDispatcher.INSTANCE.schedule(tickerTimerTask1, TickerTimerTask.INITIAL_DELAY, TickerTimerTask.getRepeatRate(this.exchangeController));
 
-    tickerTimer2 = new Timer();
     tickerTimerTask2 = new TickerTimerTask(this.exchangeController, this, false);
-    tickerTimer2.schedule(tickerTimerTask2, TickerTimerTask.INITIAL_DELAY + TickerTimerTask.TASK_SEPARATION, TickerTimerTask.DEFAULT_REPEAT_RATE);
+    tickerTimer2 = EventDispatcher.INSTANCE.schedule(tickerTimerTask2, TickerTimerTask.INITIAL_DELAY + TickerTimerTask.TASK_SEPARATION, TickerTimerTask.getRepeatRate(this.exchangeController));
+    StreamingTickerService.INSTANCE.start(this.exchangeController);
 
     // Initialise status bar.
     statusBar.initialise();
@@ -305,9 +294,8 @@ public class MultiBitFrame extends JFrame implements ViewSystem, ApplicationList
 
     setVisible(true);
 
-    fireDataChangedTimerTask = new FireDataChangedTimerTask(this);
-    fireDataChangedTimer = new Timer();
-    fireDataChangedTimer.scheduleAtFixedRate(fireDataChangedTimerTask, FIRE_DATA_CHANGED_UPDATE_LATER_DELAY_TIME, FIRE_DATA_CHANGED_UPDATE_LATER_DELAY_TIME);
+    // Condense the wallet and exchange events into regular updates.
+    EventDispatcher.INSTANCE.addListener(this);
   }
 
   public GenericApplication getApplication() {
@@ -1023,23 +1011,21 @@ public class MultiBitFrame extends JFrame implements ViewSystem, ApplicationList
             tickerTablePanel.setVisible(true);
             controller.getModel().setUserPreference(ExchangeModel.TICKER_SHOW, Boolean.TRUE.toString());
             showTicker.setText(controller.getLocaliser().getString("multiBitFrame.ticker.hide.text"));
-            // Cancel any existing timer.
+            // Cancel any existing ticker.
             if (tickerTimer1 != null) {
-              tickerTimer1.cancel();
+              tickerTimer1.cancel(false);
             }
             if (tickerTimer2 != null) {
-              tickerTimer2.cancel();
+              tickerTimer2.cancel(false);
             }
-            // Start ticker timer.
-            tickerTimer1 = new Timer();
-            tickerTimer1.schedule(new TickerTimerTask(exchangeController, thisFrame, true), 0, TickerTimerTask.DEFAULT_REPEAT_RATE);
+            // Start ticker.
+            tickerTimer1 = EventDispatcher.INSTANCE.schedule(new TickerTimerTask(exchangeController, thisFrame, true), 0, TickerTimerTask.getRepeatRate(exchangeController));
 
             boolean showSecondRow = Boolean.TRUE.toString().equals(
                     controller.getModel().getUserPreference(ExchangeModel.TICKER_SHOW_SECOND_ROW));
 
             if (showSecondRow) {
-              tickerTimer2 = new Timer();
-              tickerTimer2.schedule(new TickerTimerTask(exchangeController, thisFrame, false), TickerTimerTask.TASK_SEPARATION, TickerTimerTask.DEFAULT_REPEAT_RATE);
+              tickerTimer2 = EventDispatcher.INSTANCE.schedule(new TickerTimerTask(exchangeController, thisFrame, false), TickerTimerTask.TASK_SEPARATION, TickerTimerTask.getRepeatRate(exchangeController));
             }
           }
         }
@@ -1409,9 +1395,7 @@ public class MultiBitFrame extends JFrame implements ViewSystem, ApplicationList
    */
   public void blockDownloaded() {
     // Update transaction screen in case status icons have changed.
-    if (View.TRANSACTIONS_VIEW == controller.getCurrentView()) {
-      ShowTransactionsPanel.updateTransactions();
-    }
+    EventDispatcher.INSTANCE.post(EventType.BLOCK_DOWNLOADED, null);
   }
 
   @Override
@@ -1424,6 +1408,34 @@ public class MultiBitFrame extends JFrame implements ViewSystem, ApplicationList
     fireDataChangedUpdateLater(DisplayHint.WALLET_TRANSACTIONS_HAVE_CHANGED);
   }
 
+  /**
+   * Update the UI with a batch of coalesced events.
+   */
+  @Override
+  public void onEvents(List<MultiBitEvent> events) {
+    boolean walletChanged = false;
+    boolean exchangeRateUpdated = false;
+    for (MultiBitEvent event : events) {
+      if (event.getEventType() == EventType.WALLET_CHANGED) {
+        walletChanged = true;
+      } else if (event.getEventType() == EventType.EXCHANGE_RATE_UPDATED) {
+        exchangeRateUpdated = true;
+      }
+    }
+
+    if (walletChanged) {
+      fireDataChangedOnSwingThread(DisplayHint.WALLET_TRANSACTIONS_HAVE_CHANGED);
+    }
+    if (exchangeRateUpdated) {
+      if (!walletChanged) {
+        updateHeader();
+      }
+      if (tickerTablePanel != null) {
+        tickerTablePanel.update();
+      }
+    }
+  }
+
   /**
    * One of the wallets has been reorganised due to a block chain reorganise
    */
@@ -1476,18 +1488,16 @@ public class MultiBitFrame extends JFrame implements ViewSystem, ApplicationList
   }
 
   /**
-   * Mark that the UI needs updating the next time the fireDataChangedTimer fires.
+   * Mark that the UI needs updating with the next batch of events.
    */
   @Override
   public void fireDataChangedUpdateLater(DisplayHint displayHint) {
-    if (fireDataChangedTimerTask != null) {
-      fireDataChangedTimerTask.setFireDataChanged(true);
-    }
+    EventDispatcher.INSTANCE.post(EventType.WALLET_CHANGED, null);
   }
 
   /**
    * Actually update the UI.
-   * (Called back from the FireDataChangedTimerTask).
+   * (Called back from the EventDispatcher).
    */
   private void fireDataChangedOnSwingThread(DisplayHint displayHint) {
     updateHeader();
@@ -1511,14 +1521,7 @@ public class MultiBitFrame extends JFrame implements ViewSystem, ApplicationList
    * Update the Ticker Panel after the exchange data has changed.
    */
   public void fireExchangeDataChanged() {
-    updateHeader();
-
-    SwingUtilities.invokeLater(new Runnable() {
-      @Override
-      public void run() {
-        tickerTablePanel.update();
-      }
-    });
+    EventDispatcher.INSTANCE.post(EventType.EXCHANGE_RATE_UPDATED, null);
   }
 
   public void updateHeader(final String syncMessage, final double syncPercent) {
@@ -1753,19 +1756,19 @@ public class MultiBitFrame extends JFrame implements ViewSystem, ApplicationList
     updateHeader();
   }
 
-  public Timer getTickerTimer1() {
+  public ScheduledFuture<?> getTickerTimer1() {
     return tickerTimer1;
   }
 
-  public void setTickerTimer1(Timer tickerTimer1) {
+  public void setTickerTimer1(ScheduledFuture<?> tickerTimer1) {
     this.tickerTimer1 = tickerTimer1;
   }
 
-  public Timer getTickerTimer2() {
+  public ScheduledFuture<?> getTickerTimer2() {
     return tickerTimer2;
   }
 
-  public void setTickerTimer2(Timer tickerTimer2) {
+  public void setTickerTimer2(ScheduledFuture<?> tickerTimer2) {
     this.tickerTimer2 = tickerTimer2;
   }
 
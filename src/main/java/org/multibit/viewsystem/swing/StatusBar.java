@@ -58,6 +58,7 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.List;
 import java.util.Timer;
 
 /**
@@ -329,24 +330,46 @@ public class StatusBar extends JPanel implements MessageListener {
     });
   }
 
+  /**
+   * Only the last status label and the last sync progress in a batch are shown,
+   * though the start and finish of a sync are never skipped.
+   */
   @Override
-  public void newMessageReceived(final Message newMessage) {
-    if (newMessage == null || !newMessage.isShowInStatusBar()) {
-      return;
-    }
+  public void newMessagesReceived(List<Message> newMessages) {
+    Message lastStatusMessage = null;
+    Message lastSyncMessage = null;
 
-    if (newMessage.getPercentComplete() == Message.NOT_RELEVANT_PERCENTAGE_COMPLETE) {
-      updateStatusLabel(newMessage.getText(), newMessage.isClearAutomatically());
-    } else {
-      if (Math.abs(newMessage.getPercentComplete() - 0) < TOLERANCE) {
-        startSync();
+    for (Message newMessage : newMessages) {
+      if (newMessage == null || !newMessage.isShowInStatusBar()) {
+        continue;
       }
-      updateSync((int) newMessage.getPercentComplete(), newMessage.getText());
 
-      if (Math.abs(newMessage.getPercentComplete() - 100) < TOLERANCE) {
-        finishSync();
+      if (newMessage.getPercentComplete() == Message.NOT_RELEVANT_PERCENTAGE_COMPLETE) {
+        lastStatusMessage = newMessage;
+      } else {
+        boolean isStart = Math.abs(newMessage.getPercentComplete() - 0) < TOLERANCE;
+        boolean isFinish = Math.abs(newMessage.getPercentComplete() - 100) < TOLERANCE;
+        if (isStart || isFinish) {
+          if (isStart) {
+            startSync();
+          }
+          updateSync((int) newMessage.getPercentComplete(), newMessage.getText());
+          if (isFinish) {
+            finishSync();
+          }
+          lastSyncMessage = null;
+        } else {
+          lastSyncMessage = newMessage;
+        }
       }
     }
+
+    if (lastSyncMessage != null) {
+      updateSync((int) lastSyncMessage.getPercentComplete(), lastSyncMessage.getText());
+    }
+    if (lastStatusMessage != null) {
+      updateStatusLabel(lastStatusMessage.getText(), lastStatusMessage.isClearAutomatically());
+    }
   }
 
   private void updateStatusLabel(final String newStatusLabel, Boolean clearAutomatically) {
@@ -125,13 +125,13 @@ public class WalletTableModel extends AbstractTableModel {
         case 4:
             // Amount in fiat
             if (walletDataRow.getDebit() != null  && walletDataRow.getDebit().compareTo(BigInteger.ZERO) > 0) {
-                Money debitAmountFiat = CurrencyConverter.INSTANCE.convertFromBTCToFiat(walletDataRow.getDebit());
+                Money debitAmountFiat = CurrencyConverter.INSTANCE.convertFromBTCToFiat(walletDataRow.getDebit(), walletDataRow.getDate());
                 if (debitAmountFiat != null) {
                     return CurrencyConverter.INSTANCE.getFiatAsLocalisedString(debitAmountFiat.negated(), false, false);
                 }
             }
 
-            Money creditAmountFiat = CurrencyConverter.INSTANCE.convertFromBTCToFiat(walletDataRow.getCredit());
+            Money creditAmountFiat = CurrencyConverter.INSTANCE.convertFromBTCToFiat(walletDataRow.getCredit(), walletDataRow.getDate());
             if (creditAmountFiat != null) {
                 return CurrencyConverter.INSTANCE.getFiatAsLocalisedString(creditAmountFiat, false, false);
             }
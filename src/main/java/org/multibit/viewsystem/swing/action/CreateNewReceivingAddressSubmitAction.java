@@ -170,49 +170,14 @@ public class CreateNewReceivingAddressSubmitAction extends MultiBitSubmitAction
                 
                 privateKeysBackupFile = null;
 
-                final KeyCrypter walletKeyCrypter = finalPerWalletModelData.getWallet().getKeyCrypter();
                     try {
-                        // Derive AES key to use outside of loop - it is the same for all keys in a single wallet.
-                        KeyParameter aesKey = null;
-                        if (encryptNewKeys) {
-                            aesKey = walletKeyCrypter.deriveKey(walletPassword);
-                        }
-                        List<ECKey> newKeys = new ArrayList<ECKey>();
-                        for (int i = 0; i < numberOfAddressesToCreate; i++) {
-                            ECKey newKey;
-                            if (encryptNewKeys) {
-                                // Use the wallet KeyCrypter.
-                                newKey = (new ECKey()).encrypt(walletKeyCrypter, aesKey);
-                            } else {
-                                newKey = new ECKey();
-                            }
-                            newKeys.add(newKey);
-                        }
-                        
-                        FileHandler fileHandler = finalController.getFileHandler();
-                        
-                        synchronized (finalPerWalletModelData.getWallet()) {
-                            finalPerWalletModelData.getWallet().addKeys(newKeys);
-                        }
-
-                        // Recalculate the bloom filter.
-                        if (bitcoinController.getMultiBitService() != null) {
-                          bitcoinController.getMultiBitService().recalculateFastCatchupAndFilter();
-                        }
-
-                        // Add keys to address book.
-                        for (ECKey newKey : newKeys) {
-                            lastAddressString = newKey.toAddress(finalController.getModel().getNetworkParameters()).toString();
-                            finalPerWalletModelData.getWalletInfo().addReceivingAddress(new WalletAddressBookData("", lastAddressString),
-                                false);
-                        }
-                        
-                        // Backup the private keys.
-                        privateKeysBackupFile = fileHandler.backupPrivateKeys(CharBuffer.wrap(walletPassword));
+                        List<String> createdAddresses = new ArrayList<String>();
+                        privateKeysBackupFile = createNewReceivingAddresses(finalController, finalPerWalletModelData,
+                                numberOfAddressesToCreate, encryptNewKeys, walletPassword, createdAddresses);
                         thisAction.setLastPrivateKeysBackupFile(privateKeysBackupFile);
-
-                        // Backup the wallet and wallet info.
-                        BackupManager.INSTANCE.backupPerWalletModelData(fileHandler, finalPerWalletModelData);
+                        if (!createdAddresses.isEmpty()) {
+                            lastAddressString = createdAddresses.get(createdAddresses.size() - 1);
+                        }
 
                         successMeasure = Boolean.TRUE;
                     } catch (KeyCrypterException kce) {
@@ -303,6 +268,66 @@ public class CreateNewReceivingAddressSubmitAction extends MultiBitSubmitAction
         worker.execute();
     }
 
+    /**
+     * Add new keys to a wallet and its address book, then back up the wallet. The private keys are also
+     * backed up when the wallet is the active wallet and is encrypted. The caller marks the wallet as busy.
+     *
+     * @param createdAddresses
+     *            the addresses of the new keys are added to this list
+     * @return the private keys backup file, or null if the private keys were not backed up
+     */
+    public static File createNewReceivingAddresses(BitcoinController bitcoinController, WalletData perWalletModelData,
+            int numberOfAddressesToCreate, boolean encryptNewKeys, CharSequence walletPassword, List<String> createdAddresses)
+            throws IOException {
+        final KeyCrypter walletKeyCrypter = perWalletModelData.getWallet().getKeyCrypter();
+
+        // Derive AES key to use outside of loop - it is the same for all keys in a single wallet.
+        KeyParameter aesKey = null;
+        if (encryptNewKeys) {
+            aesKey = walletKeyCrypter.deriveKey(walletPassword);
+        }
+        List<ECKey> newKeys = new ArrayList<ECKey>();
+        for (int i = 0; i < numberOfAddressesToCreate; i++) {
+            ECKey newKey;
+            if (encryptNewKeys) {
+                // Use the wallet KeyCrypter.
+                newKey = (new ECKey()).encrypt(walletKeyCrypter, aesKey);
+            } else {
+                newKey = new ECKey();
+            }
+            newKeys.add(newKey);
+        }
+
+        FileHandler fileHandler = bitcoinController.getFileHandler();
+
+        synchronized (perWalletModelData.getWallet()) {
+            perWalletModelData.getWallet().addKeys(newKeys);
+        }
+
+        // Recalculate the bloom filter.
+        if (bitcoinController.getMultiBitService() != null) {
+            bitcoinController.getMultiBitService().recalculateFastCatchupAndFilter();
+        }
+
+        // Add keys to address book.
+        for (ECKey newKey : newKeys) {
+            String addressString = newKey.toAddress(bitcoinController.getModel().getNetworkParameters()).toString();
+            perWalletModelData.getWalletInfo().addReceivingAddress(new WalletAddressBookData("", addressString), false);
+            createdAddresses.add(addressString);
+        }
+
+        // Backup the private keys - only the active wallet's private keys can be backed up.
+        File privateKeysBackupFile = null;
+        if (perWalletModelData == bitcoinController.getModel().getActivePerWalletModelData()) {
+            privateKeysBackupFile = fileHandler.backupPrivateKeys(walletPassword);
+        }
+
+        // Backup the wallet and wallet info.
+        BackupManager.INSTANCE.backupPerWalletModelData(fileHandler, perWalletModelData);
+
+        return privateKeysBackupFile;
+    }
+
     @Override
     public void walletBusyChange(boolean newWalletIsBusy) {
         // Update the enable status of the action to match the wallet busy status.
@@ -56,6 +56,8 @@ public class ExitAction extends AbstractExitAction {
     private CoreController coreController = null;
     private BitcoinController bitcoinController = null;
 
+    private HealthCheckTimerTask healthCheckTimerTask = null;
+
     /**
      * Boolean indicating if the ExitAction is running.
      * This depends on there only being one ExitAction being active at any one time
@@ -82,10 +84,32 @@ public class ExitAction extends AbstractExitAction {
         }
     }
 
+    /**
+     * Set the health check to wait for when there is no main frame, for instance when running headless.
+     */
+    public void setHealthCheckTimerTask(HealthCheckTimerTask healthCheckTimerTask) {
+        this.healthCheckTimerTask = healthCheckTimerTask;
+    }
+
     @Override
     public void actionPerformed(ActionEvent arg0) {
+        shutdown();
+        System.exit(0);
+    }
+
+    /**
+     * Disconnect from the Bitcoin network and save the wallets and user preferences, without exiting the JVM.
+     */
+    public void shutdown() {
         running = true;
 
+        // Let any send or new address from the local API finish, and accept no more, before the wallets are saved.
+        if (bitcoinController != null && bitcoinController.getMultiBitService() != null
+                && bitcoinController.getMultiBitService().getLocalApiServer() != null) {
+            log.debug("Stopping the local API...");
+            bitcoinController.getMultiBitService().getLocalApiServer().stop();
+        }
+
         String shuttingDownTitle = bitcoinController.getLocaliser().getString("multiBitFrame.title.shuttingDown");
 
         if (mainFrame != null) {
@@ -102,16 +126,17 @@ public class ExitAction extends AbstractExitAction {
                 });
             }
                
-            // If the HealthCheckTimerTask is running wait until it completes.
-            HealthCheckTimerTask healthCheckTimerTask = mainFrame.getHealthCheckTimerTask();
-            if (healthCheckTimerTask != null) {
-                int timeWaited = 0;
-                
-                while(healthCheckTimerTask.isRunning() && timeWaited < MAXIMUM_TIME_TO_WAIT_FOR_HEALTH_CHECK_TASK) {
-                    log.debug("Waiting for healthCheckTimerTask to complete (waited so far = " + timeWaited + "). . .");
-                    Uninterruptibles.sleepUninterruptibly(TIME_TO_WAIT, TimeUnit.MILLISECONDS);
-                    timeWaited = timeWaited + TIME_TO_WAIT;
-                }
+            healthCheckTimerTask = mainFrame.getHealthCheckTimerTask();
+        }
+
+        // If the HealthCheckTimerTask is running wait until it completes.
+        if (healthCheckTimerTask != null) {
+            int timeWaited = 0;
+
+            while(healthCheckTimerTask.isRunning() && timeWaited < MAXIMUM_TIME_TO_WAIT_FOR_HEALTH_CHECK_TASK) {
+                log.debug("Waiting for healthCheckTimerTask to complete (waited so far = " + timeWaited + "). . .");
+                Uninterruptibles.sleepUninterruptibly(TIME_TO_WAIT, TimeUnit.MILLISECONDS);
+                timeWaited = timeWaited + TIME_TO_WAIT;
             }
         }
         
@@ -201,7 +226,6 @@ public class ExitAction extends AbstractExitAction {
         }
 
         running = false;
-        System.exit(0);
     }
 
     public static boolean isRunning() {
@@ -15,18 +15,14 @@
  */
 package org.multibit.viewsystem.swing.action;
 
-import com.googlecode.jcsv.CSVStrategy;
-import com.googlecode.jcsv.writer.CSVWriter;
-import com.googlecode.jcsv.writer.internal.CSVWriterBuilder;
 import org.multibit.controller.Controller;
 import org.multibit.controller.bitcoin.BitcoinController;
-import org.multibit.file.WalletTableDataEntryConverter;
-import org.multibit.file.WalletTableDataHeaderEntryConverter;
+import org.multibit.file.ExportFormat;
+import org.multibit.file.TransactionExporter;
 import org.multibit.message.Message;
 import org.multibit.message.MessageManager;
 import org.multibit.model.bitcoin.BitcoinModel;
 import org.multibit.model.bitcoin.WalletData;
-import org.multibit.model.bitcoin.WalletTableData;
 import org.multibit.utils.ImageLoader;
 import org.multibit.viewsystem.swing.MultiBitFrame;
 import org.multibit.viewsystem.swing.view.CsvFileFilter;
@@ -39,16 +35,17 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.util.Collections;
-import java.util.Comparator;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 
 /**
- * This {@link Action} exports transactions from a wallet.
+ * This {@link Action} exports transactions from the active wallet, or from
+ * all the open wallets, optionally limited to a range of dates.
  */
 public class ExportTransactionsSubmitAction extends AbstractAction {
 
@@ -56,6 +53,11 @@ public class ExportTransactionsSubmitAction extends AbstractAction {
 
     private static final long serialVersionUID = 1923492460523457765L;
 
+    /**
+     * The format of the from and to dates the user enters.
+     */
+    public static final String EXPORT_DATE_FORMAT = "yyyy-MM-dd";
+
     private final Controller controller;
     private final BitcoinController bitcoinController;
     
@@ -63,6 +65,11 @@ public class ExportTransactionsSubmitAction extends AbstractAction {
 
     private Font adjustedFont;
 
+    /**
+     * The export in progress, or null. Only used on the Swing thread.
+     */
+    private TransactionExporter runningExporter;
+
     /**
      * Creates a new {@link ExportTransactionsSubmitAction}.
      */
@@ -95,6 +102,12 @@ public class ExportTransactionsSubmitAction extends AbstractAction {
             fileChooser.setLocale(controller.getLocaliser().getLocale());
             fileChooser.setDialogTitle( controller.getLocaliser().getString("showExportPrivateKeysPanel.filename.text.2"));
 
+            // Which wallets and dates to export.
+            JCheckBox allWalletsCheckBox = new JCheckBox(controller.getLocaliser().getString("exportTransactionsSubmitAction.allWallets"));
+            JTextField fromDateField = new JTextField(10);
+            JTextField toDateField = new JTextField(10);
+            fileChooser.setAccessory(createOptionsPanel(allWalletsCheckBox, fromDateField, toDateField));
+
             adjustedFont = FontSizer.INSTANCE.getAdjustedDefaultFont();
             if (adjustedFont != null) {
                 setFileChooserFont(new Container[] {fileChooser});
@@ -129,7 +142,31 @@ public class ExportTransactionsSubmitAction extends AbstractAction {
                 File file = fileChooser.getSelectedFile();
                 if (file != null) {
                     exportTransactionsFilename = file.getAbsolutePath();
-                    exportTransactions(exportTransactionsFilename);
+
+                    Date fromDate;
+                    Date toDate;
+                    try {
+                        fromDate = parseExportDate(fromDateField.getText(), false);
+                        toDate = parseExportDate(toDateField.getText(), true);
+                    } catch (ParseException pe) {
+                        String message = controller.getLocaliser().getString("exportTransactionsSubmitAction.invalidDate",
+                                new Object[] { EXPORT_DATE_FORMAT });
+                        log.debug(message);
+                        MessageManager.INSTANCE.addMessage(new Message(message));
+                        return;
+                    }
+
+                    List<WalletData> perWalletModelDataList = new ArrayList<WalletData>();
+                    if (allWalletsCheckBox.isSelected()) {
+                        for (WalletData perWalletModelData : bitcoinController.getModel().getPerWalletModelDataList()) {
+                            if (perWalletModelData.getWallet() != null) {
+                                perWalletModelDataList.add(perWalletModelData);
+                            }
+                        }
+                    } else if (bitcoinController.getModel().getActivePerWalletModelData() != null) {
+                        perWalletModelDataList.add(bitcoinController.getModel().getActivePerWalletModelData());
+                    }
+                    exportTransactions(exportTransactionsFilename, perWalletModelDataList, fromDate, toDate);
                 }
             }
         } finally {
@@ -140,7 +177,50 @@ public class ExportTransactionsSubmitAction extends AbstractAction {
         }
     }
 
-    void exportTransactions(String exportTransactionsFilename) {
+    /**
+     * The choice of all the open wallets and the from and to dates, shown beside the file chooser.
+     */
+    private JPanel createOptionsPanel(JCheckBox allWalletsCheckBox, JTextField fromDateField, JTextField toDateField) {
+        JPanel fieldsPanel = new JPanel(new GridLayout(0, 1, 0, 2));
+        fieldsPanel.add(allWalletsCheckBox);
+        fieldsPanel.add(new JLabel(controller.getLocaliser().getString("exportTransactionsSubmitAction.fromDate",
+                new Object[] { EXPORT_DATE_FORMAT })));
+        fieldsPanel.add(fromDateField);
+        fieldsPanel.add(new JLabel(controller.getLocaliser().getString("exportTransactionsSubmitAction.toDate",
+                new Object[] { EXPORT_DATE_FORMAT })));
+        fieldsPanel.add(toDateField);
+
+        JPanel optionsPanel = new JPanel(new BorderLayout());
+        optionsPanel.setBorder(BorderFactory.createEmptyBorder(0, 8, 0, 0));
+        optionsPanel.add(fieldsPanel, BorderLayout.NORTH);
+        return optionsPanel;
+    }
+
+    /**
+     * Parse a date the user entered, in the local time zone.
+     *
+     * @param endOfDay
+     *            true to return the start of the next day, so that the whole of the date is included
+     * @return the date, or null if the text is blank
+     */
+    public static Date parseExportDate(String text, boolean endOfDay) throws ParseException {
+        if (text == null || text.trim().length() == 0) {
+            return null;
+        }
+        SimpleDateFormat dateFormat = new SimpleDateFormat(EXPORT_DATE_FORMAT);
+        dateFormat.setLenient(false);
+        Date date = dateFormat.parse(text.trim());
+        if (!endOfDay) {
+            return date;
+        }
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(date);
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        return calendar.getTime();
+    }
+
+    void exportTransactions(String exportTransactionsFilename, final List<WalletData> perWalletModelDataList,
+            final Date fromDate, final Date toDate) {
         String message;
         if (new File(exportTransactionsFilename).isDirectory()) {
             message = controller.getLocaliser().getString("exportTransactionsSubmitAction.fileIsADirectory",
@@ -182,9 +262,32 @@ public class ExportTransactionsSubmitAction extends AbstractAction {
             }
         }
         
-        // Now actually perform the export.
+        // Now actually perform the export in the background.
         // (This is separated out to make it easier to test.)
-        exportTransactionsDoIt(bitcoinController.getModel().getActivePerWalletModelData(), exportTransactionsFilename);
+        // Starting a new export cancels any export still running.
+        if (runningExporter != null) {
+            runningExporter.cancel();
+        }
+        final TransactionExporter transactionExporter = new TransactionExporter(bitcoinController);
+        runningExporter = transactionExporter;
+
+        final String finalExportTransactionsFilename = exportTransactionsFilename;
+        SwingWorker<Boolean, Void> worker = new SwingWorker<Boolean, Void>() {
+            @Override
+            protected Boolean doInBackground() throws Exception {
+                return exportTransactionsDoIt(perWalletModelDataList, finalExportTransactionsFilename, fromDate, toDate,
+                        transactionExporter);
+            }
+
+            @Override
+            protected void done() {
+                if (runningExporter == transactionExporter) {
+                    runningExporter = null;
+                }
+            }
+        };
+        log.debug("Exporting transactions in background SwingWorker thread");
+        worker.execute();
     }
     
     private void setFileChooserFont(Component[] comp) {
@@ -198,79 +301,59 @@ public class ExportTransactionsSubmitAction extends AbstractAction {
         }
     }
     
-    public void exportTransactionsDoIt(WalletData walletData, String exportTransactionsFilename) {        
-        List<WalletTableData> walletTableDataList = bitcoinController.getModel().createWalletTableData(bitcoinController, walletData);
-        
-        // Sort by date descending.
-        Comparator<WalletTableData> comparator = new Comparator<WalletTableData>() {
+    public void exportTransactionsDoIt(WalletData walletData, String exportTransactionsFilename) {
+        List<WalletData> perWalletModelDataList = new ArrayList<WalletData>();
+        if (walletData != null) {
+            perWalletModelDataList.add(walletData);
+        }
+        exportTransactionsDoIt(perWalletModelDataList, exportTransactionsFilename, null, null);
+    }
+
+    /**
+     * Export the transactions of the wallets in the date range, merged by date.
+     *
+     * @param fromDate
+     *            the earliest date included, or null for no limit
+     * @param toDate
+     *            the date before which transactions are included, or null for no limit
+     * @return true if the export completed
+     */
+    public boolean exportTransactionsDoIt(List<WalletData> perWalletModelDataList, String exportTransactionsFilename,
+            Date fromDate, Date toDate) {
+        return exportTransactionsDoIt(perWalletModelDataList, exportTransactionsFilename, fromDate, toDate,
+                new TransactionExporter(bitcoinController));
+    }
+
+    /**
+     * Export the transactions, reporting progress on the status bar.
+     *
+     * @return true if the export completed
+     */
+    boolean exportTransactionsDoIt(List<WalletData> perWalletModelDataList, final String exportTransactionsFilename,
+            Date fromDate, Date toDate, TransactionExporter transactionExporter) {
+        final String exportingText = controller.getLocaliser().getString("exportTransactionsSubmitAction.text") + " "
+                + new File(exportTransactionsFilename).getName();
+        TransactionExporter.ProgressListener progressListener = new TransactionExporter.ProgressListener() {
             @Override
-            public int compare(WalletTableData o1, WalletTableData o2) {
-                if (o1 == null) {
-                    if (o2 == null) {
-                        return 0;
-                    } else {
-                        return 1;
-                    }
-                } else {
-                    if (o2 == null) {
-                        return -1;
-                    }
-                }
-                Date d1 = o1.getDate();
-                Date d2 = o2.getDate();
-                if (d1 == null) {
-                    // Object 1 has missing date.
-                    return 1;
-                }
-                if (d2 == null) {
-                    // Object 2 has missing date.
-                    return -1;
-                }
-                long n1 = d1.getTime();
-                long n2 = d2.getTime();
-                if (n1 == 0) {
-                    // Object 1 has missing date.
-                    return 1;
-                }
-                if (n2 == 0) {
-                    // Object 2 has missing date.
-                    return -1;
-                }
-                if (n1 < n2) {
-                    return -1;
-                } else if (n1 > n2) {
-                    return 1;
-                } else {
-                    return 0;
+            public void exportProgress(int rowsWritten, int numberOfRows) {
+                if (rowsWritten < numberOfRows) {
+                    MessageManager.INSTANCE.addMessage(new Message(exportingText + " (" + (100L * rowsWritten / numberOfRows) + "%)", true));
                 }
             }
         };
-        Collections.sort(walletTableDataList, Collections.reverseOrder(comparator));
-        
-        //Writer out = null;
-        OutputStreamWriter outputStreamWriter = null;
+
         try {
-            //out = new FileWriter(exportTransactionsFilename);
-            outputStreamWriter = new OutputStreamWriter ( new FileOutputStream(exportTransactionsFilename, true ), "UTF-8" ); 
-            
-            // Write the header row.
-            WalletTableDataHeaderEntryConverter headerConverter = new WalletTableDataHeaderEntryConverter();
-            headerConverter.setBitcoinController(bitcoinController);
-            CSVWriter<WalletTableData> csvHeaderWriter = new CSVWriterBuilder<WalletTableData>(outputStreamWriter).strategy(CSVStrategy.UK_DEFAULT)
-                    .entryConverter(headerConverter).build();
-            
-            csvHeaderWriter.write(new WalletTableData(null));
-            
-            // Write the body of the CSV file.
-            WalletTableDataEntryConverter converter = new WalletTableDataEntryConverter();
-            converter.setBitcoinController(bitcoinController);
-            CSVWriter<WalletTableData> csvWriter = new CSVWriterBuilder<WalletTableData>(outputStreamWriter).strategy(CSVStrategy.UK_DEFAULT)
-                    .entryConverter(converter).build();
-            
-            csvWriter.writeAll(walletTableDataList);
-            String message = controller.getLocaliser().getString("exportTransactionsSubmitAction.success",
-                    new Object[] { exportTransactionsFilename });
-            MessageManager.INSTANCE.addMessage(new Message(message));
+            File exportTransactionsFile = new File(exportTransactionsFilename);
+            boolean completed = transactionExporter.export(perWalletModelDataList, ExportFormat.forFilename(exportTransactionsFile.getName())
+                    .createRowWriter(bitcoinController, exportTransactionsFile), fromDate, toDate, progressListener);
+            if (completed) {
+                String message = controller.getLocaliser().getString("exportTransactionsSubmitAction.success",
+                        new Object[] { exportTransactionsFilename });
+                MessageManager.INSTANCE.addMessage(new Message(message));
+            } else {
+                log.debug("Export to '" + exportTransactionsFilename + "' was cancelled.");
+            }
+            return completed;
         } catch (NullPointerException e) {
             String message = controller.getLocaliser().getString("exportTransactionsSubmitAction.failure",
                     new Object[] { exportTransactionsFilename, e.getClass().getName() });
@@ -281,18 +364,7 @@ public class ExportTransactionsSubmitAction extends AbstractAction {
                     new Object[] { exportTransactionsFilename, e.getMessage() });
             log.error(message);
             MessageManager.INSTANCE.addMessage(new Message(message));
-        } finally {
-            if (outputStreamWriter != null) {
-                try {
-                    outputStreamWriter.flush();
-                    outputStreamWriter.close();
-                } catch (IOException ioe) {
-                    String message = controller.getLocaliser().getString("exportTransactionsSubmitAction.failure",
-                            new Object[] { exportTransactionsFilename, ioe.getMessage() });
-                    log.error(message);
-                    MessageManager.INSTANCE.addMessage(new Message(message));
-                }
-            }
         }
+        return false;
     }
-}
\ No newline at end of file
+}
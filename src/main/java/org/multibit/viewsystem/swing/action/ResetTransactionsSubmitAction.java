@@ -102,6 +102,7 @@ public class ResetTransactionsSubmitAction extends MultiBitSubmitAction {
 
         // Remove the transactions from the wallet.
         activePerWalletModelData.getWallet().clearTransactions(actualResetDate);
+        activePerWalletModelData.invalidateBalances();
 
         // Save the wallet without the transactions.
         try {
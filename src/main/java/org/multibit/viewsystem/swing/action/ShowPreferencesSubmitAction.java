@@ -20,7 +20,9 @@ import org.joda.money.CurrencyUnit;
 import org.multibit.controller.Controller;
 import org.multibit.controller.bitcoin.BitcoinController;
 import org.multibit.controller.exchange.ExchangeController;
+import org.multibit.event.EventDispatcher;
 import org.multibit.exchange.CurrencyConverter;
+import org.multibit.exchange.StreamingTickerService;
 import org.multibit.exchange.TickerTimerTask;
 import org.multibit.model.bitcoin.BitcoinModel;
 import org.multibit.model.core.CoreModel;
@@ -37,7 +39,6 @@ import javax.swing.*;
 import javax.swing.UIManager.LookAndFeelInfo;
 import java.awt.*;
 import java.awt.event.ActionEvent;
-import java.util.Timer;
 
 /**
  * This {@link Action} applies changes to the preferences panel.
@@ -221,6 +222,17 @@ public class ShowPreferencesSubmitAction extends AbstractAction {
       if (showExchange)
         columnsToShow = columnsToShow + " " + TickerTableModel.TICKER_COLUMN_EXCHANGE;
 
+      // The tick history columns can only be chosen in the user preferences file so keep them.
+      String previousColumnsToShow = controller.getModel().getUserPreference(ExchangeModel.TICKER_COLUMNS_TO_SHOW);
+      if (previousColumnsToShow != null) {
+        for (String tickHistoryColumn : new String[] { TickerTableModel.TICKER_COLUMN_VWAP, TickerTableModel.TICKER_COLUMN_SPREAD,
+                TickerTableModel.TICKER_COLUMN_CHANGE }) {
+          if (previousColumnsToShow.contains(tickHistoryColumn)) {
+            columnsToShow = columnsToShow + " " + tickHistoryColumn;
+          }
+        }
+      }
+
       if ("".equals(columnsToShow)) {
         // A user could just switch all the columns off in the settings
         // so
@@ -305,35 +317,34 @@ public class ShowPreferencesSubmitAction extends AbstractAction {
         // Reinitialise the currency converter.
         CurrencyConverter.INSTANCE.initialise(controller);
 
-        // Cancel any existing timer.
+        // Cancel any existing ticker.
         if (mainFrame.getTickerTimer1() != null) {
-          mainFrame.getTickerTimer1().cancel();
+          mainFrame.getTickerTimer1().cancel(false);
         }
         if (mainFrame.getTickerTimer2() != null) {
-          mainFrame.getTickerTimer2().cancel();
-        }                // Start ticker timer.
-        Timer tickerTimer1 = new Timer();
-        mainFrame.setTickerTimer1(tickerTimer1);
+          mainFrame.getTickerTimer2().cancel(false);
+        }
+        // Restart the streaming ticker, which follows the first row exchange.
+        StreamingTickerService.INSTANCE.start(this.exchangeController);
 
+        // Start ticker.
         TickerTimerTask tickerTimerTask1 = new TickerTimerTask(this.exchangeController, mainFrame, true);
         tickerTimerTask1.createExchangeObjects(controller.getModel().getUserPreference(ExchangeModel.TICKER_FIRST_ROW_EXCHANGE));
         mainFrame.setTickerTimerTask1(tickerTimerTask1);
 
-        tickerTimer1.schedule(tickerTimerTask1, 0, TickerTimerTask.DEFAULT_REPEAT_RATE);
+        mainFrame.setTickerTimer1(EventDispatcher.INSTANCE.schedule(tickerTimerTask1, 0, TickerTimerTask.getRepeatRate(controller)));
 
         boolean showSecondRow = Boolean.TRUE.toString().equals(
                 controller.getModel().getUserPreference(ExchangeModel.TICKER_SHOW_SECOND_ROW));
 
         if (showSecondRow) {
-          Timer tickerTimer2 = new Timer();
-          mainFrame.setTickerTimer2(tickerTimer2);
-
           TickerTimerTask tickerTimerTask2 = new TickerTimerTask(this.exchangeController, mainFrame, false);
           tickerTimerTask2.createExchangeObjects(controller.getModel().getUserPreference(
                   ExchangeModel.TICKER_SECOND_ROW_EXCHANGE));
           mainFrame.setTickerTimerTask2(tickerTimerTask2);
 
-          tickerTimer2.schedule(tickerTimerTask2, TickerTimerTask.TASK_SEPARATION, TickerTimerTask.DEFAULT_REPEAT_RATE);
+          mainFrame.setTickerTimer2(EventDispatcher.INSTANCE.schedule(tickerTimerTask2, TickerTimerTask.TASK_SEPARATION,
+                  TickerTimerTask.getRepeatRate(controller)));
         }
       }
 
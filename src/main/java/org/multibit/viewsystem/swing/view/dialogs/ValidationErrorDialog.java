@@ -18,7 +18,6 @@ package org.multibit.viewsystem.swing.view.dialogs;
 
 
 import com.google.bitcoin.core.Transaction;
-import com.google.bitcoin.core.Wallet.BalanceType;
 import com.google.bitcoin.core.Wallet.SendRequest;
 import org.multibit.controller.Controller;
 import org.multibit.controller.bitcoin.BitcoinController;
@@ -189,7 +188,7 @@ public class ValidationErrorDialog extends MultiBitDialog {
 
             String textToAdd = controller.getLocaliser().getString("validationErrorView.notEnoughFundsMessage",
                     new String[] { amountPlusConversionToFiat});
-            if (this.bitcoinController.getModel().getActiveWallet().getBalance(BalanceType.AVAILABLE).compareTo(this.bitcoinController.getModel().getActiveWallet().getBalance(BalanceType.ESTIMATED)) != 0) {
+            if (this.bitcoinController.getModel().getActiveWalletAvailableBalance().compareTo(this.bitcoinController.getModel().getActiveWalletEstimatedBalance()) != 0) {
                 textToAdd = controller.getLocaliser().getString("validationErrorView.notEnoughFundsMessage2",
                         new String[] { amountPlusConversionToFiat});
             }
@@ -233,7 +232,7 @@ public class ValidationErrorDialog extends MultiBitDialog {
         okButton.setBackground(ColorAndFontConstants.BACKGROUND_COLOR);
 
         Object[] options = {okButton};
-        if (this.bitcoinController.getModel().getActiveWallet().getBalance(BalanceType.AVAILABLE).compareTo(this.bitcoinController.getModel().getActiveWallet().getBalance(BalanceType.ESTIMATED)) != 0) {
+        if (this.bitcoinController.getModel().getActiveWalletAvailableBalance().compareTo(this.bitcoinController.getModel().getActiveWalletEstimatedBalance()) != 0) {
             options = new Object[] { okButton, availableToSpendHelpButton};
         }
         MultiBitTextArea completeMessageTextArea = new MultiBitTextArea("\n" + completeMessage.toString() + "\n", rows, 20, controller);
@@ -16,10 +16,11 @@
 package org.multibit.viewsystem.swing.view.panels;
 
 
-import com.google.bitcoin.core.Transaction;
+import com.google.bitcoin.core.Wallet;
 import com.xeiam.xchart.*;
 import org.multibit.controller.Controller;
 import org.multibit.controller.bitcoin.BitcoinController;
+import org.multibit.model.bitcoin.BalanceTimeline;
 import org.multibit.model.core.CoreModel;
 import org.multibit.utils.DateUtils;
 import org.multibit.utils.ImageLoader;
@@ -41,6 +42,7 @@ import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 
 /**
  * The Charts view.
@@ -69,6 +71,16 @@ public class ChartsPanel extends JPanel implements Viewable, ComponentListener {
 
   private boolean generateRandomChart = false;
 
+  /**
+   * The running balance of each wallet charted so far.
+   */
+  private final Map<Wallet, BalanceTimeline> balanceTimelines = new WeakHashMap<Wallet, BalanceTimeline>();
+
+  /**
+   * The worker currently working out the chart data, or null. Only used on the Swing thread.
+   */
+  private SwingWorker<Collection<ChartData>, Void> chartWorker;
+
   /**
    * Creates a new {@link ChartsPanel}.
    */
@@ -131,13 +143,11 @@ public class ChartsPanel extends JPanel implements Viewable, ComponentListener {
   /**
    * Create a panel containing the chart to show.
    */
-  private JPanel createChartPanel() {
+  private JPanel createChartPanel(Collection<ChartData> chartDataCollection, int chartWidth, int chartHeight) {
     try {
       setBackground(ColorAndFontConstants.BACKGROUND_COLOR);
       setForeground(ColorAndFontConstants.TEXT_COLOR);
 
-      int chartWidth = Math.max(getWidth() - WIDTH_DELTA, MINIMUM_WIDTH);
-      int chartHeight = Math.max(getHeight() - HEIGHT_DELTA, MINIMUM_HEIGHT);
       Chart chart = new Chart(chartWidth, chartHeight);
       Locale locale = controller.getLocaliser().getLocale();
       chart.getStyleManager().setLocale(locale);
@@ -146,9 +156,6 @@ public class ChartsPanel extends JPanel implements Viewable, ComponentListener {
       Collection<Date> xData = new ArrayList<Date>();
       Collection<Number> yData = new ArrayList<Number>();
 
-      // Get the last month's transaction data.
-      Collection<ChartData> chartDataCollection = getChartData();
-
       if (generateRandomChart) {
         DateFormat sdf = new SimpleDateFormat("dd.MM.yyyy");
         Date date;
@@ -226,13 +233,51 @@ public class ChartsPanel extends JPanel implements Viewable, ComponentListener {
 
   /**
    * Update the chart panel (The active wallet may have changed).
+   * The chart data is worked out in the background and any update still in progress is cancelled.
    */
   private void updateChart() {
+    if (chartWorker != null) {
+      chartWorker.cancel(true);
+      chartWorker = null;
+    }
+
+    final int chartWidth = Math.max(getWidth() - WIDTH_DELTA, MINIMUM_WIDTH);
+    final int chartHeight = Math.max(getHeight() - HEIGHT_DELTA, MINIMUM_HEIGHT);
+    final Wallet wallet = controller.getModel() == null ? null : this.bitcoinController.getModel().getActiveWallet();
+    final BalanceTimeline balanceTimeline = getBalanceTimeline(wallet);
+
+    SwingWorker<Collection<ChartData>, Void> worker = new SwingWorker<Collection<ChartData>, Void>() {
+      @Override
+      protected Collection<ChartData> doInBackground() throws Exception {
+        return getChartData(wallet, balanceTimeline, chartWidth);
+      }
+
+      @Override
+      protected void done() {
+        if (isCancelled() || chartWorker != this) {
+          return;
+        }
+        chartWorker = null;
+        try {
+          Collection<ChartData> chartData = get();
+          if (chartData != null) {
+            showChartPanel(createChartPanel(chartData, chartWidth, chartHeight));
+          }
+        } catch (InterruptedException e) {
+          log.error(e.getClass().getName() + " " + e.getMessage());
+        } catch (ExecutionException e) {
+          log.error(e.getClass().getName() + " " + e.getMessage());
+        }
+      }
+    };
+    chartWorker = worker;
+    worker.execute();
+  }
 
+  private void showChartPanel(JPanel chartPanel) {
     // Clear the main panel.
     mainPanel.removeAll();
 
-    // Recreate the chart data and 'draw' it.
     GridBagConstraints constraints = new GridBagConstraints();
 
     constraints.fill = GridBagConstraints.BOTH;
@@ -243,121 +288,54 @@ public class ChartsPanel extends JPanel implements Viewable, ComponentListener {
     constraints.weighty = 1;
     constraints.anchor = GridBagConstraints.CENTER;
 
-    // Recreate chart panel.
-    JPanel chartPanel = createChartPanel();
     chartPanel.setOpaque(true);
     chartPanel.setBackground(ColorAndFontConstants.BACKGROUND_COLOR);
     chartPanel.setForeground(ColorAndFontConstants.TEXT_COLOR);
     mainPanel.add(chartPanel, constraints);
+
+    mainPanel.revalidate();
+    mainPanel.repaint();
   }
 
   /**
-   * Get the transaction data for the chart
+   * Get the running balance timeline of a wallet, kept between updates so only new transactions need to be added.
    */
-  private Collection<ChartData> getChartData() {
-
-    if (controller.getModel() == null || this.bitcoinController.getModel().getActiveWallet() == null) {
-      return new ArrayList<ChartData>();
+  private BalanceTimeline getBalanceTimeline(Wallet wallet) {
+    if (wallet == null) {
+      return null;
     }
+    BalanceTimeline balanceTimeline = balanceTimelines.get(wallet);
+    if (balanceTimeline == null) {
+      balanceTimeline = new BalanceTimeline(wallet);
+      balanceTimelines.put(wallet, balanceTimeline);
+    }
+    return balanceTimeline;
+  }
 
-    ArrayList<Transaction> allTransactions = new ArrayList<Transaction>(this.bitcoinController.getModel().getActiveWallet().getTransactions(false));
-
-    // Order by date.
-    Collections.sort(allTransactions, new Comparator<Transaction>() {
-
-      @Override
-      public int compare(Transaction t1, Transaction t2) {
-
-        Date date1 = t1.getUpdateTime();
-        Date date2 = t2.getUpdateTime();
-        if (date1 == null) {
-          if (date2 == null) {
-            return 0;
-          } else {
-            return -1;
-          }
-        } else {
-          if (date2 == null) {
-            return 1;
-          } else {
-            return date1.compareTo(date2);
-          }
-        }
-
-      }
-    });
-
-    // Work out balance as running total and filter to just last
-    // NUMBER_OF_DAYS_TO_LOOK_BACKs data.
-    BigInteger balance = BigInteger.ZERO;
-
-    // The previous datums balance.
-    BigInteger previousBalance = BigInteger.ZERO;
-
-    // The previous datums timepoint.
-    Date previousDate = null;
-
+  /**
+   * Get the transaction data for the chart, reduced to at most one point per pixel.
+   * Runs in the background.
+   *
+   * @return the chart data, or null if the thread was interrupted
+   */
+  private Collection<ChartData> getChartData(Wallet wallet, BalanceTimeline balanceTimeline, int chartWidth) {
+    long nowInMillis = DateUtils.nowUtc().getMillis();
     long pastInMillis = DateUtils.nowUtc().plusDays(-1 * NUMBER_OF_DAYS_TO_LOOK_BACK).getMillis();
 
-    // Create ChartData collection.
     Collection<ChartData> chartData = new ArrayList<ChartData>();
+    if (wallet == null || balanceTimeline == null) {
+      return chartData;
+    }
 
-    try {
-      boolean leftEdgeDataPointAdded = false;
-
-      if (allTransactions == null || allTransactions.size() == 0) {
-        // At beginning of time window balance was zero
-        chartData.add(new ChartData(new Date(pastInMillis), BigInteger.ZERO));
-      } else {
-        for (Transaction loop : allTransactions) {
-          balance = balance.add(loop.getValue(this.bitcoinController.getModel().getActiveWallet()));
-
-          Date loopUpdateTime = loop.getUpdateTime();
-          if (loopUpdateTime != null) {
-            long loopTimeInMillis = loopUpdateTime.getTime();
-
-            if (loopTimeInMillis > pastInMillis) {
-              if (!leftEdgeDataPointAdded) {
-                // If the previous transaction was BEFORE the
-                // NUMBER_OF_DAYS_TO_LOOK_BACK cutoff, include a
-                // datapoint at the beginning of the timewindow
-                // with the balance
-                // at that time.
-                if ((previousDate != null) && (previousDate.getTime() <= pastInMillis)) {
-                  // The balance was non-zero.
-                  chartData.add(new ChartData(new Date(pastInMillis), previousBalance));
-                } else {
-                  // At beginning of time window balance was
-                  // zero
-                  chartData.add(new ChartData(new Date(pastInMillis), BigInteger.ZERO));
-                }
-                leftEdgeDataPointAdded = true;
-              }
-
-              // Include this transaction as it is in the last
-              // NUMBER_OF_DAYS_TO_LOOK_BACK days.
-              chartData.add(new ChartData(loop.getUpdateTime(), previousBalance));
-              chartData.add(new ChartData(loop.getUpdateTime(), balance));
-            }
-
-            previousBalance = balance;
-            previousDate = loop.getUpdateTime();
-          }
-        }
-      }
-
-      // If all the datapoints are before the left hand edge, ensure the balance is also added at the left hand edge.
-      if (!leftEdgeDataPointAdded) {
-        chartData.add(new ChartData(new Date(pastInMillis), balance));
-      }
-
-      // Add in the balance at the end of the time window.
-      chartData.add(new ChartData(new Date(DateUtils.nowUtc().getMillis()), balance));
-      // log.debug("Last transaction date = " + previousDate + ", chart balance = " + balance + ", wallet balance = " + controller.getModel().getActiveWallet().getBalance());
-    } catch (com.google.bitcoin.core.ScriptException e1) {
-      e1.printStackTrace();
+    if (!balanceTimeline.update(wallet)) {
+      return null;
     }
 
+    // Two points per step, so about one point per pixel.
+    BalanceTimeline.Points points = balanceTimeline.getSteps(pastInMillis, nowInMillis, chartWidth / 2);
+    for (int i = 0; i < points.size(); i++) {
+      chartData.add(new ChartData(new Date(points.getTime(i)), BigInteger.valueOf(points.getBalance(i))));
+    }
     return chartData;
   }
 
@@ -18,13 +18,13 @@ package org.multibit.viewsystem.swing.view.panels;
 import java.awt.BorderLayout;
 import java.awt.ComponentOrientation;
 import java.util.Collection;
+import java.util.List;
 
 import javax.swing.BorderFactory;
 import javax.swing.Icon;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
-import javax.swing.SwingUtilities;
 import javax.swing.text.DefaultCaret;
 
 import org.multibit.controller.Controller;
@@ -89,14 +89,14 @@ public class MessagesPanel extends JPanel implements Viewable, MessageListener {
         
         Collection<Message> messages = MessageManager.INSTANCE.getMessages();
         
+        StringBuilder lines = new StringBuilder();
         for (Message message : messages) {
-            if (textArea != null) {
-                if (message.getText() != null && !message.getText().equals(lastMessageAdded)) {
-                    textArea.append(message.getText() + "\n");
-                    lastMessageAdded = message.getText();
-                }
+            if (message.getText() != null && !message.getText().equals(lastMessageAdded)) {
+                lines.append(message.getText()).append("\n");
+                lastMessageAdded = message.getText();
             }
         }
+        textArea.append(lines.toString());
     }
 
     @Override
@@ -127,18 +127,23 @@ public class MessagesPanel extends JPanel implements Viewable, MessageListener {
         return View.MESSAGES_VIEW;
     }
 
+    /**
+     * Append the new messages with a single edit of the document.
+     */
     @Override
-    public void newMessageReceived(final Message message) {
-        SwingUtilities.invokeLater(new Runnable() {
-            @Override
-            public void run() {
-                if (textArea != null) {
-                    if (message != null && message.isShowInMessagesTab() && message.getText() != null && !message.getText().equals(lastMessageAdded)) {
-                        textArea.append(message.getText() + "\n");
-                        lastMessageAdded = message.getText();
-                    }                
-                }
+    public void newMessagesReceived(List<Message> newMessages) {
+        if (textArea == null) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        for (Message message : newMessages) {
+            if (message != null && message.isShowInMessagesTab() && message.getText() != null && !message.getText().equals(lastMessageAdded)) {
+                lines.append(message.getText()).append("\n");
+                lastMessageAdded = message.getText();
             }
-        });    
+        }
+        if (lines.length() > 0) {
+            textArea.append(lines.toString());
+        }
     }
 }
\ No newline at end of file
@@ -21,6 +21,10 @@ import com.google.bitcoin.core.TransactionConfidence.ConfidenceType;
 import org.multibit.MultiBit;
 import org.multibit.controller.Controller;
 import org.multibit.controller.bitcoin.BitcoinController;
+import org.multibit.event.EventDispatcher;
+import org.multibit.event.EventType;
+import org.multibit.event.MultiBitEvent;
+import org.multibit.event.MultiBitEventListener;
 import org.multibit.exchange.CurrencyConverter;
 import org.multibit.exchange.CurrencyConverterListener;
 import org.multibit.exchange.ExchangeRate;
@@ -33,7 +37,6 @@ import org.multibit.viewsystem.View;
 import org.multibit.viewsystem.Viewable;
 import org.multibit.viewsystem.swing.ColorAndFontConstants;
 import org.multibit.viewsystem.swing.MultiBitFrame;
-import org.multibit.viewsystem.swing.UpdateTransactionsTimerTask;
 import org.multibit.viewsystem.swing.WalletTableModel;
 import org.multibit.viewsystem.swing.action.ExportTransactionsSubmitAction;
 import org.multibit.viewsystem.swing.action.HelpContextAction;
@@ -57,9 +60,8 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.List;
-import java.util.Timer;
 
-public class ShowTransactionsPanel extends JPanel implements Viewable, CurrencyConverterListener {
+public class ShowTransactionsPanel extends JPanel implements Viewable, CurrencyConverterListener, MultiBitEventListener {
     private static final long serialVersionUID = 1235108897887842662L;
 
     private final Controller controller;
@@ -106,25 +108,23 @@ public class ShowTransactionsPanel extends JPanel implements Viewable, CurrencyC
     private Action exportTransactionsSubmitAction;
     private MultiBitButton exportTransactionsButton;
     
-    public static final int UPDATE_TRANSACTIONS_DELAY_TIME = 1000; // milliseconds
-    
     private JScrollPane scrollPane;
     
     /**
-     * Timer used to condense multiple updates
+     * The panel that is updated when transaction confidences change - only the most recently created.
      */
-    private static Timer updateTransactionsTimer;
-
-    private static UpdateTransactionsTimerTask updateTransactionsTimerTask;
+    private static ShowTransactionsPanel updateTransactionsListener;
     
     public ShowTransactionsPanel(BitcoinController bitcoinController, MultiBitFrame mainFrame) {
         this.bitcoinController = bitcoinController;
         this.controller = this.bitcoinController;
         this.mainFrame = mainFrame;
 
-        updateTransactionsTimerTask = new UpdateTransactionsTimerTask(controller, this, mainFrame);
-        updateTransactionsTimer = new Timer();
-        updateTransactionsTimer.scheduleAtFixedRate(updateTransactionsTimerTask, UPDATE_TRANSACTIONS_DELAY_TIME, UPDATE_TRANSACTIONS_DELAY_TIME);
+        if (updateTransactionsListener != null) {
+            EventDispatcher.INSTANCE.removeListener(updateTransactionsListener);
+        }
+        updateTransactionsListener = this;
+        EventDispatcher.INSTANCE.addListener(this);
                
         initUI();
 
@@ -145,8 +145,30 @@ public class ShowTransactionsPanel extends JPanel implements Viewable, CurrencyC
     }
     
     public static void updateTransactions() {
-        if (updateTransactionsTimerTask != null) {
-                updateTransactionsTimerTask.setUpdateTransactions(true);                
+        EventDispatcher.INSTANCE.post(EventType.CONFIDENCE_CHANGED, null);
+    }
+
+    /**
+     * Refresh the screen so that the transaction confidence icons can update.
+     */
+    @Override
+    public void onEvents(List<MultiBitEvent> events) {
+        boolean confidenceChanged = false;
+        for (MultiBitEvent event : events) {
+            if (event.getEventType() == EventType.WALLET_CHANGED) {
+                // The whole UI is being updated anyway.
+                return;
+            }
+            if (event.getEventType() == EventType.CONFIDENCE_CHANGED || event.getEventType() == EventType.BLOCK_DOWNLOADED) {
+                confidenceChanged = true;
+            }
+        }
+
+        if (confidenceChanged) {
+            mainFrame.updateHeader();
+            if (controller.getCurrentView() == View.TRANSACTIONS_VIEW) {
+                displayView(DisplayHint.WALLET_TRANSACTIONS_HAVE_CHANGED);
+            }
         }
     }
 
@@ -15,13 +15,18 @@
  */
 package org.multibit.viewsystem.swing.view.ticker;
 
+import org.joda.money.BigMoney;
 import org.multibit.controller.Controller;
 import org.multibit.controller.exchange.ExchangeController;
 import org.multibit.model.exchange.ExchangeData;
 import org.multibit.model.exchange.ExchangeModel;
+import org.multibit.model.exchange.TickHistory;
 
 import javax.swing.table.AbstractTableModel;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
 /**
  * Table model for ticker.
  * 
@@ -36,12 +41,18 @@ public class TickerTableModel extends AbstractTableModel {
     public static final String TICKER_COLUMN_BID = "bid";
     public static final String TICKER_COLUMN_ASK = "ask";
     public static final String TICKER_COLUMN_EXCHANGE = "exchange";
+    public static final String TICKER_COLUMN_VWAP = "vwap";
+    public static final String TICKER_COLUMN_SPREAD = "spread";
+    public static final String TICKER_COLUMN_CHANGE = "change";
 
-    private static final int MAX_NUMBER_OF_COLUMNS = 5;
+    private static final int MAX_NUMBER_OF_COLUMNS = 8;
 
     public static final String DEFAULT_COLUMNS_TO_SHOW = "currency lastPrice exchange";
     public static final String DEFAULT_CURRENCY = "USD";
 
+    // Shown before a price that has not been updated recently.
+    public static final String STALE_PRICE_PREFIX = "~";
+
     private static final long serialVersionUID = -775886012854496208L;
 
     private boolean showSecondRow;
@@ -60,11 +71,17 @@ public class TickerTableModel extends AbstractTableModel {
     private boolean showBid;
     private boolean showAsk;
     private boolean showExchange;
+    private boolean showVwap;
+    private boolean showSpread;
+    private boolean showChange;
 
     private String[] columnVariables = new String[MAX_NUMBER_OF_COLUMNS];
     private String[] tempColumns = new String[MAX_NUMBER_OF_COLUMNS];
     private int numberOfColumns;
 
+    // The values shown in each row, taken together when the table data changes.
+    private RowValues[] rowValues;
+
     public TickerTableModel(ExchangeController exchangeController) {
         this.exchangeController = exchangeController;
         this.controller = this.exchangeController;
@@ -79,6 +96,9 @@ public class TickerTableModel extends AbstractTableModel {
         showBid = tickerColumnsToShow.indexOf(TICKER_COLUMN_BID) > -1;
         showAsk = tickerColumnsToShow.indexOf(TICKER_COLUMN_ASK) > -1;
         showExchange = tickerColumnsToShow.indexOf(TICKER_COLUMN_EXCHANGE) > -1;
+        showVwap = tickerColumnsToShow.indexOf(TICKER_COLUMN_VWAP) > -1;
+        showSpread = tickerColumnsToShow.indexOf(TICKER_COLUMN_SPREAD) > -1;
+        showChange = tickerColumnsToShow.indexOf(TICKER_COLUMN_CHANGE) > -1;
 
         numberOfColumns = 0;
         if (showExchange) {
@@ -101,6 +121,18 @@ public class TickerTableModel extends AbstractTableModel {
             tempColumns[numberOfColumns] = TICKER_COLUMN_ASK;
             numberOfColumns++;
         }
+        if (showVwap) {
+            tempColumns[numberOfColumns] = TICKER_COLUMN_VWAP;
+            numberOfColumns++;
+        }
+        if (showSpread) {
+            tempColumns[numberOfColumns] = TICKER_COLUMN_SPREAD;
+            numberOfColumns++;
+        }
+        if (showChange) {
+            tempColumns[numberOfColumns] = TICKER_COLUMN_CHANGE;
+            numberOfColumns++;
+        }
 
         columnVariables = new String[numberOfColumns];
         System.arraycopy(tempColumns, 0, columnVariables, 0, numberOfColumns);
@@ -145,6 +177,30 @@ public class TickerTableModel extends AbstractTableModel {
           currency2 = "USD";
           controller.getModel().setUserPreference(ExchangeModel.TICKER_SECOND_ROW_CURRENCY, "USD");
         }
+
+        refreshRowValues();
+    }
+
+    /**
+     * Take the latest prices and analytics for each row before the table is
+     * redrawn, so that every cell in a row shows the same update.
+     */
+    @Override
+    public void fireTableDataChanged() {
+        refreshRowValues();
+        super.fireTableDataChanged();
+    }
+
+    private void refreshRowValues() {
+        rowValues = new RowValues[] { createRowValues(exchange1, currency1), createRowValues(exchange2, currency2) };
+    }
+
+    private RowValues createRowValues(String exchange, String currency) {
+        ExchangeData exchangeData = exchangeController.getModel().getExchangeData(exchange);
+        if (exchangeData == null) {
+            return new RowValues(null, null);
+        }
+        return new RowValues(exchangeData.getSnapshot().getPrices(currency), exchangeData.getTickHistory(currency));
     }
 
     @Override
@@ -174,52 +230,82 @@ public class TickerTableModel extends AbstractTableModel {
 
         String exchange;
         String currency;
-        ExchangeData exchangeData;
+        RowValues values;
         if (row == 0) {
             exchange = exchange1;
             currency = currency1;
-            exchangeData = this.exchangeController.getModel().getExchangeData(exchange1);
+            values = rowValues[0];
         } else {
             exchange = exchange2;
             currency = currency2;
-            exchangeData = this.exchangeController.getModel().getExchangeData(exchange2);;
+            values = rowValues[1];
         }
 
         String variable = columnVariables[column];
 
+        ExchangeData.CurrencyPrices prices = values.prices;
+        BigMoney lastPrice = prices == null ? null : prices.getLast();
+
         if (TICKER_COLUMN_CURRENCY.equals(variable)) {
             // currency
             return currency;
         } else if (TICKER_COLUMN_LAST_PRICE.equals(variable)) {
             // rate
-            if (exchangeData == null || exchangeData.getLastPrice(currency) == null) {
+            if (lastPrice == null) {
                 return " ";
+            } else if (prices.isStale()) {
+                // Last known price, waiting for the exchange.
+                return STALE_PRICE_PREFIX + controller.getLocaliser().bigMoneyValueToString(lastPrice);
             } else {
-                return controller.getLocaliser().bigMoneyValueToString(exchangeData.getLastPrice(currency));
+                return controller.getLocaliser().bigMoneyValueToString(lastPrice);
             }
         } else if (TICKER_COLUMN_BID.equals(variable)) {
             // bid
-            if (exchangeData == null || exchangeData.getLastBid(currency) == null) {
+            if (prices == null || prices.getBid() == null) {
                 return " ";
             } else {
-                return controller.getLocaliser().bigMoneyValueToString(exchangeData.getLastBid(currency));
+                return controller.getLocaliser().bigMoneyValueToString(prices.getBid());
             }
         } else if (TICKER_COLUMN_ASK.equals(variable)) {
             // ask
-            if (exchangeData == null || exchangeData.getLastAsk(currency) == null) {
+            if (prices == null || prices.getAsk() == null) {
                 return " ";
             } else {
-                 return controller.getLocaliser().bigMoneyValueToString(exchangeData.getLastAsk(currency));
+                 return controller.getLocaliser().bigMoneyValueToString(prices.getAsk());
             }
         } else if (TICKER_COLUMN_EXCHANGE.equals(variable)) {
             // exchange
             return exchange;
+        } else if (TICKER_COLUMN_VWAP.equals(variable)) {
+            // volume weighted average price over the tick history window
+            return priceToString(lastPrice, values.volumeWeightedAveragePrice);
+        } else if (TICKER_COLUMN_SPREAD.equals(variable)) {
+            // latest ask minus bid
+            return priceToString(lastPrice, values.spread);
+        } else if (TICKER_COLUMN_CHANGE.equals(variable)) {
+            // percentage change over the tick history window
+            if (Double.isNaN(values.changePercent)) {
+                return " ";
+            }
+            return String.format(controller.getLocaliser().getLocale(), "%+.2f%%", values.changePercent);
         } else {
             // do not know
             return "";
         }
     }
 
+    /**
+     * Format a price from the tick history in the currency of the last price.
+     */
+    private String priceToString(BigMoney lastPrice, double price) {
+        if (lastPrice == null || Double.isNaN(price) || Double.isInfinite(price)) {
+            return " ";
+        }
+        BigDecimal amount = BigDecimal.valueOf(price).setScale(Math.max(0, lastPrice.getCurrencyUnit().getDecimalPlaces()),
+                RoundingMode.HALF_EVEN);
+        return controller.getLocaliser().bigMoneyValueToString(BigMoney.of(lastPrice.getCurrencyUnit(), amount));
+    }
+
     /**
      * Table model is read only.
      */
@@ -231,4 +317,30 @@ public class TickerTableModel extends AbstractTableModel {
     public String[] getColumnVariables() {
         return columnVariables;
     }
+
+    /**
+     * The prices and tick history analytics for one row at one time.
+     */
+    private static final class RowValues {
+        private final ExchangeData.CurrencyPrices prices;
+        private final double volumeWeightedAveragePrice;
+        private final double spread;
+        private final double changePercent;
+
+        RowValues(ExchangeData.CurrencyPrices prices, TickHistory tickHistory) {
+            this.prices = prices;
+            if (tickHistory == null) {
+                volumeWeightedAveragePrice = Double.NaN;
+                spread = Double.NaN;
+                changePercent = Double.NaN;
+            } else {
+                // Read under the history's lock so the values come from the same ticks.
+                synchronized (tickHistory) {
+                    volumeWeightedAveragePrice = tickHistory.getVolumeWeightedAveragePrice();
+                    spread = tickHistory.getSpread();
+                    changePercent = tickHistory.getChangePercent();
+                }
+            }
+        }
+    }
 }
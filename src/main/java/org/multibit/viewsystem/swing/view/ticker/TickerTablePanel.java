@@ -248,6 +248,7 @@ public class TickerTablePanel extends JPanel {
     }
 
     public void update() {
+        tickerTableModel.fireTableDataChanged();
         int tickerWidth = setupColumnWidths();
 
         setupTableHeaders();
@@ -102,6 +102,16 @@ public class SingleWalletPanel extends JPanel implements ActionListener, FocusLi
 
   private double lastSyncPercent;
 
+  /**
+   * What the panel was last drawn showing, so an unchanged wallet is not redrawn.
+   */
+  private String displayedState;
+
+  /**
+   * The model has changed since the panel was last drawn, as it was scrolled out of view.
+   */
+  private boolean stale = false;
+
   public SingleWalletPanel(WalletData perWalletModelData, final BitcoinController bitcoinController, MultiBitFrame mainFrame, final WalletListPanel walletListPanel) {
     this.perWalletModelData = perWalletModelData;
     this.bitcoinController = bitcoinController;
@@ -448,6 +458,21 @@ public class SingleWalletPanel extends JPanel implements ActionListener, FocusLi
     }
   }
 
+  public boolean isBusyIconShown() {
+    return hourglassLabel.isVisible();
+  }
+
+  public boolean isStale() {
+    return stale;
+  }
+
+  /**
+   * Mark the panel as needing an update from the model when it is next scrolled into view.
+   */
+  public void setStale(boolean stale) {
+    this.stale = stale;
+  }
+
   public void setBusyIconStatus(boolean isBusy) {
     hourglassLabel.setVisible(isBusy);
 
@@ -566,8 +591,11 @@ public class SingleWalletPanel extends JPanel implements ActionListener, FocusLi
 
   /**
    * Update any UI elements from the model (hint that data has changed).
+   * Nothing is redrawn if what would be shown is unchanged.
+   *
+   * @return true if the panel has been redrawn
    */
-  public void updateFromModel(boolean blinkEnabled, boolean useBusyStatus) {
+  public boolean updateFromModel(boolean blinkEnabled, boolean useBusyStatus) {
     if (ColorAndFontConstants.isInverse()) {
       inactiveBackGroundColor = new Color(Math.min(255, ColorAndFontConstants.BACKGROUND_COLOR.getRed() + 2 * COLOR_DELTA), Math.min(255,
               ColorAndFontConstants.BACKGROUND_COLOR.getBlue() + 2 * COLOR_DELTA), Math.min(255, ColorAndFontConstants.BACKGROUND_COLOR.getGreen() + 2 * COLOR_DELTA));
@@ -576,7 +604,7 @@ public class SingleWalletPanel extends JPanel implements ActionListener, FocusLi
               ColorAndFontConstants.BACKGROUND_COLOR.getBlue() - COLOR_DELTA), Math.max(0, ColorAndFontConstants.BACKGROUND_COLOR.getGreen() - COLOR_DELTA));
     }
 
-    BigInteger estimatedBalance = perWalletModelData.getWallet().getBalance(BalanceType.ESTIMATED);
+    BigInteger estimatedBalance = perWalletModelData.getBalance(BalanceType.ESTIMATED);
     String balanceTextToShowBTC = controller.getLocaliser().bitcoinValueToString(estimatedBalance, true, false);
     String balanceTextToShowFiat = "";
     if (CurrencyConverter.INSTANCE.getRate() != null && CurrencyConverter.INSTANCE.isShowingFiat()) {
@@ -584,7 +612,17 @@ public class SingleWalletPanel extends JPanel implements ActionListener, FocusLi
       balanceTextToShowFiat = "(" + CurrencyConverter.INSTANCE.getFiatAsLocalisedString(fiat) + ")";
     }
 
-    if (useBusyStatus && perWalletModelData.isBusy()) {
+    boolean showBusyStatus = useBusyStatus && perWalletModelData.isBusy();
+    EncryptionType encryptionType = perWalletModelData.getWallet() == null ? null : perWalletModelData.getWallet().getEncryptionType();
+    String newDisplayedState = showBusyStatus ? "busy " + perWalletModelData.getBusyTaskVerbKey() + " " + lastSyncPercent
+            : balanceTextToShowBTC + " " + balanceTextToShowFiat;
+    newDisplayedState = newDisplayedState + " " + encryptionType + " " + inactiveBackGroundColor.getRGB();
+    if (newDisplayedState.equals(displayedState)) {
+      stale = false;
+      return false;
+    }
+
+    if (showBusyStatus) {
       if (lastSyncPercent > 0) {
         setSyncMessage(controller.getLocaliser().getString(perWalletModelData.getBusyTaskVerbKey()), lastSyncPercent);
       } else {
@@ -601,13 +639,18 @@ public class SingleWalletPanel extends JPanel implements ActionListener, FocusLi
       }
     }
 
-    if (perWalletModelData.getWallet() != null) {
-      setIconForWalletType(perWalletModelData.getWallet().getEncryptionType(), walletTypeButton);
+    if (encryptionType != null) {
+      setIconForWalletType(encryptionType, walletTypeButton);
     }
 
+    // Set after the sync message as that clears it.
+    displayedState = newDisplayedState;
+    stale = false;
+
     invalidate();
     revalidate();
     repaint();
+    return true;
   }
 
   public void setSyncMessage(String message, double syncPercent) {
@@ -617,6 +660,9 @@ public class SingleWalletPanel extends JPanel implements ActionListener, FocusLi
 
     lastSyncPercent = syncPercent;
 
+    // The labels no longer show what updateFromModel last put in them.
+    displayedState = null;
+
     if (syncPercent > MultiBitDownloadListener.DONE_FOR_DOUBLES) {
       updateFromModel(false, false);
     } else {
@@ -17,6 +17,7 @@ package org.multibit.viewsystem.swing.view.walletlist;
 
 import java.awt.BorderLayout;
 import java.awt.ComponentOrientation;
+import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
@@ -38,6 +39,8 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextField;
 import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
 import org.multibit.controller.Controller;
 import org.multibit.controller.bitcoin.BitcoinController;
@@ -75,6 +78,11 @@ public class WalletListPanel extends JPanel implements Viewable, WalletBusyListe
     private JPanel buttonPanel;
 
     private JScrollPane scrollPane;
+
+    /**
+     * The widest fiat amount in the wallet panels when they were last sized.
+     */
+    private int fiatLabelWidth = -1;
     
     private static final int TOP_BORDER = 4;
     public static final int LEFT_BORDER = 3;
@@ -112,10 +120,16 @@ public class WalletListPanel extends JPanel implements Viewable, WalletBusyListe
     }
     
     private void displayView(DisplayHint displayHint, boolean blinkEnabled) {
+        // Each wallet panel repaints itself if its wallet has changed so the list as a whole
+        // is only laid out again if a panel has changed size.
+        boolean layoutChanged = DisplayHint.COMPLETE_REDRAW == displayHint;
+
         if (walletPanels != null) {
             synchronized(walletPanels) {
                 int amountFiatLabelSize = 0;
-                
+                boolean modelBlinkEnabled = this.bitcoinController.getModel().isBlinkEnabled();
+                Rectangle visibleRect = walletListPanel == null ? null : walletListPanel.getVisibleRect();
+
                 for (SingleWalletPanel loopSingleWalletPanel : walletPanels) {
                     if (buttonPanel != null) {
                         int buttonPanelPreferredWidth = buttonPanel.getPreferredSize().width;
@@ -123,17 +137,26 @@ public class WalletListPanel extends JPanel implements Viewable, WalletBusyListe
                         if (buttonPanelPreferredWidth > loopPanelPreferredWidth) {
                             loopSingleWalletPanel.setPreferredSize(new Dimension(buttonPanelPreferredWidth, loopSingleWalletPanel
                                     .getPreferredSize().height));
+                            layoutChanged = true;
                         }
                     }
-                    // Make sure the totals displayed and encryption status are correct.
-                    boolean modelBlinkEnabled = this.bitcoinController.getModel().isBlinkEnabled();
-                    loopSingleWalletPanel.updateFromModel(blinkEnabled && modelBlinkEnabled, true);
+                    if (isInView(loopSingleWalletPanel, visibleRect)) {
+                        // Make sure the totals displayed and encryption status are correct.
+                        loopSingleWalletPanel.updateFromModel(blinkEnabled && modelBlinkEnabled, true);
+                    } else {
+                        // Updated when it is scrolled into view.
+                        loopSingleWalletPanel.setStale(true);
+                    }
                      
                     amountFiatLabelSize = Math.max(amountFiatLabelSize, loopSingleWalletPanel.getFiatLabelWidth());
                 }
                 
-                for (SingleWalletPanel loopSingleWalletPanel : walletPanels) {
-                    loopSingleWalletPanel.setFiatLabelWidth(amountFiatLabelSize + 20);
+                if (amountFiatLabelSize != fiatLabelWidth) {
+                    fiatLabelWidth = amountFiatLabelSize;
+                    for (SingleWalletPanel loopSingleWalletPanel : walletPanels) {
+                        loopSingleWalletPanel.setFiatLabelWidth(amountFiatLabelSize + 20);
+                    }
+                    layoutChanged = true;
                 }
             }
         }
@@ -146,9 +169,39 @@ public class WalletListPanel extends JPanel implements Viewable, WalletBusyListe
             selectWalletPanelByFilename(activePerModelData.getWalletFilename());
         }
         
-        invalidate();
-        revalidate();
-        repaint();
+        if (layoutChanged) {
+            invalidate();
+            revalidate();
+            repaint();
+        }
+    }
+
+    /**
+     * Whether any of a wallet panel is in the visible part of the wallet list.
+     */
+    private boolean isInView(SingleWalletPanel singleWalletPanel, Rectangle visibleRect) {
+        if (visibleRect == null || visibleRect.isEmpty()) {
+            // Not laid out yet.
+            return true;
+        }
+        Container outerPanel = singleWalletPanel.getParent();
+        return outerPanel == null || outerPanel.getBounds().intersects(visibleRect);
+    }
+
+    /**
+     * Bring the wallet panels that have just been scrolled into view up to date.
+     */
+    private void updateStaleWalletPanels() {
+        if (walletPanels != null) {
+            synchronized(walletPanels) {
+                Rectangle visibleRect = walletListPanel.getVisibleRect();
+                for (SingleWalletPanel loopSingleWalletPanel : walletPanels) {
+                    if (loopSingleWalletPanel.isStale() && isInView(loopSingleWalletPanel, visibleRect)) {
+                        loopSingleWalletPanel.updateFromModel(false, true);
+                    }
+                }
+            }
+        }
     }
 
     private void selectWalletPanelByFilename(String filename) {
@@ -206,6 +259,12 @@ public class WalletListPanel extends JPanel implements Viewable, WalletBusyListe
         scrollPane.getViewport().setBackground(ColorAndFontConstants.VERY_LIGHT_BACKGROUND_COLOR);
         scrollPane.getViewport().setOpaque(true);
         scrollPane.setComponentOrientation(ComponentOrientation.getOrientation(controller.getLocaliser().getLocale()));
+        scrollPane.getViewport().addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                updateStaleWalletPanels();
+            }
+        });
         tabPanel.add(scrollPane, BorderLayout.CENTER);
 
         JPanel buttonPanel = createButtonPanel();
@@ -504,10 +563,16 @@ public class WalletListPanel extends JPanel implements Viewable, WalletBusyListe
     public void walletBusyChange(boolean newWalletIsBusy) {
         for (SingleWalletPanel loopSingleWalletPanel : walletPanels) {
             // Update the visibility of the hourglass if wallet is busy.
-            loopSingleWalletPanel.setBusyIconStatus(loopSingleWalletPanel.getPerWalletModelData().isBusy());
-            loopSingleWalletPanel.invalidate();
-            loopSingleWalletPanel.revalidate();
-            loopSingleWalletPanel.repaint();
+            boolean isBusy = loopSingleWalletPanel.getPerWalletModelData().isBusy();
+            boolean busyIconChanged = loopSingleWalletPanel.isBusyIconShown() != isBusy;
+            loopSingleWalletPanel.setBusyIconStatus(isBusy);
+
+            // Only the wallets whose busy status has changed are redrawn.
+            if (busyIconChanged) {
+                loopSingleWalletPanel.invalidate();
+                loopSingleWalletPanel.revalidate();
+                loopSingleWalletPanel.repaint();
+            }
         }
     }
 
@@ -0,0 +1,47 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit;
+
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.multibit.model.core.CoreModel;
+
+public class HeadlessServiceTest extends TestCase {
+    @Test
+    public void testHeadlessArgument() throws Exception {
+        assertTrue(HeadlessService.isHeadless(new String[] { "bitcoin:1abc", HeadlessService.HEADLESS_ARGUMENT }, new Properties()));
+    }
+
+    @Test
+    public void testHeadlessPreference() throws Exception {
+        Properties userPreferences = new Properties();
+        userPreferences.setProperty(CoreModel.HEADLESS, "true");
+        assertTrue(HeadlessService.isHeadless(null, userPreferences));
+    }
+
+    @Test
+    public void testRemoveHeadlessArgument() throws Exception {
+        String[] args = HeadlessService.removeHeadlessArgument(new String[] { HeadlessService.HEADLESS_ARGUMENT, "bitcoin:1abc" });
+        assertEquals(1, args.length);
+        assertEquals("bitcoin:1abc", args[0]);
+
+        assertEquals(0, HeadlessService.removeHeadlessArgument(new String[] { HeadlessService.HEADLESS_ARGUMENT }).length);
+        assertNull(HeadlessService.removeHeadlessArgument(null));
+    }
+}
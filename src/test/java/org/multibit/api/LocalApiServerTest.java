@@ -0,0 +1,163 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class LocalApiServerTest extends TestCase {
+    @Test
+    public void testPipelinedRequestsAreHandledOneAfterAnother() throws Exception {
+        final List<String> handledPaths = Collections.synchronizedList(new ArrayList<String>());
+        final AtomicInteger requestsBeingHandled = new AtomicInteger();
+        final AtomicInteger mostRequestsBeingHandled = new AtomicInteger();
+        LocalApiServer server = new LocalApiServer(0, new RequestHandler() {
+            @Override
+            public HttpResponse handle(HttpRequest request) {
+                int beingHandled = requestsBeingHandled.incrementAndGet();
+                mostRequestsBeingHandled.set(Math.max(mostRequestsBeingHandled.get(), beingHandled));
+                try {
+                    if ("/slow".equals(request.getPath())) {
+                        // Long enough for the requests behind it to start if they were not held back.
+                        Thread.sleep(200);
+                    }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                handledPaths.add(request.getPath());
+                requestsBeingHandled.decrementAndGet();
+                return HttpResponse.ok("{\"path\":\"" + request.getPath() + "\",\"n\":\"" + request.getParameter("n") + "\"}");
+            }
+        });
+        int port = server.start();
+        try {
+            Socket socket = new Socket(InetAddress.getByAddress(new byte[] { 127, 0, 0, 1 }), port);
+            try {
+                OutputStream out = socket.getOutputStream();
+                out.write(("GET /slow?n=1 HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                        + "POST /fast HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/x-www-form-urlencoded\r\nContent-Length: 3\r\n\r\nn=2"
+                        + "GET /last?n=3 HTTP/1.1\r\nConnection: close\r\n\r\n").getBytes("ISO-8859-1"));
+                out.flush();
+
+                String responses = readAll(socket.getInputStream());
+                int first = responses.indexOf("{\"path\":\"/slow\",\"n\":\"1\"}");
+                int second = responses.indexOf("{\"path\":\"/fast\",\"n\":\"2\"}");
+                int third = responses.indexOf("{\"path\":\"/last\",\"n\":\"3\"}");
+                assertTrue(responses, first > 0);
+                assertTrue(responses, second > first);
+                assertTrue(responses, third > second);
+                assertTrue(responses.endsWith("}"));
+                assertTrue(responses.contains("Connection: close"));
+
+                assertEquals(Arrays.asList("/slow", "/fast", "/last"), handledPaths);
+                assertEquals(1, mostRequestsBeingHandled.get());
+            } finally {
+                socket.close();
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testSlowRequestDoesNotHoldUpOtherConnections() throws Exception {
+        final CountDownLatch otherRequestHandled = new CountDownLatch(1);
+        LocalApiServer server = new LocalApiServer(0, new RequestHandler() {
+            @Override
+            public HttpResponse handle(HttpRequest request) {
+                boolean otherWasHandled = false;
+                if ("/slow".equals(request.getPath())) {
+                    // Answered once the request on the other connection has been handled.
+                    try {
+                        otherWasHandled = otherRequestHandled.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                } else {
+                    otherRequestHandled.countDown();
+                }
+                return HttpResponse.ok("{\"path\":\"" + request.getPath() + "\",\"other\":" + otherWasHandled + "}");
+            }
+        });
+        int port = server.start();
+        try {
+            Socket slowSocket = new Socket(InetAddress.getByAddress(new byte[] { 127, 0, 0, 1 }), port);
+            Socket otherSocket = new Socket(InetAddress.getByAddress(new byte[] { 127, 0, 0, 1 }), port);
+            try {
+                slowSocket.getOutputStream().write("GET /slow HTTP/1.1\r\nConnection: close\r\n\r\n".getBytes("ISO-8859-1"));
+                otherSocket.getOutputStream().write("GET /other HTTP/1.1\r\nConnection: close\r\n\r\n".getBytes("ISO-8859-1"));
+
+                String otherResponse = readAll(otherSocket.getInputStream());
+                assertTrue(otherResponse, otherResponse.endsWith("{\"path\":\"/other\",\"other\":false}"));
+                String slowResponse = readAll(slowSocket.getInputStream());
+                assertTrue(slowResponse, slowResponse.endsWith("{\"path\":\"/slow\",\"other\":true}"));
+            } finally {
+                slowSocket.close();
+                otherSocket.close();
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testBadRequestClosesTheConnection() throws Exception {
+        LocalApiServer server = new LocalApiServer(0, new RequestHandler() {
+            @Override
+            public HttpResponse handle(HttpRequest request) {
+                return HttpResponse.ok("{}");
+            }
+        });
+        int port = server.start();
+        try {
+            Socket socket = new Socket(InetAddress.getByAddress(new byte[] { 127, 0, 0, 1 }), port);
+            try {
+                socket.getOutputStream().write("NONSENSE\r\n\r\nGET / HTTP/1.1\r\n\r\n".getBytes("ISO-8859-1"));
+                String responses = readAll(socket.getInputStream());
+                assertTrue(responses, responses.startsWith("HTTP/1.1 400 Bad Request"));
+                assertEquals(responses, responses.indexOf("HTTP/1.1"), responses.lastIndexOf("HTTP/1.1"));
+            } finally {
+                socket.close();
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static String readAll(InputStream in) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            bytes.write(buffer, 0, read);
+        }
+        return new String(bytes.toByteArray(), "UTF-8");
+    }
+}
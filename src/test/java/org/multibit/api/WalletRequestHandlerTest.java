@@ -0,0 +1,247 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.api;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.multibit.CreateControllers;
+import org.multibit.controller.bitcoin.BitcoinController;
+import org.multibit.file.FileHandler;
+import org.multibit.model.bitcoin.WalletData;
+import org.multibit.model.bitcoin.WalletInfoData;
+import org.multibit.store.MultiBitWalletVersion;
+
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.Transaction;
+import com.google.bitcoin.core.TransactionOutput;
+import com.google.bitcoin.core.Utils;
+import com.google.bitcoin.core.Wallet;
+import com.google.bitcoin.core.Wallet.SendRequest;
+import com.google.bitcoin.crypto.KeyCrypterScrypt;
+
+public class WalletRequestHandlerTest extends TestCase {
+    private static final String TOKEN = "a1b2c3d4e5f6";
+
+    private static final String WALLET_FILENAME = "walletRequestHandlerTest.wallet";
+
+    private static final String ENCRYPTED_WALLET_FILENAME = "walletRequestHandlerTestEncrypted.wallet";
+
+    private static final CharSequence WALLET_PASSWORD = "horatio nelson 123";
+
+    private BitcoinController bitcoinController;
+
+    private WalletRequestHandler requestHandler;
+
+    private WalletData perWalletModelData;
+
+    @Before
+    public void setUp() throws Exception {
+        bitcoinController = CreateControllers.createControllers().bitcoinController;
+        NetworkParameters params = bitcoinController.getModel().getNetworkParameters();
+
+        Wallet wallet = new Wallet(params);
+        wallet.addKey(new ECKey());
+        perWalletModelData = new WalletData();
+        perWalletModelData.setWallet(wallet);
+        perWalletModelData.setWalletFilename(WALLET_FILENAME);
+        bitcoinController.getModel().getPerWalletModelDataList().add(perWalletModelData);
+
+        KeyCrypterScrypt keyCrypter = new KeyCrypterScrypt();
+        Wallet encryptedWallet = new Wallet(params, keyCrypter);
+        encryptedWallet.addKey(new ECKey().encrypt(keyCrypter, keyCrypter.deriveKey(WALLET_PASSWORD)));
+        WalletData encryptedPerWalletModelData = new WalletData();
+        encryptedPerWalletModelData.setWallet(encryptedWallet);
+        encryptedPerWalletModelData.setWalletFilename(ENCRYPTED_WALLET_FILENAME);
+        encryptedPerWalletModelData.setWalletInfo(new WalletInfoData(ENCRYPTED_WALLET_FILENAME, encryptedWallet,
+                MultiBitWalletVersion.PROTOBUF_ENCRYPTED));
+        bitcoinController.getModel().getPerWalletModelDataList().add(encryptedPerWalletModelData);
+
+        requestHandler = new WalletRequestHandler(bitcoinController, TOKEN);
+    }
+
+    @Test
+    public void testRequestsFromElsewhereAreRefused() throws Exception {
+        Map<String, String> headers = createHeaders();
+        headers.put("origin", "http://example.com");
+        assertEquals(403, requestHandler.handle(createRequest("GET", "/wallets", headers)).getStatus());
+
+        headers = createHeaders();
+        headers.put("host", "example.com:8330");
+        assertEquals(403, requestHandler.handle(createRequest("GET", "/wallets", headers)).getStatus());
+
+        headers = createHeaders();
+        headers.put("host", "127.0.0.1:8330");
+        assertEquals(200, requestHandler.handle(createRequest("GET", "/wallets", headers)).getStatus());
+    }
+
+    @Test
+    public void testTokenIsRequired() throws Exception {
+        Map<String, String> headers = createHeaders();
+        headers.remove("authorization");
+        assertEquals(401, requestHandler.handle(createRequest("POST", "/send", headers)).getStatus());
+
+        headers.put("authorization", "Bearer wrong");
+        assertEquals(401, requestHandler.handle(createRequest("POST", "/send", headers)).getStatus());
+
+        headers.put("authorization", TOKEN);
+        assertEquals(401, requestHandler.handle(createRequest("GET", "/wallets", headers)).getStatus());
+
+        // Without a token nothing is allowed.
+        WalletRequestHandler noTokenRequestHandler = new WalletRequestHandler(bitcoinController, " ");
+        assertEquals(401, noTokenRequestHandler.handle(createRequest("GET", "/wallets", createHeaders())).getStatus());
+        headers.remove("authorization");
+        assertEquals(401, noTokenRequestHandler.handle(createRequest("GET", "/wallets", headers)).getStatus());
+
+        HttpResponse response = requestHandler.handle(createRequest("GET", "/wallets", createHeaders()));
+        assertEquals(200, response.getStatus());
+        assertTrue(response.getBody(), response.getBody().contains(WALLET_FILENAME));
+    }
+
+    @Test
+    public void testRouting() throws Exception {
+        assertEquals(405, requestHandler.handle(createRequest("POST", "/wallets", createHeaders())).getStatus());
+        assertEquals(405, requestHandler.handle(createRequest("GET", "/send", createHeaders())).getStatus());
+        assertEquals(405, requestHandler.handle(createRequest("GET", "/address", createHeaders())).getStatus());
+        assertEquals(404, requestHandler.handle(createRequest("GET", "/unknown", createHeaders())).getStatus());
+
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put("wallet", "missing.wallet");
+        assertEquals(404, requestHandler.handle(createRequest("GET", "/balance", createHeaders(), parameters)).getStatus());
+
+        parameters.put("wallet", WALLET_FILENAME);
+        HttpResponse response = requestHandler.handle(createRequest("GET", "/balance", createHeaders(), parameters));
+        assertEquals(200, response.getStatus());
+        assertTrue(response.getBody(), response.getBody().contains("\"estimated\":0"));
+    }
+
+    @Test
+    public void testPasswordIsChecked() throws Exception {
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put("wallet", ENCRYPTED_WALLET_FILENAME);
+        assertEquals(403, requestHandler.handle(createRequest("POST", "/address", createHeaders(), parameters)).getStatus());
+
+        parameters.put("password", "not the password");
+        assertEquals(403, requestHandler.handle(createRequest("POST", "/address", createHeaders(), parameters)).getStatus());
+
+        parameters.put("address", new ECKey().toAddress(bitcoinController.getModel().getNetworkParameters()).toString());
+        parameters.put("amount", "0.001");
+        assertEquals(403, requestHandler.handle(createRequest("POST", "/send", createHeaders(), parameters)).getStatus());
+    }
+
+    @Test
+    public void testBusyWalletIsRefused() throws Exception {
+        perWalletModelData.setBusy(true);
+        perWalletModelData.setBusyTaskKey("sendBitcoinNowAction.sendingBitcoin");
+
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put("wallet", WALLET_FILENAME);
+        parameters.put("address", new ECKey().toAddress(bitcoinController.getModel().getNetworkParameters()).toString());
+        parameters.put("amount", "0.001");
+        assertEquals(409, requestHandler.handle(createRequest("POST", "/send", createHeaders(), parameters)).getStatus());
+        assertEquals(409, requestHandler.handle(createRequest("POST", "/address", createHeaders(), parameters)).getStatus());
+
+        // The wallet is left busy with its own task.
+        assertTrue(perWalletModelData.isBusy());
+        assertEquals("sendBitcoinNowAction.sendingBitcoin", perWalletModelData.getBusyTaskKey());
+
+        parameters.put("amount", "not an amount");
+        assertEquals(400, requestHandler.handle(createRequest("POST", "/send", createHeaders(), parameters)).getStatus());
+    }
+
+    @Test
+    public void testSendReportsTheFeeTheTransactionWasCompletedWith() throws Exception {
+        NetworkParameters params = bitcoinController.getModel().getNetworkParameters();
+        ECKey key = new ECKey();
+        Wallet wallet = new Wallet(params);
+        wallet.addKey(key);
+
+        // Receive a payment that has been mined, so it can be spent.
+        Transaction previousTransaction = new Transaction(params);
+        previousTransaction.addOutput(Utils.toNanoCoins(1, 0), new ECKey().toAddress(params));
+        Transaction transaction = new Transaction(params);
+        transaction.addInput(previousTransaction.getOutput(0));
+        transaction.addOutput(Utils.toNanoCoins(1, 0), key.toAddress(params));
+        wallet.receivePending(transaction, null);
+        transaction.getConfidence().setAppearedAtChainHeight(1);
+
+        WalletData fundedPerWalletModelData = new WalletData();
+        fundedPerWalletModelData.setWallet(wallet);
+        fundedPerWalletModelData.setWalletFilename("walletRequestHandlerTestFunded.wallet");
+        bitcoinController.getModel().getPerWalletModelDataList().add(fundedPerWalletModelData);
+
+        final Transaction[] sentTransaction = new Transaction[1];
+        WalletRequestHandler sendingRequestHandler = new WalletRequestHandler(bitcoinController, TOKEN) {
+            @Override
+            Transaction sendCoins(WalletData perWalletModelData, SendRequest sendRequest, String password) {
+                // As MultiBitService.sendCoins does.
+                sendRequest.fee = BigInteger.ZERO;
+                sentTransaction[0] = sendRequest.tx;
+                return sendRequest.tx;
+            }
+        };
+
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put("wallet", "walletRequestHandlerTestFunded.wallet");
+        parameters.put("address", new ECKey().toAddress(params).toString());
+        parameters.put("amount", "0.001");
+        HttpResponse response = sendingRequestHandler.handle(createRequest("POST", "/send", createHeaders(), parameters));
+        assertEquals(response.getBody(), 200, response.getStatus());
+
+        // The fee is what the inputs pay beyond the outputs.
+        BigInteger fee = Utils.toNanoCoins(1, 0);
+        for (TransactionOutput output : sentTransaction[0].getOutputs()) {
+            fee = fee.subtract(output.getValue());
+        }
+        assertTrue(fee.signum() > 0);
+        assertTrue(response.getBody(), response.getBody().contains("\"fee\":" + fee + "}"));
+        assertFalse(fundedPerWalletModelData.isBusy());
+    }
+
+    @Test
+    public void testTokenFileIsCreatedOnce() throws Exception {
+        File tokenDirectory = FileHandler.createTempDirectory("localapi");
+        File tokenFile = new File(tokenDirectory, WalletRequestHandler.TOKEN_FILENAME);
+        tokenFile.deleteOnExit();
+
+        String token = WalletRequestHandler.readOrCreateToken(tokenFile);
+        assertEquals(64, token.length());
+        assertTrue(tokenFile.exists());
+        assertEquals(token, WalletRequestHandler.readOrCreateToken(tokenFile));
+    }
+
+    private Map<String, String> createHeaders() {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("host", "localhost:8330");
+        headers.put("authorization", "Bearer " + TOKEN);
+        return headers;
+    }
+
+    private HttpRequest createRequest(String method, String path, Map<String, String> headers) {
+        return createRequest(method, path, headers, new HashMap<String, String>());
+    }
+
+    private HttpRequest createRequest(String method, String path, Map<String, String> headers, Map<String, String> parameters) {
+        return new HttpRequest(method, path, headers, parameters, true);
+    }
+}
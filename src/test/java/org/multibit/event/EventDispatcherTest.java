@@ -0,0 +1,132 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.event;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class EventDispatcherTest extends TestCase {
+    @Test
+    public void testBurstIsCoalescedIntoOneBatch() throws Exception {
+        final CountDownLatch delivered = new CountDownLatch(1);
+        final List<List<MultiBitEvent>> batches = new ArrayList<List<MultiBitEvent>>();
+
+        MultiBitEventListener listener = new MultiBitEventListener() {
+            @Override
+            public void onEvents(List<MultiBitEvent> events) {
+                batches.add(events);
+                delivered.countDown();
+            }
+        };
+        EventDispatcher.INSTANCE.addListener(listener);
+        try {
+            for (int i = 0; i < 100; i++) {
+                EventDispatcher.INSTANCE.post(EventType.WALLET_CHANGED, "wallet1");
+            }
+            EventDispatcher.INSTANCE.post(EventType.WALLET_CHANGED, "wallet2");
+            EventDispatcher.INSTANCE.post(EventType.BLOCK_DOWNLOADED, null);
+
+            assertTrue(delivered.await(5, TimeUnit.SECONDS));
+            // Give any stray second batch the chance to arrive.
+            Thread.sleep(EventDispatcher.COALESCE_TIME * 2);
+
+            assertEquals(1, batches.size());
+            List<MultiBitEvent> events = batches.get(0);
+            assertEquals(3, events.size());
+
+            assertEquals(EventType.WALLET_CHANGED, events.get(0).getEventType());
+            assertEquals("wallet1", events.get(0).getKey());
+            assertEquals(100, events.get(0).getCount());
+
+            assertEquals("wallet2", events.get(1).getKey());
+            assertEquals(1, events.get(1).getCount());
+
+            assertEquals(EventType.BLOCK_DOWNLOADED, events.get(2).getEventType());
+            assertNull(events.get(2).getKey());
+        } finally {
+            EventDispatcher.INSTANCE.removeListener(listener);
+        }
+    }
+
+    @Test
+    public void testEventPostedDuringDeliveryIsNotLost() throws Exception {
+        final CountDownLatch delivered = new CountDownLatch(2);
+        final List<List<MultiBitEvent>> batches = new ArrayList<List<MultiBitEvent>>();
+
+        MultiBitEventListener listener = new MultiBitEventListener() {
+            @Override
+            public void onEvents(List<MultiBitEvent> events) {
+                batches.add(events);
+                if (batches.size() == 1) {
+                    EventDispatcher.INSTANCE.post(EventType.EXCHANGE_RATE_UPDATED, "exchange");
+                }
+                delivered.countDown();
+            }
+        };
+        EventDispatcher.INSTANCE.addListener(listener);
+        try {
+            EventDispatcher.INSTANCE.post(EventType.CONFIDENCE_CHANGED, null);
+
+            assertTrue(delivered.await(5, TimeUnit.SECONDS));
+            assertEquals(2, batches.size());
+            assertEquals(EventType.CONFIDENCE_CHANGED, batches.get(0).get(0).getEventType());
+            assertEquals(EventType.EXCHANGE_RATE_UPDATED, batches.get(1).get(0).getEventType());
+        } finally {
+            EventDispatcher.INSTANCE.removeListener(listener);
+        }
+    }
+
+    @Test
+    public void testEventsAreDeliveredWhilstTasksBlock() throws Exception {
+        final CountDownLatch releaseTasks = new CountDownLatch(1);
+        final CountDownLatch delivered = new CountDownLatch(1);
+
+        MultiBitEventListener listener = new MultiBitEventListener() {
+            @Override
+            public void onEvents(List<MultiBitEvent> events) {
+                delivered.countDown();
+            }
+        };
+        EventDispatcher.INSTANCE.addListener(listener);
+        try {
+            // Tie up every task thread, as slow tickers and a replay would.
+            for (int i = 0; i <= EventDispatcher.NUMBER_OF_TASK_THREADS; i++) {
+                EventDispatcher.INSTANCE.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            releaseTasks.await();
+                        } catch (InterruptedException ie) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+
+            EventDispatcher.INSTANCE.post(EventType.WALLET_CHANGED, "wallet1");
+            assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        } finally {
+            releaseTasks.countDown();
+            EventDispatcher.INSTANCE.removeListener(listener);
+        }
+    }
+}
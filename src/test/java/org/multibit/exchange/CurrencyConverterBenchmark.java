@@ -0,0 +1,98 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.exchange;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.text.NumberFormat;
+import java.util.Locale;
+
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.multibit.Localiser;
+
+/**
+ * <p>Compares the BigDecimal and long paths for converting and formatting satoshi amounts.
+ * Run the main method from the test classpath, optionally with the number of iterations.</p>
+ */
+public class CurrencyConverterBenchmark {
+
+    private static final int DEFAULT_ITERATIONS = 5000000;
+    private static final int WARM_UP_ROUNDS = 3;
+
+    // Stops the JIT removing work whose result is not used.
+    private static long sink;
+
+    public static void main(String args[]) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+
+        final BigDecimal rate = new BigDecimal("612.34");
+        final CurrencyUnit bitcoin = CurrencyUnit.of("BTC");
+        final CurrencyUnit dollar = CurrencyUnit.of("USD");
+        final BigDecimal rateDividedByNumberOfSatoshiInOneBitcoin = rate.divide(new BigDecimal(CurrencyConverter.NUMBER_OF_SATOSHI_IN_ONE_BITCOIN));
+        final FixedPointConverter fixedPointConverter = FixedPointConverter.create(rate, dollar.getDecimalPlaces());
+
+        final Localiser localiser = new Localiser(Locale.ENGLISH);
+        final NumberFormat numberFormat = NumberFormat.getInstance(Locale.ENGLISH);
+        numberFormat.setMaximumFractionDigits(Localiser.NUMBER_OF_FRACTION_DIGITS_FOR_BITCOIN);
+        final StringBuilder builder = new StringBuilder(32);
+
+        for (int round = 0; round <= WARM_UP_ROUNDS; round++) {
+            boolean report = round == WARM_UP_ROUNDS;
+
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                Money money = Money.of(bitcoin, new BigDecimal(BigInteger.valueOf(amount(i))));
+                sink += money.convertedTo(dollar, rateDividedByNumberOfSatoshiInOneBitcoin, RoundingMode.HALF_EVEN).getAmountMinorLong();
+            }
+            report(report, "Convert with BigDecimal and Money", start, iterations);
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sink += fixedPointConverter.toFiatMinorUnits(amount(i));
+            }
+            report(report, "Convert with long", start, iterations);
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                BigDecimal valueInBTC = new BigDecimal(BigInteger.valueOf(amount(i))).divide(new BigDecimal(CurrencyConverter.NUMBER_OF_SATOSHI_IN_ONE_BITCOIN));
+                sink += numberFormat.format(valueInBTC.doubleValue()).length();
+            }
+            report(report, "Format with BigDecimal and NumberFormat", start, iterations);
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                builder.setLength(0);
+                localiser.appendBitcoinValue(builder, amount(i));
+                sink += builder.length();
+            }
+            report(report, "Format with long", start, iterations);
+        }
+        System.out.println("(" + sink + ")");
+    }
+
+    private static long amount(int i) {
+        return 1234567L * (i & 1023) + i;
+    }
+
+    private static void report(boolean report, String name, long start, int iterations) {
+        if (report) {
+            long elapsed = System.nanoTime() - start;
+            System.out.println(String.format("%-40s %8.1f ns/op", name, (double) elapsed / iterations));
+        }
+    }
+}
@@ -17,9 +17,13 @@ package org.multibit.exchange;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
+import javax.swing.SwingUtilities;
+
 import junit.framework.TestCase;
 
 import org.joda.money.CurrencyUnit;
@@ -211,4 +215,56 @@ public class CurrencyConverterTest extends TestCase {
         }
     }
 
+    @Test
+    public void testListenersAreOnlyNotifiedOfSignificantChanges() throws Exception {
+        // Create MultiBit controller.
+        final CreateControllers.Controllers controllers = CreateControllers.createControllers();
+        final BitcoinController controller = controllers.bitcoinController;
+
+        final CurrencyConverter converter = CurrencyConverter.INSTANCE;
+        converter.initialise(controller, "USD");
+        converter.setCurrencyUnit(CurrencyUnit.of("USD"));
+
+        final List<BigDecimal> updatedRates = new ArrayList<BigDecimal>();
+        converter.addCurrencyConverterListener(new CurrencyConverterListener() {
+            @Override
+            public void foundExchangeRate(ExchangeRate exchangeRate) {
+            }
+
+            @Override
+            public void updatedExchangeRate(ExchangeRate exchangeRate) {
+                updatedRates.add(exchangeRate.getRate());
+            }
+        });
+
+        converter.setRate(new BigDecimal("500"));
+        waitForSwingThread();
+        assertEquals(1, updatedRates.size());
+
+        // A change below the threshold is used for conversions but not passed on.
+        converter.setRate(new BigDecimal("500.01"));
+        waitForSwingThread();
+        assertEquals(1, updatedRates.size());
+        assertEquals(new BigDecimal("500.01"), converter.getRate());
+
+        // Rates set before the Swing thread gets to the notification are passed on together.
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                converter.setRate(new BigDecimal("510"));
+                converter.setRate(new BigDecimal("520"));
+            }
+        });
+        waitForSwingThread();
+        assertEquals(2, updatedRates.size());
+        assertEquals(new BigDecimal("520"), updatedRates.get(1));
+    }
+
+    private void waitForSwingThread() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+    }
 }
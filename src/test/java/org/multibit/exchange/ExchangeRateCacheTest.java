@@ -0,0 +1,111 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.exchange;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.math.BigDecimal;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.joda.money.BigMoney;
+import org.joda.money.CurrencyUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExchangeRateCacheTest extends TestCase {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("exchangeRateCache", "");
+        directory.delete();
+        directory.mkdir();
+        ExchangeRateCache.INSTANCE.initialise(directory.getAbsolutePath());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private static ExchangeQuote createQuote(String exchangeName, String last, long fetchTime) {
+        CurrencyUnit usd = CurrencyUnit.of("USD");
+        return new ExchangeQuote(exchangeName, "USD", BigMoney.of(usd, new BigDecimal(last)),
+                BigMoney.of(usd, new BigDecimal("299.5")), null, fetchTime);
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        long now = System.currentTimeMillis();
+        assertTrue(ExchangeRateCache.INSTANCE.update(createQuote("Bitstamp", "300.25", now)));
+        ExchangeRateCache.INSTANCE.save();
+
+        ExchangeRateCache.INSTANCE.initialise(directory.getAbsolutePath());
+        assertNull(ExchangeRateCache.INSTANCE.getRate("Bitstamp", "USD"));
+        ExchangeRateCache.INSTANCE.load(null);
+
+        ExchangeRateCache.CachedRate cachedRate = ExchangeRateCache.INSTANCE.getRate("Bitstamp", "USD");
+        assertNotNull(cachedRate);
+        assertEquals(0, new BigDecimal("300.25").compareTo(cachedRate.getLast().getAmount()));
+        assertEquals(0, new BigDecimal("299.5").compareTo(cachedRate.getBid().getAmount()));
+        assertNull(cachedRate.getAsk());
+        assertEquals(now, cachedRate.getFetchTime());
+    }
+
+    @Test
+    public void testUnchangedQuoteOnlyUpdatesTime() throws Exception {
+        long now = System.currentTimeMillis();
+        assertTrue(ExchangeRateCache.INSTANCE.update(createQuote("Bitstamp", "300.25", now - 1000)));
+        assertFalse(ExchangeRateCache.INSTANCE.update(createQuote("Bitstamp", "300.250", now)));
+        assertEquals(now, ExchangeRateCache.INSTANCE.getRate("Bitstamp", "USD").getFetchTime());
+
+        assertTrue(ExchangeRateCache.INSTANCE.update(createQuote("Bitstamp", "301", now)));
+    }
+
+    @Test
+    public void testExpiredRatesAreNotLoaded() throws Exception {
+        long now = System.currentTimeMillis();
+        ExchangeRateCache.INSTANCE.update(createQuote("Bitstamp", "300", now - ExchangeRateCache.TIME_TO_LIVE - 1000));
+        ExchangeRateCache.INSTANCE.update(createQuote("BTC-E", "305", now - 1000));
+        ExchangeRateCache.INSTANCE.save();
+
+        ExchangeRateCache.INSTANCE.initialise(directory.getAbsolutePath());
+        ExchangeRateCache.INSTANCE.load(null);
+        assertNull(ExchangeRateCache.INSTANCE.getRate("Bitstamp", "USD"));
+        assertEquals("BTC-E", ExchangeRateCache.INSTANCE.getLatestRate("USD").getExchangeName());
+    }
+
+    @Test
+    public void testDamagedEntryIsIgnored() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("Bitstamp.USD.unit", "USD");
+        properties.setProperty("Bitstamp.USD.last", "not a number");
+        properties.setProperty("Bitstamp.USD.time", Long.toString(System.currentTimeMillis()));
+        FileOutputStream outputStream = new FileOutputStream(new File(directory, ExchangeRateCache.EXCHANGE_RATES_FILENAME));
+        properties.store(outputStream, null);
+        outputStream.close();
+
+        ExchangeRateCache.INSTANCE.load(null);
+        assertNull(ExchangeRateCache.INSTANCE.getRate("Bitstamp", "USD"));
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.exchange;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.joda.money.BigMoney;
+import org.joda.money.CurrencyUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExchangeRateServiceTest extends TestCase {
+
+    private static class FakeQuoteSource implements ExchangeQuoteSource {
+        private final String exchangeName;
+        private final String rate;
+        private final long delay;
+        volatile int fetchCount;
+
+        FakeQuoteSource(String exchangeName, String rate, long delay) {
+            this.exchangeName = exchangeName;
+            this.rate = rate;
+            this.delay = delay;
+        }
+
+        @Override
+        public String getExchangeName() {
+            return exchangeName;
+        }
+
+        @Override
+        public ExchangeQuote fetchQuote(String currency) throws Exception {
+            fetchCount++;
+            Thread.sleep(delay);
+            if (rate == null) {
+                throw new java.io.IOException("Exchange is down");
+            }
+            BigMoney last = BigMoney.of(CurrencyUnit.of(currency), new BigDecimal(rate));
+            return new ExchangeQuote(exchangeName, currency, last, null, null, System.currentTimeMillis());
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        ExchangeRateService.INSTANCE.reset();
+    }
+
+    @Test
+    public void testPrimaryIsPreferred() throws Exception {
+        List<ExchangeQuoteSource> sources = new ArrayList<ExchangeQuoteSource>();
+        sources.add(new FakeQuoteSource("Primary", "300", 100));
+        sources.add(new FakeQuoteSource("Secondary", "301", 0));
+
+        List<ExchangeQuote> quotes = ExchangeRateService.INSTANCE.fetchQuotes(sources, "USD", 5000);
+        assertEquals(2, quotes.size());
+        assertEquals("Primary", ExchangeRateService.chooseQuote(quotes).getExchangeName());
+    }
+
+    @Test
+    public void testFailoverWhenPrimaryIsDown() throws Exception {
+        List<ExchangeQuoteSource> sources = new ArrayList<ExchangeQuoteSource>();
+        sources.add(new FakeQuoteSource("Primary", null, 0));
+        sources.add(new FakeQuoteSource("Secondary", "301", 0));
+
+        List<ExchangeQuote> quotes = ExchangeRateService.INSTANCE.fetchQuotes(sources, "USD", 5000);
+        assertEquals(1, quotes.size());
+        assertEquals("Secondary", ExchangeRateService.chooseQuote(quotes).getExchangeName());
+    }
+
+    @Test
+    public void testFailoverWhenPrimaryIsSlow() throws Exception {
+        List<ExchangeQuoteSource> sources = new ArrayList<ExchangeQuoteSource>();
+        sources.add(new FakeQuoteSource("Primary", "300", 10000));
+        sources.add(new FakeQuoteSource("Secondary", "301", 0));
+
+        long start = System.currentTimeMillis();
+        List<ExchangeQuote> quotes = ExchangeRateService.INSTANCE.fetchQuotes(sources, "USD", 500);
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals("Secondary", ExchangeRateService.chooseQuote(quotes).getExchangeName());
+    }
+
+    @Test
+    public void testFailingExchangeIsLeftOut() throws Exception {
+        FakeQuoteSource primary = new FakeQuoteSource("Primary", null, 0);
+        List<ExchangeQuoteSource> sources = new ArrayList<ExchangeQuoteSource>();
+        sources.add(primary);
+        sources.add(new FakeQuoteSource("Secondary", "301", 0));
+
+        for (int i = 0; i < ExchangeRateService.MAXIMUM_CONSECUTIVE_FAILURES; i++) {
+            ExchangeRateService.INSTANCE.fetchQuotes(sources, "USD", 5000);
+        }
+        assertTrue(ExchangeRateService.INSTANCE.isBackedOff("Primary", System.currentTimeMillis()));
+
+        ExchangeRateService.INSTANCE.fetchQuotes(sources, "USD", 5000);
+        assertEquals(ExchangeRateService.MAXIMUM_CONSECUTIVE_FAILURES, primary.fetchCount);
+    }
+
+    @Test
+    public void testAllExchangesAreTriedWhenAllAreFailing() throws Exception {
+        FakeQuoteSource primary = new FakeQuoteSource("Primary", null, 0);
+        List<ExchangeQuoteSource> sources = new ArrayList<ExchangeQuoteSource>();
+        sources.add(primary);
+
+        for (int i = 0; i < ExchangeRateService.MAXIMUM_CONSECUTIVE_FAILURES + 1; i++) {
+            assertNull(ExchangeRateService.chooseQuote(ExchangeRateService.INSTANCE.fetchQuotes(sources, "USD", 5000)));
+        }
+        assertEquals(ExchangeRateService.MAXIMUM_CONSECUTIVE_FAILURES + 1, primary.fetchCount);
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.exchange;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.xeiam.xchange.ExchangeException;
+import com.xeiam.xchange.currency.CurrencyPair;
+import com.xeiam.xchange.dto.marketdata.Ticker;
+import com.xeiam.xchange.service.polling.PollingMarketDataService;
+
+public class ExchangeSimulatorTest extends TestCase {
+
+    private static final String RECORDED_TICKS = "# currency,last,bid,ask\n"
+            + "USD,500.00,499.50,500.50\n"
+            + "\n"
+            + "eur,380.25\n"
+            + "USD,501.00,500.50,501.50\n";
+
+    @Test
+    public void testReadTicks() throws Exception {
+        List<SimulatedTick> ticks = ExchangeSimulator.readTicks(new StringReader(RECORDED_TICKS));
+        assertEquals(3, ticks.size());
+
+        assertEquals("USD", ticks.get(0).getCurrency());
+        assertEquals(new BigDecimal("500.00"), ticks.get(0).getLast());
+        assertEquals(new BigDecimal("499.50"), ticks.get(0).getBid());
+        assertEquals(new BigDecimal("500.50"), ticks.get(0).getAsk());
+
+        assertEquals("EUR", ticks.get(1).getCurrency());
+        assertNull(ticks.get(1).getBid());
+        assertNull(ticks.get(1).getAsk());
+
+        try {
+            ExchangeSimulator.readTicks(new StringReader("USD,500,499\n"));
+            fail("A line with three fields should not be read");
+        } catch (IOException ioe) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testTicksAdvanceOnEachRequestAndWrapAround() throws Exception {
+        ExchangeSimulator simulator = new ExchangeSimulator(ExchangeSimulator.readTicks(new StringReader(RECORDED_TICKS)), 0, 0, 0,
+                ExchangeSimulator.DEFAULT_SEED);
+
+        assertEquals(new BigDecimal("500.00"), simulator.requestTick("USD").getLast());
+        assertEquals(new BigDecimal("501.00"), simulator.requestTick("USD").getLast());
+        assertEquals(new BigDecimal("500.00"), simulator.requestTick("USD").getLast());
+
+        // Each currency has its own position.
+        assertEquals(new BigDecimal("380.25"), simulator.requestTick("EUR").getLast());
+        assertEquals(4, simulator.getRequests());
+    }
+
+    @Test
+    public void testInjectedFailuresAndLatency() throws Exception {
+        ExchangeSimulator simulator = new ExchangeSimulator(ExchangeSimulator.readTicks(new StringReader(RECORDED_TICKS)), 0, 50, 1,
+                ExchangeSimulator.DEFAULT_SEED);
+
+        long start = System.currentTimeMillis();
+        try {
+            simulator.requestTick("USD");
+            fail("Every request should fail");
+        } catch (ExchangeException ee) {
+            // Expected.
+        }
+        assertTrue(System.currentTimeMillis() - start >= 50);
+        assertEquals(1, simulator.getFailures());
+
+        // A currency that is not simulated fails too.
+        simulator = new ExchangeSimulator(ExchangeSimulator.readTicks(new StringReader(RECORDED_TICKS)), 0, 0, 0,
+                ExchangeSimulator.DEFAULT_SEED);
+        try {
+            simulator.requestTick("GBP");
+            fail("GBP is not simulated");
+        } catch (ExchangeException ee) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testSyntheticTicksAreRepeatable() throws Exception {
+        List<SimulatedTick> ticks = ExchangeSimulator.createSyntheticTicks("USD", ExchangeSimulator.SYNTHETIC_START_PRICE, 100, 42);
+        List<SimulatedTick> sameTicks = ExchangeSimulator.createSyntheticTicks("USD", ExchangeSimulator.SYNTHETIC_START_PRICE, 100, 42);
+
+        assertEquals(100, ticks.size());
+        assertEquals(0, ExchangeSimulator.SYNTHETIC_START_PRICE.compareTo(ticks.get(0).getLast()));
+        for (int i = 0; i < ticks.size(); i++) {
+            SimulatedTick tick = ticks.get(i);
+            assertEquals(tick.getLast(), sameTicks.get(i).getLast());
+            assertTrue(tick.getBid().compareTo(tick.getLast()) <= 0);
+            assertTrue(tick.getAsk().compareTo(tick.getLast()) >= 0);
+        }
+    }
+
+    @Test
+    public void testMarketDataService() throws Exception {
+        ExchangeSimulator simulator = new ExchangeSimulator(ExchangeSimulator.readTicks(new StringReader(RECORDED_TICKS)), 0, 0, 0,
+                ExchangeSimulator.DEFAULT_SEED);
+        PollingMarketDataService marketDataService = simulator.createMarketDataService();
+
+        List<CurrencyPair> exchangeSymbols = marketDataService.getExchangeSymbols();
+        assertEquals(2, exchangeSymbols.size());
+        assertEquals("BTC", exchangeSymbols.get(0).baseCurrency);
+        assertEquals("USD", exchangeSymbols.get(0).counterCurrency);
+
+        Ticker ticker = marketDataService.getTicker("BTC", "USD");
+        assertEquals(new BigDecimal("500.00"), ticker.getLast().getAmount());
+        assertEquals(new BigDecimal("499.50"), ticker.getBid().getAmount());
+        assertEquals(new BigDecimal("500.50"), ticker.getAsk().getAmount());
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.exchange;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class FixedPointConverterTest extends TestCase {
+
+    /**
+     * The conversion done by CurrencyConverter with BigDecimal and Money.
+     */
+    private static long convertWithBigDecimal(long satoshi, BigDecimal rate, int fiatDecimalPlaces) {
+        return BigDecimal.valueOf(satoshi).multiply(rate.divide(new BigDecimal(CurrencyConverter.NUMBER_OF_SATOSHI_IN_ONE_BITCOIN)))
+                .setScale(fiatDecimalPlaces, RoundingMode.HALF_EVEN).unscaledValue().longValue();
+    }
+
+    private static void assertSameAsBigDecimal(long satoshi, BigDecimal rate, int fiatDecimalPlaces) {
+        FixedPointConverter converter = FixedPointConverter.create(rate, fiatDecimalPlaces);
+        assertNotNull(converter);
+        if (converter.canConvert(satoshi)) {
+            assertEquals(satoshi + " at " + rate, convertWithBigDecimal(satoshi, rate, fiatDecimalPlaces), converter.toFiatMinorUnits(satoshi));
+        }
+    }
+
+    @Test
+    public void testSameAsBigDecimal() throws Exception {
+        String[] rates = new String[] { "5", "600.12", "0.5", "612.345678", "1E+3", "0.00000001", "99999.99" };
+        long[] amounts = new long[] { 0, 1, -1, 50, 150, 250, -250, 12345678, 100000000, -100000000, 2100000000000000L };
+        for (String rate : rates) {
+            for (long amount : amounts) {
+                assertSameAsBigDecimal(amount, new BigDecimal(rate), 2);
+                assertSameAsBigDecimal(amount, new BigDecimal(rate), 0);
+                assertSameAsBigDecimal(amount, new BigDecimal(rate), 3);
+            }
+        }
+
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            BigDecimal rate = BigDecimal.valueOf(random.nextInt(100000000), random.nextInt(7));
+            long amount = (random.nextLong() % 1000000000000L);
+            assertSameAsBigDecimal(amount, rate, 2);
+        }
+    }
+
+    @Test
+    public void testHalfEven() throws Exception {
+        FixedPointConverter converter = FixedPointConverter.create(new BigDecimal("1"), 2);
+        // 0.005 and 0.015 BTC at 1 per BTC.
+        assertEquals(0, converter.toFiatMinorUnits(500000));
+        assertEquals(2, converter.toFiatMinorUnits(1500000));
+        assertEquals(-2, converter.toFiatMinorUnits(-1500000));
+    }
+
+    @Test
+    public void testUnsuitableRates() throws Exception {
+        assertNull(FixedPointConverter.create(null, 2));
+        assertNull(FixedPointConverter.create(new BigDecimal("600.12"), -1));
+        // A rate computed as a reciprocal has too many decimal places.
+        assertNull(FixedPointConverter.create(BigDecimal.ONE.divide(new BigDecimal("0.00163"), 20, RoundingMode.HALF_EVEN), 2));
+    }
+
+    @Test
+    public void testOverflowIsDetected() throws Exception {
+        FixedPointConverter converter = FixedPointConverter.create(new BigDecimal("612.345678"), 2);
+        // 100 BTC can be converted.
+        assertTrue(converter.canConvert(10000000000L));
+        assertFalse(converter.canConvert(Long.MAX_VALUE));
+        assertFalse(converter.canConvert(Long.MIN_VALUE));
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.exchange;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HistoricalRateStoreTest extends TestCase {
+
+    private File directory;
+
+    private SimpleDateFormat dateFormat;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("historicalRateStore", "");
+        directory.delete();
+        directory.mkdir();
+        HistoricalRateStore.INSTANCE.initialise(directory.getAbsolutePath());
+
+        dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private Date date(String date) throws Exception {
+        return dateFormat.parse(date);
+    }
+
+    @Test
+    public void testImportAndLookup() throws Exception {
+        String csv = "date,currency,rate\n2014-03-05,USD,670.5\n2014-03-01,usd,563.25\n2014-03-01,EUR,410\nnot,a,rate\n";
+        assertEquals(3, HistoricalRateStore.INSTANCE.importCsv(new StringReader(csv)));
+
+        assertEquals(0, new BigDecimal("563.25").compareTo(HistoricalRateStore.INSTANCE.getRate("USD", date("2014-03-01 23:59"))));
+        // The most recent earlier day is used.
+        assertEquals(0, new BigDecimal("563.25").compareTo(HistoricalRateStore.INSTANCE.getRate("USD", date("2014-03-04 12:00"))));
+        assertEquals(0, new BigDecimal("670.5").compareTo(HistoricalRateStore.INSTANCE.getRate("USD", date("2014-03-05 00:00"))));
+        assertEquals(0, new BigDecimal("410").compareTo(HistoricalRateStore.INSTANCE.getRate("EUR", date("2014-03-01 08:00"))));
+
+        assertNull(HistoricalRateStore.INSTANCE.getRate("USD", date("2014-02-28 12:00")));
+        assertNull(HistoricalRateStore.INSTANCE.getRate("USD", date("2014-03-20 12:00")));
+        assertNull(HistoricalRateStore.INSTANCE.getRate("GBP", date("2014-03-01 12:00")));
+    }
+
+    @Test
+    public void testRecordKeepsFirstRateOfTheDay() throws Exception {
+        HistoricalRateStore.INSTANCE.record("USD", date("2014-03-01 10:00"), new BigDecimal("500"));
+        HistoricalRateStore.INSTANCE.record("USD", date("2014-03-01 11:00"), new BigDecimal("510"));
+        assertEquals(0, new BigDecimal("500").compareTo(HistoricalRateStore.INSTANCE.getRate("USD", date("2014-03-01 12:00"))));
+    }
+
+    @Test
+    public void testRatesAreReloaded() throws Exception {
+        HistoricalRateStore.INSTANCE.record("USD", date("2014-03-02 10:00"), new BigDecimal("600.12345678"));
+        HistoricalRateStore.INSTANCE.importCsv(new StringReader("2014-03-01,USD,563.25\n"));
+
+        // Simulate a crash part way through writing a record.
+        FileOutputStream outputStream = new FileOutputStream(new File(directory, HistoricalRateStore.HISTORICAL_RATES_FILENAME), true);
+        outputStream.write(new byte[] { 'U', 'S', 'D', 0, 0 });
+        outputStream.close();
+
+        HistoricalRateStore.INSTANCE.initialise(directory.getAbsolutePath());
+        assertEquals(0, new BigDecimal("563.25").compareTo(HistoricalRateStore.INSTANCE.getRate("USD", date("2014-03-01 12:00"))));
+        assertEquals(0, new BigDecimal("600.12345678").compareTo(HistoricalRateStore.INSTANCE.getRate("USD", date("2014-03-02 12:00"))));
+    }
+
+    @Test
+    public void testRatesAppendedAfterAPartialRecordAreReloaded() throws Exception {
+        HistoricalRateStore.INSTANCE.record("USD", date("2014-03-01 10:00"), new BigDecimal("563.25"));
+
+        File ratesFile = new File(directory, HistoricalRateStore.HISTORICAL_RATES_FILENAME);
+        long recordLength = ratesFile.length();
+        FileOutputStream outputStream = new FileOutputStream(ratesFile, true);
+        outputStream.write(new byte[] { 'U', 'S', 'D', 0, 0 });
+        outputStream.close();
+
+        // The partial record is removed so the new one is written on a record boundary.
+        HistoricalRateStore.INSTANCE.initialise(directory.getAbsolutePath());
+        assertEquals(recordLength, ratesFile.length());
+        HistoricalRateStore.INSTANCE.record("USD", date("2014-03-02 10:00"), new BigDecimal("600.5"));
+        HistoricalRateStore.INSTANCE.record("EUR", date("2014-03-02 10:00"), new BigDecimal("410"));
+        assertEquals(3 * recordLength, ratesFile.length());
+
+        HistoricalRateStore.INSTANCE.initialise(directory.getAbsolutePath());
+        assertEquals(0, new BigDecimal("563.25").compareTo(HistoricalRateStore.INSTANCE.getRate("USD", date("2014-03-01 12:00"))));
+        assertEquals(0, new BigDecimal("600.5").compareTo(HistoricalRateStore.INSTANCE.getRate("USD", date("2014-03-02 12:00"))));
+        assertEquals(0, new BigDecimal("410").compareTo(HistoricalRateStore.INSTANCE.getRate("EUR", date("2014-03-02 12:00"))));
+    }
+
+    @Test
+    public void testCsvFileIsImportedAtStartup() throws Exception {
+        File importFile = new File(directory, HistoricalRateStore.IMPORT_FILENAME);
+        FileOutputStream outputStream = new FileOutputStream(importFile);
+        outputStream.write("2014-03-01,USD,563.25\n".getBytes("UTF-8"));
+        outputStream.close();
+
+        HistoricalRateStore.INSTANCE.initialise(directory.getAbsolutePath());
+        assertEquals(0, new BigDecimal("563.25").compareTo(HistoricalRateStore.INSTANCE.getRate("USD", date("2014-03-01 12:00"))));
+        assertFalse(importFile.exists());
+        assertTrue(new File(directory, HistoricalRateStore.IMPORT_FILENAME + HistoricalRateStore.IMPORTED_SUFFIX).exists());
+    }
+
+    @Test
+    public void testManyDaysAndLookups() throws Exception {
+        StringBuilder csv = new StringBuilder();
+        SimpleDateFormat dayFormat = new SimpleDateFormat("yyyy-MM-dd");
+        dayFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        long start = date("2010-07-17 00:00").getTime();
+        for (int i = 0; i < 1500; i++) {
+            csv.append(dayFormat.format(new Date(start + i * 86400000L))).append(",USD,").append(i + 1).append("\n");
+        }
+        assertEquals(1500, HistoricalRateStore.INSTANCE.importCsv(new StringReader(csv.toString())));
+
+        for (int i = 0; i < 100000; i++) {
+            int day = i % 1500;
+            BigDecimal rate = HistoricalRateStore.INSTANCE.getRate("USD", new Date(start + day * 86400000L + 3600000L));
+            assertEquals(day + 1, rate.intValue());
+        }
+    }
+}
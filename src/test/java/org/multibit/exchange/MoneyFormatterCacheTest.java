@@ -0,0 +1,70 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.exchange;
+
+import java.text.DecimalFormat;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import org.joda.money.Money;
+import org.joda.money.format.MoneyFormatter;
+import org.junit.Test;
+
+public class MoneyFormatterCacheTest extends TestCase {
+    @Test
+    public void testFormatterIsShared() throws Exception {
+        CurrencyInfo currencyInfo = new CurrencyInfo("USD", "$", true);
+        MoneyFormatter formatter = MoneyFormatterCache.INSTANCE.getMoneyFormatter(Locale.UK, currencyInfo, true);
+
+        assertSame(formatter, MoneyFormatterCache.INSTANCE.getMoneyFormatter(Locale.UK, new CurrencyInfo("USD", "$", true), true));
+        assertEquals("$1,234.56", formatter.print(Money.parse("USD 1234.56")));
+
+        MoneyFormatter formatterWithoutSymbol = MoneyFormatterCache.INSTANCE.getMoneyFormatter(Locale.UK, currencyInfo, false);
+        assertNotSame(formatter, formatterWithoutSymbol);
+        assertEquals("1,234.56", formatterWithoutSymbol.print(Money.parse("USD 1234.56")));
+    }
+
+    @Test
+    public void testFormatterPerLocale() throws Exception {
+        CurrencyInfo currencyInfo = new CurrencyInfo("EUR", "\u20AC", true);
+        MoneyFormatter germanFormatter = MoneyFormatterCache.INSTANCE.getMoneyFormatter(Locale.GERMANY, currencyInfo, false);
+        assertNotSame(germanFormatter, MoneyFormatterCache.INSTANCE.getMoneyFormatter(Locale.UK, currencyInfo, false));
+        assertEquals("1.234,56", germanFormatter.print(Money.parse("EUR 1234.56")));
+    }
+
+    @Test
+    public void testParseFormatIsPerThread() throws Exception {
+        final DecimalFormat format = MoneyFormatterCache.INSTANCE.getParseFormat(Locale.UK);
+        assertSame(format, MoneyFormatterCache.INSTANCE.getParseFormat(Locale.UK));
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            DecimalFormat otherThreadFormat = executorService.submit(new Callable<DecimalFormat>() {
+                @Override
+                public DecimalFormat call() throws Exception {
+                    return MoneyFormatterCache.INSTANCE.getParseFormat(Locale.UK);
+                }
+            }).get();
+            assertNotSame(format, otherThreadFormat);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+}
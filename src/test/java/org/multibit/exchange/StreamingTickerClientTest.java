@@ -0,0 +1,135 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.exchange;
+
+import java.math.BigDecimal;
+import java.net.URL;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class StreamingTickerClientTest extends TestCase {
+
+    private static class Update {
+        final String currency;
+        final BigDecimal last;
+        final BigDecimal bid;
+        final BigDecimal ask;
+
+        Update(String currency, BigDecimal last, BigDecimal bid, BigDecimal ask) {
+            this.currency = currency;
+            this.last = last;
+            this.bid = bid;
+            this.ask = ask;
+        }
+    }
+
+    private final BlockingQueue<Update> updates = new LinkedBlockingQueue<Update>();
+
+    private final StreamingTickerListener listener = new StreamingTickerListener() {
+        @Override
+        public void tickerUpdated(String currency, BigDecimal last, BigDecimal bid, BigDecimal ask, long time) {
+            updates.add(new Update(currency, last, bid, ask));
+        }
+    };
+
+    private StreamingTickerServer server;
+
+    private StreamingTickerClient client;
+
+    @After
+    public void tearDown() throws Exception {
+        if (client != null) {
+            client.stop();
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testStreamedChangesArePassedOn() throws Exception {
+        server = new StreamingTickerServer(false);
+        URL url = server.start();
+        client = new StreamingTickerClient(url, listener);
+        client.start();
+
+        server.send("USD,500.00,499.50,500.50");
+        Update update = updates.poll(5, TimeUnit.SECONDS);
+        assertNotNull(update);
+        assertEquals("USD", update.currency);
+        assertEquals(new BigDecimal("500.00"), update.last);
+        assertEquals(new BigDecimal("499.50"), update.bid);
+        assertEquals(new BigDecimal("500.50"), update.ask);
+        assertTrue(client.isConnected());
+
+        // A heartbeat and an unchanged price are not passed on, a change is.
+        server.send("");
+        server.send("USD,500.00,499.50,500.50");
+        server.send("EUR,380.25");
+        update = updates.poll(5, TimeUnit.SECONDS);
+        assertNotNull(update);
+        assertEquals("EUR", update.currency);
+        assertNull(update.bid);
+
+        server.send("USD,501.00,500.50,501.50");
+        update = updates.poll(5, TimeUnit.SECONDS);
+        assertNotNull(update);
+        assertEquals(new BigDecimal("501.00"), update.last);
+        assertEquals(1, server.getConnections());
+    }
+
+    @Test
+    public void testLongPollingReconnectsAfterEachAnswer() throws Exception {
+        server = new StreamingTickerServer(true);
+        URL url = server.start();
+        client = new StreamingTickerClient(url, listener);
+        client.start();
+
+        server.send("USD,500.00");
+        server.send("USD,501.00");
+        server.send("USD,502.00");
+        for (String expected : new String[] { "500.00", "501.00", "502.00" }) {
+            Update update = updates.poll(5, TimeUnit.SECONDS);
+            assertNotNull(update);
+            assertEquals(new BigDecimal(expected), update.last);
+        }
+        assertTrue(server.getConnections() >= 3);
+    }
+
+    @Test
+    public void testReconnectsWhenTheConnectionIsDropped() throws Exception {
+        server = new StreamingTickerServer(false);
+        URL url = server.start();
+        client = new StreamingTickerClient(url, listener);
+        client.start();
+
+        server.send("USD,500.00");
+        assertNotNull(updates.poll(5, TimeUnit.SECONDS));
+
+        server.dropConnection();
+        server.send("USD,505.00");
+        Update update = updates.poll(StreamingTickerClient.INITIAL_RECONNECT_DELAY + 5000, TimeUnit.MILLISECONDS);
+        assertNotNull(update);
+        assertEquals(new BigDecimal("505.00"), update.last);
+        assertTrue(server.getConnections() >= 2);
+    }
+}
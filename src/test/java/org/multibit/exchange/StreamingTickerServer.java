@@ -0,0 +1,165 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.exchange;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local stand-in for a streaming ticker server, used in tests.
+ *
+ * <p>
+ * Each connection gets an HTTP response with no length that is written a
+ * line at a time from the lines given to send. In long poll mode the
+ * response is closed after each line.
+ */
+public class StreamingTickerServer {
+
+    private static final String END_OF_STREAM = "\u0000";
+
+    private final boolean longPoll;
+
+    private final BlockingDeque<String> lines = new LinkedBlockingDeque<String>();
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private ServerSocket serverSocket;
+
+    private Thread thread;
+
+    private volatile boolean running = false;
+
+    private volatile Socket currentSocket;
+
+    public StreamingTickerServer(boolean longPoll) {
+        this.longPoll = longPoll;
+    }
+
+    /**
+     * @return the URL of the stream
+     */
+    public URL start() throws IOException {
+        serverSocket = new ServerSocket(0, 10, InetAddress.getByAddress(new byte[] { 127, 0, 0, 1 }));
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, "Streaming ticker server");
+        thread.setDaemon(true);
+        thread.start();
+        return new URL("http://127.0.0.1:" + serverSocket.getLocalPort() + "/ticker");
+    }
+
+    public void stop() throws IOException {
+        running = false;
+        lines.add(END_OF_STREAM);
+        serverSocket.close();
+        dropConnection();
+    }
+
+    /**
+     * Send a line to the connected client, or the next one to connect.
+     */
+    public void send(String line) {
+        lines.add(line);
+    }
+
+    /**
+     * Close the current connection, as a failing server would.
+     */
+    public void dropConnection() throws IOException {
+        Socket socket = currentSocket;
+        if (socket != null) {
+            socket.close();
+        }
+    }
+
+    /**
+     * @return the number of connections accepted so far
+     */
+    public int getConnections() {
+        return connections.get();
+    }
+
+    private void serve() {
+        while (running) {
+            Socket socket = null;
+            try {
+                socket = serverSocket.accept();
+                currentSocket = socket;
+                connections.incrementAndGet();
+                readRequest(socket.getInputStream());
+
+                OutputStream out = socket.getOutputStream();
+                out.write("HTTP/1.0 200 OK\r\nContent-Type: text/plain\r\nConnection: close\r\n\r\n".getBytes("ISO-8859-1"));
+                out.flush();
+                while (running) {
+                    String line = lines.poll(100, TimeUnit.MILLISECONDS);
+                    if (line == null) {
+                        continue;
+                    }
+                    if (END_OF_STREAM.equals(line)) {
+                        break;
+                    }
+                    try {
+                        out.write((line + "\n").getBytes("ISO-8859-1"));
+                        out.flush();
+                    } catch (IOException ioe) {
+                        // Send it on the next connection.
+                        lines.addFirst(line);
+                        throw ioe;
+                    }
+                    if (longPoll) {
+                        break;
+                    }
+                }
+            } catch (IOException ioe) {
+                // The connection was dropped.
+            } catch (InterruptedException ie) {
+                break;
+            } finally {
+                if (socket != null) {
+                    try {
+                        socket.close();
+                    } catch (IOException ioe) {
+                        // Already closed.
+                    }
+                }
+            }
+        }
+    }
+
+    private void readRequest(InputStream in) throws IOException {
+        // The request ends with a blank line.
+        int matched = 0;
+        byte[] end = { '\r', '\n', '\r', '\n' };
+        int character;
+        while (matched < end.length && (character = in.read()) != -1) {
+            matched = character == end[matched] ? matched + 1 : (character == '\r' ? 1 : 0);
+        }
+    }
+}
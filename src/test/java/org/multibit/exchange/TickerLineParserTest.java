@@ -0,0 +1,82 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.exchange;
+
+import java.math.BigDecimal;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class TickerLineParserTest extends TestCase {
+
+    private final TickerLineParser parser = new TickerLineParser();
+
+    private boolean parse(String line) throws Exception {
+        byte[] bytes = line.getBytes("ISO-8859-1");
+        return parser.parse(bytes, 0, bytes.length);
+    }
+
+    @Test
+    public void testParse() throws Exception {
+        assertTrue(parse("USD,500.25,499.5,501"));
+        assertEquals("USD", parser.getCurrency());
+        assertEquals(50025, parser.getUnscaled(TickerLineParser.LAST));
+        assertEquals(2, parser.getScale(TickerLineParser.LAST));
+        assertEquals(new BigDecimal("499.5"), parser.getPrice(TickerLineParser.BID));
+        assertEquals(new BigDecimal("501"), parser.getPrice(TickerLineParser.ASK));
+
+        assertTrue(parse(" eur , 380.10 "));
+        assertEquals("EUR", parser.getCurrency());
+        assertEquals(new BigDecimal("380.10"), parser.getPrice(TickerLineParser.LAST));
+        assertNull(parser.getPrice(TickerLineParser.BID));
+        assertFalse(parser.hasPrice(TickerLineParser.ASK));
+    }
+
+    @Test
+    public void testHeartbeatsCommentsAndBadLines() throws Exception {
+        assertFalse(parse(""));
+        assertFalse(parse("   "));
+        assertFalse(parse("# comment"));
+        assertFalse(parse("USD"));
+        assertFalse(parse("USD,"));
+        assertFalse(parse("USD,1.0.0"));
+        assertFalse(parse("USD,-5"));
+        assertFalse(parse("USD,500,499"));
+        assertFalse(parse("USD,500,499,501,1"));
+        assertFalse(parse("US1,500"));
+        assertFalse(parse("USD,1234567890123456789"));
+    }
+
+    @Test
+    public void testSamePricesAndCurrencyAreRecognised() throws Exception {
+        long[] prices = new long[TickerLineParser.pricesLength()];
+        assertTrue(parse("USD,500.00,499.50,500.50"));
+        String currency = parser.getCurrency();
+        parser.copyPrices(prices);
+
+        assertTrue(parse("USD,500.00,499.50,500.50"));
+        assertSame(currency, parser.getCurrency());
+        assertTrue(parser.hasSamePrices(prices));
+
+        // The same value at a different scale is a different price.
+        assertTrue(parse("USD,500.0,499.50,500.50"));
+        assertFalse(parser.hasSamePrices(prices));
+
+        assertTrue(parse("USD,500.00"));
+        assertFalse(parser.hasSamePrices(prices));
+    }
+}
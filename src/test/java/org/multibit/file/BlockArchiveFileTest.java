@@ -0,0 +1,167 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.file;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class BlockArchiveFileTest extends TestCase {
+    private static final String TEST_BLOCK_ARCHIVE = "blockArchiveTest";
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        String filenamePrefix = createFilenamePrefix();
+
+        BlockArchiveFile archive = new BlockArchiveFile(filenamePrefix);
+        archive.open();
+
+        byte[] filter = new byte[] { 1, 2, 3 };
+        int filterId = archive.addFilter(filter);
+
+        List<byte[]> transactions = new ArrayList<byte[]>();
+        transactions.add(new byte[] { 10, 11 });
+        transactions.add(new byte[] { 12 });
+        archive.append(100, filterId, new byte[] { 5, 6, 7, 8 }, transactions);
+        archive.append(101, filterId, new byte[] { 9 }, new ArrayList<byte[]>());
+
+        assertTrue(archive.contains(100));
+        assertFalse(archive.contains(102));
+        assertNull(archive.read(102));
+        assertEquals(BlockArchiveFile.UNKNOWN_FILTER_ID, archive.getFilterId(102));
+
+        BlockArchiveFile.Record record = archive.read(100);
+        assertEquals(100, record.getHeight());
+        assertEquals(filterId, record.getFilterId());
+        assertTrue(Arrays.equals(new byte[] { 5, 6, 7, 8 }, record.getBlock()));
+        assertEquals(2, record.getTransactions().size());
+        assertTrue(Arrays.equals(new byte[] { 12 }, record.getTransactions().get(1)));
+
+        archive.close();
+
+        // Reopen and check everything is read back.
+        BlockArchiveFile reopenedArchive = new BlockArchiveFile(filenamePrefix);
+        reopenedArchive.open();
+        assertEquals(2, reopenedArchive.size());
+        assertTrue(Arrays.equals(filter, reopenedArchive.getFilter(filterId)));
+        assertTrue(Arrays.equals(new byte[] { 9 }, reopenedArchive.read(101).getBlock()));
+
+        // A new filter gets a new id.
+        assertTrue(reopenedArchive.addFilter(new byte[] { 4 }) != filterId);
+        reopenedArchive.close();
+    }
+
+    @Test
+    public void testRewrittenHeightReplacesEarlierRecord() throws IOException {
+        BlockArchiveFile archive = new BlockArchiveFile(createFilenamePrefix());
+        archive.open();
+
+        int firstFilterId = archive.addFilter(new byte[] { 1 });
+        int secondFilterId = archive.addFilter(new byte[] { 2 });
+
+        archive.append(200, firstFilterId, new byte[] { 1 }, new ArrayList<byte[]>());
+        archive.append(200, secondFilterId, new byte[] { 2 }, new ArrayList<byte[]>());
+
+        assertEquals(1, archive.size());
+        assertEquals(secondFilterId, archive.getFilterId(200));
+        assertTrue(Arrays.equals(new byte[] { 2 }, archive.read(200).getBlock()));
+        archive.close();
+    }
+
+    @Test
+    public void testPartlyWrittenTailsAreCutOffBeforeAppending() throws IOException {
+        String filenamePrefix = createFilenamePrefix();
+        BlockArchiveFile archive = new BlockArchiveFile(filenamePrefix);
+        archive.open();
+        int firstFilterId = archive.addFilter(new byte[] { 1, 2 });
+        archive.append(300, firstFilterId, new byte[] { 3 }, new ArrayList<byte[]>());
+        archive.close();
+
+        // Simulate a crash part way through writing an index entry and a filter.
+        File indexFile = new File(filenamePrefix + BlockArchiveFile.INDEX_SUFFIX);
+        File filtersFile = new File(filenamePrefix + BlockArchiveFile.FILTERS_SUFFIX);
+        long indexLength = indexFile.length();
+        long filtersLength = filtersFile.length();
+        DataOutputStream indexStream = new DataOutputStream(new FileOutputStream(indexFile, true));
+        indexStream.writeInt(301);
+        indexStream.writeByte(0);
+        indexStream.close();
+        DataOutputStream filtersStream = new DataOutputStream(new FileOutputStream(filtersFile, true));
+        filtersStream.writeInt(firstFilterId + 1);
+        filtersStream.writeInt(Integer.MAX_VALUE);
+        filtersStream.write(new byte[] { 4, 5 });
+        filtersStream.close();
+
+        archive = new BlockArchiveFile(filenamePrefix);
+        archive.open();
+        assertEquals(indexLength, indexFile.length());
+        assertEquals(filtersLength, filtersFile.length());
+        assertEquals(1, archive.size());
+
+        int secondFilterId = archive.addFilter(new byte[] { 6 });
+        archive.append(301, secondFilterId, new byte[] { 7 }, new ArrayList<byte[]>());
+        archive.close();
+
+        // The records appended after the cut are read back in place.
+        archive = new BlockArchiveFile(filenamePrefix);
+        archive.open();
+        assertEquals(2, archive.size());
+        assertTrue(Arrays.equals(new byte[] { 1, 2 }, archive.getFilter(firstFilterId)));
+        assertTrue(Arrays.equals(new byte[] { 6 }, archive.getFilter(secondFilterId)));
+        assertEquals(secondFilterId, archive.getFilterId(301));
+        assertTrue(Arrays.equals(new byte[] { 3 }, archive.read(300).getBlock()));
+        assertTrue(Arrays.equals(new byte[] { 7 }, archive.read(301).getBlock()));
+        archive.close();
+    }
+
+    @Test
+    public void testNegativeFilterLengthIsCutOff() throws IOException {
+        String filenamePrefix = createFilenamePrefix();
+        File filtersFile = new File(filenamePrefix + BlockArchiveFile.FILTERS_SUFFIX);
+        DataOutputStream filtersStream = new DataOutputStream(new FileOutputStream(filtersFile));
+        filtersStream.writeInt(0);
+        filtersStream.writeInt(1);
+        filtersStream.writeByte(8);
+        filtersStream.writeInt(1);
+        filtersStream.writeInt(-5);
+        filtersStream.close();
+
+        BlockArchiveFile archive = new BlockArchiveFile(filenamePrefix);
+        archive.open();
+        assertTrue(Arrays.equals(new byte[] { 8 }, archive.getFilter(0)));
+        assertNull(archive.getFilter(1));
+        assertEquals(9, filtersFile.length());
+        assertEquals(1, archive.addFilter(new byte[] { 9 }));
+        archive.close();
+    }
+
+    private String createFilenamePrefix() throws IOException {
+        File data = File.createTempFile(TEST_BLOCK_ARCHIVE, BlockArchiveFile.DATA_SUFFIX);
+        String filenamePrefix = data.getAbsolutePath().substring(0, data.getAbsolutePath().length() - BlockArchiveFile.DATA_SUFFIX.length());
+        data.deleteOnExit();
+        new File(filenamePrefix + BlockArchiveFile.INDEX_SUFFIX).deleteOnExit();
+        new File(filenamePrefix + BlockArchiveFile.FILTERS_SUFFIX).deleteOnExit();
+        return filenamePrefix;
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.multibit.model.bitcoin.WalletData;
+import org.multibit.model.bitcoin.WalletTableData;
+
+public class ColumnarTransactionRowWriterTest extends TestCase {
+    private static final long FIRST_DATE = 1375090000000L;
+
+    @Test
+    public void testRowsAreReadBackAcrossBlocks() throws Exception {
+        int numberOfRows = ColumnarTransactionRowWriter.ROWS_PER_BLOCK + 1;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ColumnarTransactionRowWriter rowWriter = new ColumnarTransactionRowWriter(bytes);
+        rowWriter.writeHeader(createWalletDataList("first.wallet", "second.wallet"));
+        for (int i = 0; i < numberOfRows; i++) {
+            rowWriter.writeRow(i % 2, createRow(i));
+        }
+        rowWriter.close();
+
+        DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertHeader(inputStream, "first.wallet", "second.wallet");
+
+        // A full block, then the rest.
+        int row = readBlock(inputStream, 0);
+        assertEquals(ColumnarTransactionRowWriter.ROWS_PER_BLOCK, row);
+        row = readBlock(inputStream, row);
+        assertEquals(numberOfRows, row);
+
+        // The end marker, then nothing.
+        assertEquals(0, inputStream.readInt());
+        assertEquals(-1, inputStream.read());
+    }
+
+    @Test
+    public void testExportReplacesExistingFile() throws Exception {
+        File exportFile = File.createTempFile("testColumnarExport", "." + ExportFormat.COLUMNAR.getFileExtension());
+        exportFile.deleteOnExit();
+
+        for (int export = 0; export < 2; export++) {
+            TransactionRowWriter rowWriter = ExportFormat.COLUMNAR.createRowWriter(null, exportFile);
+            rowWriter.writeHeader(createWalletDataList("first.wallet"));
+            rowWriter.writeRow(0, createRow(0));
+            rowWriter.close();
+        }
+
+        DataInputStream inputStream = new DataInputStream(new FileInputStream(exportFile));
+        try {
+            assertHeader(inputStream, "first.wallet");
+            assertEquals(1, readBlock(inputStream, 0));
+            assertEquals(0, inputStream.readInt());
+            assertEquals(-1, inputStream.read());
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Rows go back in time, with some of them the same time, an unknown date and a large credit, so the
+     * dates have negative and zero differences and the var longs need several bytes.
+     */
+    private WalletTableData createRow(int row) {
+        WalletTableData walletTableData = new WalletTableData(null);
+        walletTableData.setDate(row == 7 ? null : new Date(expectedDate(row)));
+        walletTableData.setCredit(BigInteger.valueOf(expectedCredit(row)));
+        walletTableData.setDebit(row % 3 == 0 ? null : BigInteger.valueOf(row));
+        walletTableData.setDescription(row % 5 == 0 ? null : "Row " + row);
+        return walletTableData;
+    }
+
+    private static long expectedDate(int row) {
+        return row == 7 ? 0 : FIRST_DATE - (row / 2) * 60000L;
+    }
+
+    private static long expectedCredit(int row) {
+        return row == 1 ? 2100000000000000L : row * 1000L;
+    }
+
+    private List<WalletData> createWalletDataList(String... walletFilenames) {
+        List<WalletData> perWalletModelDataList = new ArrayList<WalletData>();
+        for (String walletFilename : walletFilenames) {
+            WalletData perWalletModelData = new WalletData();
+            perWalletModelData.setWalletFilename(walletFilename);
+            perWalletModelDataList.add(perWalletModelData);
+        }
+        return perWalletModelDataList;
+    }
+
+    private void assertHeader(DataInputStream inputStream, String... walletFilenames) throws IOException {
+        byte[] magic = new byte[ColumnarTransactionRowWriter.MAGIC.length];
+        inputStream.readFully(magic);
+        assertEquals(new String(ColumnarTransactionRowWriter.MAGIC, "US-ASCII"), new String(magic, "US-ASCII"));
+        assertEquals(ColumnarTransactionRowWriter.VERSION, inputStream.readInt());
+        assertEquals(walletFilenames.length, inputStream.readInt());
+        for (String walletFilename : walletFilenames) {
+            assertEquals(walletFilename, inputStream.readUTF());
+        }
+    }
+
+    /**
+     * Read a block and check its rows against the rows written.
+     *
+     * @return the number of the row after the block
+     */
+    private int readBlock(DataInputStream inputStream, int firstRow) throws IOException {
+        int numberOfRows = inputStream.readInt();
+        assertTrue(numberOfRows > 0);
+
+        long date = 0;
+        for (int i = 0; i < numberOfRows; i++) {
+            date += readVarLong(inputStream);
+            assertEquals(expectedDate(firstRow + i), date);
+        }
+        for (int i = 0; i < numberOfRows; i++) {
+            assertEquals((firstRow + i) % 2, readVarLong(inputStream));
+        }
+        for (int i = 0; i < numberOfRows; i++) {
+            assertEquals(expectedCredit(firstRow + i), readVarLong(inputStream));
+        }
+        for (int i = 0; i < numberOfRows; i++) {
+            int row = firstRow + i;
+            assertEquals(row % 3 == 0 ? 0 : row, readVarLong(inputStream));
+        }
+        for (int i = 0; i < numberOfRows; i++) {
+            byte[] transactionId = new byte[32];
+            inputStream.readFully(transactionId);
+            assertEquals(0, new BigInteger(1, transactionId).signum());
+        }
+        for (int i = 0; i < numberOfRows; i++) {
+            int row = firstRow + i;
+            assertEquals(row % 5 == 0 ? "" : "Row " + row, inputStream.readUTF());
+        }
+        return firstRow + numberOfRows;
+    }
+
+    private static long readVarLong(InputStream inputStream) throws IOException {
+        long zigZag = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = inputStream.read();
+            assertTrue("Truncated var long", b >= 0);
+            zigZag |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+}
@@ -31,7 +31,10 @@ import org.multibit.viewsystem.swing.action.ExportTransactionsSubmitAction;
 
 import java.io.*;
 import java.math.BigDecimal;
+import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 
 public class ExportTransactionsSubmitActionTest extends TestCase {
@@ -137,4 +140,76 @@ public class ExportTransactionsSubmitActionTest extends TestCase {
         assertEquals("Row 1 incorrect", row1Expected, line1);
         assertEquals("Row 2 incorrect", row2Expected, line2);
     }
+
+    @Test
+    public void testExportOfAllWalletsInADateRange() throws Exception {
+        final CreateControllers.Controllers controllers = CreateControllers.createControllers();
+        final BitcoinController bitcoinController = controllers.bitcoinController;
+
+        bitcoinController.getModel().setUserPreference(ExchangeModel.TICKER_FIRST_ROW_CURRENCY, "EUR");
+        CurrencyConverter.INSTANCE.initialise(bitcoinController);
+        CurrencyConverter.INSTANCE.setRate(BigDecimal.valueOf(10.0));
+
+        ExportTransactionsSubmitAction action = new ExportTransactionsSubmitAction(bitcoinController, null);
+
+        // Open the test wallet twice, as two wallets.
+        String testWalletFile = new File(".").getAbsolutePath() + File.separator + Constants.TESTDATA_DIRECTORY + File.separator
+                + WALLETS_TESTDATA_DIRECTORY + File.separator + PROTOBUF1_WALLET_FILE;
+        FileHandler fileHandler = new FileHandler(bitcoinController);
+        List<WalletData> perWalletModelDataList = new ArrayList<WalletData>();
+        for (int i = 0; i < 2; i++) {
+            WalletData walletData = new WalletData();
+            walletData.setWallet(fileHandler.loadFromFile(new File(testWalletFile)).getWallet());
+            walletData.setWalletFilename(testWalletFile);
+            perWalletModelDataList.add(walletData);
+        }
+
+        File exportFile = File.createTempFile(TEST_EXPORT_PREFIX, ".csv");
+        exportFile.delete();
+        exportFile.deleteOnExit();
+
+        // From 29 Jul 2013 10:10, which leaves out the 10:00 transaction of each wallet.
+        assertTrue(action.exportTransactionsDoIt(perWalletModelDataList, exportFile.getAbsolutePath(), new Date(1375089000000L), null));
+
+        BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(new FileInputStream(exportFile), "UTF-8"));
+        List<String> lines = new ArrayList<String>();
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            lines.add(line);
+        }
+        bufferedReader.close();
+
+        assertEquals(lines.toString(), 3, lines.size());
+        assertTrue(lines.get(1), lines.get(1).endsWith("28916ed8592a4cf216d8eac7e5ccb5a08771f439e508ec2861b7ff612e15b827"));
+        assertEquals(lines.get(1), lines.get(2));
+
+        // A date range that has no transactions leaves only the header.
+        exportFile.delete();
+        assertTrue(action.exportTransactionsDoIt(perWalletModelDataList, exportFile.getAbsolutePath(),
+                ExportTransactionsSubmitAction.parseExportDate("2014-01-01", false),
+                ExportTransactionsSubmitAction.parseExportDate("2014-01-31", true)));
+        bufferedReader = new BufferedReader(new InputStreamReader(new FileInputStream(exportFile), "UTF-8"));
+        assertNotNull(bufferedReader.readLine());
+        assertNull(bufferedReader.readLine());
+        bufferedReader.close();
+    }
+
+    @Test
+    public void testParseExportDate() throws Exception {
+        assertNull(ExportTransactionsSubmitAction.parseExportDate(" ", false));
+        assertNull(ExportTransactionsSubmitAction.parseExportDate(null, true));
+
+        Date from = ExportTransactionsSubmitAction.parseExportDate("2013-07-31", false);
+        Date to = ExportTransactionsSubmitAction.parseExportDate("2013-07-31", true);
+        // The to date includes the whole of the day.
+        assertEquals(ExportTransactionsSubmitAction.parseExportDate("2013-08-01", false), to);
+        assertTrue(to.after(from));
+
+        try {
+            ExportTransactionsSubmitAction.parseExportDate("2013-02-30", false);
+            fail("An impossible date was accepted");
+        } catch (ParseException pe) {
+            // Expected.
+        }
+    }
 }
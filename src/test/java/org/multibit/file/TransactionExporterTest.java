@@ -0,0 +1,149 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.file;
+
+import com.google.bitcoin.core.Wallet;
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.multibit.Constants;
+import org.multibit.CreateControllers;
+import org.multibit.controller.bitcoin.BitcoinController;
+import org.multibit.model.bitcoin.WalletData;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class TransactionExporterTest extends TestCase {
+    public static final String WALLETS_TESTDATA_DIRECTORY = "wallets";
+
+    public static final String TEST_EXPORT_PREFIX = "testStreamingExport";
+
+    public static final String PROTOBUF1_WALLET_FILE = "protobuf1.wallet";
+
+    @Test
+    public void testProgressAndCancel() throws Exception {
+        final CreateControllers.Controllers controllers = CreateControllers.createControllers();
+        final BitcoinController bitcoinController = controllers.bitcoinController;
+
+        String testWalletFile = new File(".").getAbsolutePath() + File.separator + Constants.TESTDATA_DIRECTORY + File.separator
+                + WALLETS_TESTDATA_DIRECTORY + File.separator + PROTOBUF1_WALLET_FILE;
+        Wallet testWallet = new FileHandler(bitcoinController).loadFromFile(new File(testWalletFile)).getWallet();
+        assertNotNull(testWallet);
+        final int numberOfTransactions = testWallet.getTransactions(false).size();
+
+        WalletData walletData = new WalletData();
+        walletData.setWallet(testWallet);
+        walletData.setWalletFilename(testWalletFile);
+
+        // A complete export reports all the rows written.
+        File exportFile = createExportFile();
+        final int[] lastProgress = new int[] { -1, -1 };
+        TransactionExporter transactionExporter = new TransactionExporter(bitcoinController);
+        boolean completed = transactionExporter.export(walletData, exportFile, new TransactionExporter.ProgressListener() {
+            @Override
+            public void exportProgress(int rowsWritten, int numberOfRows) {
+                lastProgress[0] = rowsWritten;
+                lastProgress[1] = numberOfRows;
+            }
+        });
+        assertTrue(completed);
+        assertEquals(numberOfTransactions, lastProgress[0]);
+        assertEquals(numberOfTransactions, lastProgress[1]);
+        assertEquals(numberOfTransactions + 1, countLines(exportFile));
+
+        // A cancelled export writes only the header.
+        File cancelledExportFile = createExportFile();
+        TransactionExporter cancelledExporter = new TransactionExporter(bitcoinController);
+        cancelledExporter.cancel();
+        assertFalse(cancelledExporter.export(walletData, cancelledExportFile, null));
+        assertEquals(1, countLines(cancelledExportFile));
+    }
+
+    @Test
+    public void testMultipleWalletsAreMergedByDateAndFiltered() throws Exception {
+        final CreateControllers.Controllers controllers = CreateControllers.createControllers();
+        final BitcoinController bitcoinController = controllers.bitcoinController;
+
+        String testWalletFile = new File(".").getAbsolutePath() + File.separator + Constants.TESTDATA_DIRECTORY + File.separator
+                + WALLETS_TESTDATA_DIRECTORY + File.separator + PROTOBUF1_WALLET_FILE;
+        Wallet testWallet = new FileHandler(bitcoinController).loadFromFile(new File(testWalletFile)).getWallet();
+        final int numberOfTransactions = testWallet.getTransactions(false).size();
+
+        List<WalletData> perWalletModelDataList = new ArrayList<WalletData>();
+        for (int i = 0; i < 2; i++) {
+            WalletData walletData = new WalletData();
+            walletData.setWallet(testWallet);
+            walletData.setWalletFilename(testWalletFile);
+            perWalletModelDataList.add(walletData);
+        }
+
+        // Both wallets are written, most recent first.
+        File exportFile = createExportFile(ExportFormat.JSON_LINES);
+        TransactionExporter transactionExporter = new TransactionExporter(bitcoinController);
+        assertTrue(transactionExporter.export(perWalletModelDataList, ExportFormat.JSON_LINES.createRowWriter(bitcoinController, exportFile),
+                null, null, null));
+        List<String> lines = readLines(exportFile);
+        assertEquals(2 * numberOfTransactions, lines.size());
+        for (int i = 1; i < lines.size(); i++) {
+            assertTrue("Rows are not in date order", getDate(lines.get(i - 1)).compareTo(getDate(lines.get(i))) >= 0);
+        }
+
+        // Only the transaction at 29 Jul 2013 10:23 is after 10:10.
+        File filteredExportFile = createExportFile(ExportFormat.JSON_LINES);
+        TransactionExporter filteredExporter = new TransactionExporter(bitcoinController);
+        assertTrue(filteredExporter.export(perWalletModelDataList, ExportFormat.JSON_LINES.createRowWriter(bitcoinController, filteredExportFile),
+                new Date(1375089000000L), new Date(1375090000000L), null));
+        List<String> filteredLines = readLines(filteredExportFile);
+        assertEquals(2, filteredLines.size());
+        assertTrue(filteredLines.get(0).contains("28916ed8592a4cf216d8eac7e5ccb5a08771f439e508ec2861b7ff612e15b827"));
+    }
+
+    private String getDate(String line) {
+        int start = line.indexOf("\"date\":") + "\"date\":".length();
+        return line.substring(start, line.indexOf(',', start));
+    }
+
+    private File createExportFile() throws IOException {
+        return createExportFile(ExportFormat.CSV);
+    }
+
+    private File createExportFile(ExportFormat exportFormat) throws IOException {
+        File exportFile = File.createTempFile(TEST_EXPORT_PREFIX, "." + exportFormat.getFileExtension());
+        exportFile.delete();
+        exportFile.deleteOnExit();
+        return exportFile;
+    }
+
+    private int countLines(File file) throws IOException {
+        return readLines(file).size();
+    }
+
+    private List<String> readLines(File file) throws IOException {
+        BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            List<String> lines = new ArrayList<String>();
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                lines.add(line);
+            }
+            return lines;
+        } finally {
+            bufferedReader.close();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class MessageRingBufferTest extends TestCase {
+    @Test
+    public void testOldestMessagesAreOverwritten() {
+        MessageRingBuffer buffer = new MessageRingBuffer(4);
+        for (int i = 0; i < 6; i++) {
+            buffer.add(new Message("message" + i));
+        }
+
+        List<Message> messages = buffer.getMessages();
+        assertEquals(4, messages.size());
+        assertEquals("message2", messages.get(0).getText());
+        assertEquals("message5", messages.get(3).getText());
+    }
+
+    @Test
+    public void testReadFromSequence() {
+        MessageRingBuffer buffer = new MessageRingBuffer(8);
+        buffer.add(new Message("first"));
+        long nextSequence = buffer.read(0, true, new ArrayList<Message>());
+        assertEquals(1, nextSequence);
+
+        buffer.add(new Message("second"));
+        buffer.add(new Message("third"));
+
+        List<Message> newMessages = new ArrayList<Message>();
+        nextSequence = buffer.read(nextSequence, true, newMessages);
+        assertEquals(3, nextSequence);
+        assertEquals(2, newMessages.size());
+        assertEquals("second", newMessages.get(0).getText());
+        assertEquals("third", newMessages.get(1).getText());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        final int numberOfThreads = 4;
+        final int messagesPerThread = 1000;
+        final MessageRingBuffer buffer = new MessageRingBuffer(8192);
+        final CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < numberOfThreads; t++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < messagesPerThread; i++) {
+                        buffer.add(new Message("message"));
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(numberOfThreads * messagesPerThread, buffer.getNextSequence());
+        assertEquals(numberOfThreads * messagesPerThread, buffer.getMessages().size());
+    }
+}
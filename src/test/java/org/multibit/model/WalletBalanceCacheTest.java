@@ -0,0 +1,76 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.model;
+
+import java.math.BigInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.multibit.model.bitcoin.WalletData;
+
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.Transaction;
+import com.google.bitcoin.core.Wallet;
+import com.google.bitcoin.core.Wallet.BalanceType;
+
+public class WalletBalanceCacheTest extends TestCase {
+    @Test
+    public void testBalanceIsRecalculatedWhenCoinsAreReceived() throws Exception {
+        NetworkParameters params = NetworkParameters.prodNet();
+
+        ECKey key = new ECKey();
+        Wallet wallet = new Wallet(params);
+        wallet.addKey(key);
+
+        WalletData perWalletModelData = new WalletData();
+        perWalletModelData.setWallet(wallet);
+
+        assertEquals(BigInteger.ZERO, perWalletModelData.getBalance(BalanceType.ESTIMATED));
+
+        // Receive a pending payment to the wallet.
+        Transaction previousTransaction = new Transaction(params);
+        previousTransaction.addOutput(BigInteger.TEN, new ECKey().toAddress(params));
+
+        Transaction transaction = new Transaction(params);
+        transaction.addInput(previousTransaction.getOutput(0));
+        transaction.addOutput(BigInteger.TEN, key.toAddress(params));
+        wallet.receivePending(transaction, null);
+
+        assertEquals(wallet.getBalance(BalanceType.ESTIMATED), perWalletModelData.getBalance(BalanceType.ESTIMATED));
+        assertEquals(BigInteger.TEN, perWalletModelData.getBalance(BalanceType.ESTIMATED));
+    }
+
+    @Test
+    public void testReplacedWalletIsUsed() {
+        NetworkParameters params = NetworkParameters.prodNet();
+
+        WalletData perWalletModelData = new WalletData();
+        assertEquals(BigInteger.ZERO, perWalletModelData.getBalance(BalanceType.AVAILABLE));
+
+        Wallet firstWallet = new Wallet(params);
+        perWalletModelData.setWallet(firstWallet);
+        assertEquals(BigInteger.ZERO, perWalletModelData.getBalance(BalanceType.AVAILABLE));
+
+        Wallet secondWallet = new Wallet(params);
+        perWalletModelData.setWallet(secondWallet);
+        assertEquals(secondWallet.getBalance(BalanceType.AVAILABLE), perWalletModelData.getBalance(BalanceType.AVAILABLE));
+
+        perWalletModelData.setWallet(null);
+        assertEquals(BigInteger.ZERO, perWalletModelData.getBalance(BalanceType.AVAILABLE));
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.model;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.multibit.model.bitcoin.WalletData;
+import org.multibit.model.bitcoin.WalletRelevanceIndex;
+
+import com.google.bitcoin.core.Address;
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.Transaction;
+import com.google.bitcoin.core.Wallet;
+
+public class WalletRelevanceIndexTest extends TestCase {
+    @Test
+    public void testRoutesToReceivingWalletOnly() {
+        NetworkParameters params = NetworkParameters.prodNet();
+
+        ECKey firstKey = new ECKey();
+        Wallet firstWallet = new Wallet(params);
+        firstWallet.addKey(firstKey);
+
+        ECKey secondKey = new ECKey();
+        Wallet secondWallet = new Wallet(params);
+        secondWallet.addKey(secondKey);
+
+        List<WalletData> perWalletModelDataList = new ArrayList<WalletData>();
+        perWalletModelDataList.add(createWalletData(firstWallet));
+        perWalletModelDataList.add(createWalletData(secondWallet));
+
+        WalletRelevanceIndex index = new WalletRelevanceIndex();
+
+        // Pay to an address in the second wallet.
+        Transaction toSecondWallet = new Transaction(params);
+        toSecondWallet.addOutput(BigInteger.TEN, secondKey.toAddress(params));
+
+        Set<Wallet> wallets = index.findWallets(toSecondWallet, perWalletModelDataList);
+        assertEquals(1, wallets.size());
+        assertTrue(wallets.contains(secondWallet));
+
+        // Pay to an address in neither wallet.
+        Transaction toElsewhere = new Transaction(params);
+        toElsewhere.addOutput(BigInteger.TEN, new ECKey().toAddress(params));
+
+        assertTrue(index.findWallets(toElsewhere, perWalletModelDataList).isEmpty());
+    }
+
+    @Test
+    public void testClosedWalletIsDropped() {
+        NetworkParameters params = NetworkParameters.prodNet();
+
+        ECKey key = new ECKey();
+        Wallet wallet = new Wallet(params);
+        wallet.addKey(key);
+
+        List<WalletData> perWalletModelDataList = new ArrayList<WalletData>();
+        perWalletModelDataList.add(createWalletData(wallet));
+
+        WalletRelevanceIndex index = new WalletRelevanceIndex();
+
+        Transaction transaction = new Transaction(params);
+        transaction.addOutput(BigInteger.TEN, key.toAddress(params));
+        assertEquals(1, index.findWallets(transaction, perWalletModelDataList).size());
+
+        perWalletModelDataList.clear();
+        assertTrue(index.findWallets(transaction, perWalletModelDataList).isEmpty());
+    }
+
+    @Test
+    public void testRoutesToWatchingWallet() {
+        NetworkParameters params = NetworkParameters.prodNet();
+
+        Wallet wallet = new Wallet(params);
+        wallet.addKey(new ECKey());
+
+        List<WalletData> perWalletModelDataList = new ArrayList<WalletData>();
+        perWalletModelDataList.add(createWalletData(wallet));
+
+        WalletRelevanceIndex index = new WalletRelevanceIndex();
+
+        Address watchedAddress = new ECKey().toAddress(params);
+        Transaction toWatchedAddress = new Transaction(params);
+        toWatchedAddress.addOutput(BigInteger.TEN, watchedAddress);
+        assertTrue(index.findWallets(toWatchedAddress, perWalletModelDataList).isEmpty());
+
+        // The index sees the new watched script straight away.
+        wallet.addWatchedAddress(watchedAddress);
+        Set<Wallet> wallets = index.findWallets(toWatchedAddress, perWalletModelDataList);
+        assertEquals(1, wallets.size());
+        assertTrue(wallets.contains(wallet));
+    }
+
+    private WalletData createWalletData(Wallet wallet) {
+        WalletData perWalletModelData = new WalletData();
+        perWalletModelData.setWallet(wallet);
+        return perWalletModelData;
+    }
+}
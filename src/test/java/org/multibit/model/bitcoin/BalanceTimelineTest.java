@@ -0,0 +1,189 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.model.bitcoin;
+
+import java.math.BigInteger;
+import java.util.Date;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.Transaction;
+import com.google.bitcoin.core.Wallet;
+
+public class BalanceTimelineTest extends TestCase {
+    private static final NetworkParameters PARAMS = NetworkParameters.prodNet();
+
+    @Test
+    public void testIncrementalUpdates() throws Exception {
+        ECKey key = new ECKey();
+        Wallet wallet = new Wallet(PARAMS);
+        wallet.addKey(key);
+        BalanceTimeline balanceTimeline = new BalanceTimeline(wallet);
+
+        receive(wallet, key, 10, 1000);
+        assertTrue(balanceTimeline.update(wallet));
+        assertEquals(1, balanceTimeline.size());
+
+        // A later transaction is appended.
+        receive(wallet, key, 20, 2000);
+        assertTrue(balanceTimeline.update(wallet));
+        assertSteps(balanceTimeline.getSteps(0, 3000), 0, 1000, 10, 2000, 30);
+
+        // An earlier one is slotted in before the others.
+        receive(wallet, key, 5, 500);
+        assertTrue(balanceTimeline.update(wallet));
+        assertSteps(balanceTimeline.getSteps(0, 3000), 0, 500, 5, 1000, 15, 2000, 35);
+
+        // Nothing new.
+        assertTrue(balanceTimeline.update(wallet));
+        assertEquals(3, balanceTimeline.size());
+
+        // The window starts after the first transaction.
+        assertSteps(balanceTimeline.getSteps(750, 3000), 5, 1000, 15, 2000, 35);
+    }
+
+    @Test
+    public void testMovedTransactionIsReordered() throws Exception {
+        ECKey key = new ECKey();
+        Wallet wallet = new Wallet(PARAMS);
+        wallet.addKey(key);
+        BalanceTimeline balanceTimeline = new BalanceTimeline(wallet);
+
+        Transaction first = receive(wallet, key, 10, 1000);
+        receive(wallet, key, 20, 2000);
+        assertTrue(balanceTimeline.update(wallet));
+
+        first.setUpdateTime(new Date(3000));
+        assertTrue(balanceTimeline.update(wallet));
+        assertSteps(balanceTimeline.getSteps(0, 4000), 0, 2000, 20, 3000, 30);
+    }
+
+    @Test
+    public void testValuesChangeWhenKeysAreAdded() throws Exception {
+        ECKey key = new ECKey();
+        ECKey laterKey = new ECKey();
+        Wallet wallet = new Wallet(PARAMS);
+        wallet.addKey(key);
+        BalanceTimeline balanceTimeline = new BalanceTimeline(wallet);
+
+        Transaction transaction = createTransaction(key, 10, 1000);
+        transaction.addOutput(BigInteger.valueOf(5), laterKey.toAddress(PARAMS));
+        wallet.receivePending(transaction, null);
+        transaction.setUpdateTime(new Date(1000));
+
+        assertTrue(balanceTimeline.update(wallet));
+        assertSteps(balanceTimeline.getSteps(0, 2000), 0, 1000, 10);
+
+        wallet.addKey(laterKey);
+        assertTrue(balanceTimeline.update(wallet));
+        assertSteps(balanceTimeline.getSteps(0, 2000), 0, 1000, 15);
+    }
+
+    @Test
+    public void testRevalueAfterReorganise() throws Exception {
+        ECKey key = new ECKey();
+        ECKey laterKey = new ECKey();
+        Wallet wallet = new Wallet(PARAMS);
+        wallet.addKey(key);
+
+        // Listen to another wallet so that only the revalue tells the timeline about the change.
+        BalanceTimeline balanceTimeline = new BalanceTimeline(new Wallet(PARAMS));
+
+        Transaction transaction = createTransaction(key, 10, 1000);
+        transaction.addOutput(BigInteger.valueOf(5), laterKey.toAddress(PARAMS));
+        wallet.receivePending(transaction, null);
+        transaction.setUpdateTime(new Date(1000));
+        assertTrue(balanceTimeline.update(wallet));
+
+        wallet.addKey(laterKey);
+
+        // The remembered value is used until the values are known to have changed.
+        assertTrue(balanceTimeline.update(wallet));
+        assertSteps(balanceTimeline.getSteps(0, 2000), 0, 1000, 10);
+
+        balanceTimeline.revalue();
+        assertTrue(balanceTimeline.update(wallet));
+        assertSteps(balanceTimeline.getSteps(0, 2000), 0, 1000, 15);
+    }
+
+    @Test
+    public void testDownsampledStepsKeepTheirShape() throws Exception {
+        ECKey key = new ECKey();
+        Wallet wallet = new Wallet(PARAMS);
+        wallet.addKey(key);
+        BalanceTimeline balanceTimeline = new BalanceTimeline(wallet);
+
+        long total = 0;
+        for (int i = 1; i <= 100; i++) {
+            long value = i % 7 == 0 ? 1000 : i;
+            receive(wallet, key, value, i * 1000L);
+            total += value;
+        }
+        assertTrue(balanceTimeline.update(wallet));
+
+        BalanceTimeline.Points points = balanceTimeline.getSteps(0, 200000, 10);
+        assertEquals(2 * 10 + 2, points.size());
+        assertEquals(0, points.getBalance(0));
+        assertEquals(total, points.getBalance(points.size() - 1));
+
+        // Every step is a vertical pair of points joined by horizontal lines.
+        for (int i = 1; i < points.size() - 1; i += 2) {
+            assertEquals(points.getTime(i), points.getTime(i + 1));
+            assertEquals(points.getBalance(i - 1), points.getBalance(i));
+            assertTrue(points.getTime(i) >= points.getTime(i - 1));
+        }
+    }
+
+    /**
+     * Check the step line is the start balance, then a step at each time to the balance after it.
+     */
+    private void assertSteps(BalanceTimeline.Points points, long startBalance, long... timesAndBalances) {
+        assertEquals(timesAndBalances.length + 2, points.size());
+        assertEquals(startBalance, points.getBalance(0));
+        long balance = startBalance;
+        for (int i = 0; i < timesAndBalances.length; i += 2) {
+            assertEquals(timesAndBalances[i], points.getTime(i + 1));
+            assertEquals(balance, points.getBalance(i + 1));
+            balance = timesAndBalances[i + 1];
+            assertEquals(timesAndBalances[i], points.getTime(i + 2));
+            assertEquals(balance, points.getBalance(i + 2));
+        }
+        assertEquals(balance, points.getBalance(points.size() - 1));
+    }
+
+    private Transaction receive(Wallet wallet, ECKey key, long value, long time) throws Exception {
+        Transaction transaction = createTransaction(key, value, time);
+        wallet.receivePending(transaction, null);
+        transaction.setUpdateTime(new Date(time));
+        return transaction;
+    }
+
+    private Transaction createTransaction(ECKey key, long value, long time) {
+        // Spend an output the wallet does not know, so the transaction is all received.
+        Transaction previousTransaction = new Transaction(PARAMS);
+        previousTransaction.addOutput(BigInteger.valueOf(value), new ECKey().toAddress(PARAMS));
+
+        Transaction transaction = new Transaction(PARAMS);
+        transaction.addInput(previousTransaction.getOutput(0));
+        transaction.addOutput(BigInteger.valueOf(value), key.toAddress(PARAMS));
+        transaction.setUpdateTime(new Date(time));
+        return transaction;
+    }
+}
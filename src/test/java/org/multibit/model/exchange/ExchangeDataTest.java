@@ -0,0 +1,110 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.model.exchange;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.joda.money.BigMoney;
+import org.joda.money.CurrencyUnit;
+import org.junit.Test;
+
+public class ExchangeDataTest extends TestCase {
+    @Test
+    public void testSetPrices() throws Exception {
+        ExchangeData exchangeData = new ExchangeData();
+        ExchangeData.Snapshot before = exchangeData.getSnapshot();
+
+        long now = System.currentTimeMillis();
+        exchangeData.setPrices("USD", usd(250), usd(249), usd(251), now);
+
+        ExchangeData.CurrencyPrices prices = exchangeData.getSnapshot().getPrices("USD");
+        assertEquals(usd(250), prices.getLast());
+        assertEquals(usd(249), prices.getBid());
+        assertEquals(usd(251), prices.getAsk());
+        assertEquals(Long.valueOf(now), prices.getLastUpdated());
+        assertFalse(prices.isStale());
+
+        // The earlier snapshot is not changed by the write.
+        assertNull(before.getPrices("USD").getLast());
+        assertTrue(before.getPrices("USD").isStale());
+
+        exchangeData.setLastBid("USD", usd(248));
+        assertEquals(usd(249), prices.getBid());
+        assertEquals(usd(248), exchangeData.getLastBid("USD"));
+        assertEquals(usd(250), exchangeData.getLastPrice("USD"));
+        assertEquals(Long.valueOf(now), exchangeData.getLastUpdated("USD"));
+
+        assertNull(exchangeData.getLastPrice("EUR"));
+    }
+
+    @Test
+    public void testAvailableCurrencies() throws Exception {
+        assertTrue(ExchangeData.getAvailableCurrenciesForExchange("ExchangeDataTest").isEmpty());
+        assertTrue(ExchangeData.getAvailableCurrenciesForExchange(null).isEmpty());
+
+        List<String> currencies = new ArrayList<String>();
+        currencies.add("USD");
+        currencies.add("EUR");
+        ExchangeData.setAvailableCurrenciesForExchange("ExchangeDataTest", currencies);
+        currencies.add("GBP");
+
+        Collection<String> availableCurrencies = ExchangeData.getAvailableCurrenciesForExchange("ExchangeDataTest");
+        assertEquals(2, availableCurrencies.size());
+        try {
+            availableCurrencies.add("GBP");
+            fail("The available currencies should not be changeable");
+        } catch (UnsupportedOperationException uoe) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testConcurrentReadersSeeWholePrices() throws Exception {
+        final ExchangeData exchangeData = new ExchangeData();
+        exchangeData.setPrices("USD", usd(0), usd(0), usd(0), 0);
+
+        final AtomicReference<String> mixedPrices = new AtomicReference<String>();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 1; i <= 20000; i++) {
+                    exchangeData.setPrices("USD", usd(i), usd(i), usd(i), i);
+                }
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            ExchangeData.CurrencyPrices prices = exchangeData.getSnapshot().getPrices("USD");
+            if (!prices.getLast().equals(prices.getBid()) || !prices.getLast().equals(prices.getAsk())) {
+                mixedPrices.set(prices.getLast() + " " + prices.getBid() + " " + prices.getAsk());
+            }
+        }
+        writer.join();
+
+        assertNull(mixedPrices.get());
+        assertEquals(usd(20000), exchangeData.getLastPrice("USD"));
+    }
+
+    private static BigMoney usd(long amount) {
+        return BigMoney.of(CurrencyUnit.USD, BigDecimal.valueOf(amount));
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.model.exchange;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class TickHistoryTest extends TestCase {
+
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void testEmpty() throws Exception {
+        TickHistory history = new TickHistory();
+        assertEquals(0, history.size());
+        assertTrue(Double.isNaN(history.getVolumeWeightedAveragePrice()));
+        assertTrue(Double.isNaN(history.getSpread()));
+        assertTrue(Double.isNaN(history.getAverageSpread()));
+        assertTrue(Double.isNaN(history.getChange()));
+    }
+
+    @Test
+    public void testAnalytics() throws Exception {
+        TickHistory history = new TickHistory(10, 60000);
+        history.record(1000, 100, 99, 101, 10);
+        history.record(2000, 110, 109, 112, 12);
+        history.record(3000, 120, Double.NaN, Double.NaN, 13);
+
+        assertEquals(3, history.size());
+        // The first tick has no earlier volume: (110 * 2 + 120 * 1) / 3
+        assertEquals(340.0 / 3, history.getVolumeWeightedAveragePrice(), DELTA);
+        assertTrue(Double.isNaN(history.getSpread()));
+        assertEquals(2.5, history.getAverageSpread(), DELTA);
+        assertEquals(20.0, history.getChange(), DELTA);
+        assertEquals(20.0, history.getChangePercent(), DELTA);
+        assertEquals(1000, history.getOldestTime());
+
+        // Older ticks are ignored.
+        history.record(2500, 500, 499, 501, 1);
+        assertEquals(3, history.size());
+    }
+
+    @Test
+    public void testCapacityAndWindow() throws Exception {
+        TickHistory history = new TickHistory(3, 10000);
+        for (int i = 1; i <= 5; i++) {
+            history.record(i * 1000, i * 10, i * 10 - 1, i * 10 + 1, 0);
+        }
+        // Only the last three ticks are kept: 30, 40, 50. There are no volumes so they are averaged.
+        assertEquals(3, history.size());
+        assertEquals(40.0, history.getVolumeWeightedAveragePrice(), DELTA);
+        assertEquals(20.0, history.getChange(), DELTA);
+        assertEquals(2.0, history.getSpread(), DELTA);
+
+        // A tick more than the window after the others replaces them all.
+        history.record(100000, 70, 69, 71, 0);
+        assertEquals(1, history.size());
+        assertEquals(70.0, history.getVolumeWeightedAveragePrice(), DELTA);
+        assertEquals(0.0, history.getChange(), DELTA);
+
+        long[] times = new long[5];
+        double[] lasts = new double[5];
+        assertEquals(1, history.copyLastPrices(times, lasts));
+        assertEquals(100000, times[0]);
+        assertEquals(70.0, lasts[0], DELTA);
+    }
+
+    @Test
+    public void testRunningSumsMatchRecalculation() throws Exception {
+        TickHistory history = new TickHistory(16, Long.MAX_VALUE / 2);
+        double expectedSum = 0;
+        double volume = 0;
+        for (int i = 0; i < 1000; i++) {
+            volume += 1 + (i % 7);
+            history.record(i, 100 + Math.sin(i) * 10, Double.NaN, Double.NaN, volume);
+        }
+        double weightSum = 0;
+        for (int i = 1000 - 16; i < 1000; i++) {
+            expectedSum += (100 + Math.sin(i) * 10) * (1 + (i % 7));
+            weightSum += 1 + (i % 7);
+        }
+        assertEquals(expectedSum / weightSum, history.getVolumeWeightedAveragePrice(), 1e-6);
+    }
+
+    @Test
+    public void testTicksAreWeightedByTheVolumeTradedSinceThePreviousTick() throws Exception {
+        TickHistory history = new TickHistory(10, 60000);
+        history.record(1000, 10, Double.NaN, Double.NaN, 100);
+        // Older trades leaving the 24 hour volume make it fall, which is no weight.
+        history.record(2000, 20, Double.NaN, Double.NaN, 90);
+        // Ticks without a volume have no weight and do not reset the previous volume.
+        history.record(3000, 25, Double.NaN, Double.NaN, Double.NaN);
+        history.record(4000, 30, Double.NaN, Double.NaN, 95);
+        history.record(5000, 40, Double.NaN, Double.NaN, 100);
+
+        // (30 * 5 + 40 * 5) / 10
+        assertEquals(35.0, history.getVolumeWeightedAveragePrice(), DELTA);
+
+        // Once the weighted ticks leave the window the last prices are averaged.
+        history.record(64500, 50, Double.NaN, Double.NaN, 100);
+        history.record(66000, 60, Double.NaN, Double.NaN, 100);
+        assertEquals(2, history.size());
+        assertEquals(55.0, history.getVolumeWeightedAveragePrice(), DELTA);
+    }
+}
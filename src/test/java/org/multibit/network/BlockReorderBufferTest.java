@@ -0,0 +1,70 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.network;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class BlockReorderBufferTest extends TestCase {
+    @Test
+    public void testReleasesInHeightOrder() {
+        BlockReorderBuffer<String> buffer = new BlockReorderBuffer<String>(100);
+
+        assertTrue(buffer.offer(102, "102"));
+        assertTrue(buffer.offer(101, "101"));
+
+        // Nothing can be released until block 100 arrives.
+        assertTrue(buffer.takeReady().isEmpty());
+        assertEquals(100, buffer.getNextHeight());
+
+        assertTrue(buffer.offer(100, "100"));
+        List<String> ready = buffer.takeReady();
+        assertEquals(3, ready.size());
+        assertEquals("100", ready.get(0));
+        assertEquals("101", ready.get(1));
+        assertEquals("102", ready.get(2));
+        assertEquals(103, buffer.getNextHeight());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testStopsAtGap() {
+        BlockReorderBuffer<String> buffer = new BlockReorderBuffer<String>(0);
+
+        buffer.offer(0, "0");
+        buffer.offer(1, "1");
+        buffer.offer(3, "3");
+
+        assertEquals(2, buffer.takeReady().size());
+        assertEquals(2, buffer.getNextHeight());
+        assertEquals(1, buffer.size());
+    }
+
+    @Test
+    public void testRejectsDuplicates() {
+        BlockReorderBuffer<String> buffer = new BlockReorderBuffer<String>(0);
+
+        assertTrue(buffer.offer(1, "1"));
+        assertFalse("Duplicate of a waiting block accepted", buffer.offer(1, "1 again"));
+
+        buffer.offer(0, "0");
+        buffer.takeReady();
+        assertFalse("Already released block accepted", buffer.offer(0, "0 again"));
+    }
+}
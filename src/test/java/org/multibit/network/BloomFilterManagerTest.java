@@ -0,0 +1,45 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.network;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class BloomFilterManagerTest extends TestCase {
+    @Test
+    public void testSmallFiltersUseDefaultRate() {
+        assertEquals(BloomFilterManager.DEFAULT_FALSE_POSITIVE_RATE, BloomFilterManager.calculateFalsePositiveRate(0), 0.0);
+        assertEquals(BloomFilterManager.DEFAULT_FALSE_POSITIVE_RATE, BloomFilterManager.calculateFalsePositiveRate(20), 0.0);
+        assertEquals(BloomFilterManager.DEFAULT_FALSE_POSITIVE_RATE, BloomFilterManager.calculateFalsePositiveRate(2000), 0.0);
+    }
+
+    @Test
+    public void testLargeFiltersRelaxRate() {
+        double rate = BloomFilterManager.calculateFalsePositiveRate(10000);
+        assertTrue("Rate was not relaxed", rate > BloomFilterManager.DEFAULT_FALSE_POSITIVE_RATE);
+        assertTrue("Rate relaxed too far", rate <= BloomFilterManager.MAXIMUM_FALSE_POSITIVE_RATE);
+
+        // The relaxed rate keeps the filter within the maximum size.
+        double filterSizeInBytes = -10000 * Math.log(rate) / (Math.log(2) * Math.log(2)) / 8;
+        assertTrue("Filter too big : " + filterSizeInBytes, filterSizeInBytes <= BloomFilterManager.MAXIMUM_FILTER_SIZE + 1);
+    }
+
+    @Test
+    public void testRateIsCapped() {
+        assertEquals(BloomFilterManager.MAXIMUM_FALSE_POSITIVE_RATE, BloomFilterManager.calculateFalsePositiveRate(1000000), 0.0);
+    }
+}
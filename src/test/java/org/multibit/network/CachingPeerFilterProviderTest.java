@@ -0,0 +1,69 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.network;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.google.bitcoin.core.BloomFilter;
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.Wallet;
+
+public class CachingPeerFilterProviderTest extends TestCase {
+    private static final double FALSE_POSITIVE_RATE = 0.0005;
+    private static final long TWEAK = 12345;
+
+    @Test
+    public void testFilterFollowsSizeAndKeys() throws Exception {
+        Wallet wallet = new Wallet(NetworkParameters.prodNet());
+        ECKey firstKey = new ECKey();
+        wallet.addKey(firstKey);
+
+        CachingPeerFilterProvider provider = new CachingPeerFilterProvider(wallet);
+
+        BloomFilter filter = provider.getBloomFilter(10, FALSE_POSITIVE_RATE, TWEAK);
+        assertTrue(filter.contains(firstKey.getPubKeyHash()));
+        assertSame(filter, provider.getBloomFilter(10, FALSE_POSITIVE_RATE, TWEAK));
+
+        // Another wallet growing changes the size but the key is still there.
+        BloomFilter largerFilter = provider.getBloomFilter(200, FALSE_POSITIVE_RATE, TWEAK);
+        assertNotSame(filter, largerFilter);
+        assertTrue(largerFilter.contains(firstKey.getPubKey()));
+        assertTrue(largerFilter.contains(firstKey.getPubKeyHash()));
+
+        ECKey secondKey = new ECKey();
+        wallet.addKey(secondKey);
+        BloomFilter filterWithSecondKey = provider.getBloomFilter(200, FALSE_POSITIVE_RATE, TWEAK);
+        assertTrue(filterWithSecondKey.contains(firstKey.getPubKeyHash()));
+        assertTrue(filterWithSecondKey.contains(secondKey.getPubKeyHash()));
+    }
+
+    @Test
+    public void testReleasedProviderContributesNothing() throws Exception {
+        Wallet wallet = new Wallet(NetworkParameters.prodNet());
+        ECKey key = new ECKey();
+        wallet.addKey(key);
+
+        CachingPeerFilterProvider provider = new CachingPeerFilterProvider(wallet);
+        provider.release();
+
+        assertEquals(0, provider.getBloomFilterElementCount());
+        assertEquals(Long.MAX_VALUE, provider.getEarliestKeyCreationTime());
+        assertFalse(provider.getBloomFilter(10, FALSE_POSITIVE_RATE, TWEAK).contains(key.getPubKeyHash()));
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.network;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.google.bitcoin.core.NetworkParameters;
+
+public class MultiBitPeerGroupTest extends TestCase {
+    @Test
+    public void testParallelDownloadWaitsForPeers() throws Exception {
+        RecordingPeerGroup peerGroup = new RecordingPeerGroup();
+        peerGroup.setParallelDownload(true);
+
+        // Called straight after the PeerGroup is started, before any peers have connected.
+        peerGroup.downloadBlockChain();
+        assertEquals(0, peerGroup.parallelDownloads.size());
+
+        for (int peerCount = 1; peerCount < MultiBitPeerGroup.PARALLEL_DOWNLOAD_NUMBER_OF_PEERS; peerCount++) {
+            peerGroup.downloadPeerConnected(peerCount);
+        }
+        assertEquals(0, peerGroup.parallelDownloads.size());
+
+        peerGroup.downloadPeerConnected(MultiBitPeerGroup.PARALLEL_DOWNLOAD_NUMBER_OF_PEERS);
+        assertEquals(1, peerGroup.parallelDownloads.size());
+        assertTrue(peerGroup.parallelDownloads.get(0) instanceof ParallelBlockChainDownload);
+
+        // Later peers do not start a second download.
+        peerGroup.downloadPeerConnected(MultiBitPeerGroup.PARALLEL_DOWNLOAD_NUMBER_OF_PEERS + 1);
+        assertEquals(1, peerGroup.parallelDownloads.size());
+    }
+
+    @Test
+    public void testNoParallelDownloadWhenSwitchedOff() throws Exception {
+        RecordingPeerGroup peerGroup = new RecordingPeerGroup();
+
+        peerGroup.downloadBlockChain();
+        peerGroup.downloadPeerConnected(MultiBitPeerGroup.PARALLEL_DOWNLOAD_NUMBER_OF_PEERS);
+        assertEquals(0, peerGroup.parallelDownloads.size());
+    }
+
+    /**
+     * Records the parallel downloads instead of running them, as there is no network.
+     */
+    private static class RecordingPeerGroup extends MultiBitPeerGroup {
+        private final List<Runnable> parallelDownloads = new ArrayList<Runnable>();
+
+        RecordingPeerGroup() {
+            super(null, NetworkParameters.prodNet(), null);
+        }
+
+        @Override
+        Runnable createParallelBlockChainDownload() {
+            parallelDownloads.add(super.createParallelBlockChainDownload());
+            return new Runnable() {
+                @Override
+                public void run() {
+                }
+            };
+        }
+    }
+}
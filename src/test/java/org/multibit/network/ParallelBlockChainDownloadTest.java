@@ -0,0 +1,329 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.network;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.bitcoin.core.ECKey;
+import com.google.bitcoin.core.FilteredBlock;
+import com.google.bitcoin.core.GetDataMessage;
+import com.google.bitcoin.core.InventoryItem;
+import com.google.bitcoin.core.Message;
+import com.google.bitcoin.core.NetworkParameters;
+import com.google.bitcoin.core.Peer;
+import com.google.bitcoin.core.PeerAddress;
+import com.google.bitcoin.core.Pong;
+import com.google.bitcoin.core.Sha256Hash;
+import com.google.bitcoin.core.Transaction;
+import com.google.bitcoin.core.Utils;
+import com.google.bitcoin.core.VarInt;
+import com.google.bitcoin.core.VersionMessage;
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class ParallelBlockChainDownloadTest extends TestCase {
+    private static final int FIRST_HEIGHT = 1001;
+
+    private static final int NUMBER_OF_RANGES = 3;
+
+    private NetworkParameters params;
+    private FakePeerGroup peerGroup;
+    private ParallelBlockChainDownload download;
+
+    private List<FilteredBlock> blocks;
+    private List<Sha256Hash> hashes;
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        params = NetworkParameters.prodNet();
+        peerGroup = new FakePeerGroup(params);
+        download = new ParallelBlockChainDownload(peerGroup, null, params, null);
+
+        blocks = new ArrayList<FilteredBlock>();
+        hashes = new ArrayList<Sha256Hash>();
+        for (int i = 0; i < NUMBER_OF_RANGES * ParallelBlockChainDownload.BLOCKS_PER_RANGE; i++) {
+            FilteredBlock block = createFilteredBlock(i, new Sha256Hash(Utils.doubleDigest(new byte[] {(byte) i})), false);
+            blocks.add(block);
+            hashes.add(block.getHash());
+        }
+        download.queueRanges(FIRST_HEIGHT, hashes);
+    }
+
+    @Test
+    public void testEachIdlePeerIsGivenTheNextRange() throws Exception {
+        FakePeer peer1 = peerGroup.connect();
+        FakePeer peer2 = peerGroup.connect();
+
+        download.assignRanges();
+
+        assertRequested(peer1, 0);
+        assertRequested(peer2, ParallelBlockChainDownload.BLOCKS_PER_RANGE);
+        assertEquals(1, peer1.pings);
+        assertEquals(1, peer2.pings);
+
+        // Busy peers are not given another range.
+        download.assignRanges();
+        assertEquals(1, peer1.sentMessages.size());
+        assertEquals(1, peer2.sentMessages.size());
+    }
+
+    @Test
+    public void testDeliveredRangeIsBufferedAndFreesThePeer() throws Exception {
+        FakePeer peer1 = peerGroup.connect();
+        FakePeer peer2 = peerGroup.connect();
+        download.assignRanges();
+
+        // The second range arriving first is held back until the first range is complete.
+        deliver(peer2, ParallelBlockChainDownload.BLOCKS_PER_RANGE, 2 * ParallelBlockChainDownload.BLOCKS_PER_RANGE);
+        assertTrue(download.getReorderBuffer().takeReady().isEmpty());
+
+        deliver(peer1, 0, ParallelBlockChainDownload.BLOCKS_PER_RANGE);
+        List<FilteredBlock> ready = download.getReorderBuffer().takeReady();
+        assertEquals(2 * ParallelBlockChainDownload.BLOCKS_PER_RANGE, ready.size());
+        for (int i = 0; i < ready.size(); i++) {
+            assertEquals(hashes.get(i), ready.get(i).getHash());
+        }
+
+        // Both peers are idle again, only one range is left.
+        download.assignRanges();
+        assertRequested(peer1, 2 * ParallelBlockChainDownload.BLOCKS_PER_RANGE);
+        assertEquals(1, peer2.sentMessages.size());
+    }
+
+    @Test
+    public void testMatchedTransactionsAreTakenWithTheirBlock() throws Exception {
+        Transaction transaction = new Transaction(params);
+        transaction.addOutput(Utils.toNanoCoins(1, 0), new ECKey());
+        FilteredBlock block = createFilteredBlock(0, transaction.getHash(), true);
+
+        List<Sha256Hash> rangeHashes = new ArrayList<Sha256Hash>();
+        rangeHashes.add(block.getHash());
+        download = new ParallelBlockChainDownload(peerGroup, null, params, null);
+        download.queueRanges(FIRST_HEIGHT, rangeHashes);
+
+        FakePeer peer = peerGroup.connect();
+        download.assignRanges();
+
+        assertNull(download.onPreMessageReceived(peer, block));
+        assertNull(download.onPreMessageReceived(peer, transaction));
+
+        // A transaction that is not in the block is relayed as usual.
+        Transaction unrelated = new Transaction(params);
+        unrelated.addOutput(Utils.toNanoCoins(2, 0), new ECKey());
+        assertSame(unrelated, download.onPreMessageReceived(peer, unrelated));
+
+        Pong pong = new Pong(1);
+        assertSame(pong, download.onPreMessageReceived(peer, pong));
+
+        List<FilteredBlock> ready = download.getReorderBuffer().takeReady();
+        assertEquals(1, ready.size());
+        assertSame(transaction, ready.get(0).getAssociatedTransactions().get(transaction.getHash()));
+    }
+
+    @Test
+    public void testTimedOutRangeIsHandedToAnotherPeer() throws Exception {
+        FakePeer slowPeer = peerGroup.connect();
+        download.assignRanges();
+        deliver(slowPeer, 0, 10);
+
+        // Not timed out yet.
+        download.requeueTimedOutRanges(System.currentTimeMillis());
+        assertFalse(slowPeer.closed);
+
+        download.requeueTimedOutRanges(System.currentTimeMillis() + ParallelBlockChainDownload.RANGE_TIMEOUT + 1000);
+        assertTrue(slowPeer.closed);
+        assertEquals(1, peerGroup.getPeerScoreBoard().getScore(slowPeer).getStallCount());
+        peerGroup.disconnect(slowPeer);
+
+        FakePeer peer = peerGroup.connect();
+        download.assignRanges();
+        GetDataMessage getData = (GetDataMessage) peer.sentMessages.get(0);
+        assertEquals(ParallelBlockChainDownload.BLOCKS_PER_RANGE - 10, getData.getItems().size());
+        assertEquals(hashes.get(10), getData.getItems().get(0).hash);
+    }
+
+    @Test
+    public void testRangeOfDisconnectedPeerIsHandedToAnotherPeer() throws Exception {
+        FakePeer peer1 = peerGroup.connect();
+        FakePeer peer2 = peerGroup.connect();
+        download.assignRanges();
+        deliver(peer1, 0, 20);
+
+        peerGroup.disconnect(peer1);
+        download.onPeerDisconnected(peer1, 1);
+
+        // The rest of the first range goes out before the third range.
+        FakePeer peer3 = peerGroup.connect();
+        download.assignRanges();
+        GetDataMessage getData = (GetDataMessage) peer3.sentMessages.get(0);
+        assertEquals(ParallelBlockChainDownload.BLOCKS_PER_RANGE - 20, getData.getItems().size());
+        assertEquals(hashes.get(20), getData.getItems().get(0).hash);
+        assertEquals(1, peer2.sentMessages.size());
+    }
+
+    @Test
+    public void testOtherMessagesArePassedThrough() throws Exception {
+        FakePeer peer1 = peerGroup.connect();
+        FakePeer idlePeer = peerGroup.connect();
+        download = new ParallelBlockChainDownload(peerGroup, null, params, null);
+        download.queueRanges(FIRST_HEIGHT, hashes.subList(0, ParallelBlockChainDownload.BLOCKS_PER_RANGE));
+        download.assignRanges();
+
+        // A block outside the range of the peer is left to bitcoinj.
+        FilteredBlock otherBlock = blocks.get(ParallelBlockChainDownload.BLOCKS_PER_RANGE);
+        assertSame(otherBlock, download.onPreMessageReceived(peer1, otherBlock));
+        assertSame(blocks.get(0), download.onPreMessageReceived(idlePeer, blocks.get(0)));
+
+        Pong pong = new Pong(1);
+        assertSame(pong, download.onPreMessageReceived(idlePeer, pong));
+        assertTrue(download.getReorderBuffer().takeReady().isEmpty());
+    }
+
+    @Test
+    public void testPeersDoNotDownloadBlocksDuringTheParallelDownload() throws Exception {
+        FakePeer downloadPeer = peerGroup.connect();
+        FakePeer otherPeer = peerGroup.connect();
+        downloadPeer.setDownloadData(true);
+        peerGroup.downloadPeer = downloadPeer;
+
+        download.suspendBlockDownloads();
+        assertFalse(downloadPeer.getDownloadData());
+        assertFalse(otherPeer.getDownloadData());
+
+        FakePeer newPeer = peerGroup.connect();
+        newPeer.setDownloadData(true);
+        download.onPeerConnected(newPeer, 3);
+        assertFalse(newPeer.getDownloadData());
+
+        download.resumeBlockDownloads();
+        assertTrue(downloadPeer.getDownloadData());
+        assertFalse(otherPeer.getDownloadData());
+        assertFalse(newPeer.getDownloadData());
+    }
+
+    /**
+     * Deliver blocks from index start up to, but not including, index end
+     * followed by the pong that ends the delivery.
+     */
+    private void deliver(FakePeer peer, int start, int end) {
+        for (int i = start; i < end; i++) {
+            assertNull(download.onPreMessageReceived(peer, blocks.get(i)));
+        }
+        Pong pong = new Pong(1);
+        assertSame(pong, download.onPreMessageReceived(peer, pong));
+    }
+
+    private void assertRequested(FakePeer peer, int firstIndex) {
+        assertEquals(1, peer.sentMessages.size());
+        GetDataMessage getData = (GetDataMessage) peer.sentMessages.get(0);
+        List<InventoryItem> items = getData.getItems();
+        assertEquals(ParallelBlockChainDownload.BLOCKS_PER_RANGE, items.size());
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals(InventoryItem.Type.FilteredBlock, items.get(i).type);
+            assertEquals(hashes.get(firstIndex + i), items.get(i).hash);
+        }
+    }
+
+    /**
+     * A merkleblock message with a single transaction. The nonce makes each block different.
+     */
+    private FilteredBlock createFilteredBlock(int nonce, Sha256Hash transactionHash, boolean matched) throws Exception {
+        byte[] merkleRoot = Utils.reverseBytes(transactionHash.getBytes());
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        Utils.uint32ToByteStreamLE(1, stream); // version
+        stream.write(new byte[32]); // previous block hash
+        stream.write(merkleRoot);
+        Utils.uint32ToByteStreamLE(0, stream); // time
+        Utils.uint32ToByteStreamLE(0, stream); // difficulty target
+        Utils.uint32ToByteStreamLE(nonce, stream);
+        Utils.uint32ToByteStreamLE(1, stream); // transaction count
+        stream.write(new VarInt(1).encode());
+        stream.write(merkleRoot);
+        stream.write(new VarInt(1).encode());
+        stream.write(matched ? 1 : 0);
+        return new FilteredBlock(params, stream.toByteArray());
+    }
+
+    /**
+     * Records what is sent to it instead of sending it, as there is no network.
+     */
+    private static class FakePeer extends Peer {
+        private final List<Message> sentMessages = new ArrayList<Message>();
+        private int pings = 0;
+        private boolean closed = false;
+
+        FakePeer(NetworkParameters params, int port) throws Exception {
+            super(params, new VersionMessage(params, 0), null, new PeerAddress(InetAddress.getLoopbackAddress(), port));
+        }
+
+        @Override
+        public void sendMessage(Message message) {
+            sentMessages.add(message);
+        }
+
+        @Override
+        public ListenableFuture<Long> ping() {
+            pings++;
+            return null;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static class FakePeerGroup extends MultiBitPeerGroup {
+        private final NetworkParameters params;
+        private final List<Peer> connectedPeers = new ArrayList<Peer>();
+        private Peer downloadPeer;
+        private int nextPort = 8333;
+
+        FakePeerGroup(NetworkParameters params) {
+            super(null, params, null);
+            this.params = params;
+        }
+
+        FakePeer connect() throws Exception {
+            FakePeer peer = new FakePeer(params, nextPort++);
+            connectedPeers.add(peer);
+            return peer;
+        }
+
+        void disconnect(Peer peer) {
+            connectedPeers.remove(peer);
+        }
+
+        @Override
+        public List<Peer> getConnectedPeers() {
+            return new ArrayList<Peer>(connectedPeers);
+        }
+
+        @Override
+        public Peer getDownloadPeer() {
+            return downloadPeer;
+        }
+    }
+}
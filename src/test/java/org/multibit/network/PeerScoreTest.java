@@ -0,0 +1,67 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.network;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class PeerScoreTest extends TestCase {
+    @Test
+    public void testNewPeerHasBaseScore() {
+        PeerScore peerScore = new PeerScore();
+        assertEquals(PeerScore.BASE_SCORE, peerScore.getScore(), 0.0001);
+        assertEquals(PeerScore.UNKNOWN_LATENCY, peerScore.getLatency());
+    }
+
+    @Test
+    public void testLowerLatencyScoresHigher() {
+        PeerScore fastPeer = new PeerScore();
+        fastPeer.recordLatency(50);
+
+        PeerScore slowPeer = new PeerScore();
+        slowPeer.recordLatency(500);
+
+        assertTrue("Fast peer did not outscore slow peer", fastPeer.getScore() > slowPeer.getScore());
+    }
+
+    @Test
+    public void testBlockDeliveryRaisesScore() {
+        PeerScore peerScore = new PeerScore();
+        long now = 1000000;
+        for (int i = 0; i <= 100; i++) {
+            peerScore.recordBlock(now + i * 20);
+        }
+        assertEquals(101, peerScore.getBlocksDelivered());
+        assertEquals(now + 100 * 20, peerScore.getLastBlockTime());
+        assertTrue("No block rate recorded", peerScore.getBlocksPerSecond() > 0.0);
+        assertTrue("Score did not rise", peerScore.getScore() > PeerScore.BASE_SCORE);
+    }
+
+    @Test
+    public void testStallLowersScore() {
+        PeerScore peerScore = new PeerScore();
+        long now = 1000000;
+        for (int i = 0; i <= 100; i++) {
+            peerScore.recordBlock(now + i * 20);
+        }
+        peerScore.recordStall();
+
+        assertEquals(1, peerScore.getStallCount());
+        assertEquals(0.0, peerScore.getBlocksPerSecond(), 0.0001);
+        assertEquals(PeerScore.BASE_SCORE - PeerScore.POINTS_PER_STALL, peerScore.getScore(), 0.0001);
+    }
+}
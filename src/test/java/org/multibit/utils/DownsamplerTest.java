@@ -0,0 +1,60 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.utils;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class DownsamplerTest extends TestCase {
+    @Test
+    public void testShortLineIsKept() {
+        double[] x = new double[] { 1, 2, 3 };
+        double[] y = new double[] { 5, 6, 7 };
+
+        int[] selected = Downsampler.largestTriangleThreeBuckets(x, y, 3, 10);
+        assertEquals(3, selected.length);
+        assertEquals(2, selected[2]);
+    }
+
+    @Test
+    public void testSpikeIsKept() {
+        int size = 1000;
+        double[] x = new double[size];
+        double[] y = new double[size];
+        for (int i = 0; i < size; i++) {
+            x[i] = i;
+            y[i] = 1;
+        }
+        y[437] = 100;
+
+        int[] selected = Downsampler.largestTriangleThreeBuckets(x, y, size, 50);
+        assertEquals(50, selected.length);
+        assertEquals(0, selected[0]);
+        assertEquals(size - 1, selected[selected.length - 1]);
+
+        boolean spikeKept = false;
+        for (int i = 0; i < selected.length; i++) {
+            if (i > 0) {
+                assertTrue(selected[i] > selected[i - 1]);
+            }
+            if (selected[i] == 437) {
+                spikeKept = true;
+            }
+        }
+        assertTrue(spikeKept);
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2015 multibit.org
+ *
+ * Licensed under the MIT license (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://opensource.org/licenses/mit-license.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.multibit.utils;
+
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class FixedPointFormatTest extends TestCase {
+
+    private static void assertSameAsDecimalFormat(Locale locale, long value) {
+        DecimalFormat decimalFormat = (DecimalFormat) NumberFormat.getInstance(locale);
+        decimalFormat.setMaximumFractionDigits(8);
+        String expected = decimalFormat.format(BigDecimal.valueOf(value, 8));
+
+        StringBuilder builder = new StringBuilder();
+        FixedPointFormat.appendDecimal(builder, value, 8, new DecimalFormatSymbols(locale), decimalFormat.getGroupingSize());
+        assertEquals(locale + " " + value, expected, builder.toString());
+    }
+
+    @Test
+    public void testSameAsDecimalFormat() throws Exception {
+        long[] values = new long[] { 0, 1, 10, 12345678, 100000000, 123456789, 100000000000L, 2100000000000000L,
+                99999999999999L, Long.MAX_VALUE };
+        Locale[] locales = new Locale[] { Locale.ENGLISH, Locale.GERMAN, Locale.FRENCH, new Locale("hi", "IN"), new Locale("ar", "EG") };
+        Random random = new Random(1);
+        for (Locale locale : locales) {
+            for (long value : values) {
+                assertSameAsDecimalFormat(locale, value);
+            }
+            for (int i = 0; i < 1000; i++) {
+                assertSameAsDecimalFormat(locale, random.nextLong() & 0x3FFFFFFFFFFFFL);
+            }
+        }
+    }
+
+    @Test
+    public void testNoGrouping() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        FixedPointFormat.appendDecimal(builder, 123456789012L, 2, new DecimalFormatSymbols(Locale.ENGLISH), 0);
+        assertEquals("1234567890.12", builder.toString());
+    }
+
+    @Test
+    public void testNegativeValueIsRejected() throws Exception {
+        try {
+            FixedPointFormat.appendDecimal(new StringBuilder(), -1, 8, new DecimalFormatSymbols(Locale.ENGLISH), 3);
+            fail("Negative value was accepted");
+        } catch (IllegalArgumentException iae) {
+            // Expected.
+        }
+    }
+}
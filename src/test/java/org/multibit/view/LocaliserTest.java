@@ -298,6 +298,21 @@ public class LocaliserTest extends TestCase {
         assertEquals("", localiser.bitcoinValueToString(BigInteger.ZERO, false, true));    
     }
 
+    @Test
+    public void testAppendBitcoinValue() {
+        Localiser localiser = new Localiser(new Locale("de"));
+
+        StringBuilder builder = new StringBuilder();
+        localiser.appendBitcoinValue(builder, -1234567890123L);
+        assertEquals("-12.345,67890123", builder.toString());
+
+        // The most negative long cannot be negated so is formatted as a BigInteger.
+        builder.setLength(0);
+        localiser.appendBitcoinValue(builder, Long.MIN_VALUE);
+        assertEquals(localiser.bitcoinValueToString(BigInteger.valueOf(Long.MIN_VALUE), false, false), builder.toString());
+        assertTrue(builder.toString(), builder.toString().startsWith("-92.233.720.368,"));
+    }
+
   @Test
    public void testBitcoinValueToStringNotLocalised() {
        Localiser localiser = new Localiser(new Locale("de"));